@@ -2,6 +2,14 @@ package lems.mobileProctorAgent;
 
 import android.Manifest;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import lems.mobileProctorAgent.camera.CaptureSettings;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.video.VideoSettings;
+
 public interface AppConstants {
     int REQUEST_CODE_PERMISSIONS = 10;
     String[] REQUIRED_PERMISSIONS = new String[]{Manifest.permission.CAMERA, Manifest.permission.INTERNET};
@@ -11,6 +19,52 @@ public interface AppConstants {
     int PICTURE_INTERVAL_MS = 1000;
     int EXPECTED_PICTURE_WIDTH = 416;
     int EXPECTED_PICTURE_HEIGHT = 416;
+    int JPEG_QUALITY = 85;
+    // Capture levels the adaptive controller can choose among, from the lowest to the highest fidelity
+    List<CaptureSettings> CAPTURE_LEVELS = Collections.unmodifiableList(Arrays.asList(
+            new CaptureSettings(5000, 320, 320, 60),
+            new CaptureSettings(3000, 320, 320, 70),
+            new CaptureSettings(2000, 416, 416, 75),
+            new CaptureSettings(PICTURE_INTERVAL_MS, EXPECTED_PICTURE_WIDTH, EXPECTED_PICTURE_HEIGHT, JPEG_QUALITY),
+            new CaptureSettings(PICTURE_INTERVAL_MS, 640, 640, 90)));
+    int INITIAL_CAPTURE_LEVEL = 3;
+    // High resolution snapshots requested by the server, sent in chunks beside the regular pictures
+    CaptureSettings HIGH_RES_CAPTURE_SETTINGS = new CaptureSettings(0, 1920, 1440, 90);
+    int HIGH_RES_CHUNK_SIZE_BYTES = 64 * 1024;
+    int OUTBOUND_QUEUE_CAPACITY_PER_CAMERA = 3;
+
+    // Change detection: pictures are compared through a grid of average luma values. A picture is sent in full when
+    // more than the changed fraction of the cells moved by more than the cell delta since the last keyframe, or when
+    // the last keyframe is older than the max keyframe interval
+    int CHANGE_GRID_SIZE = 16;
+    int CHANGE_CELL_DELTA = 12;
+    float CHANGE_CHANGED_FRACTION = 0.02f;
+    long CHANGE_MAX_KEYFRAME_INTERVAL_MS = 30000;
+
+    // Video stream mode, chosen per session: the learner camera is streamed at a steady low bit rate
+    PictureSnapshot.CameraType VIDEO_CAMERA = PictureSnapshot.CameraType.FRONT;
+    VideoSettings VIDEO_SETTINGS = new VideoSettings(640, 480, 300000, 15, 2);
+
+    String SPOOL_DIRECTORY = "snapshot-spool";
+    int SPOOL_SEGMENT_SIZE_BYTES = 4 * 1024 * 1024;
+    long SPOOL_MAX_SIZE_BYTES = 64L * 1024 * 1024;
+    int SPOOL_REPLAY_RATE_PER_SECOND = 4;
+
+    // Websocket reconnection: exponential backoff from the delay up to the max delay, randomized by the factor
+    int WS_RECONNECTION_ATTEMPTS = Integer.MAX_VALUE;
+    long WS_RECONNECTION_DELAY_MS = 1000;
+    long WS_RECONNECTION_DELAY_MAX_MS = 30000;
+    double WS_RECONNECTION_RANDOMIZATION_FACTOR = 0.5;
+
+    long UI_METRICS_SAMPLING_MS = 1000;
+    long TELEMETRY_PERIOD_MS = 10000;
+    long CAPTURE_PROFILE_EVALUATION_PERIOD_MS = 5000;
+
+    // Pairing QR code analysis: part of the frame width and height analyzed around the center, downscaled to the
+    // max frame size; a full frame is analyzed after a number of misses
+    float QR_ROI_FRACTION = 0.7f;
+    int QR_MAX_FRAME_SIZE = 640;
+    int QR_MISSES_BEFORE_FULL_FRAME = 8;
 
     String BT_GATT_SERVICE = "19B10000-E8F2-537E-4F6C-D104768A1214";
 
@@ -1,49 +1,214 @@
 package lems.mobileProctorAgent;
 
 import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.util.Log;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
 
 import lems.mobileProctorAgent.bluetooth.BluetoothManager;
+import lems.mobileProctorAgent.camera.AdaptiveCaptureController;
 import lems.mobileProctorAgent.camera.CameraManager;
+import lems.mobileProctorAgent.camera.CaptureManager;
+import lems.mobileProctorAgent.camera.CaptureProfile;
+import lems.mobileProctorAgent.camera.CaptureProfilePolicy;
+import lems.mobileProctorAgent.camera.CaptureProfileScheduler;
+import lems.mobileProctorAgent.camera.FrameChangeDetector;
+import lems.mobileProctorAgent.camera.HighResSnapshotHandler;
+import lems.mobileProctorAgent.camera.JpegLumaSampler;
+import lems.mobileProctorAgent.camera.SnapshotChangeFilter;
+import lems.mobileProctorAgent.device.AndroidDeviceStateSource;
+import lems.mobileProctorAgent.device.DeviceStateSource;
+import lems.mobileProctorAgent.executor.AppExecutors;
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+import lems.mobileProctorAgent.metrics.SnapshotLatencyTracker;
+import lems.mobileProctorAgent.metrics.TelemetryReporter;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.model.TimestampFormat;
+import lems.mobileProctorAgent.spool.SnapshotSpool;
+import lems.mobileProctorAgent.video.VideoCaptureManager;
+import lems.mobileProctorAgent.websocket.SnapshotOutboundQueue;
+import lems.mobileProctorAgent.websocket.TransportCapabilities;
 import lems.mobileProctorAgent.websocket.WebsocketManager;
 
 public class LEMSMobileProcotorAgentApplication extends Application {
     private final static String LOG_TAG = LEMSMobileProcotorAgentApplication.class.getName();
-    private final ScheduledExecutorService executorService;
+    private final MetricsRegistry metricsRegistry;
+    private final AppExecutors executors;
     private final WebsocketManager wsMgr;
+    private final SnapshotOutboundQueue snapshotQueue;
+    private final SnapshotChangeFilter changeFilter;
     private final CameraManager camMgr;
+    private final VideoCaptureManager videoMgr;
+    private final AdaptiveCaptureController captureController;
+    private final SnapshotLatencyTracker latencyTracker;
+    private final HighResSnapshotHandler highResSnapshotHandler;
     private final BluetoothManager bluetoothManager;
+    private TelemetryReporter telemetryReporter;
+    private CaptureProfileScheduler captureProfileScheduler;
+    private volatile CaptureManager.CaptureMode sessionCaptureMode = CaptureManager.CaptureMode.STILLS;
 
     public LEMSMobileProcotorAgentApplication() {
         super();
-        this.executorService = Executors.newScheduledThreadPool(3);
-        this.wsMgr = new WebsocketManager();
-        this.camMgr = new CameraManager(this.executorService, (pictureSnapshot) -> {
-            this.wsMgr.sendPictureSnapshot(pictureSnapshot);
-        }, AppConstants.PICTURE_INTERVAL_MS, AppConstants.EXPECTED_PICTURE_WIDTH, AppConstants.EXPECTED_PICTURE_HEIGHT);
-        this.bluetoothManager = new BluetoothManager(this.executorService);
+        this.metricsRegistry = new MetricsRegistry();
+        this.executors = new AppExecutors(this.metricsRegistry);
+        this.wsMgr = new WebsocketManager(this.executors.network(), this.metricsRegistry);
+        // Front pictures show the learner: keep a short history. Back pictures: only the last one matters
+        final EnumMap<PictureSnapshot.CameraType, SnapshotOutboundQueue.OverflowPolicy> queuePolicies =
+                new EnumMap<>(PictureSnapshot.CameraType.class);
+        queuePolicies.put(PictureSnapshot.CameraType.FRONT, SnapshotOutboundQueue.OverflowPolicy.DROP_OLDEST);
+        queuePolicies.put(PictureSnapshot.CameraType.BACK, SnapshotOutboundQueue.OverflowPolicy.LATEST_WINS);
+        this.snapshotQueue = new SnapshotOutboundQueue(this.wsMgr, this.executors.network(), queuePolicies,
+                AppConstants.OUTBOUND_QUEUE_CAPACITY_PER_CAMERA);
+        this.wsMgr.addWebsocketListener(this.snapshotQueue);
+        this.wsMgr.addSnapshotDeliveryListener(this.snapshotQueue);
+        this.metricsRegistry.gauge(MetricNames.QUEUE_DEPTH, this.snapshotQueue::getDepth);
+        this.metricsRegistry.gauge(MetricNames.QUEUE_DROPPED, this.snapshotQueue::getDroppedCount);
+        this.metricsRegistry.gauge(MetricNames.SPOOL_DEPTH, this.snapshotQueue::getSpoolDepth);
+        this.changeFilter = new SnapshotChangeFilter(this.wsMgr, new JpegLumaSampler(AppConstants.CHANGE_GRID_SIZE),
+                new FrameChangeDetector(AppConstants.CHANGE_CELL_DELTA, AppConstants.CHANGE_CHANGED_FRACTION,
+                        AppConstants.CHANGE_MAX_KEYFRAME_INTERVAL_MS), this.metricsRegistry);
+        this.wsMgr.addWebsocketListener(this.changeFilter);
+        this.snapshotQueue.addSnapshotDropListener(this.changeFilter);
+        this.camMgr = new CameraManager(this.executors.capture(), this.executors.network(), this::onPictureTaken,
+                AppConstants.CAPTURE_LEVELS.get(AppConstants.INITIAL_CAPTURE_LEVEL));
+        this.videoMgr = new VideoCaptureManager(this.executors.network(), this.executors.capture(), this.wsMgr,
+                this::onPictureTaken, this.metricsRegistry, AppConstants.VIDEO_CAMERA,
+                AppConstants.VIDEO_SETTINGS, AppConstants.CAPTURE_LEVELS.get(AppConstants.INITIAL_CAPTURE_LEVEL));
+        this.wsMgr.addWebsocketListener(this.videoMgr);
+        this.wsMgr.addStillRequestListener(this.videoMgr);
+        this.wsMgr.addSnapshotDeliveryListener(this.videoMgr);
+        this.captureController = new AdaptiveCaptureController(AppConstants.CAPTURE_LEVELS,
+                AppConstants.INITIAL_CAPTURE_LEVEL, this.wsMgr, this.snapshotQueue, this.camMgr::applyCaptureSettings);
+        this.wsMgr.addSnapshotDeliveryListener(this.captureController);
+        this.captureController.open(this.executors.network());
+        this.latencyTracker = new SnapshotLatencyTracker(this.metricsRegistry);
+        this.wsMgr.addSnapshotDeliveryListener(this.latencyTracker);
+        this.highResSnapshotHandler = new HighResSnapshotHandler(this::getCaptureManager, this.snapshotQueue,
+                AppConstants.HIGH_RES_CAPTURE_SETTINGS, AppConstants.HIGH_RES_CHUNK_SIZE_BYTES, this.metricsRegistry);
+        this.wsMgr.addDeviceControlListener(this.highResSnapshotHandler);
+        this.wsMgr.setMetricsSource(this.metricsRegistry);
+        this.bluetoothManager = new BluetoothManager(this.executors.ble(), this.metricsRegistry);
         this.bluetoothManager.setWebsocketManager(this.wsMgr);
     }
 
-    public ScheduledExecutorService getExecutorService() {
-        return this.executorService;
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Formatted timestamps cache the default time zone
+        this.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                TimestampFormat.onDefaultZoneChanged();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+        this.openSpool();
+        // Device services are only available once the application has its context
+        final DeviceStateSource deviceStateSource = new AndroidDeviceStateSource(this);
+        this.captureProfileScheduler = new CaptureProfileScheduler(deviceStateSource, new CaptureProfilePolicy(),
+                AppConstants.CAPTURE_PROFILE_EVALUATION_PERIOD_MS, this::onCaptureProfileChanged);
+        this.telemetryReporter = new TelemetryReporter(this.metricsRegistry, deviceStateSource,
+                this.wsMgr, AppConstants.TELEMETRY_PERIOD_MS);
+        this.telemetryReporter.addSection("captureProfile", this.captureProfileScheduler);
+        this.captureProfileScheduler.open(this.executors.network());
+        this.telemetryReporter.open(this.executors.network());
+    }
+
+    private void onCaptureProfileChanged(CaptureProfile captureProfile) {
+        this.camMgr.applyCaptureProfile(captureProfile);
+        this.videoMgr.applyCaptureProfile(captureProfile);
+        if (this.wsMgr.isAuthenticated()) {
+            try {
+                this.wsMgr.sendCaptureProfile(this.captureProfileScheduler.toJSONObject());
+            } catch (JSONException ex) {
+                Log.e(LOG_TAG, "Cannot build capture profile message: " + ex.getMessage());
+            }
+        }
+    }
+
+    public AppExecutors getExecutors() {
+        return this.executors;
     }
 
     public WebsocketManager getWebSocketManager() {
         return this.wsMgr;
     }
 
+    public SnapshotOutboundQueue getSnapshotQueue() {
+        return this.snapshotQueue;
+    }
+
+    /**
+     * Open the snapshot spool, if not opened yet. Snapshots left by a previous session are replayed.
+     */
+    public void openSpool() {
+        if (this.snapshotQueue.hasSpool()) {
+            return;
+        }
+        try {
+            final SnapshotSpool spool = new SnapshotSpool(new File(this.getFilesDir(), AppConstants.SPOOL_DIRECTORY),
+                    AppConstants.SPOOL_SEGMENT_SIZE_BYTES, AppConstants.SPOOL_MAX_SIZE_BYTES);
+            this.snapshotQueue.setSpool(spool, AppConstants.SPOOL_REPLAY_RATE_PER_SECOND);
+        } catch (IOException ex) {
+            Log.w(LOG_TAG, "Cannot open snapshot spool, snapshots taken offline will be lost: " + ex.getMessage());
+        }
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
     public CameraManager getCameraManager() {
         return this.camMgr;
     }
 
+    public VideoCaptureManager getVideoCaptureManager() {
+        return this.videoMgr;
+    }
+
+    /**
+     * @param sessionCaptureMode the capture mode asked for the session, taken into account from the next opening
+     */
+    public void setSessionCaptureMode(CaptureManager.CaptureMode sessionCaptureMode) {
+        this.sessionCaptureMode = sessionCaptureMode;
+    }
+
+    /**
+     * The capture manager in use if any; otherwise the one to open: video if asked for the session and accepted by
+     * the server, pictures otherwise.
+     */
+    public CaptureManager getCaptureManager() {
+        if (this.camMgr.isOpened()) {
+            return this.camMgr;
+        }
+        if (this.videoMgr.isOpened()) {
+            return this.videoMgr;
+        }
+        if (this.sessionCaptureMode == CaptureManager.CaptureMode.VIDEO
+                && this.wsMgr.getCapabilities().supports(TransportCapabilities.VIDEO_STREAM)) {
+            return this.videoMgr;
+        }
+        return this.camMgr;
+    }
+
     public BluetoothManager getBluetoothCtrlMgr() {
         return this.bluetoothManager;
     }
 
+    private void onPictureTaken(PictureSnapshot pictureSnapshot) {
+        this.metricsRegistry.counter(MetricNames.CAPTURE_PICTURES_PREFIX + pictureSnapshot.getSource()).increment();
+        this.metricsRegistry.histogram(MetricNames.CAPTURE_PICTURE_BYTES).record(pictureSnapshot.getDataLength());
+        this.snapshotQueue.offer(this.changeFilter.filter(pictureSnapshot));
+    }
+
     public void closeEverything() {
         Log.i(LOG_TAG, "CLOSE Websocket AND Camera Manager");
         try {
@@ -56,6 +221,35 @@ public class LEMSMobileProcotorAgentApplication extends Application {
         } catch (Exception ex) {
             Log.i(LOG_TAG, "Error while closing camera manager: " + ex.getMessage());
         }
+        try {
+            this.videoMgr.close();
+        } catch (Exception ex) {
+            Log.i(LOG_TAG, "Error while closing video capture manager: " + ex.getMessage());
+        }
+        try {
+            this.captureController.close();
+        } catch (Exception ex) {
+            Log.i(LOG_TAG, "Error while closing capture controller: " + ex.getMessage());
+        }
+        try {
+            if (this.captureProfileScheduler != null) {
+                this.captureProfileScheduler.close();
+            }
+        } catch (Exception ex) {
+            Log.i(LOG_TAG, "Error while closing capture profile scheduler: " + ex.getMessage());
+        }
+        try {
+            if (this.telemetryReporter != null) {
+                this.telemetryReporter.close();
+            }
+        } catch (Exception ex) {
+            Log.i(LOG_TAG, "Error while closing telemetry reporter: " + ex.getMessage());
+        }
+        try {
+            this.snapshotQueue.close();
+        } catch (Exception ex) {
+            Log.i(LOG_TAG, "Error while closing snapshot queue: " + ex.getMessage());
+        }
         try {
             this.bluetoothManager.close();
         } catch (Exception ex) {
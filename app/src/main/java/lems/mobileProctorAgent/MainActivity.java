@@ -12,6 +12,8 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.WindowManager;
 import android.widget.Button;
@@ -23,12 +25,16 @@ import java.util.Locale;
 import lems.mobileProctorAgent.bluetooth.BTLEControllerContract;
 import lems.mobileProctorAgent.bluetooth.BluetoothManager;
 import lems.mobileProctorAgent.bluetooth.BluetoothManagerListener;
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
 import lems.mobileProctorAgent.model.ControlOrder;
 import lems.mobileProctorAgent.model.PictureSnapshot;
-import lems.mobileProctorAgent.model.WebSocketEventTypes;
 import lems.mobileProctorAgent.qrcodeReader.ReadQrCodeContract;
+import lems.mobileProctorAgent.video.SessionCaptureParameters;
 import lems.mobileProctorAgent.websocket.DeviceControlListener;
+import lems.mobileProctorAgent.websocket.TransportCapabilities;
 import lems.mobileProctorAgent.websocket.WebsocketListener;
+import lems.mobileProctorAgent.websocket.WebsocketManager;
 
 public class MainActivity extends AppCompatActivity implements BluetoothManagerListener, WebsocketListener {
     private final static String LOG_TAG = MainActivity.class.getName();
@@ -36,13 +42,12 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
     private boolean cameraAllowed;
     private boolean onError;
     private String debugMessages;
-    private MainActivity.WSDataSentInfo dataSentInfo;
+    private final Handler metricsSamplingHandler = new Handler(Looper.getMainLooper());
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        this.dataSentInfo = new MainActivity.WSDataSentInfo();
         // Init main components
         this.findViewById(R.id.qrCodeControl).setOnClickListener((v) -> {
             try {
@@ -92,12 +97,15 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
         }
         // Render from state
         this.renderFromState();
+        this.metricsSamplingHandler.removeCallbacks(this.metricsSampler);
+        this.metricsSamplingHandler.postDelayed(this.metricsSampler, AppConstants.UI_METRICS_SAMPLING_MS);
     }
 
 
 
     @Override
     protected void onStop() {
+        this.metricsSamplingHandler.removeCallbacks(this.metricsSampler);
         this.stopAutoRotatingDevice();
         super.onStop();
         //LEMSMobileProcotorAgentApplication app = (LEMSMobileProcotorAgentApplication) getApplication();
@@ -141,7 +149,7 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
             } else if (controlled) {
                 icon = R.drawable.ic_control;
                 mainInfo = this.getString(R.string.ic_controlled_desc);
-            } else if (app.getCameraManager().isOpened()) {
+            } else if (app.getCaptureManager().isOpened()) {
                 icon = R.drawable.ic_taking_picture;
                 mainInfo = this.getString(R.string.ic_taking_picture_desc);
             }
@@ -158,9 +166,9 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
             }
 
             // Buttons enabling
-            btnSelectBTController.setVisibility(!app.getCameraManager().isOpened() && !controlled ? Button.VISIBLE : Button.GONE);
+            btnSelectBTController.setVisibility(!app.getCaptureManager().isOpened() && !controlled ? Button.VISIBLE : Button.GONE);
             btnTakeQrCode.setVisibility(!websocketConnected && !websocketConnecting ? Button.VISIBLE : Button.GONE);
-            btnConnect.setVisibility(websocketConnected && !app.getCameraManager().isOpened() && !controlled ? Button.VISIBLE : Button.GONE);
+            btnConnect.setVisibility(websocketConnected && !app.getCaptureManager().isOpened() && !controlled ? Button.VISIBLE : Button.GONE);
 
             // Debug Text
             if (this.debugMessages == null || this.debugMessages.isEmpty()) {
@@ -172,7 +180,7 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
             }
 
             // Screen off prevention : wen cameraManager opened or controlled
-            if (app.getCameraManager().isOpened() || controlled) {
+            if (app.getCaptureManager().isOpened() || controlled) {
                 this.getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
             } else {
                 this.getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
@@ -181,16 +189,17 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
     }
 
     private void startWatching() {
-        this.dataSentInfo = new MainActivity.WSDataSentInfo();
         LEMSMobileProcotorAgentApplication app = (LEMSMobileProcotorAgentApplication) getApplication();
         // Precondition: websocket is connected, permission ok
         if (!this.cameraAllowed || !app.getWebSocketManager().isOpened()) {
             Log.i(LOG_TAG, "Cannot start watching, either camera not allowed or ws not connected");
         }
-        app.getCameraManager().setContext(this);
+        app.getCaptureManager().setContext(this);
+        // Closed if the server ended the previous session
+        app.openSpool();
         try {
             this.onError = false;
-            app.getCameraManager().open();
+            app.getCaptureManager().open();
             this.setDebugMessages();
         } catch (Exception ex) {
             this.onError = true;
@@ -203,7 +212,7 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
     private void stopWatching() {
         LEMSMobileProcotorAgentApplication app = (LEMSMobileProcotorAgentApplication) getApplication();
         try {
-            app.getCameraManager().close();
+            app.getCaptureManager().close();
             this.setDebugMessages();
         } catch (Exception ex) {
             this.onError = true;
@@ -272,10 +281,20 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
         // Init websocket connection
         if (websocketEndoint != null && websocketJWT != null) {
             LEMSMobileProcotorAgentApplication app = (LEMSMobileProcotorAgentApplication) getApplication();
+            this.setCaptureModeFromUri(app, uri);
             app.getWebSocketManager().open(websocketEndoint, websocketJWT, websocketPath);
         }
     }
 
+    // Optional session capture mode, see SessionCaptureParameters
+    private void setCaptureModeFromUri(LEMSMobileProcotorAgentApplication app, Uri uri) {
+        final SessionCaptureParameters parameters = SessionCaptureParameters.parse(
+                uri.getQueryParameter(SessionCaptureParameters.CAPTURE_PARAMETER),
+                uri.getQueryParameter(SessionCaptureParameters.KEYFRAME_INTERVAL_PARAMETER), AppConstants.VIDEO_SETTINGS);
+        app.setSessionCaptureMode(parameters.getCaptureMode());
+        app.getVideoCaptureManager().setVideoSettings(parameters.getVideoSettings());
+    }
+
     private void checkPermissions() {
         if (!this.allPermissionsGranted()) {
             ActivityCompat.requestPermissions(this, AppConstants.REQUIRED_PERMISSIONS, AppConstants.REQUEST_CODE_PERMISSIONS);
@@ -316,9 +335,9 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
     @Override
     public void onControllChanged(boolean controlled) {
         /*LEMSMobileProcotorAgentApplication app = (LEMSMobileProcotorAgentApplication) getApplication();
-        if (app.getBluetoothCtrlMgr().isControlled() && app.getCameraManager().isOpened()) {
+        if (app.getBluetoothCtrlMgr().isControlled() && app.getCaptureManager().isOpened()) {
             this.stopWatching();
-        } else if (!app.getBluetoothCtrlMgr().isControlled() && !app.getCameraManager().isOpened()) {
+        } else if (!app.getBluetoothCtrlMgr().isControlled() && !app.getCaptureManager().isOpened()) {
             this.startWatching();
         }*/
         /*if (controlled) {
@@ -344,6 +363,11 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
         this.renderFromState();
     }
 
+    @Override
+    public void onAuthenticated(TransportCapabilities capabilities) {
+        this.renderFromState();
+    }
+
     @Override
     public void onDisconnect(Object[] info) {
         String disconnectionMsg = "unknown";
@@ -355,11 +379,23 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
             }
         }
         Log.w(LOG_TAG, "Disconnected from websocket: " + disconnectionMsg);
-        this.stopWatching();
+        if (WebsocketManager.isServerDisconnect(info)) {
+            // Not reconnected: pictures would only fill the spool
+            LEMSMobileProcotorAgentApplication app = (LEMSMobileProcotorAgentApplication) getApplication();
+            this.stopWatching();
+            app.getSnapshotQueue().closeSpool();
+        }
+        // Otherwise keep taking pictures: they are spooled until the websocket is back
         this.setDebugMessages("Websocket disconnected:", disconnectionMsg);
         this.renderFromState();
     }
 
+    @Override
+    public void onReconnecting(int attempt) {
+        this.setDebugMessages("Websocket reconnecting, attempt " + attempt);
+        this.renderFromState();
+    }
+
     @Override
     public void onConnectError(Exception ex) {
         final String errorMsg = ex == null ? "unknown" : ex.getMessage();
@@ -372,40 +408,34 @@ public class MainActivity extends AppCompatActivity implements BluetoothManagerL
 
     @Override
     public void onDataSent(String eventType, Object data) {
-        if (WebSocketEventTypes.PICTURE_SNAPSHOT_EVENT_TYPE.equals(eventType)) {
-            PictureSnapshot ps = (PictureSnapshot) data;
-            if (ps.getSource().equals(PictureSnapshot.CameraType.FRONT)) {
-                this.dataSentInfo.nbFrontPictureSnapshotsSent++;
-                this.dataSentInfo.lastFrontDataSize = ps.getData().length / 1000F;
-            } else if (ps.getSource().equals(PictureSnapshot.CameraType.BACK)) {
-                this.dataSentInfo.nbBackPictureSnapshotsSent++;
-                this.dataSentInfo.lastBackDataSize = ps.getData().length / 1000F;
-            } else {
-                this.dataSentInfo.nbOtherDataSent++;
-            }
-        } else {
-            this.dataSentInfo.nbOtherDataSent++;
-        }
-        this.setDebugMessages("Information on data sent",
-                this.dataSentInfo.lastFrontDataSize == null ?
-                        String.format(Locale.US, "- Front pictures: %d",
-                                this.dataSentInfo.nbFrontPictureSnapshotsSent) :
-                        String.format(Locale.US, "- Front pictures: %d (last size: %.2f kB)",
-                                this.dataSentInfo.nbFrontPictureSnapshotsSent, this.dataSentInfo.lastFrontDataSize),
-                this.dataSentInfo.lastFrontDataSize == null ?
-                        String.format(Locale.US, "- Back pictures: %d",
-                                this.dataSentInfo.nbBackPictureSnapshotsSent) :
-                        String.format(Locale.US, "- Back pictures: %d (last size: %.2f kB)",
-                                this.dataSentInfo.nbBackPictureSnapshotsSent, this.dataSentInfo.lastBackDataSize),
-                String.format(Locale.US, "- Other data: %d", this.dataSentInfo.nbOtherDataSent));
-        this.renderFromState();
+        // Sent data is accounted for in the metrics registry, sampled by metricsSampler
     }
 
-    private static class WSDataSentInfo {
-        public int nbFrontPictureSnapshotsSent = 0;
-        public int nbBackPictureSnapshotsSent = 0;
-        public int nbOtherDataSent = 0;
-        public Float lastFrontDataSize = null;
-        public Float lastBackDataSize = null;
-    }
-}
\ No newline at end of file
+    // Refresh the debug information from the metrics at a low fixed rate, whatever the rate of the events
+    private final Runnable metricsSampler = new Runnable() {
+        @Override
+        public void run() {
+            final LEMSMobileProcotorAgentApplication app = (LEMSMobileProcotorAgentApplication) getApplication();
+            if (!onError && app.getWebSocketManager().isAuthenticated() && app.getCaptureManager().isOpened()) {
+                final MetricsRegistry metrics = app.getMetricsRegistry();
+                setDebugMessages("Information on data sent",
+                        String.format(Locale.US, "- Front pictures: %d",
+                                metrics.getCount(MetricNames.SNAPSHOT_SENT_PREFIX + PictureSnapshot.CameraType.FRONT)),
+                        String.format(Locale.US, "- Back pictures: %d",
+                                metrics.getCount(MetricNames.SNAPSHOT_SENT_PREFIX + PictureSnapshot.CameraType.BACK)),
+                        String.format(Locale.US, "- Data sent: %.2f kB",
+                                metrics.getCount(MetricNames.SNAPSHOT_SENT_BYTES) / 1000F),
+                        String.format(Locale.US, "- Pictures acknowledged: %d",
+                                metrics.getCount(MetricNames.SNAPSHOT_ACKNOWLEDGED)),
+                        "- Capture to ack latency (ms): " + metrics.getHistogram(MetricNames.SNAPSHOT_CAPTURE_TO_ACK_MS),
+                        String.format(Locale.US, "- Queued: %d, spooled: %d, dropped: %d",
+                                metrics.getGauge(MetricNames.QUEUE_DEPTH), metrics.getGauge(MetricNames.SPOOL_DEPTH),
+                                metrics.getGauge(MetricNames.QUEUE_DROPPED)),
+                        String.format(Locale.US, "- Reconnections: %d",
+                                metrics.getCount(MetricNames.WS_RECONNECTIONS)));
+                renderFromState();
+            }
+            metricsSamplingHandler.postDelayed(this, AppConstants.UI_METRICS_SAMPLING_MS);
+        }
+    };
+}
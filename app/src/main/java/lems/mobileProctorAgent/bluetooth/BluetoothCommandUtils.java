@@ -1,8 +1,5 @@
 package lems.mobileProctorAgent.bluetooth;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
 public class BluetoothCommandUtils {
     public static final int MESSAGE_LENGTH = 2;
     /*
@@ -25,36 +22,65 @@ public class BluetoothCommandUtils {
 
      */
 
+    private static final byte MOVE_NEGATIVE = (byte) 0x00;
+    private static final byte MOVE_STOP = (byte) 0x80;
+    private static final byte MOVE_POSITIVE = (byte) 0xFF;
+
+    // The 9 possible move order messages, as little-endian 16 bits values, indexed by moveOrderIndex
+    private static final int[] MOVE_ORDER_TABLE = buildMoveOrderTable();
+
+    private static int[] buildMoveOrderTable() {
+        final byte[] moveBytes = new byte[]{MOVE_NEGATIVE, MOVE_STOP, MOVE_POSITIVE};
+        final int[] table = new int[moveBytes.length * moveBytes.length];
+        for (int rotation = 0; rotation < moveBytes.length; rotation++) {
+            for (int pitch = 0; pitch < moveBytes.length; pitch++) {
+                // 1st byte (low): pitch, 2nd byte (high): rotation
+                table[rotation * moveBytes.length + pitch] = (moveBytes[rotation] & 0xFF) << 8 | (moveBytes[pitch] & 0xFF);
+            }
+        }
+        return table;
+    }
+
+    private static int moveOrderIndex(int rotation, int pitch) {
+        return (Integer.signum(rotation) + 1) * 3 + Integer.signum(pitch) + 1;
+    }
+
     /**
-     * Compute a 2 bytes little-endian move (rotation and pitch) order message for the bluetooth controller
+     * Encode a move (rotation and pitch) order message for the bluetooth controller, without allocation.
+     * The value is meant to be written as a 16 bits little-endian unsigned integer (GATT FORMAT_UINT16).
      * @param rotation the rotation sens. 0: stop, <0: counter-clockwise, >0: clockwise
      * @param pitch the pitch movement. 0: stop, <0: down, >0: up
-     * @return the 2 bytes array
+     * @return the 16 bits message: pitch in the low byte, rotation in the high byte
      */
-    public static byte[] computeMoveOrderMessage(int rotation, int pitch) {
-        final ByteBuffer buffer = ByteBuffer
-                .allocate(MESSAGE_LENGTH)
-                .order(ByteOrder.LITTLE_ENDIAN);
-
-        //First we put the pitch order
-        if (pitch > 0) { // Go up
-            buffer.put((byte) 0xFF);
-        } else if (pitch < 0) { // Go down
-            buffer.put((byte) 0x00);
-        } else { // Stop pitch
-            buffer.put((byte) 0x80);
-        }
+    public static int encodeMoveOrder(int rotation, int pitch) {
+        return MOVE_ORDER_TABLE[moveOrderIndex(rotation, pitch)];
+    }
 
-        //Then we put the rotation order
-        if (rotation > 0) { // Go clockwise
-            buffer.put((byte) 0xFF);
-        } else if (rotation < 0) { // Go counter-clockwise
-            buffer.put((byte) 0x00);
-        } else { // Stop rotation
-            buffer.put((byte) 0x80);
-        }
+    /**
+     * Write a 2 bytes little-endian move (rotation and pitch) order message into a buffer, without allocation
+     * @param rotation the rotation sens. 0: stop, <0: counter-clockwise, >0: clockwise
+     * @param pitch the pitch movement. 0: stop, <0: down, >0: up
+     * @param dst the destination buffer
+     * @param offset the offset of the message in the buffer
+     * @return the number of bytes written
+     */
+    public static int writeMoveOrderMessage(int rotation, int pitch, byte[] dst, int offset) {
+        final int message = encodeMoveOrder(rotation, pitch);
+        dst[offset] = (byte) message;
+        dst[offset + 1] = (byte) (message >>> 8);
+        return MESSAGE_LENGTH;
+    }
 
-        return buffer.array();
+    /**
+     * Compute a 2 bytes little-endian move (rotation and pitch) order message for the bluetooth controller
+     * @param rotation the rotation sens. 0: stop, <0: counter-clockwise, >0: clockwise
+     * @param pitch the pitch movement. 0: stop, <0: down, >0: up
+     * @return a new 2 bytes array
+     */
+    public static byte[] computeMoveOrderMessage(int rotation, int pitch) {
+        final byte[] message = new byte[MESSAGE_LENGTH];
+        writeMoveOrderMessage(rotation, pitch, message, 0);
+        return message;
     }
 
     public static String moveOrderMessageToString(byte[] orderMessage, int offset) {
@@ -20,16 +20,21 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import lems.mobileProctorAgent.AppConstants;
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
 import lems.mobileProctorAgent.model.ControlInfo;
 import lems.mobileProctorAgent.model.ControlOrder;
 import lems.mobileProctorAgent.websocket.DeviceControlListener;
+import lems.mobileProctorAgent.websocket.TransportCapabilities;
+import lems.mobileProctorAgent.websocket.WebsocketListener;
 import lems.mobileProctorAgent.websocket.WebsocketManager;
 
-public class BluetoothManager implements DeviceControlListener, AutoCloseable {
+public class BluetoothManager implements DeviceControlListener, WebsocketListener, AutoCloseable {
     private final static String LOG_TAG = BluetoothManager.class.getName();
 
     private final ScheduledExecutorService executorService;
     private final ArrayList<BluetoothManagerListener> btManagerListeners;
+    private final GattCommandQueue commandQueue;
 
     private WebsocketManager wsManager;
 
@@ -43,9 +48,17 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
 
     ScheduledFuture futurResetPitch;
 
-    public BluetoothManager(ScheduledExecutorService executorService) {
+    public BluetoothManager(ScheduledExecutorService executorService, MetricsRegistry metricsRegistry) {
         this.executorService = executorService;
         this.btManagerListeners = new ArrayList<>();
+        this.commandQueue = new GattCommandQueue(executorService, this::writeCharacteristic,
+                GattCommandQueue.DFLT_WRITE_TIMEOUT_MS, metricsRegistry.histogram(MetricNames.BLE_WRITE_LATENCY_MS));
+        metricsRegistry.gauge(MetricNames.BLE_QUEUE_DEPTH, this.commandQueue::getDepth);
+        metricsRegistry.gauge(MetricNames.BLE_WRITES, this.commandQueue::getWrittenCount);
+        metricsRegistry.gauge(MetricNames.BLE_COALESCED, this.commandQueue::getCoalescedCount);
+        metricsRegistry.gauge(MetricNames.BLE_WRITE_FAILURES, this.commandQueue::getFailedCount);
+        metricsRegistry.gauge(MetricNames.BLE_CONNECTED, () -> this.ready ? 1 : 0);
+        metricsRegistry.gauge(MetricNames.BLE_CONTROLLED, () -> this.controlled ? 1 : 0);
         this.ready = false;
     }
 
@@ -69,8 +82,19 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
         return this.controlled;
     }
 
+    public GattCommandQueue getCommandQueue() {
+        return this.commandQueue;
+    }
+
     @Override
     public void close() {
+        synchronized (this) {
+            if (this.futurResetPitch != null) {
+                this.futurResetPitch.cancel(true);
+                this.futurResetPitch = null;
+            }
+        }
+        this.commandQueue.clear();
         this.ready = false;
         this.bluetoothDeviceName = null;
         this.bluetoothGatt = null;
@@ -90,10 +114,12 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
     public void setWebsocketManager(WebsocketManager mgr) {
         if (this.wsManager != null) {
             this.wsManager.removeDeviceControlListener(this);
+            this.wsManager.removeWebsocketListener(this);
         }
         this.wsManager = mgr;
         if (this.wsManager != null) {
             this.wsManager.addDeviceControlListener(this);
+            this.wsManager.addWebsocketListener(this);
         }
     }
 
@@ -107,31 +133,21 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
             return;
         }
 
-        final byte[] command = BluetoothCommandUtils.computeMoveOrderMessage(order.getRotation(), order.getPitch());
-        boolean res = false;
+        final int command = BluetoothCommandUtils.encodeMoveOrder(order.getRotation(), order.getPitch());
         synchronized (this) {
             if (this.futurResetPitch != null) {
                 this.futurResetPitch.cancel(true);
                 this.futurResetPitch = null;
             }
-            this.characteristic.setValue(command);
-            res  = this.bluetoothGatt.writeCharacteristic(this.characteristic);
+            // Written once the previous write is confirmed, replacing any move order still waiting
+            this.commandQueue.offerMove(command);
             // Send stop pitch order in 200ms if required
             if (order.getPitch() != 0) {
                 this.futurResetPitch = this.executorService.schedule(
                         new PitchReseter(order.getRotation()), 200, TimeUnit.MILLISECONDS);
             }
         }
-        Log.i(LOG_TAG, "Command sent: " + res);
-
-        /*final BluetoothGatt gatt = this.bluetoothGatt;
-        final BluetoothGattCharacteristic charac = this.characteristic;
-        this.executorService.submit(() -> {
-            final byte[] command = BluetoothCommandUtils.computeMoveOrderMessage(order.getRotation(), order.getPitch());
-            charac.setValue(command);
-            boolean res  = gatt.writeCharacteristic(charac);
-            Log.i(LOG_TAG, "Command sent: " + res);
-        });*/
+        Log.i(LOG_TAG, "Command queued, queue depth: " + this.commandQueue.getDepth());
     }
 
     public void startAutoRotate() {
@@ -177,6 +193,39 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
         btManagerListeners.forEach((l) -> l.onCommandReceived(order));
     }
 
+    @Override
+    public void onConnect(Object[] info) {
+    }
+
+    @Override
+    public void onAuthenticated(TransportCapabilities capabilities) {
+        // The lock survives reconnections: tell the resumed session it is still held by the proctor
+        if (this.controlled) {
+            Log.i(LOG_TAG, "Session resumed while controlled, announce control lock");
+            this.wsManager.sendControlInfo(new ControlInfo(true));
+        }
+    }
+
+    @Override
+    public void onDisconnect(Object[] info) {
+        // Nobody can stop a move ordered by the proctor while disconnected
+        if (this.controlled && this.ready) {
+            this.stopAutoRotate();
+        }
+    }
+
+    @Override
+    public void onReconnecting(int attempt) {
+    }
+
+    @Override
+    public void onConnectError(Exception ex) {
+    }
+
+    @Override
+    public void onDataSent(String eventType, Object data) {
+    }
+
     private void init(ComponentActivity context) {
         // Initializes a Bluetooth adapter.  For API level 18 and above, get a reference to
         // BluetoothAdapter through BluetoothManager.
@@ -207,6 +256,7 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
                 // disconnected from the GATT Server
                 Log.i(LOG_TAG, "GATT Connection change for disconnected");
                 bluetoothGatt = null;
+                commandQueue.clear();
             }
         }
 
@@ -220,8 +270,29 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
                 bluetoothGatt = null;
             }
         }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic charac, int status) {
+            commandQueue.onWriteCompleted(status);
+        }
     };
 
+    private boolean writeCharacteristic(int command) {
+        final BluetoothGatt gatt = this.bluetoothGatt;
+        final BluetoothGattCharacteristic charac = this.characteristic;
+        if (gatt == null || charac == null) {
+            return false;
+        }
+        try {
+            // Written in place in the characteristic value buffer
+            charac.setValue(command, BluetoothGattCharacteristic.FORMAT_UINT16, 0);
+            return gatt.writeCharacteristic(charac);
+        } catch (SecurityException ex) {
+            Log.w(LOG_TAG, "Cannot write characteristic", ex);
+            return false;
+        }
+    }
+
     private void retrieveServiceAndCharacteristic() throws SecurityException {
         BluetoothGattService svc = this.bluetoothGatt.getService(UUID.fromString(AppConstants.BT_GATT_SERVICE));
         if (svc == null) {
@@ -238,6 +309,7 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
             Log.w(LOG_TAG, "Service has more than one characteristic. Take the first one");
         }
         this.characteristic = svc.getCharacteristics().get(0);
+        this.characteristic.setValue(new byte[BluetoothCommandUtils.MESSAGE_LENGTH]);
         this.ready = true;
         final String deviceName = this.bluetoothGatt.getDevice().getName();
         this.bluetoothDeviceName = deviceName == null || deviceName.isEmpty() ? this.bluetoothGatt.getDevice().getAddress() : deviceName;
@@ -253,17 +325,8 @@ public class BluetoothManager implements DeviceControlListener, AutoCloseable {
 
         @Override
         public void run() {
-            final byte[] command = BluetoothCommandUtils.computeMoveOrderMessage(this.lastRotation, 0);
-            boolean res = false;
-            synchronized (BluetoothManager.this) {
-                try {
-                    characteristic.setValue(command);
-                    res = bluetoothGatt.writeCharacteristic(characteristic);
-                } catch (SecurityException ex){
-
-                }
-            }
-            Log.i(LOG_TAG, "Reset Pitch sent: " + res);
+            commandQueue.offerMove(BluetoothCommandUtils.encodeMoveOrder(this.lastRotation, 0));
+            Log.i(LOG_TAG, "Reset Pitch queued");
         }
     }
 
@@ -0,0 +1,186 @@
+package lems.mobileProctorAgent.bluetooth;
+
+import android.bluetooth.BluetoothGatt;
+import android.util.Log;
+
+import lems.mobileProctorAgent.metrics.RollingHistogram;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single writer queue of GATT characteristic write commands.
+ * Android allows only one outstanding GATT operation: a command is written only once the previous write has been
+ * confirmed by {@link #onWriteCompleted(int)}, or once its confirmation has timed out.
+ * The completion callback does not tell which write it confirms: GATT operations complete in order, so the first
+ * completion received after a timeout is the late confirmation of the timed out write, and is ignored.
+ * A pending move command is superseded by a newer one, so that only the latest move state is sent to the device:
+ * at most one command is in flight and one is waiting.
+ */
+public class GattCommandQueue {
+    private final static String LOG_TAG = GattCommandQueue.class.getName();
+    public final static long DFLT_WRITE_TIMEOUT_MS = 500;
+    private final static double LATENCY_EWMA_WEIGHT = 0.2;
+    private final static int NO_COMMAND = -1;
+
+    /**
+     * Issue a characteristic write
+     */
+    public interface GattWriter {
+        /**
+         * @param command the move order message to write, see {@link BluetoothCommandUtils#encodeMoveOrder(int, int)}
+         * @return true if the write has been initiated
+         */
+        boolean write(int command);
+    }
+
+    private final ScheduledExecutorService executorService;
+    private final GattWriter writer;
+    private final long writeTimeoutMs;
+    private final RollingHistogram writeLatencyHistogram;
+    private int pendingCommand;
+    private int inFlightCommand;
+    private long inFlightSequence;
+    private long inFlightStartNs;
+    private ScheduledFuture<?> futureWriteTimeout;
+    private boolean lateCompletionExpected;
+    private long writtenCount;
+    private long coalescedCount;
+    private long failedCount;
+    private long lastWriteLatencyMs;
+    private double averageWriteLatencyMs;
+
+    /**
+     * @param executorService the executor of the write timeouts
+     * @param writer the characteristic writer
+     * @param writeTimeoutMs the delay after which a write is considered lost if not confirmed
+     * @param writeLatencyHistogram the histogram of the confirmed writes latency, null if not tracked
+     */
+    public GattCommandQueue(ScheduledExecutorService executorService, GattWriter writer, long writeTimeoutMs,
+                            RollingHistogram writeLatencyHistogram) {
+        this.executorService = executorService;
+        this.writer = writer;
+        this.writeTimeoutMs = writeTimeoutMs;
+        this.writeLatencyHistogram = writeLatencyHistogram;
+        this.pendingCommand = NO_COMMAND;
+        this.inFlightCommand = NO_COMMAND;
+    }
+
+    /**
+     * Queue a move command. A move command still pending is replaced by this one.
+     * @param command the move order message to write, see {@link BluetoothCommandUtils#encodeMoveOrder(int, int)}
+     */
+    public synchronized void offerMove(int command) {
+        if (this.pendingCommand != NO_COMMAND) {
+            this.coalescedCount++;
+        }
+        this.pendingCommand = command;
+        if (this.inFlightCommand == NO_COMMAND) {
+            this.writeNext();
+        }
+    }
+
+    /**
+     * To be called from the GATT callback once the characteristic write has completed
+     * @param status the GATT status of the write
+     */
+    public synchronized void onWriteCompleted(int status) {
+        if (this.lateCompletionExpected) {
+            Log.d(LOG_TAG, "Ignore late completion of a timed out GATT write");
+            this.lateCompletionExpected = false;
+            return;
+        }
+        if (this.inFlightCommand == NO_COMMAND) {
+            return;
+        }
+        if (this.futureWriteTimeout != null) {
+            this.futureWriteTimeout.cancel(false);
+            this.futureWriteTimeout = null;
+        }
+        this.lastWriteLatencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.inFlightStartNs);
+        this.averageWriteLatencyMs = this.writtenCount == 0 ? this.lastWriteLatencyMs
+                : LATENCY_EWMA_WEIGHT * this.lastWriteLatencyMs + (1 - LATENCY_EWMA_WEIGHT) * this.averageWriteLatencyMs;
+        this.writtenCount++;
+        if (this.writeLatencyHistogram != null) {
+            this.writeLatencyHistogram.record(this.lastWriteLatencyMs);
+        }
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            Log.w(LOG_TAG, "GATT write completed with status " + status);
+            this.failedCount++;
+        }
+        this.inFlightCommand = NO_COMMAND;
+        this.writeNext();
+    }
+
+    /**
+     * Drop the pending command and forget the write in flight, e.g. when the device is disconnected
+     */
+    public synchronized void clear() {
+        if (this.futureWriteTimeout != null) {
+            this.futureWriteTimeout.cancel(false);
+            this.futureWriteTimeout = null;
+        }
+        this.pendingCommand = NO_COMMAND;
+        this.inFlightCommand = NO_COMMAND;
+        this.lateCompletionExpected = false;
+    }
+
+    /**
+     * @return the number of commands waiting, the one in flight included
+     */
+    public synchronized int getDepth() {
+        return (this.pendingCommand != NO_COMMAND ? 1 : 0) + (this.inFlightCommand != NO_COMMAND ? 1 : 0);
+    }
+
+    public synchronized long getLastWriteLatencyMs() {
+        return this.lastWriteLatencyMs;
+    }
+
+    public synchronized double getAverageWriteLatencyMs() {
+        return this.averageWriteLatencyMs;
+    }
+
+    public synchronized long getWrittenCount() {
+        return this.writtenCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return this.coalescedCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return this.failedCount;
+    }
+
+    private void writeNext() {
+        final int command = this.pendingCommand;
+        if (command == NO_COMMAND) {
+            return;
+        }
+        this.pendingCommand = NO_COMMAND;
+        this.inFlightStartNs = System.nanoTime();
+        if (this.writer.write(command)) {
+            this.inFlightCommand = command;
+            final long sequence = ++this.inFlightSequence;
+            this.futureWriteTimeout = this.executorService.schedule(() -> this.onWriteTimeout(sequence),
+                    this.writeTimeoutMs, TimeUnit.MILLISECONDS);
+        } else {
+            Log.w(LOG_TAG, "Cannot initiate GATT write, command dropped");
+            this.failedCount++;
+        }
+    }
+
+    private synchronized void onWriteTimeout(long sequence) {
+        // The timeout may fire while the confirmation of its write is being handled
+        if (this.inFlightCommand == NO_COMMAND || this.inFlightSequence != sequence) {
+            return;
+        }
+        Log.w(LOG_TAG, "GATT write not confirmed after " + this.writeTimeoutMs + "ms");
+        this.futureWriteTimeout = null;
+        this.inFlightCommand = NO_COMMAND;
+        this.lateCompletionExpected = true;
+        this.failedCount++;
+        this.writeNext();
+    }
+}
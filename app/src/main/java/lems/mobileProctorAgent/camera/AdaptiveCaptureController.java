@@ -0,0 +1,176 @@
+package lems.mobileProctorAgent.camera;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.websocket.SnapshotDeliveryListener;
+import lems.mobileProctorAgent.websocket.SnapshotOutboundQueue;
+import lems.mobileProctorAgent.websocket.WebsocketManager;
+
+/**
+ * Adapt the capture settings to the measured uplink.
+ * Capture settings are chosen among a list of levels, ordered from the lowest to the highest fidelity. At a
+ * regular period, the emit-to-ack latency, the uplink throughput estimated over the period (see
+ * {@link UplinkThroughputEstimator}) and the frames dropped by the outbound queue are checked: the level is lowered
+ * when the network cannot keep up, and raised when it has room enough for the next level.
+ */
+public class AdaptiveCaptureController implements SnapshotDeliveryListener, AutoCloseable {
+    private final static String LOG_TAG = AdaptiveCaptureController.class.getName();
+
+    private final static long EVALUATION_PERIOD_MS = 5000L;
+    private final static long HIGH_LATENCY_MS = 1500L;
+    private final static long LOW_LATENCY_MS = 400L;
+    // Part of the estimated uplink throughput that the pictures may use before / after a level change
+    private final static double HIGH_THROUGHPUT_USAGE = 0.8;
+    private final static double LOW_THROUGHPUT_USAGE = 0.5;
+    private final static double EWMA_WEIGHT = 0.2;
+    // Without acknowledgements, try the next level after this number of periods without any dropped frame
+    private final static int QUIET_PERIODS_BEFORE_PROBE = 6;
+
+    private final List<CaptureSettings> levels;
+    private final WebsocketManager wsMgr;
+    private final SnapshotOutboundQueue snapshotQueue;
+    private final Consumer<CaptureSettings> settingsConsumer;
+    private int currentLevel;
+    private int ackCount;
+    private long ackLatencySumMs;
+    private double frameSizeEwma;
+    private final UplinkThroughputEstimator throughputEstimator;
+    private double throughputEwma;
+    private long lastDroppedCount;
+    private int quietPeriods;
+    private ScheduledFuture<?> evaluationTask;
+
+    /**
+     * @param levels the capture settings, from the lowest to the highest fidelity
+     * @param initialLevel index of the settings to start with
+     * @param wsMgr the websocket manager
+     * @param snapshotQueue the outbound queue the pictures go through
+     * @param settingsConsumer notified each time the settings change
+     */
+    public AdaptiveCaptureController(List<CaptureSettings> levels, int initialLevel, WebsocketManager wsMgr,
+                                     SnapshotOutboundQueue snapshotQueue, Consumer<CaptureSettings> settingsConsumer) {
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("At least one capture level required");
+        }
+        this.levels = new ArrayList<>(levels);
+        this.currentLevel = Math.max(0, Math.min(initialLevel, levels.size() - 1));
+        this.wsMgr = wsMgr;
+        this.snapshotQueue = snapshotQueue;
+        this.settingsConsumer = settingsConsumer;
+        this.throughputEstimator = new UplinkThroughputEstimator();
+    }
+
+    public synchronized CaptureSettings getCurrentSettings() {
+        return this.levels.get(this.currentLevel);
+    }
+
+    public synchronized double getEstimatedThroughput() {
+        return this.throughputEwma;
+    }
+
+    public synchronized void open(ScheduledExecutorService executorService) {
+        if (this.evaluationTask != null) {
+            return;
+        }
+        this.lastDroppedCount = this.snapshotQueue.getDroppedCount();
+        this.evaluationTask = executorService.scheduleAtFixedRate(this::evaluate,
+                EVALUATION_PERIOD_MS, EVALUATION_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.evaluationTask != null) {
+            this.evaluationTask.cancel(false);
+            this.evaluationTask = null;
+        }
+    }
+
+    @Override
+    public synchronized void onSnapshotAcknowledged(PictureSnapshot pictureSnapshot, int wireSizeBytes, long emitTimeMs, long ackTimeMs) {
+        final long emitToAckMs = ackTimeMs - emitTimeMs;
+        this.ackCount++;
+        this.ackLatencySumMs += emitToAckMs;
+        this.frameSizeEwma = this.frameSizeEwma == 0 ? wireSizeBytes
+                : EWMA_WEIGHT * wireSizeBytes + (1 - EWMA_WEIGHT) * this.frameSizeEwma;
+        this.throughputEstimator.onAcknowledged(wireSizeBytes, emitTimeMs, ackTimeMs);
+    }
+
+    // A pair is the output of a single capture cycle: one sample, of the size of both pictures
+    @Override
+    public void onSnapshotPairAcknowledged(PictureSnapshot[] faces, int[] wireSizesBytes, long emitTimeMs, long ackTimeMs) {
+        int pairWireSizeBytes = 0;
+        for (int wireSizeBytes : wireSizesBytes) {
+            pairWireSizeBytes += wireSizeBytes;
+        }
+        if (pairWireSizeBytes > 0) {
+            this.onSnapshotAcknowledged(faces[0], pairWireSizeBytes, emitTimeMs, ackTimeMs);
+        }
+    }
+
+    private void evaluate() {
+        final CaptureSettings newSettings;
+        synchronized (this) {
+            final double throughput = this.throughputEstimator.closeWindow();
+            if (throughput > 0) {
+                this.throughputEwma = this.throughputEwma == 0 ? throughput
+                        : EWMA_WEIGHT * throughput + (1 - EWMA_WEIGHT) * this.throughputEwma;
+            }
+            final int newLevel = this.computeNewLevel();
+            this.ackCount = 0;
+            this.ackLatencySumMs = 0;
+            if (newLevel == this.currentLevel) {
+                return;
+            }
+            Log.i(LOG_TAG, "Capture level " + this.currentLevel + " -> " + newLevel);
+            this.currentLevel = newLevel;
+            this.quietPeriods = 0;
+            newSettings = this.levels.get(newLevel);
+        }
+        this.settingsConsumer.accept(newSettings);
+    }
+
+    private int computeNewLevel() {
+        final long droppedCount = this.snapshotQueue.getDroppedCount();
+        final long droppedDuringPeriod = droppedCount - this.lastDroppedCount;
+        this.lastDroppedCount = droppedCount;
+        if (!this.wsMgr.isAuthenticated()) {
+            // Nothing measured: pictures go to the spool
+            return this.currentLevel;
+        }
+        final long avgLatencyMs = this.ackCount > 0 ? this.ackLatencySumMs / this.ackCount : -1;
+        final boolean overloaded = droppedDuringPeriod > 0
+                || avgLatencyMs > HIGH_LATENCY_MS
+                || (this.throughputEwma > 0 && this.requiredThroughput(this.currentLevel) > HIGH_THROUGHPUT_USAGE * this.throughputEwma);
+        if (overloaded) {
+            return Math.max(0, this.currentLevel - 1);
+        }
+        this.quietPeriods++;
+        if (this.currentLevel == this.levels.size() - 1) {
+            return this.currentLevel;
+        }
+        if (this.ackCount > 0) {
+            final boolean roomForNextLevel = avgLatencyMs < LOW_LATENCY_MS
+                    && this.requiredThroughput(this.currentLevel + 1) < LOW_THROUGHPUT_USAGE * this.throughputEwma;
+            return roomForNextLevel ? this.currentLevel + 1 : this.currentLevel;
+        }
+        return this.quietPeriods >= QUIET_PERIODS_BEFORE_PROBE ? this.currentLevel + 1 : this.currentLevel;
+    }
+
+    // Expected bytes per second of a level, from the size of the last frames scaled by the number of pixels
+    private double requiredThroughput(int level) {
+        final CaptureSettings current = this.levels.get(this.currentLevel);
+        final CaptureSettings target = this.levels.get(level);
+        final double pixelRatio = ((double) target.getPictureWidth() * target.getPictureHeight())
+                / ((double) current.getPictureWidth() * current.getPictureHeight());
+        final double qualityRatio = (double) target.getJpegQuality() / current.getJpegQuality();
+        return this.frameSizeEwma * pixelRatio * qualityRatio * 1000.0 / target.getPictureIntervalMs();
+    }
+}
@@ -0,0 +1,489 @@
+package lems.mobileProctorAgent.camera;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+/**
+ * Camera backend over Camera2, able to keep the front and the back cameras opened at the same time on the devices that
+ * support it (Android 11 and later, see {@link android.hardware.camera2.CameraManager#getConcurrentCameraIds()}).
+ * Each opened camera has two streams: a small repeating one, never read, so that the auto exposure keeps converging
+ * between pictures (as CameraX does when only a capture use case is bound), and a jpeg one for the pictures.
+ * The streams are sized for the picture format: binding a camera in another format reopens that camera only. A one-off
+ * bind (e.g. a high resolution picture, up to the 1440p jpeg size guaranteed with concurrent cameras) leaves the other
+ * camera opened, so that the next concurrent bind only reopens the camera used for the one-off picture.
+ * Camera callbacks run on a dedicated thread, started on the first bind and stopped on release.
+ */
+public class Camera2ConcurrentBackend implements CameraBackend {
+    private final static String LOG_TAG = Camera2ConcurrentBackend.class.getName();
+    private static final int METERING_WIDTH = 320;
+    private static final int METERING_HEIGHT = 240;
+
+    private final android.hardware.camera2.CameraManager cameraManager;
+    private final EnumMap<PictureSnapshot.CameraType, String> cameraIds;
+    private final Executor pictureCallbackExecutor;
+    private final EnumMap<PictureSnapshot.CameraType, CameraSession> sessions;
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+
+    private Camera2ConcurrentBackend(android.hardware.camera2.CameraManager cameraManager,
+                                     EnumMap<PictureSnapshot.CameraType, String> cameraIds,
+                                     Executor pictureCallbackExecutor) {
+        this.cameraManager = cameraManager;
+        this.cameraIds = cameraIds;
+        this.pictureCallbackExecutor = pictureCallbackExecutor;
+        this.sessions = new EnumMap<>(PictureSnapshot.CameraType.class);
+    }
+
+    /**
+     * @param context the context giving access to the cameras
+     * @param pictureCallbackExecutor the executor of the picture callbacks
+     * @return the backend, null if the device cannot open its front and back cameras at the same time
+     */
+    public static Camera2ConcurrentBackend create(Context context, Executor pictureCallbackExecutor) {
+        final android.hardware.camera2.CameraManager cameraManager =
+                context.getSystemService(android.hardware.camera2.CameraManager.class);
+        final EnumMap<PictureSnapshot.CameraType, String> cameraIds = findConcurrentCameraIds(cameraManager);
+        if (cameraIds == null) {
+            return null;
+        }
+        Log.i(LOG_TAG, "Concurrent cameras: " + cameraIds);
+        return new Camera2ConcurrentBackend(cameraManager, cameraIds, pictureCallbackExecutor);
+    }
+
+    private static EnumMap<PictureSnapshot.CameraType, String> findConcurrentCameraIds(
+            android.hardware.camera2.CameraManager cameraManager) {
+        if (cameraManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return null;
+        }
+        try {
+            for (Set<String> combination : cameraManager.getConcurrentCameraIds()) {
+                final EnumMap<PictureSnapshot.CameraType, String> cameraIds = new EnumMap<>(PictureSnapshot.CameraType.class);
+                for (String cameraId : combination) {
+                    final Integer facing = cameraManager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.LENS_FACING);
+                    if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT) {
+                        cameraIds.putIfAbsent(PictureSnapshot.CameraType.FRONT, cameraId);
+                    } else if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
+                        cameraIds.putIfAbsent(PictureSnapshot.CameraType.BACK, cameraId);
+                    }
+                }
+                if (cameraIds.size() == PictureSnapshot.CameraType.values().length) {
+                    return cameraIds;
+                }
+            }
+        } catch (CameraAccessException | IllegalArgumentException ex) {
+            Log.w(LOG_TAG, "Cannot list concurrent cameras: " + ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public void bind(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings, BindCallback callback) {
+        this.open(EnumSet.of(cameraType), captureSettings, true, callback);
+    }
+
+    @Override
+    public void bindOneOff(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings, BindCallback callback) {
+        this.open(EnumSet.of(cameraType), captureSettings, false, callback);
+    }
+
+    @Override
+    public boolean supportsConcurrentCapture() {
+        return true;
+    }
+
+    @Override
+    public void bindConcurrent(CaptureSettings captureSettings, BindCallback callback) {
+        this.open(EnumSet.allOf(PictureSnapshot.CameraType.class), captureSettings, true, callback);
+    }
+
+    @Override
+    public void takePicture(PictureSnapshot.CameraType cameraType, PictureCallback callback) {
+        final CameraSession session;
+        synchronized (this) {
+            session = this.sessions.get(cameraType);
+        }
+        if (session == null) {
+            callback.onPictureFailed(new IllegalStateException("Camera " + cameraType + " not bound"));
+            return;
+        }
+        session.capture(callback);
+    }
+
+    @Override
+    public synchronized void release() {
+        this.sessions.values().forEach(CameraSession::close);
+        this.sessions.clear();
+        if (this.cameraThread != null) {
+            // Pending callbacks are still run: they find their session closed
+            this.cameraThread.quitSafely();
+            this.cameraThread = null;
+            this.cameraHandler = null;
+        }
+    }
+
+    // closeOthers: close the opened cameras that are not requested
+    private synchronized void open(Set<PictureSnapshot.CameraType> cameraTypes, CaptureSettings captureSettings,
+                                   boolean closeOthers, BindCallback callback) {
+        if (this.cameraThread == null) {
+            this.cameraThread = new HandlerThread("lems-camera2");
+            this.cameraThread.start();
+            this.cameraHandler = new Handler(this.cameraThread.getLooper());
+        }
+        for (PictureSnapshot.CameraType cameraType : PictureSnapshot.CameraType.values()) {
+            final CameraSession session = this.sessions.get(cameraType);
+            if (session == null) {
+                continue;
+            }
+            final boolean requested = cameraTypes.contains(cameraType);
+            // Streams are sized for the picture format: reopen a camera bound in another format
+            if ((requested && !captureSettings.hasSamePictureFormat(session.captureSettings)) || (!requested && closeOthers)) {
+                this.sessions.remove(cameraType).close();
+            }
+        }
+        final BindBarrier barrier = new BindBarrier(cameraTypes.size(), callback);
+        for (PictureSnapshot.CameraType cameraType : cameraTypes) {
+            CameraSession session = this.sessions.get(cameraType);
+            if (session == null) {
+                session = new CameraSession(cameraType, this.cameraIds.get(cameraType), captureSettings, this.cameraHandler);
+                this.sessions.put(cameraType, session);
+                session.open();
+            }
+            session.whenReady(barrier);
+        }
+    }
+
+    // Forget a session closed on error, so that the next bind opens the camera again
+    private synchronized void forget(CameraSession session) {
+        if (this.sessions.get(session.cameraType) == session) {
+            this.sessions.remove(session.cameraType);
+        }
+    }
+
+    /**
+     * @param sizes the available sizes
+     * @param width the expected width
+     * @param height the expected height
+     * @return the smallest size covering the expected one, the largest size if none does
+     */
+    static Size chooseSize(Size[] sizes, int width, int height) {
+        Size best = null;
+        Size largest = null;
+        for (Size size : sizes) {
+            final long area = (long) size.getWidth() * size.getHeight();
+            if (largest == null || area > (long) largest.getWidth() * largest.getHeight()) {
+                largest = size;
+            }
+            if (size.getWidth() >= width && size.getHeight() >= height
+                    && (best == null || area < (long) best.getWidth() * best.getHeight())) {
+                best = size;
+            }
+        }
+        return best != null ? best : largest;
+    }
+
+    // Notify the bind callback once all the cameras are ready, or on the first failure
+    private static class BindBarrier implements BindCallback {
+        private final BindCallback callback;
+        private int remaining;
+        private boolean notified;
+
+        BindBarrier(int count, BindCallback callback) {
+            this.remaining = count;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onCameraReady() {
+            synchronized (this) {
+                if (this.notified || --this.remaining > 0) {
+                    return;
+                }
+                this.notified = true;
+            }
+            this.callback.onCameraReady();
+        }
+
+        @Override
+        public void onBindFailed(Exception ex) {
+            synchronized (this) {
+                if (this.notified) {
+                    return;
+                }
+                this.notified = true;
+            }
+            this.callback.onBindFailed(ex);
+        }
+    }
+
+    /**
+     * One opened camera with its capture session. Callbacks are never called while holding the session lock.
+     */
+    private class CameraSession {
+        private final PictureSnapshot.CameraType cameraType;
+        private final String cameraId;
+        private final CaptureSettings captureSettings;
+        private final Handler handler;
+        private final List<BindCallback> waitingCallbacks;
+        private CameraDevice device;
+        private CameraCaptureSession captureSession;
+        private ImageReader jpegReader;
+        private SurfaceTexture meteringTexture;
+        private Surface meteringSurface;
+        private int sensorOrientation;
+        private boolean ready;
+        private boolean closed;
+        private PictureCallback pendingPicture;
+
+        CameraSession(PictureSnapshot.CameraType cameraType, String cameraId, CaptureSettings captureSettings, Handler handler) {
+            this.cameraType = cameraType;
+            this.cameraId = cameraId;
+            this.captureSettings = captureSettings;
+            this.handler = handler;
+            this.waitingCallbacks = new ArrayList<>();
+        }
+
+        void open() {
+            try {
+                cameraManager.openCamera(this.cameraId, new CameraDevice.StateCallback() {
+                    @Override
+                    public void onOpened(@NonNull CameraDevice camera) {
+                        onDeviceOpened(camera);
+                    }
+
+                    @Override
+                    public void onDisconnected(@NonNull CameraDevice camera) {
+                        fail(new IllegalStateException("Camera " + cameraType + " disconnected"));
+                    }
+
+                    @Override
+                    public void onError(@NonNull CameraDevice camera, int error) {
+                        fail(new IllegalStateException("Camera " + cameraType + " error " + error));
+                    }
+                }, this.handler);
+            } catch (CameraAccessException | SecurityException | IllegalArgumentException ex) {
+                this.handler.post(() -> this.fail(ex));
+            }
+        }
+
+        // Notified from the camera thread, even if the camera is already ready
+        void whenReady(BindCallback callback) {
+            synchronized (this) {
+                if (!this.ready && !this.closed) {
+                    this.waitingCallbacks.add(callback);
+                    return;
+                }
+            }
+            this.handler.post(() -> {
+                if (this.isReady()) {
+                    callback.onCameraReady();
+                } else {
+                    callback.onBindFailed(new IllegalStateException("Camera " + this.cameraType + " closed"));
+                }
+            });
+        }
+
+        synchronized boolean isReady() {
+            return this.ready && !this.closed;
+        }
+
+        private void onDeviceOpened(CameraDevice camera) {
+            synchronized (this) {
+                if (this.closed) {
+                    camera.close();
+                    return;
+                }
+                this.device = camera;
+            }
+            try {
+                final CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(this.cameraId);
+                final StreamConfigurationMap streams = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+                final Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+                final Size jpegSize = chooseSize(streams.getOutputSizes(ImageFormat.JPEG),
+                        this.captureSettings.getPictureWidth(), this.captureSettings.getPictureHeight());
+                final Size meteringSize = chooseSize(streams.getOutputSizes(SurfaceTexture.class), METERING_WIDTH, METERING_HEIGHT);
+                synchronized (this) {
+                    this.sensorOrientation = orientation != null ? orientation : 0;
+                    this.jpegReader = ImageReader.newInstance(jpegSize.getWidth(), jpegSize.getHeight(), ImageFormat.JPEG, 2);
+                    this.jpegReader.setOnImageAvailableListener(this::onJpegAvailable, this.handler);
+                    this.meteringTexture = new SurfaceTexture(0);
+                    this.meteringTexture.setDefaultBufferSize(meteringSize.getWidth(), meteringSize.getHeight());
+                    this.meteringSurface = new Surface(this.meteringTexture);
+                }
+                camera.createCaptureSession(Arrays.asList(this.meteringSurface, this.jpegReader.getSurface()),
+                        new CameraCaptureSession.StateCallback() {
+                            @Override
+                            public void onConfigured(@NonNull CameraCaptureSession session) {
+                                onSessionConfigured(session);
+                            }
+
+                            @Override
+                            public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                                fail(new IllegalStateException("Camera " + cameraType + " session not configured"));
+                            }
+                        }, this.handler);
+            } catch (CameraAccessException | IllegalArgumentException | IllegalStateException ex) {
+                this.fail(ex);
+            }
+        }
+
+        private void onSessionConfigured(CameraCaptureSession session) {
+            final List<BindCallback> callbacks;
+            synchronized (this) {
+                if (this.closed) {
+                    session.close();
+                    return;
+                }
+                this.captureSession = session;
+                try {
+                    final CaptureRequest.Builder builder = this.device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                    builder.addTarget(this.meteringSurface);
+                    session.setRepeatingRequest(builder.build(), null, this.handler);
+                } catch (CameraAccessException | IllegalStateException ex) {
+                    Log.w(LOG_TAG, "Cannot start metering of camera " + this.cameraType + ": " + ex.getMessage());
+                }
+                this.ready = true;
+                callbacks = new ArrayList<>(this.waitingCallbacks);
+                this.waitingCallbacks.clear();
+            }
+            Log.d(LOG_TAG, "Camera " + this.cameraType + " ready");
+            callbacks.forEach(BindCallback::onCameraReady);
+        }
+
+        void capture(PictureCallback callback) {
+            Exception failure = null;
+            synchronized (this) {
+                if (!this.ready || this.closed) {
+                    failure = new IllegalStateException("Camera " + this.cameraType + " not ready");
+                } else if (this.pendingPicture != null) {
+                    failure = new IllegalStateException("Camera " + this.cameraType + " already capturing");
+                } else {
+                    try {
+                        final CaptureRequest.Builder builder = this.device.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+                        builder.addTarget(this.jpegReader.getSurface());
+                        builder.set(CaptureRequest.JPEG_QUALITY, (byte) this.captureSettings.getJpegQuality());
+                        builder.set(CaptureRequest.JPEG_ORIENTATION, this.sensorOrientation);
+                        this.pendingPicture = callback;
+                        this.captureSession.capture(builder.build(), new CameraCaptureSession.CaptureCallback() {
+                            @Override
+                            public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                                        @NonNull CaptureFailure captureFailure) {
+                                onPictureFailed(new IllegalStateException("Capture failed, reason " + captureFailure.getReason()));
+                            }
+                        }, this.handler);
+                    } catch (CameraAccessException | IllegalStateException ex) {
+                        this.pendingPicture = null;
+                        failure = ex;
+                    }
+                }
+            }
+            if (failure != null) {
+                callback.onPictureFailed(failure);
+            }
+        }
+
+        private void onJpegAvailable(ImageReader reader) {
+            final Image image = reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
+            final PictureCallback callback;
+            final PictureSnapshot proof;
+            try {
+                synchronized (this) {
+                    callback = this.pendingPicture;
+                    this.pendingPicture = null;
+                }
+                if (callback == null) {
+                    return;
+                }
+                // Copy buffer data to an array of the exact picture size, attached as is to the websocket event: the
+                // image has to be closed as soon as possible
+                final ByteBuffer bb = image.getPlanes()[0].getBuffer();
+                final byte[] pictData = new byte[bb.remaining()];
+                bb.get(pictData);
+                proof = new PictureSnapshot(this.cameraType, System.currentTimeMillis(), pictData);
+            } finally {
+                image.close();
+            }
+            Log.d(LOG_TAG, "Picture taken from camera " + this.cameraType);
+            pictureCallbackExecutor.execute(() -> callback.onPictureTaken(proof));
+        }
+
+        private void onPictureFailed(Exception ex) {
+            final PictureCallback callback;
+            synchronized (this) {
+                callback = this.pendingPicture;
+                this.pendingPicture = null;
+            }
+            if (callback != null) {
+                Log.w(LOG_TAG, "Image not captured from cam. " + this.cameraType + ": " + ex.getMessage());
+                pictureCallbackExecutor.execute(() -> callback.onPictureFailed(ex));
+            }
+        }
+
+        private void fail(Exception ex) {
+            Log.w(LOG_TAG, "Camera " + this.cameraType + " failure: " + ex.getMessage());
+            final List<BindCallback> callbacks;
+            synchronized (this) {
+                callbacks = new ArrayList<>(this.waitingCallbacks);
+                this.waitingCallbacks.clear();
+            }
+            this.onPictureFailed(ex);
+            this.close();
+            forget(this);
+            callbacks.forEach((c) -> c.onBindFailed(ex));
+        }
+
+        synchronized void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.ready = false;
+            if (this.captureSession != null) {
+                this.captureSession.close();
+            }
+            if (this.device != null) {
+                this.device.close();
+            }
+            if (this.jpegReader != null) {
+                this.jpegReader.close();
+            }
+            if (this.meteringSurface != null) {
+                this.meteringSurface.release();
+            }
+            if (this.meteringTexture != null) {
+                this.meteringTexture.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package lems.mobileProctorAgent.camera;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+/**
+ * Asynchronous access to the cameras. No method blocks: results are delivered to the callbacks, on any thread.
+ */
+public interface CameraBackend {
+
+    interface BindCallback {
+        void onCameraReady();
+
+        void onBindFailed(Exception ex);
+    }
+
+    interface PictureCallback {
+        void onPictureTaken(PictureSnapshot pictureSnapshot);
+
+        void onPictureFailed(Exception ex);
+    }
+
+    /**
+     * Open the camera for the capture, closing the previously bound one if any
+     * @param cameraType the camera to open
+     * @param captureSettings the picture format to capture
+     * @param callback notified once the camera is opened
+     */
+    void bind(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings, BindCallback callback);
+
+    /**
+     * Open a camera for a one-off capture, e.g. in a larger picture format. Unlike {@link #bind}, a backend able to
+     * keep several cameras opened leaves the other bound camera opened, so that binding it back is immediate.
+     * By default, same as {@link #bind}.
+     * @param cameraType the camera to open
+     * @param captureSettings the picture format to capture
+     * @param callback notified once the camera is opened
+     */
+    default void bindOneOff(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings, BindCallback callback) {
+        this.bind(cameraType, captureSettings, callback);
+    }
+
+    /**
+     * @return true if the front and the back cameras can be bound at the same time, see {@link #bindConcurrent}
+     */
+    boolean supportsConcurrentCapture();
+
+    /**
+     * Open both the front and the back cameras for concurrent capture. Only available if
+     * {@link #supportsConcurrentCapture()}.
+     * @param captureSettings the picture format to capture
+     * @param callback notified once both cameras are opened
+     */
+    void bindConcurrent(CaptureSettings captureSettings, BindCallback callback);
+
+    /**
+     * Take a picture from a bound camera. Once bound concurrently, both cameras can take a picture at the same time.
+     * @param cameraType the bound camera
+     * @param callback notified with the picture
+     */
+    void takePicture(PictureSnapshot.CameraType cameraType, PictureCallback callback);
+
+    /**
+     * Close the bound camera
+     */
+    void release();
+}
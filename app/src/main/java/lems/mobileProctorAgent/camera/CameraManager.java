@@ -17,6 +17,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -24,46 +25,63 @@ import java.util.function.Consumer;
 
 import lems.mobileProctorAgent.model.PictureSnapshot;
 
-public class CameraManager implements AutoCloseable {
+public class CameraManager implements CaptureManager {
 
     public static final long DFLT_PICTURE_INTERVAL_MS = 3000;
     public static final int DFLT_EXPECTED_PICTURE_WIDTH = 416;
     public static final int DFLT_EXPECTED_PICTURE_HEIGHT = 416;
+    public static final int DFLT_JPEG_QUALITY = 85;
     private final static String LOG_TAG = CameraManager.class.getName();
 
     private final ScheduledExecutorService executorService;
+    private final Executor pictureCallbackExecutor;
     private final Consumer<PictureSnapshot> pictureSnapshotConsumer;
-    private final long pictureIntervalMs;
-    private final int expectedPictureWidth;
-    private final int expectedPictureHeight;
+    private volatile CaptureSettings captureSettings;
+    // Settings asked by the adaptive controller, before the capture profile caps them
+    private CaptureSettings requestedSettings;
+    private CaptureProfile captureProfile = CaptureProfile.NOMINAL;
     private ComponentActivity context;
     private volatile ScheduledFuture<?> pendingTask;
+    private CaptureStateMachine runner;
 
+    /**
+     * @param executorService the executor of both the capture cycles and the picture callbacks
+     * @param pictureSnapshotConsumer the consumer of the pictures taken
+     */
     public CameraManager(ScheduledExecutorService executorService, Consumer<PictureSnapshot> pictureSnapshotConsumer) {
         this.executorService = executorService;
+        this.pictureCallbackExecutor = executorService;
         this.pictureSnapshotConsumer = pictureSnapshotConsumer;
-        this.pictureIntervalMs = DFLT_PICTURE_INTERVAL_MS;
-        this.expectedPictureWidth = DFLT_EXPECTED_PICTURE_WIDTH;
-        this.expectedPictureHeight = DFLT_EXPECTED_PICTURE_HEIGHT;
+        this.captureSettings = new CaptureSettings(DFLT_PICTURE_INTERVAL_MS, DFLT_EXPECTED_PICTURE_WIDTH,
+                DFLT_EXPECTED_PICTURE_HEIGHT, DFLT_JPEG_QUALITY);
+        this.requestedSettings = this.captureSettings;
     }
 
-    public CameraManager(ScheduledExecutorService executorService, Consumer<PictureSnapshot> pictureSnapshotConsumer,
-                         long pictureIntervalMs, int expectedPictureWidth, int expectedPictureHeight) {
+    /**
+     * @param executorService the executor starting the capture cycles
+     * @param pictureCallbackExecutor the executor of the picture callbacks, other than the capture cycle one
+     * @param pictureSnapshotConsumer the consumer of the pictures taken
+     * @param captureSettings the initial capture settings
+     */
+    public CameraManager(ScheduledExecutorService executorService, Executor pictureCallbackExecutor,
+                         Consumer<PictureSnapshot> pictureSnapshotConsumer, CaptureSettings captureSettings) {
         this.executorService = executorService;
+        this.pictureCallbackExecutor = pictureCallbackExecutor;
         this.pictureSnapshotConsumer = pictureSnapshotConsumer;
-        this.pictureIntervalMs = pictureIntervalMs;
-        this.expectedPictureWidth = expectedPictureWidth;
-        this.expectedPictureHeight = expectedPictureHeight;
+        this.captureSettings = captureSettings;
+        this.requestedSettings = captureSettings;
     }
 
     public ComponentActivity getContext() {
         return this.context;
     }
 
+    @Override
     public void setContext(ComponentActivity context) {
         this.context = context;
     }
 
+    @Override
     public synchronized void open() {
         if (this.isOpened()) {
             return;
@@ -71,19 +89,86 @@ public class CameraManager implements AutoCloseable {
         Log.i(LOG_TAG, "Opening picture manager");
         this.prepareCameras();
         Log.d(LOG_TAG, "Setup taks in executor");
-        final TwoFacesPictureTaker runner = new TwoFacesPictureTaker(this.executorService,
-                this.pictureSnapshotConsumer, this.context, this.expectedPictureWidth,
-                this.expectedPictureHeight);
-        this.pendingTask = this.executorService.scheduleWithFixedDelay(runner,
-                0L, this.pictureIntervalMs, TimeUnit.MILLISECONDS);
+        this.runner = new CaptureStateMachine(this.createBackend(), this.executorService, this.pictureSnapshotConsumer,
+                this.captureSettings);
+        this.runner.setSingleCamera(this.captureProfile.isSingleCamera());
+        this.schedule(0L);
     }
 
+    public CaptureSettings getCaptureSettings() {
+        return this.captureSettings;
+    }
+
+    public synchronized CaptureProfile getCaptureProfile() {
+        return this.captureProfile;
+    }
+
+    /**
+     * Change the capture settings. Applied from the next picture if the manager is opened, capped by the current
+     * capture profile.
+     * @param captureSettings the new settings
+     */
+    public synchronized void applyCaptureSettings(CaptureSettings captureSettings) {
+        this.requestedSettings = captureSettings;
+        this.applyEffectiveSettings();
+    }
+
+    /**
+     * Change the capture profile. Applied from the next picture if the manager is opened.
+     * @param captureProfile the new profile
+     */
+    public synchronized void applyCaptureProfile(CaptureProfile captureProfile) {
+        this.captureProfile = captureProfile;
+        if (this.isOpened()) {
+            this.runner.setSingleCamera(captureProfile.isSingleCamera());
+        }
+        this.applyEffectiveSettings();
+    }
+
+    private void applyEffectiveSettings() {
+        final CaptureSettings previous = this.captureSettings;
+        final CaptureSettings captureSettings = this.captureProfile.constrain(this.requestedSettings);
+        this.captureSettings = captureSettings;
+        if (!this.isOpened()) {
+            return;
+        }
+        Log.i(LOG_TAG, "Apply " + captureSettings + " (" + this.captureProfile + ")");
+        this.runner.setCaptureSettings(captureSettings);
+        if (previous.getPictureIntervalMs() != captureSettings.getPictureIntervalMs()) {
+            this.pendingTask.cancel(false);
+            this.schedule(captureSettings.getPictureIntervalMs());
+        }
+    }
+
+    private void schedule(long initialDelayMs) {
+        // Fixed rate: the time spent switching camera is part of the interval, not added to it.
+        // Each run only starts a capture cycle, the executor thread is not held while the camera works
+        this.pendingTask = this.executorService.scheduleAtFixedRate(this.runner,
+                initialDelayMs, this.captureSettings.getPictureIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Take a picture in its own capture cycle, before the next periodic one. The capture profile does not apply.
+     */
+    @Override
+    public synchronized void takePriorityPicture(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings,
+                                                 CameraBackend.PictureCallback callback) {
+        if (!this.isOpened()) {
+            callback.onPictureFailed(new IllegalStateException("Camera manager not opened"));
+            return;
+        }
+        Log.i(LOG_TAG, "Priority picture from camera " + cameraType + " with " + captureSettings);
+        this.runner.requestPriorityCapture(cameraType, captureSettings, callback);
+    }
+
+    @Override
     public boolean isOpened() {
         return this.pendingTask != null
                 && !this.pendingTask.isDone()
                 && !this.pendingTask.isCancelled();
     }
 
+    @Override
     public synchronized void close() throws Exception {
         Log.d(LOG_TAG, "Closing camera manager");
         if (this.isOpened()) {
@@ -95,13 +180,26 @@ public class CameraManager implements AutoCloseable {
             } catch (InterruptedException | CancellationException ex) {
                 Log.d(LOG_TAG, "interruption while waiting for task to achieve");
             }
-            //Log.d(LOG_TAG, "Stopping cameras");
-            //this.releaseCameras();
+            Log.d(LOG_TAG, "Stopping cameras");
+            this.runner.release();
+            this.runner = null;
             this.pendingTask = null;
         }
 
     }
 
+    // Both faces at once where the device supports it, alternation otherwise
+    private CameraBackend createBackend() {
+        final CameraBackend concurrentBackend = Camera2ConcurrentBackend.create(this.context,
+                this.pictureCallbackExecutor);
+        if (concurrentBackend != null) {
+            Log.i(LOG_TAG, "Concurrent capture supported, take pictures from both cameras at once");
+            return concurrentBackend;
+        }
+        Log.i(LOG_TAG, "Concurrent capture not supported, alternate cameras");
+        return new CameraXBackend(this.context, this.pictureCallbackExecutor);
+    }
+
     private void prepareCameras() {
 
     }
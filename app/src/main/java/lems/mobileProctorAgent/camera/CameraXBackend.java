@@ -0,0 +1,214 @@
+package lems.mobileProctorAgent.camera;
+
+import android.util.Log;
+import android.util.Size;
+
+import androidx.activity.ComponentActivity;
+import androidx.annotation.NonNull;
+import androidx.camera.core.Camera;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.CameraState;
+import androidx.camera.core.ImageCapture;
+import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+/**
+ * Camera backend over CameraX, one camera bound at a time.
+ * One ImageCapture use case is built per camera and kept as long as the picture format does not change:
+ * switching camera only unbinds the previous use case and binds the other one.
+ */
+public class CameraXBackend implements CameraBackend {
+    private final static String LOG_TAG = CameraXBackend.class.getName();
+
+    private final ComponentActivity context;
+    private final Executor pictureCallbackExecutor;
+    // Only accessed from the main thread
+    private final EnumMap<PictureSnapshot.CameraType, ImageCapture> imageCaptures;
+    private CaptureSettings imageCapturesSettings;
+    private ImageCapture boundImageCapture;
+    private Camera boundCamera;
+    // Observer of the camera opening for the last bind, removed on the next bind or on release
+    private LiveData<CameraState> observedCameraState;
+    private Observer<CameraState> cameraOpeningObserver;
+    // Set from the main thread, read when taking the picture
+    private volatile ImageCapture readyImageCapture;
+
+    public CameraXBackend(ComponentActivity context, Executor pictureCallbackExecutor) {
+        this.context = context;
+        this.pictureCallbackExecutor = pictureCallbackExecutor;
+        this.imageCaptures = new EnumMap<>(PictureSnapshot.CameraType.class);
+    }
+
+    @Override
+    public void bind(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings, BindCallback callback) {
+        final ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this.context);
+        cameraProviderFuture.addListener(() -> {
+            try {
+                final ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
+                // A previous bind may have timed out before its camera opened
+                this.stopObservingCameraOpening();
+                final ImageCapture imageCapture = this.getImageCapture(cameraType, captureSettings);
+                if (imageCapture != this.boundImageCapture || this.boundCamera == null) {
+                    Log.d(LOG_TAG, "Camera binder, switch to " + cameraType);
+                    if (this.boundImageCapture != null) {
+                        cameraProvider.unbind(this.boundImageCapture);
+                    }
+                    this.boundImageCapture = null;
+                    this.readyImageCapture = null;
+                    this.boundCamera = cameraProvider.bindToLifecycle(this.context, toCameraSelector(cameraType), imageCapture);
+                    this.boundImageCapture = imageCapture;
+                }
+                // CameraX queues the capture requests until the camera is opened
+                this.readyImageCapture = imageCapture;
+                this.notifyWhenOpened(this.boundCamera, callback);
+            } catch (InterruptedException | ExecutionException | IllegalStateException | IllegalArgumentException ex) {
+                Log.w(LOG_TAG, "Cannot bind camera " + cameraType, ex);
+                callback.onBindFailed(ex);
+            }
+        }, ContextCompat.getMainExecutor(this.context));
+    }
+
+    @Override
+    public boolean supportsConcurrentCapture() {
+        // Concurrent cameras are not available before CameraX 1.3
+        return false;
+    }
+
+    @Override
+    public void bindConcurrent(CaptureSettings captureSettings, BindCallback callback) {
+        callback.onBindFailed(new UnsupportedOperationException("Concurrent capture not supported"));
+    }
+
+    @Override
+    public void takePicture(PictureSnapshot.CameraType cameraType, PictureCallback callback) {
+        final ImageCapture imageCapture = this.readyImageCapture;
+        if (imageCapture == null) {
+            callback.onPictureFailed(new IllegalStateException("No camera bound"));
+            return;
+        }
+        imageCapture.takePicture(this.pictureCallbackExecutor, new PictureTakenCallback(cameraType, callback));
+    }
+
+    @Override
+    public void release() {
+        final ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this.context);
+        cameraProviderFuture.addListener(() -> {
+            try {
+                final ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
+                this.stopObservingCameraOpening();
+                if (this.boundImageCapture != null) {
+                    cameraProvider.unbind(this.boundImageCapture);
+                }
+                this.boundImageCapture = null;
+                this.readyImageCapture = null;
+                this.boundCamera = null;
+            } catch (InterruptedException | ExecutionException ex) {
+                Log.w(LOG_TAG, "interruption or execution ex while releasing cameras", ex);
+            }
+        }, ContextCompat.getMainExecutor(this.context));
+    }
+
+    private ImageCapture getImageCapture(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings) {
+        if (!captureSettings.hasSamePictureFormat(this.imageCapturesSettings)) {
+            // Use cases are rebuilt on their next use
+            this.imageCaptures.clear();
+            this.imageCapturesSettings = captureSettings;
+        }
+        ImageCapture imageCapture = this.imageCaptures.get(cameraType);
+        if (imageCapture == null) {
+            imageCapture = new ImageCapture.Builder()
+                    .setCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY)
+                    .setTargetResolution(new Size(captureSettings.getPictureWidth(), captureSettings.getPictureHeight()))
+                    .setJpegQuality(captureSettings.getJpegQuality())
+                    .build();
+            this.imageCaptures.put(cameraType, imageCapture);
+        }
+        return imageCapture;
+    }
+
+    private static CameraSelector toCameraSelector(PictureSnapshot.CameraType cameraType) {
+        return cameraType == PictureSnapshot.CameraType.FRONT ? CameraSelector.DEFAULT_FRONT_CAMERA : CameraSelector.DEFAULT_BACK_CAMERA;
+    }
+
+    private void notifyWhenOpened(Camera camera, BindCallback callback) {
+        final LiveData<CameraState> cameraState = camera.getCameraInfo().getCameraState();
+        final Observer<CameraState> observer = new Observer<CameraState>() {
+            @Override
+            public void onChanged(CameraState state) {
+                final boolean failed = state.getError() != null && state.getType() == CameraState.Type.CLOSED;
+                if (state.getType() == CameraState.Type.OPEN) {
+                    stopObservingCameraOpening();
+                    callback.onCameraReady();
+                } else if (failed) {
+                    stopObservingCameraOpening();
+                    callback.onBindFailed(new IllegalStateException("Camera closed on error: " + state.getError().getCode()));
+                }
+            }
+        };
+        this.observedCameraState = cameraState;
+        this.cameraOpeningObserver = observer;
+        cameraState.observe(this.context, observer);
+    }
+
+    // Only called from the main thread
+    private void stopObservingCameraOpening() {
+        if (this.observedCameraState != null) {
+            this.observedCameraState.removeObserver(this.cameraOpeningObserver);
+            this.observedCameraState = null;
+            this.cameraOpeningObserver = null;
+        }
+    }
+
+    private class PictureTakenCallback extends ImageCapture.OnImageCapturedCallback {
+        private final PictureSnapshot.CameraType cameraType;
+        private final PictureCallback callback;
+
+        PictureTakenCallback(PictureSnapshot.CameraType cameraType, PictureCallback callback) {
+            this.cameraType = cameraType;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onCaptureSuccess(@NonNull ImageProxy image) {
+            final PictureSnapshot proof;
+            try {
+                Log.d(LOG_TAG, "Picture taken from camera " + this.cameraType.toString());
+                if (image.getPlanes().length == 0) {
+                    throw new IllegalStateException("Image captured without planes");
+                }
+                // Copy buffer data to an array of the exact picture size, attached as is to the websocket event: the
+                // image has to be closed as soon as possible
+                final ByteBuffer bb = image.getPlanes()[0].getBuffer();
+                final byte[] pictData = new byte[bb.remaining()];
+                bb.get(pictData);
+                proof = new PictureSnapshot(this.cameraType, System.currentTimeMillis(), pictData);
+            } catch (Exception ex) {
+                Log.e(LOG_TAG, "Error " + ex.getClass().getName() + " while taking pict: " + ex.getLocalizedMessage());
+                this.callback.onPictureFailed(ex);
+                return;
+            } finally {
+                image.close();
+            }
+            this.callback.onPictureTaken(proof);
+        }
+
+        @Override
+        public void onError(@NonNull ImageCaptureException exception) {
+            Log.w(LOG_TAG, "Image not captured from cam. " + this.cameraType.toString() + ": " + exception.getLocalizedMessage());
+            this.callback.onPictureFailed(exception);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package lems.mobileProctorAgent.camera;
+
+import androidx.activity.ComponentActivity;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+/**
+ * Capture of the exam environment, either as periodic pictures ({@link CameraManager}) or as a video stream
+ * ({@link lems.mobileProctorAgent.video.VideoCaptureManager}), chosen per exam session
+ */
+public interface CaptureManager extends AutoCloseable {
+
+    enum CaptureMode {STILLS, VIDEO}
+
+    /**
+     * @param context the activity the cameras are bound to
+     */
+    void setContext(ComponentActivity context);
+
+    void open();
+
+    boolean isOpened();
+
+    /**
+     * Take a picture at once, out of the regular capture
+     * @param cameraType the camera to take the picture from
+     * @param captureSettings the picture format, as far as the capture in use allows
+     * @param callback notified with the picture, or of its failure, on any thread
+     */
+    void takePriorityPicture(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings,
+                             CameraBackend.PictureCallback callback);
+}
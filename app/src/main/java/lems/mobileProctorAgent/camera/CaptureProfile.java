@@ -0,0 +1,74 @@
+package lems.mobileProctorAgent.camera;
+
+import lems.mobileProctorAgent.video.VideoSettings;
+
+/**
+ * Predefined capture profiles, from the nominal one to the most constrained one.
+ * A profile caps the capture settings chosen by the adaptive controller, and the video stream settings: it never
+ * raises them.
+ */
+public enum CaptureProfile {
+    NOMINAL(false, 0L, Integer.MAX_VALUE, 100, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE),
+    // Lower rate and resolution, both cameras
+    REDUCED(false, 3000L, 320, 75, 360, 200000, 10),
+    // Front camera only, lower rate and resolution
+    SINGLE_CAMERA(true, 5000L, 320, 70, 360, 150000, 10),
+    // Front camera only, minimal rate and resolution
+    MINIMAL(true, 10000L, 240, 60, 240, 80000, 5);
+
+    private final boolean singleCamera;
+    private final long minPictureIntervalMs;
+    private final int maxPictureSize;
+    private final int maxJpegQuality;
+    // Short side of the video frames
+    private final int maxVideoSize;
+    private final int maxVideoBitRate;
+    private final int maxVideoFrameRate;
+
+    CaptureProfile(boolean singleCamera, long minPictureIntervalMs, int maxPictureSize, int maxJpegQuality,
+                   int maxVideoSize, int maxVideoBitRate, int maxVideoFrameRate) {
+        this.singleCamera = singleCamera;
+        this.minPictureIntervalMs = minPictureIntervalMs;
+        this.maxPictureSize = maxPictureSize;
+        this.maxJpegQuality = maxJpegQuality;
+        this.maxVideoSize = maxVideoSize;
+        this.maxVideoBitRate = maxVideoBitRate;
+        this.maxVideoFrameRate = maxVideoFrameRate;
+    }
+
+    public boolean isSingleCamera() {
+        return singleCamera;
+    }
+
+    /**
+     * @param captureSettings the requested settings
+     * @return the settings capped by this profile
+     */
+    public CaptureSettings constrain(CaptureSettings captureSettings) {
+        return new CaptureSettings(Math.max(this.minPictureIntervalMs, captureSettings.getPictureIntervalMs()),
+                Math.min(this.maxPictureSize, captureSettings.getPictureWidth()),
+                Math.min(this.maxPictureSize, captureSettings.getPictureHeight()),
+                Math.min(this.maxJpegQuality, captureSettings.getJpegQuality()));
+    }
+
+    /**
+     * @param videoSettings the requested stream settings
+     * @return the settings capped by this profile, the frames keeping their aspect ratio
+     */
+    public VideoSettings constrain(VideoSettings videoSettings) {
+        int width = videoSettings.getWidth();
+        int height = videoSettings.getHeight();
+        final int shortSide = Math.min(width, height);
+        if (shortSide > this.maxVideoSize) {
+            // Even sizes, as the encoders expect
+            width = (int) ((long) width * this.maxVideoSize / shortSide) & ~1;
+            height = (int) ((long) height * this.maxVideoSize / shortSide) & ~1;
+        }
+        return new VideoSettings(width, height, Math.min(this.maxVideoBitRate, videoSettings.getBitRate()),
+                Math.min(this.maxVideoFrameRate, videoSettings.getFrameRate()), videoSettings.getKeyframeIntervalS());
+    }
+
+    public boolean isMoreConstrainedThan(CaptureProfile other) {
+        return this.ordinal() > other.ordinal();
+    }
+}
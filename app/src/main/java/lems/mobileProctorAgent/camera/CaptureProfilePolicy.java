@@ -0,0 +1,83 @@
+package lems.mobileProctorAgent.camera;
+
+import lems.mobileProctorAgent.device.DeviceState;
+
+/**
+ * Choose the capture profile from the device state.
+ * The profile is stepped down as soon as the thermal status, the thermal headroom, the battery temperature (only
+ * when the thermal status is not known) or the battery level (when not charging) requires it. It is only stepped up
+ * one profile at a time, once the device state is back under the thresholds by a margin, so that the profile does not
+ * flap around a threshold.
+ */
+public class CaptureProfilePolicy {
+    // Thermal headroom thresholds (1.0 means severe throttling) of REDUCED, SINGLE_CAMERA and MINIMAL
+    private static final float[] THERMAL_HEADROOM_THRESHOLDS = {0.7f, 0.85f, 0.95f};
+    private static final float THERMAL_HEADROOM_MARGIN = 0.05f;
+    // Battery temperature thresholds, for devices without thermal status
+    private static final float[] BATTERY_TEMPERATURE_THRESHOLDS_C = {40f, 43f, 46f};
+    private static final float BATTERY_TEMPERATURE_MARGIN_C = 1.5f;
+    // Battery level thresholds when not charging, in percent
+    private static final int[] BATTERY_LEVEL_THRESHOLDS = {40, 25, 15};
+    private static final int BATTERY_LEVEL_MARGIN = 5;
+
+    /**
+     * @param deviceState the current device state
+     * @param currentProfile the profile currently applied
+     * @return the profile to apply
+     */
+    public CaptureProfile evaluate(DeviceState deviceState, CaptureProfile currentProfile) {
+        final CaptureProfile required = requiredProfile(deviceState, 0f);
+        if (required.isMoreConstrainedThan(currentProfile)) {
+            return required;
+        }
+        final CaptureProfile requiredWithMargin = requiredProfile(deviceState, 1f);
+        if (currentProfile.isMoreConstrainedThan(requiredWithMargin)) {
+            return CaptureProfile.values()[currentProfile.ordinal() - 1];
+        }
+        return currentProfile;
+    }
+
+    // Most constrained profile required by the device state, thresholds lowered by marginFactor times the margins
+    private static CaptureProfile requiredProfile(DeviceState deviceState, float marginFactor) {
+        int level = 0;
+        level = Math.max(level, thermalStatusLevel(deviceState.getThermalStatus()));
+        if (!Float.isNaN(deviceState.getThermalHeadroom())) {
+            level = Math.max(level, thresholdLevel(deviceState.getThermalHeadroom() + marginFactor * THERMAL_HEADROOM_MARGIN,
+                    THERMAL_HEADROOM_THRESHOLDS));
+        }
+        if (deviceState.getThermalStatus() == DeviceState.UNKNOWN && !Float.isNaN(deviceState.getBatteryTemperatureC())) {
+            level = Math.max(level, thresholdLevel(deviceState.getBatteryTemperatureC() + marginFactor * BATTERY_TEMPERATURE_MARGIN_C,
+                    BATTERY_TEMPERATURE_THRESHOLDS_C));
+        }
+        if (!deviceState.isCharging() && deviceState.getBatteryLevel() != DeviceState.UNKNOWN) {
+            final float batteryLevel = deviceState.getBatteryLevel() - marginFactor * BATTERY_LEVEL_MARGIN;
+            for (int i = BATTERY_LEVEL_THRESHOLDS.length - 1; i >= 0; i--) {
+                if (batteryLevel <= BATTERY_LEVEL_THRESHOLDS[i]) {
+                    level = Math.max(level, i + 1);
+                    break;
+                }
+            }
+        }
+        return CaptureProfile.values()[level];
+    }
+
+    private static int thermalStatusLevel(int thermalStatus) {
+        if (thermalStatus >= DeviceState.THERMAL_STATUS_SEVERE) {
+            return CaptureProfile.MINIMAL.ordinal();
+        } else if (thermalStatus == DeviceState.THERMAL_STATUS_MODERATE) {
+            return CaptureProfile.SINGLE_CAMERA.ordinal();
+        } else if (thermalStatus == DeviceState.THERMAL_STATUS_LIGHT) {
+            return CaptureProfile.REDUCED.ordinal();
+        }
+        return CaptureProfile.NOMINAL.ordinal();
+    }
+
+    // Number of thresholds reached by the value
+    private static int thresholdLevel(float value, float[] thresholds) {
+        int level = 0;
+        while (level < thresholds.length && value >= thresholds[level]) {
+            level++;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,88 @@
+package lems.mobileProctorAgent.camera;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import lems.mobileProctorAgent.device.DeviceState;
+import lems.mobileProctorAgent.device.DeviceStateSource;
+import lems.mobileProctorAgent.metrics.MetricsSource;
+
+/**
+ * Periodically read the device state and step the capture profile down or up according to the policy.
+ * The consumer is notified each time the profile changes.
+ */
+public class CaptureProfileScheduler implements MetricsSource, AutoCloseable {
+    private final static String LOG_TAG = CaptureProfileScheduler.class.getName();
+
+    private final DeviceStateSource deviceStateSource;
+    private final CaptureProfilePolicy policy;
+    private final long periodMs;
+    private final Consumer<CaptureProfile> profileConsumer;
+    private CaptureProfile currentProfile = CaptureProfile.NOMINAL;
+    private DeviceState lastDeviceState;
+    private long profileChangeTimeMs;
+    private ScheduledFuture<?> evaluationTask;
+
+    public CaptureProfileScheduler(DeviceStateSource deviceStateSource, CaptureProfilePolicy policy, long periodMs,
+                                   Consumer<CaptureProfile> profileConsumer) {
+        this.deviceStateSource = deviceStateSource;
+        this.policy = policy;
+        this.periodMs = periodMs;
+        this.profileConsumer = profileConsumer;
+        this.profileChangeTimeMs = System.currentTimeMillis();
+    }
+
+    public synchronized CaptureProfile getCurrentProfile() {
+        return this.currentProfile;
+    }
+
+    public synchronized void open(ScheduledExecutorService executorService) {
+        if (this.evaluationTask != null) {
+            return;
+        }
+        this.evaluationTask = executorService.scheduleWithFixedDelay(this::evaluate, 0L, this.periodMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.evaluationTask != null) {
+            this.evaluationTask.cancel(false);
+            this.evaluationTask = null;
+        }
+    }
+
+    private void evaluate() {
+        final CaptureProfile newProfile;
+        try {
+            synchronized (this) {
+                this.lastDeviceState = this.deviceStateSource.getDeviceState();
+                newProfile = this.policy.evaluate(this.lastDeviceState, this.currentProfile);
+                if (newProfile == this.currentProfile) {
+                    return;
+                }
+                Log.i(LOG_TAG, "Capture profile " + this.currentProfile + " -> " + newProfile + " on " + this.lastDeviceState);
+                this.currentProfile = newProfile;
+                this.profileChangeTimeMs = System.currentTimeMillis();
+            }
+            this.profileConsumer.accept(newProfile);
+        } catch (Exception ex) {
+            Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while evaluating capture profile: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized JSONObject toJSONObject() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("profile", this.currentProfile.name());
+        obj.put("since", this.profileChangeTimeMs);
+        return obj;
+    }
+}
@@ -0,0 +1,50 @@
+package lems.mobileProctorAgent.camera;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Immutable capture settings: interval between two pictures, target resolution and jpeg quality.
+ */
+public class CaptureSettings {
+    private final long pictureIntervalMs;
+    private final int pictureWidth;
+    private final int pictureHeight;
+    private final int jpegQuality;
+
+    public CaptureSettings(long pictureIntervalMs, int pictureWidth, int pictureHeight, int jpegQuality) {
+        this.pictureIntervalMs = pictureIntervalMs;
+        this.pictureWidth = pictureWidth;
+        this.pictureHeight = pictureHeight;
+        this.jpegQuality = jpegQuality;
+    }
+
+    public long getPictureIntervalMs() {
+        return pictureIntervalMs;
+    }
+
+    public int getPictureWidth() {
+        return pictureWidth;
+    }
+
+    public int getPictureHeight() {
+        return pictureHeight;
+    }
+
+    public int getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public boolean hasSamePictureFormat(CaptureSettings other) {
+        return other != null && this.pictureWidth == other.pictureWidth
+                && this.pictureHeight == other.pictureHeight && this.jpegQuality == other.jpegQuality;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "CaptureSettings{interval = %d ms, size = %dx%d, quality = %d}",
+                this.pictureIntervalMs, this.pictureWidth, this.pictureHeight, this.jpegQuality);
+    }
+}
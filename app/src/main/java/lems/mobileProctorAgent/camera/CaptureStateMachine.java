@@ -0,0 +1,399 @@
+package lems.mobileProctorAgent.camera;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+/**
+ * Take pictures alternatively from the front and the back cameras, as a state machine driven by the camera backend
+ * callbacks: IDLE -> BINDING -> READY -> CAPTURING -> DELIVERED.
+ * If the backend supports concurrent capture, both cameras are bound at once and each cycle takes a pair of pictures
+ * instead: both faces at the same rate, sharing the capture id of their cycle. The pictures of a pair are delivered
+ * together, front first; a pair cut short by a failure or a timeout delivers the picture it got.
+ * Each run starts a capture cycle and returns at once: no thread waits for the camera. A run while the previous cycle
+ * is still in progress is skipped. Each waiting state has a timeout; callbacks of a cycle that timed out or was
+ * released are ignored.
+ */
+public class CaptureStateMachine implements Runnable {
+    private final static String LOG_TAG = CaptureStateMachine.class.getName();
+    // Upper bounds only: a camera usually opens in a few hundred milliseconds
+    public static final long DFLT_BIND_TIMEOUT_MS = 3000L;
+    public static final long DFLT_CAPTURE_TIMEOUT_MS = 2000L;
+
+    public enum State {IDLE, BINDING, READY, CAPTURING, DELIVERED}
+
+    private final CameraBackend backend;
+    private final ScheduledExecutorService timeoutExecutor;
+    private final Consumer<PictureSnapshot> pictureSnapshotConsumer;
+    private final long bindTimeoutMs;
+    private final long captureTimeoutMs;
+    private volatile CaptureSettings captureSettings;
+    private volatile boolean singleCamera;
+    private State state = State.IDLE;
+    // Identify the current cycle, so that late callbacks of a previous one are ignored
+    private long cycle;
+    private PictureSnapshot.CameraType currentCameraType = PictureSnapshot.CameraType.FRONT;
+    // Pair cycle: pictures received so far and the number still expected
+    private boolean pairCycle;
+    private long captureId;
+    private final List<PictureSnapshot> pairPictures = new ArrayList<>();
+    private int expectedPictureCount;
+    private ScheduledFuture<?> futureTimeout;
+    // Picture asked out of the periodic cycles, taken by the next cycle; callback of the current cycle if it is one
+    private PriorityRequest pendingPriorityRequest;
+    private CameraBackend.PictureCallback priorityCallback;
+    private long skippedCycleCount;
+    private long failedCycleCount;
+
+    public CaptureStateMachine(CameraBackend backend, ScheduledExecutorService timeoutExecutor,
+                               Consumer<PictureSnapshot> pictureSnapshotConsumer, CaptureSettings captureSettings) {
+        this(backend, timeoutExecutor, pictureSnapshotConsumer, captureSettings, DFLT_BIND_TIMEOUT_MS, DFLT_CAPTURE_TIMEOUT_MS);
+    }
+
+    public CaptureStateMachine(CameraBackend backend, ScheduledExecutorService timeoutExecutor,
+                               Consumer<PictureSnapshot> pictureSnapshotConsumer, CaptureSettings captureSettings,
+                               long bindTimeoutMs, long captureTimeoutMs) {
+        this.backend = backend;
+        this.timeoutExecutor = timeoutExecutor;
+        this.pictureSnapshotConsumer = pictureSnapshotConsumer;
+        this.captureSettings = captureSettings;
+        this.bindTimeoutMs = bindTimeoutMs;
+        this.captureTimeoutMs = captureTimeoutMs;
+    }
+
+    /**
+     * Change the picture format. Applied from the next cycle.
+     * @param captureSettings the new settings
+     */
+    public void setCaptureSettings(CaptureSettings captureSettings) {
+        this.captureSettings = captureSettings;
+    }
+
+    /**
+     * @param singleCamera true to only take pictures from the front camera, false to alternate both cameras
+     */
+    public void setSingleCamera(boolean singleCamera) {
+        this.singleCamera = singleCamera;
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    public synchronized long getSkippedCycleCount() {
+        return this.skippedCycleCount;
+    }
+
+    public synchronized long getFailedCycleCount() {
+        return this.failedCycleCount;
+    }
+
+    /**
+     * Take a picture out of the periodic cycles, delivered to its own callback: right away if no cycle is in progress,
+     * otherwise in place of the next periodic cycle. A request not taken yet fails when a new one replaces it.
+     * @param cameraType the camera to take the picture from
+     * @param captureSettings the picture format
+     * @param callback notified with the picture, or of its failure
+     */
+    public void requestPriorityCapture(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings,
+                                       CameraBackend.PictureCallback callback) {
+        final PriorityRequest replacedRequest;
+        final boolean startNow;
+        synchronized (this) {
+            replacedRequest = this.pendingPriorityRequest;
+            this.pendingPriorityRequest = new PriorityRequest(cameraType, captureSettings, callback);
+            startNow = this.state == State.IDLE || this.state == State.DELIVERED;
+        }
+        if (replacedRequest != null) {
+            replacedRequest.callback.onPictureFailed(new IllegalStateException("Replaced by a newer request"));
+        }
+        if (startNow) {
+            this.timeoutExecutor.execute(this);
+        }
+    }
+
+    /**
+     * Start a capture cycle, unless the previous one is still in progress
+     */
+    @Override
+    public synchronized void run() {
+        if (this.state != State.IDLE && this.state != State.DELIVERED) {
+            Log.d(LOG_TAG, "Previous capture still " + this.state + ", skip cycle");
+            this.skippedCycleCount++;
+            return;
+        }
+        final long cycle = ++this.cycle;
+        final PriorityRequest priorityRequest = this.pendingPriorityRequest;
+        this.pendingPriorityRequest = null;
+        if (priorityRequest != null) {
+            this.startPriorityCycle(cycle, priorityRequest);
+            return;
+        }
+        this.pairCycle = !this.singleCamera && this.backend.supportsConcurrentCapture();
+        if (this.pairCycle) {
+            Log.d(LOG_TAG, "Start capture cycle from both cameras");
+            this.enterState(State.BINDING, this.bindTimeoutMs);
+            this.backend.bindConcurrent(this.captureSettings, new CameraBackend.BindCallback() {
+                @Override
+                public void onCameraReady() {
+                    onCameraBound(cycle);
+                }
+
+                @Override
+                public void onBindFailed(Exception ex) {
+                    onCycleFailed(cycle, "Cannot bind both cameras: " + ex.getMessage());
+                }
+            });
+            return;
+        }
+        final PictureSnapshot.CameraType cameraType = this.switchCameraType();
+        Log.d(LOG_TAG, "Start capture cycle from camera " + cameraType);
+        this.enterState(State.BINDING, this.bindTimeoutMs);
+        this.backend.bind(cameraType, this.captureSettings, new CameraBackend.BindCallback() {
+            @Override
+            public void onCameraReady() {
+                onCameraBound(cycle);
+            }
+
+            @Override
+            public void onBindFailed(Exception ex) {
+                onCycleFailed(cycle, "Cannot bind camera " + cameraType + ": " + ex.getMessage());
+            }
+        });
+    }
+
+    // Must hold the lock
+    private void startPriorityCycle(long cycle, PriorityRequest priorityRequest) {
+        final PictureSnapshot.CameraType cameraType = priorityRequest.cameraType;
+        Log.d(LOG_TAG, "Start priority capture cycle from camera " + cameraType);
+        this.pairCycle = false;
+        this.currentCameraType = cameraType;
+        this.priorityCallback = priorityRequest.callback;
+        this.enterState(State.BINDING, this.bindTimeoutMs);
+        // The other camera stays opened if it can: the next pair cycle does not have to reopen it
+        this.backend.bindOneOff(cameraType, priorityRequest.captureSettings, new CameraBackend.BindCallback() {
+            @Override
+            public void onCameraReady() {
+                onCameraBound(cycle);
+            }
+
+            @Override
+            public void onBindFailed(Exception ex) {
+                onCycleFailed(cycle, "Cannot bind camera " + cameraType + ": " + ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Abort the current cycle and close the camera
+     */
+    public synchronized void release() {
+        this.cycle++;
+        if (this.pendingPriorityRequest != null) {
+            this.failPriorityCapture(this.pendingPriorityRequest.callback, "Capture released");
+            this.pendingPriorityRequest = null;
+        }
+        if (this.priorityCallback != null) {
+            this.failPriorityCapture(this.priorityCallback, "Capture released");
+            this.priorityCallback = null;
+        }
+        this.pairPictures.clear();
+        this.enterState(State.IDLE, 0L);
+        this.backend.release();
+    }
+
+    private synchronized void onCameraBound(long cycle) {
+        if (cycle != this.cycle || this.state != State.BINDING) {
+            return;
+        }
+        this.enterState(State.READY, 0L);
+        this.takePictures(cycle);
+    }
+
+    private void takePictures(long cycle) {
+        if (this.pairCycle) {
+            this.takePicturePair(cycle);
+        } else {
+            this.takePicture(cycle, this.currentCameraType);
+        }
+    }
+
+    private void takePicturePair(long cycle) {
+        this.enterState(State.CAPTURING, this.captureTimeoutMs);
+        this.captureId = System.currentTimeMillis();
+        this.pairPictures.clear();
+        final PictureSnapshot.CameraType[] cameraTypes = PictureSnapshot.CameraType.values();
+        this.expectedPictureCount = cameraTypes.length;
+        for (PictureSnapshot.CameraType cameraType : cameraTypes) {
+            this.backend.takePicture(cameraType, new CameraBackend.PictureCallback() {
+                @Override
+                public void onPictureTaken(PictureSnapshot pictureSnapshot) {
+                    onPairPictureDelivered(cycle, pictureSnapshot);
+                }
+
+                @Override
+                public void onPictureFailed(Exception ex) {
+                    Log.w(LOG_TAG, "Picture not captured from camera " + cameraType + ": " + ex.getMessage());
+                    onPairPictureDelivered(cycle, null);
+                }
+            });
+        }
+    }
+
+    private void takePicture(long cycle, PictureSnapshot.CameraType cameraType) {
+        this.enterState(State.CAPTURING, this.captureTimeoutMs);
+        this.backend.takePicture(cameraType, new CameraBackend.PictureCallback() {
+            @Override
+            public void onPictureTaken(PictureSnapshot pictureSnapshot) {
+                onPictureDelivered(cycle, pictureSnapshot);
+            }
+
+            @Override
+            public void onPictureFailed(Exception ex) {
+                onCycleFailed(cycle, "Picture not captured from camera " + cameraType + ": " + ex.getMessage());
+            }
+        });
+    }
+
+    private void onPictureDelivered(long cycle, PictureSnapshot pictureSnapshot) {
+        final CameraBackend.PictureCallback currentPriorityCallback;
+        synchronized (this) {
+            if (cycle != this.cycle || this.state != State.CAPTURING) {
+                Log.d(LOG_TAG, "Drop picture of an aborted capture cycle");
+                return;
+            }
+            this.enterState(State.DELIVERED, 0L);
+            currentPriorityCallback = this.priorityCallback;
+            this.priorityCallback = null;
+        }
+        if (currentPriorityCallback != null) {
+            currentPriorityCallback.onPictureTaken(pictureSnapshot);
+        } else if (this.pictureSnapshotConsumer != null) {
+            this.pictureSnapshotConsumer.accept(pictureSnapshot);
+        }
+    }
+
+    // Null if the picture failed
+    private void onPairPictureDelivered(long cycle, PictureSnapshot pictureSnapshot) {
+        final List<PictureSnapshot> pair;
+        synchronized (this) {
+            if (cycle != this.cycle || this.state != State.CAPTURING) {
+                Log.d(LOG_TAG, "Drop picture of an aborted capture cycle");
+                return;
+            }
+            if (pictureSnapshot != null) {
+                pictureSnapshot.setCaptureId(this.captureId);
+                this.pairPictures.add(pictureSnapshot);
+            }
+            if (--this.expectedPictureCount > 0) {
+                return;
+            }
+            pair = this.completePair(cycle);
+        }
+        this.deliver(pair);
+    }
+
+    // Must hold the lock. Returns the pictures to deliver, none if the cycle failed
+    private List<PictureSnapshot> completePair(long cycle) {
+        if (this.pairPictures.isEmpty()) {
+            this.onCycleFailed(cycle, "No picture captured from both cameras");
+            return new ArrayList<>();
+        }
+        final List<PictureSnapshot> pair = new ArrayList<>(this.pairPictures);
+        this.pairPictures.clear();
+        pair.sort(Comparator.comparing(PictureSnapshot::getSource));
+        this.enterState(State.DELIVERED, 0L);
+        return pair;
+    }
+
+    private void deliver(List<PictureSnapshot> pictureSnapshots) {
+        if (this.pictureSnapshotConsumer != null) {
+            pictureSnapshots.forEach(this.pictureSnapshotConsumer);
+        }
+    }
+
+    private synchronized void onCycleFailed(long cycle, String reason) {
+        if (cycle != this.cycle || this.state == State.IDLE || this.state == State.DELIVERED) {
+            return;
+        }
+        Log.w(LOG_TAG, reason);
+        this.failedCycleCount++;
+        this.enterState(State.IDLE, 0L);
+        if (this.priorityCallback != null) {
+            this.failPriorityCapture(this.priorityCallback, reason);
+            this.priorityCallback = null;
+        }
+    }
+
+    // Must hold the lock: the callback is notified from the executor
+    private void failPriorityCapture(CameraBackend.PictureCallback callback, String reason) {
+        this.timeoutExecutor.execute(() -> callback.onPictureFailed(new IllegalStateException(reason)));
+    }
+
+    private void onTimeout(long cycle, State timedOutState) {
+        final List<PictureSnapshot> pair;
+        synchronized (this) {
+            if (cycle != this.cycle || this.state != timedOutState) {
+                return;
+            }
+            final String cameraName = this.pairCycle ? "both cameras" : "camera " + this.currentCameraType;
+            if (timedOutState == State.BINDING) {
+                Log.w(LOG_TAG, "Binding of " + cameraName + " timed out, try to take picture anyway");
+                this.takePictures(cycle);
+                return;
+            }
+            if (!this.pairCycle) {
+                this.onCycleFailed(cycle, "Picture from " + cameraName + " not delivered in time");
+                return;
+            }
+            Log.w(LOG_TAG, "Pictures from " + cameraName + " not all delivered in time");
+            pair = this.completePair(cycle);
+        }
+        this.deliver(pair);
+    }
+
+    // Must hold the lock
+    private void enterState(State newState, long timeoutMs) {
+        this.state = newState;
+        if (this.futureTimeout != null) {
+            this.futureTimeout.cancel(false);
+            this.futureTimeout = null;
+        }
+        if (timeoutMs > 0) {
+            final long cycle = this.cycle;
+            this.futureTimeout = this.timeoutExecutor.schedule(() -> this.onTimeout(cycle, newState),
+                    timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private PictureSnapshot.CameraType switchCameraType() {
+        if (this.singleCamera) {
+            this.currentCameraType = PictureSnapshot.CameraType.FRONT;
+        } else {
+            this.currentCameraType = this.currentCameraType == PictureSnapshot.CameraType.FRONT
+                    ? PictureSnapshot.CameraType.BACK : PictureSnapshot.CameraType.FRONT;
+        }
+        return this.currentCameraType;
+    }
+
+    private static class PriorityRequest {
+        private final PictureSnapshot.CameraType cameraType;
+        private final CaptureSettings captureSettings;
+        private final CameraBackend.PictureCallback callback;
+
+        private PriorityRequest(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings,
+                                CameraBackend.PictureCallback callback) {
+            this.cameraType = cameraType;
+            this.captureSettings = captureSettings;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package lems.mobileProctorAgent.camera;
+
+import java.util.EnumMap;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+/**
+ * Tell, per camera, whether a frame differs enough from the last keyframe to be sent in full.
+ * Frames are compared through their luma signature: a small grid of average luma values. A frame is a keyframe when
+ * the part of the grid cells whose luma moved by more than the cell delta exceeds the changed fraction, or when the
+ * last keyframe is older than the maximum keyframe interval. Comparing to the last keyframe rather than to the
+ * previous frame makes slow drifts trigger a keyframe too.
+ */
+public class FrameChangeDetector {
+    private final int cellDelta;
+    private final float changedFraction;
+    private final long maxKeyframeIntervalMs;
+    private final EnumMap<PictureSnapshot.CameraType, Keyframe> keyframes;
+
+    /**
+     * @param cellDelta the luma difference from which a cell is considered changed
+     * @param changedFraction the part of changed cells from which the frame is a keyframe
+     * @param maxKeyframeIntervalMs the maximum time between two keyframes of a camera
+     */
+    public FrameChangeDetector(int cellDelta, float changedFraction, long maxKeyframeIntervalMs) {
+        this.cellDelta = cellDelta;
+        this.changedFraction = changedFraction;
+        this.maxKeyframeIntervalMs = maxKeyframeIntervalMs;
+        this.keyframes = new EnumMap<>(PictureSnapshot.CameraType.class);
+    }
+
+    /**
+     * @param cameraType the camera of the frame
+     * @param signature the luma signature of the frame
+     * @param timestampMs the capture time of the frame
+     * @return the timestamp of the last keyframe of the camera if the frame is still the same, null if the frame is a
+     * keyframe
+     */
+    public synchronized Long detect(PictureSnapshot.CameraType cameraType, byte[] signature, long timestampMs) {
+        final Keyframe keyframe = this.keyframes.get(cameraType);
+        if (keyframe != null && timestampMs - keyframe.timestampMs < this.maxKeyframeIntervalMs
+                && !this.hasChanged(keyframe.signature, signature)) {
+            return keyframe.timestampMs;
+        }
+        this.keyframes.put(cameraType, new Keyframe(signature.clone(), timestampMs));
+        return null;
+    }
+
+    /**
+     * Forget the keyframes: the next frame of each camera is a keyframe
+     */
+    public synchronized void reset() {
+        this.keyframes.clear();
+    }
+
+    /**
+     * Forget the keyframe of a camera if it is the given frame, e.g. when that frame never reached the server: the
+     * next frame of the camera is then a keyframe
+     * @param cameraType the camera of the frame
+     * @param timestampMs the capture time of the frame
+     */
+    public synchronized void reset(PictureSnapshot.CameraType cameraType, long timestampMs) {
+        final Keyframe keyframe = this.keyframes.get(cameraType);
+        if (keyframe != null && keyframe.timestampMs == timestampMs) {
+            this.keyframes.remove(cameraType);
+        }
+    }
+
+    private boolean hasChanged(byte[] reference, byte[] signature) {
+        if (reference.length != signature.length) {
+            return true;
+        }
+        final int maxChangedCells = (int) (this.changedFraction * signature.length);
+        int changedCells = 0;
+        for (int i = 0; i < signature.length; i++) {
+            if (Math.abs((reference[i] & 0xFF) - (signature[i] & 0xFF)) > this.cellDelta && ++changedCells > maxChangedCells) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Keyframe {
+        private final byte[] signature;
+        private final long timestampMs;
+
+        Keyframe(byte[] signature, long timestampMs) {
+            this.signature = signature;
+            this.timestampMs = timestampMs;
+        }
+    }
+}
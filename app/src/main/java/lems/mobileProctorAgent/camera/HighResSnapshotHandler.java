@@ -0,0 +1,72 @@
+package lems.mobileProctorAgent.camera;
+
+import android.util.Log;
+
+import java.util.function.Supplier;
+
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+import lems.mobileProctorAgent.model.ControlOrder;
+import lems.mobileProctorAgent.model.HighResSnapshot;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.websocket.DeviceControlListener;
+import lems.mobileProctorAgent.websocket.SnapshotOutboundQueue;
+
+/**
+ * Take a high resolution picture from the camera asked by a HIGH_RES_SNAPSHOT control order, out of the regular
+ * capture, and hand it to the outbound queue where it goes before the regular pictures.
+ */
+public class HighResSnapshotHandler implements DeviceControlListener {
+    private final static String LOG_TAG = HighResSnapshotHandler.class.getName();
+
+    private final Supplier<CaptureManager> captureManagerSupplier;
+    private final SnapshotOutboundQueue snapshotQueue;
+    private final CaptureSettings captureSettings;
+    private final int chunkSize;
+    private final MetricsRegistry metricsRegistry;
+
+    /**
+     * @param captureManagerSupplier the capture manager in use
+     * @param snapshotQueue the queue the pictures are sent through
+     * @param captureSettings the format of the high resolution pictures
+     * @param chunkSize the maximum size of the data of a chunk, in bytes
+     * @param metricsRegistry the registry of the request metrics
+     */
+    public HighResSnapshotHandler(Supplier<CaptureManager> captureManagerSupplier, SnapshotOutboundQueue snapshotQueue,
+                                  CaptureSettings captureSettings, int chunkSize, MetricsRegistry metricsRegistry) {
+        this.captureManagerSupplier = captureManagerSupplier;
+        this.snapshotQueue = snapshotQueue;
+        this.captureSettings = captureSettings;
+        this.chunkSize = chunkSize;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @Override
+    public void onControlOrder(ControlOrder order) {
+        if (order.getCode() != ControlOrder.ControlerOrderCode.HIGH_RES_SNAPSHOT) {
+            return;
+        }
+        if (!order.isValidHighResSnapshotCommand()) {
+            Log.w(LOG_TAG, "High resolution snapshot requested without camera");
+            return;
+        }
+        final long requestTime = System.currentTimeMillis();
+        final PictureSnapshot.CameraType cameraType = order.getSource();
+        Log.i(LOG_TAG, "High resolution snapshot requested from camera " + cameraType + " (" + order.getRequestId() + ")");
+        this.metricsRegistry.counter(MetricNames.HIGH_RES_REQUESTS).increment();
+        this.captureManagerSupplier.get().takePriorityPicture(cameraType, this.captureSettings, new CameraBackend.PictureCallback() {
+            @Override
+            public void onPictureTaken(PictureSnapshot pictureSnapshot) {
+                metricsRegistry.histogram(MetricNames.HIGH_RES_REQUEST_TO_CAPTURE_MS)
+                        .record(pictureSnapshot.getTimestamp() - requestTime);
+                snapshotQueue.offerHighRes(new HighResSnapshot(order.getRequestId(), requestTime, pictureSnapshot, chunkSize));
+            }
+
+            @Override
+            public void onPictureFailed(Exception ex) {
+                Log.w(LOG_TAG, "High resolution snapshot not captured from camera " + cameraType + ": " + ex.getMessage());
+                metricsRegistry.counter(MetricNames.HIGH_RES_FAILURES).increment();
+            }
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package lems.mobileProctorAgent.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Compute the luma signature of a jpeg picture: the average luma of each cell of a square grid.
+ * The jpeg is decoded at a reduced scale (the decoder skips most of the work), so that it stays cheap enough to be
+ * done for each picture. Not thread safe.
+ */
+public class JpegLumaSampler {
+    private final int gridSize;
+    private final BitmapFactory.Options options;
+    private int[] pixels;
+
+    /**
+     * @param gridSize the number of cells of a side of the grid
+     */
+    public JpegLumaSampler(int gridSize) {
+        this.gridSize = gridSize;
+        this.options = new BitmapFactory.Options();
+        this.options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * @param jpeg the jpeg data
+     * @param length the length of the jpeg data
+     * @return the luma of the cells, row by row; null if the jpeg cannot be decoded
+     */
+    public byte[] sample(byte[] jpeg, int length) {
+        this.options.inJustDecodeBounds = true;
+        this.options.inSampleSize = 1;
+        BitmapFactory.decodeByteArray(jpeg, 0, length, this.options);
+        if (this.options.outWidth < this.gridSize || this.options.outHeight < this.gridSize) {
+            return null;
+        }
+        // Largest power of two keeping at least two pixels per cell
+        int sampleSize = 1;
+        while (Math.min(this.options.outWidth, this.options.outHeight) / (sampleSize * 2) >= this.gridSize * 2) {
+            sampleSize *= 2;
+        }
+        this.options.inJustDecodeBounds = false;
+        this.options.inSampleSize = sampleSize;
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(jpeg, 0, length, this.options);
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            final int width = bitmap.getWidth();
+            final int height = bitmap.getHeight();
+            if (this.pixels == null || this.pixels.length < width * height) {
+                this.pixels = new int[width * height];
+            }
+            bitmap.getPixels(this.pixels, 0, width, 0, 0, width, height);
+            return this.toGrid(width, height);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private byte[] toGrid(int width, int height) {
+        final int[] sums = new int[this.gridSize * this.gridSize];
+        final int[] counts = new int[sums.length];
+        for (int y = 0; y < height; y++) {
+            final int cellRow = y * this.gridSize / height * this.gridSize;
+            for (int x = 0; x < width; x++) {
+                final int rgb = this.pixels[y * width + x];
+                // BT.601 luma
+                final int luma = (77 * (rgb >> 16 & 0xFF) + 150 * (rgb >> 8 & 0xFF) + 29 * (rgb & 0xFF)) >> 8;
+                final int cell = cellRow + x * this.gridSize / width;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+        final byte[] grid = new byte[sums.length];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = (byte) (counts[i] > 0 ? sums[i] / counts[i] : 0);
+        }
+        return grid;
+    }
+}
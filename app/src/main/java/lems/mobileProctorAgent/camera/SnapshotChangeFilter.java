@@ -0,0 +1,100 @@
+package lems.mobileProctorAgent.camera;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.websocket.SnapshotDropListener;
+import lems.mobileProctorAgent.websocket.TransportCapabilities;
+import lems.mobileProctorAgent.websocket.WebsocketListener;
+import lems.mobileProctorAgent.websocket.WebsocketManager;
+
+/**
+ * Replace the pictures unchanged since the last keyframe of their camera by "still same" heartbeats, before they are
+ * enqueued. Only done while the server supports {@link TransportCapabilities#STILL_SAME}: otherwise pictures are kept
+ * as is and not even decoded. The keyframes are forgotten on each (re)authentication, so that a server always gets
+ * a full picture before any heartbeat, and a keyframe is forgotten as soon as it is dropped before reaching the server.
+ */
+public class SnapshotChangeFilter implements WebsocketListener, SnapshotDropListener {
+    private final static String LOG_TAG = SnapshotChangeFilter.class.getName();
+
+    private final WebsocketManager wsMgr;
+    private final JpegLumaSampler lumaSampler;
+    private final FrameChangeDetector changeDetector;
+    private final MetricsRegistry metricsRegistry;
+
+    public SnapshotChangeFilter(WebsocketManager wsMgr, JpegLumaSampler lumaSampler,
+                                FrameChangeDetector changeDetector, MetricsRegistry metricsRegistry) {
+        this.wsMgr = wsMgr;
+        this.lumaSampler = lumaSampler;
+        this.changeDetector = changeDetector;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * @param pictureSnapshot a picture just taken
+     * @return the picture itself if it has to be sent in full, otherwise a heartbeat
+     */
+    public synchronized PictureSnapshot filter(PictureSnapshot pictureSnapshot) {
+        if (pictureSnapshot.getTimestamp() == null || !this.wsMgr.isAuthenticated()
+                || !this.wsMgr.getCapabilities().supports(TransportCapabilities.STILL_SAME)) {
+            return pictureSnapshot;
+        }
+        final long startNs = System.nanoTime();
+        final byte[] signature = this.lumaSampler.sample(pictureSnapshot.getData(), pictureSnapshot.getDataLength());
+        if (signature == null) {
+            Log.w(LOG_TAG, "Cannot decode picture, sent in full");
+            return pictureSnapshot;
+        }
+        final Long keyframeTimestamp = this.changeDetector.detect(pictureSnapshot.getSource(), signature,
+                pictureSnapshot.getTimestamp());
+        this.metricsRegistry.histogram(MetricNames.CHANGE_DETECTION_US)
+                .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNs));
+        if (keyframeTimestamp == null) {
+            this.metricsRegistry.counter(MetricNames.CHANGE_KEYFRAMES).increment();
+            return pictureSnapshot;
+        }
+        this.metricsRegistry.counter(MetricNames.CHANGE_STILL_SAME).increment();
+        final PictureSnapshot heartbeat = PictureSnapshot.stillSame(pictureSnapshot.getSource(),
+                pictureSnapshot.getTimestamp(), keyframeTimestamp);
+        heartbeat.setCaptureId(pictureSnapshot.getCaptureId());
+        return heartbeat;
+    }
+
+    @Override
+    public void onSnapshotDropped(PictureSnapshot pictureSnapshot) {
+        // Heartbeats would refer to a keyframe the server never got
+        if (!pictureSnapshot.isStillSame() && pictureSnapshot.getTimestamp() != null) {
+            this.changeDetector.reset(pictureSnapshot.getSource(), pictureSnapshot.getTimestamp());
+        }
+    }
+
+    @Override
+    public void onConnect(Object[] info) {
+    }
+
+    @Override
+    public void onAuthenticated(TransportCapabilities capabilities) {
+        this.changeDetector.reset();
+    }
+
+    @Override
+    public void onDisconnect(Object[] info) {
+        this.changeDetector.reset();
+    }
+
+    @Override
+    public void onReconnecting(int attempt) {
+    }
+
+    @Override
+    public void onConnectError(Exception ex) {
+    }
+
+    @Override
+    public void onDataSent(String eventType, Object data) {
+    }
+}
@@ -0,0 +1,40 @@
+package lems.mobileProctorAgent.camera;
+
+/**
+ * Estimate the uplink throughput from the bytes acknowledged over a time window, divided by the time the uplink was
+ * busy in the window: the union of the emit-to-ack intervals, so that frames in flight at the same time do not each
+ * count their own latency. Idle time between frames is not counted, otherwise the estimate would only measure what
+ * is sent.
+ * Not thread-safe.
+ */
+public class UplinkThroughputEstimator {
+    private long acknowledgedBytes;
+    private long busyMs;
+    private long busyUntilMs = Long.MIN_VALUE;
+
+    /**
+     * @param wireSizeBytes the size of the acknowledged payload
+     * @param emitTimeMs the time it has been emitted (epoch ms)
+     * @param ackTimeMs the time its acknowledgement has been received (epoch ms)
+     */
+    public void onAcknowledged(int wireSizeBytes, long emitTimeMs, long ackTimeMs) {
+        this.acknowledgedBytes += wireSizeBytes;
+        final long busyStartMs = Math.max(emitTimeMs, this.busyUntilMs);
+        if (ackTimeMs > busyStartMs) {
+            this.busyMs += ackTimeMs - busyStartMs;
+        }
+        this.busyUntilMs = Math.max(this.busyUntilMs, ackTimeMs);
+    }
+
+    /**
+     * Close the current window and start a new one
+     * @return the throughput of the window in bytes per second, -1 if nothing was acknowledged
+     */
+    public double closeWindow() {
+        final double throughput = this.acknowledgedBytes > 0
+                ? this.acknowledgedBytes * 1000.0 / Math.max(1L, this.busyMs) : -1;
+        this.acknowledgedBytes = 0;
+        this.busyMs = 0;
+        return throughput;
+    }
+}
@@ -0,0 +1,54 @@
+package lems.mobileProctorAgent.device;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+/**
+ * Device state read from the Android battery and power services
+ */
+public class AndroidDeviceStateSource implements DeviceStateSource {
+    // Forecast horizon of the thermal headroom
+    private static final int THERMAL_HEADROOM_FORECAST_S = 10;
+
+    private final Context context;
+    private final PowerManager powerManager;
+
+    public AndroidDeviceStateSource(Context context) {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    @Override
+    public DeviceState getDeviceState() {
+        // Sticky broadcast: no receiver registered, the last battery state is returned
+        final Intent battery = this.context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int batteryLevel = DeviceState.UNKNOWN;
+        boolean charging = false;
+        float batteryTemperatureC = Float.NaN;
+        if (battery != null) {
+            final int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            final int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                batteryLevel = level * 100 / scale;
+            }
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            final int temperature = battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, Integer.MIN_VALUE);
+            if (temperature != Integer.MIN_VALUE) {
+                batteryTemperatureC = temperature / 10f;
+            }
+        }
+        int thermalStatus = DeviceState.UNKNOWN;
+        float thermalHeadroom = Float.NaN;
+        if (this.powerManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermalStatus = this.powerManager.getCurrentThermalStatus();
+        }
+        if (this.powerManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            thermalHeadroom = this.powerManager.getThermalHeadroom(THERMAL_HEADROOM_FORECAST_S);
+        }
+        return new DeviceState(batteryLevel, charging, batteryTemperatureC, thermalStatus, thermalHeadroom);
+    }
+}
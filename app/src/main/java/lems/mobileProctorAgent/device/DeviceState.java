@@ -0,0 +1,83 @@
+package lems.mobileProctorAgent.device;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * Immutable health state of the device at a given time
+ */
+public class DeviceState {
+    public static final int UNKNOWN = -1;
+    // Thermal status levels, same values as android.os.PowerManager.THERMAL_STATUS_*
+    public static final int THERMAL_STATUS_NONE = 0;
+    public static final int THERMAL_STATUS_LIGHT = 1;
+    public static final int THERMAL_STATUS_MODERATE = 2;
+    public static final int THERMAL_STATUS_SEVERE = 3;
+    public static final int THERMAL_STATUS_CRITICAL = 4;
+    public static final int THERMAL_STATUS_EMERGENCY = 5;
+    public static final int THERMAL_STATUS_SHUTDOWN = 6;
+
+    private final int batteryLevel;
+    private final boolean charging;
+    private final float batteryTemperatureC;
+    private final int thermalStatus;
+    private final float thermalHeadroom;
+
+    /**
+     * @param batteryLevel the battery level in percent, {@link #UNKNOWN} if not known
+     * @param charging true if the device is plugged
+     * @param batteryTemperatureC the battery temperature, NaN if not known
+     * @param thermalStatus the thermal status (THERMAL_STATUS_*), {@link #UNKNOWN} if not known
+     * @param thermalHeadroom the thermal headroom: 1.0 means severe throttling, NaN if not known
+     */
+    public DeviceState(int batteryLevel, boolean charging, float batteryTemperatureC, int thermalStatus,
+                       float thermalHeadroom) {
+        this.batteryLevel = batteryLevel;
+        this.charging = charging;
+        this.batteryTemperatureC = batteryTemperatureC;
+        this.thermalStatus = thermalStatus;
+        this.thermalHeadroom = thermalHeadroom;
+    }
+
+    public int getBatteryLevel() {
+        return batteryLevel;
+    }
+
+    public boolean isCharging() {
+        return charging;
+    }
+
+    public float getBatteryTemperatureC() {
+        return batteryTemperatureC;
+    }
+
+    public int getThermalStatus() {
+        return thermalStatus;
+    }
+
+    public float getThermalHeadroom() {
+        return thermalHeadroom;
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("batteryLevel", this.batteryLevel);
+        obj.put("charging", this.charging);
+        obj.put("batteryTemperatureC", Float.isNaN(this.batteryTemperatureC) ? JSONObject.NULL : (double) this.batteryTemperatureC);
+        obj.put("thermalStatus", this.thermalStatus);
+        obj.put("thermalHeadroom", Float.isNaN(this.thermalHeadroom) ? JSONObject.NULL : (double) this.thermalHeadroom);
+        return obj;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "DeviceState{battery=%d%%%s, batteryTemperature=%.1fC, thermalStatus=%d, thermalHeadroom=%.2f}",
+                this.batteryLevel, this.charging ? " charging" : "", this.batteryTemperatureC, this.thermalStatus,
+                this.thermalHeadroom);
+    }
+}
@@ -0,0 +1,6 @@
+package lems.mobileProctorAgent.device;
+
+public interface DeviceStateSource {
+
+    DeviceState getDeviceState();
+}
@@ -0,0 +1,60 @@
+package lems.mobileProctorAgent.executor;
+
+import android.os.Process;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+
+/**
+ * The executors of the application, one per kind of work so that a blocked or slow task of one kind never delays
+ * the others:
+ * <ul>
+ *     <li>capture: the capture cycle scheduling and its bind and capture timeouts, video still copies</li>
+ *     <li>network: camera callbacks copying the pictures, outbound queue, websocket timers and periodic evaluations</li>
+ *     <li>ble: timing-sensitive bluetooth controller writes, timeouts and pitch reset</li>
+ *     <li>analysis: QR code image analysis</li>
+ * </ul>
+ */
+public class AppExecutors {
+    public static final String CAPTURE = "capture";
+    public static final String NETWORK = "network";
+    public static final String BLE = "ble";
+    public static final String ANALYSIS = "analysis";
+    // A pitch reset late by more than this makes the platform overshoot
+    private static final long BLE_LATE_WARNING_MS = 50L;
+    private static final long LATE_WARNING_MS = 1000L;
+
+    private final InstrumentedScheduledExecutor captureExecutor;
+    private final InstrumentedScheduledExecutor networkExecutor;
+    private final InstrumentedScheduledExecutor bleExecutor;
+    private final InstrumentedScheduledExecutor analysisExecutor;
+
+    public AppExecutors(MetricsRegistry metricsRegistry) {
+        this.captureExecutor = new InstrumentedScheduledExecutor(CAPTURE, 1,
+                new NamedThreadFactory(CAPTURE, Process.THREAD_PRIORITY_DEFAULT), metricsRegistry, LATE_WARNING_MS);
+        this.networkExecutor = new InstrumentedScheduledExecutor(NETWORK, 1,
+                new NamedThreadFactory(NETWORK, Process.THREAD_PRIORITY_DEFAULT), metricsRegistry, LATE_WARNING_MS);
+        this.bleExecutor = new InstrumentedScheduledExecutor(BLE, 1,
+                new NamedThreadFactory(BLE, Process.THREAD_PRIORITY_DISPLAY), metricsRegistry, BLE_LATE_WARNING_MS);
+        this.analysisExecutor = new InstrumentedScheduledExecutor(ANALYSIS, 1,
+                new NamedThreadFactory(ANALYSIS, Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE),
+                metricsRegistry, LATE_WARNING_MS);
+    }
+
+    public ScheduledExecutorService capture() {
+        return this.captureExecutor;
+    }
+
+    public ScheduledExecutorService network() {
+        return this.networkExecutor;
+    }
+
+    public ScheduledExecutorService ble() {
+        return this.bleExecutor;
+    }
+
+    public ScheduledExecutorService analysis() {
+        return this.analysisExecutor;
+    }
+}
@@ -0,0 +1,125 @@
+package lems.mobileProctorAgent.executor;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+import lems.mobileProctorAgent.metrics.RollingHistogram;
+
+/**
+ * Scheduled executor reporting to the metrics registry, per executor name:
+ * the lateness of each task (time between its due time and its start, i.e. the queueing delay of immediate tasks),
+ * its run time, and the number of queued tasks.
+ * A task late by more than the warning threshold is logged, since it usually means another task hogs the executor.
+ */
+public class InstrumentedScheduledExecutor extends ScheduledThreadPoolExecutor {
+    private final static String LOG_TAG = InstrumentedScheduledExecutor.class.getName();
+
+    private final String name;
+    private final long lateWarningMs;
+    private final RollingHistogram latenessHistogram;
+    private final RollingHistogram runTimeHistogram;
+
+    public InstrumentedScheduledExecutor(String name, int threadCount, ThreadFactory threadFactory,
+                                         MetricsRegistry metricsRegistry, long lateWarningMs) {
+        super(threadCount, threadFactory);
+        this.name = name;
+        this.lateWarningMs = lateWarningMs;
+        this.latenessHistogram = metricsRegistry.histogram(MetricNames.EXECUTOR_PREFIX + name + MetricNames.EXECUTOR_LATENESS_MS_SUFFIX);
+        this.runTimeHistogram = metricsRegistry.histogram(MetricNames.EXECUTOR_PREFIX + name + MetricNames.EXECUTOR_RUN_TIME_MS_SUFFIX);
+        metricsRegistry.gauge(MetricNames.EXECUTOR_PREFIX + name + MetricNames.EXECUTOR_QUEUE_DEPTH_SUFFIX,
+                () -> this.getQueue().size());
+        // Cancelled periodic tasks must not stay in the queue until their next due time
+        this.setRemoveOnCancelPolicy(true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
+        return new InstrumentedTask<>(task);
+    }
+
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(Callable<V> callable, RunnableScheduledFuture<V> task) {
+        return new InstrumentedTask<>(task);
+    }
+
+    private class InstrumentedTask<V> implements RunnableScheduledFuture<V> {
+        private final RunnableScheduledFuture<V> task;
+
+        InstrumentedTask(RunnableScheduledFuture<V> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            // Negative delay: time elapsed since the task was due
+            final long latenessMs = Math.max(0L, -this.task.getDelay(TimeUnit.MILLISECONDS));
+            final long startNs = System.nanoTime();
+            this.task.run();
+            final long runTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+            latenessHistogram.record(latenessMs);
+            runTimeHistogram.record(runTimeMs);
+            if (latenessMs > lateWarningMs) {
+                Log.w(LOG_TAG, "Task started " + latenessMs + " ms late on executor " + name);
+            }
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return this.task.isPeriodic();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return this.task.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return this.task.compareTo(other instanceof InstrumentedTask ? ((InstrumentedTask<?>) other).task : other);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean cancelled = this.task.cancel(mayInterruptIfRunning);
+            if (cancelled && getRemoveOnCancelPolicy()) {
+                // The queue holds this wrapper, not the decorated task
+                remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.task.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return this.task.isDone();
+        }
+
+        @Override
+        public V get() throws ExecutionException, InterruptedException {
+            return this.task.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws ExecutionException, InterruptedException, TimeoutException {
+            return this.task.get(timeout, unit);
+        }
+    }
+}
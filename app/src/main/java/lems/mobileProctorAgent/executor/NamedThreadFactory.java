@@ -0,0 +1,31 @@
+package lems.mobileProctorAgent.executor;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Create threads named after their executor, running at the given Linux thread priority
+ * (android.os.Process.THREAD_PRIORITY_*).
+ */
+public class NamedThreadFactory implements ThreadFactory {
+    private final String name;
+    private final int threadPriority;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    public NamedThreadFactory(String name, int threadPriority) {
+        this.name = name;
+        this.threadPriority = threadPriority;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(() -> {
+            Process.setThreadPriority(this.threadPriority);
+            runnable.run();
+        }, "lems-" + this.name + "-" + this.threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
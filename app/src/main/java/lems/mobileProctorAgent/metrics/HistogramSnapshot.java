@@ -0,0 +1,71 @@
+package lems.mobileProctorAgent.metrics;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * Immutable statistics of a {@link RollingHistogram} at a given time.
+ */
+public class HistogramSnapshot {
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p95;
+    private final long p99;
+    private final long max;
+
+    public HistogramSnapshot(long count, double mean, long p50, long p95, long p99, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP95() {
+        return p95;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("count", this.count);
+        obj.put("mean", Math.round(this.mean));
+        obj.put("p50", this.p50);
+        obj.put("p95", this.p95);
+        obj.put("p99", this.p99);
+        obj.put("max", this.max);
+        return obj;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "p50=%d p95=%d p99=%d max=%d (n=%d)",
+                this.p50, this.p95, this.p99, this.max, this.count);
+    }
+}
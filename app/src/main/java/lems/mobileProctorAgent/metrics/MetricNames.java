@@ -0,0 +1,76 @@
+package lems.mobileProctorAgent.metrics;
+
+public interface MetricNames {
+    // Capture
+    String CAPTURE_PICTURES_PREFIX = "capture.pictures.";
+    String CAPTURE_PICTURE_BYTES = "capture.pictureBytes";
+
+    // Change detection
+    String CHANGE_DETECTION_US = "change.detectionUs";
+    String CHANGE_KEYFRAMES = "change.keyframes";
+    String CHANGE_STILL_SAME = "change.stillSame";
+
+    // Encode and send
+    String SNAPSHOT_ENCODE_US = "snapshot.encodeUs";
+    String SNAPSHOT_SENT_PREFIX = "snapshot.sent.";
+    String SNAPSHOT_SENT_BYTES = "snapshot.sentBytes";
+    String SNAPSHOT_SEND_FAILURES = "snapshot.sendFailures";
+    String SNAPSHOT_STILL_SAME_SENT = "snapshot.stillSameSent";
+    String SNAPSHOT_PAIRS_SENT = "snapshot.pairsSent";
+    String SNAPSHOT_ACKNOWLEDGED = "snapshot.acknowledged";
+    String SNAPSHOT_CAPTURE_TO_EMIT_MS = "snapshot.captureToEmitMs";
+    String SNAPSHOT_EMIT_TO_ACK_MS = "snapshot.emitToAckMs";
+    String SNAPSHOT_CAPTURE_TO_ACK_MS = "snapshot.captureToAckMs";
+
+    // High resolution snapshots requested by the server
+    String HIGH_RES_REQUESTS = "highRes.requests";
+    String HIGH_RES_FAILURES = "highRes.failures";
+    String HIGH_RES_CHUNKS_SENT = "highRes.chunksSent";
+    String HIGH_RES_SENT_BYTES = "highRes.sentBytes";
+    String HIGH_RES_ACKNOWLEDGED = "highRes.acknowledged";
+    String HIGH_RES_REQUEST_TO_CAPTURE_MS = "highRes.requestToCaptureMs";
+    String HIGH_RES_CAPTURE_TO_ACK_MS = "highRes.captureToAckMs";
+    String HIGH_RES_REQUEST_TO_ACK_MS = "highRes.requestToAckMs";
+
+    // Video stream
+    String VIDEO_CHUNKS_SENT = "video.chunksSent";
+    String VIDEO_SENT_BYTES = "video.sentBytes";
+    String VIDEO_KEYFRAMES_SENT = "video.keyframesSent";
+    String VIDEO_CHUNKS_DROPPED = "video.chunksDropped";
+    String VIDEO_PENDING_CHUNKS = "video.pendingChunks";
+    String VIDEO_PENDING_BYTES = "video.pendingBytes";
+    String VIDEO_ENCODER_ERRORS = "video.encoderErrors";
+
+    // Outbound queue and spool
+    String QUEUE_DEPTH = "queue.depth";
+    String QUEUE_DROPPED = "queue.dropped";
+    String SPOOL_DEPTH = "spool.depth";
+
+    // Bluetooth controller
+    String BLE_WRITE_LATENCY_MS = "ble.writeLatencyMs";
+    String BLE_WRITES = "ble.writes";
+    String BLE_COALESCED = "ble.coalesced";
+    String BLE_WRITE_FAILURES = "ble.writeFailures";
+    String BLE_QUEUE_DEPTH = "ble.queueDepth";
+    String BLE_CONNECTED = "ble.connected";
+    String BLE_CONTROLLED = "ble.controlled";
+
+    // Websocket connection
+    String WS_DISCONNECTIONS = "ws.disconnections";
+    String WS_RECONNECT_ATTEMPTS = "ws.reconnectAttempts";
+    String WS_RECONNECTIONS = "ws.reconnections";
+    String WS_RECONNECT_DURATION_MS = "ws.reconnectDurationMs";
+
+    // QR code pairing
+    String QR_TIME_TO_FIRST_DECODE_MS = "qr.timeToFirstDecodeMs";
+    String QR_ANALYSIS_MS = "qr.analysisMs";
+    String QR_FRAMES_ANALYZED = "qr.framesAnalyzed";
+    String QR_FULL_FRAMES_ANALYZED = "qr.fullFramesAnalyzed";
+    String QR_FRAMES_SKIPPED = "qr.framesSkipped";
+
+    // Executors, per executor name: "executor.<name>.latenessMs"
+    String EXECUTOR_PREFIX = "executor.";
+    String EXECUTOR_LATENESS_MS_SUFFIX = ".latenessMs";
+    String EXECUTOR_RUN_TIME_MS_SUFFIX = ".runTimeMs";
+    String EXECUTOR_QUEUE_DEPTH_SUFFIX = ".queueDepth";
+}
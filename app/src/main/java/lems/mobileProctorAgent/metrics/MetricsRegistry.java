@@ -0,0 +1,87 @@
+package lems.mobileProctorAgent.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free registry of the application metrics, named after {@link MetricNames}:
+ * striped counters incremented from any thread, gauges read on demand and rolling histograms.
+ * Metrics are created on first use; recording never blocks, reading is meant for low rate sampling
+ * (UI refresh, server requests, telemetry).
+ */
+public class MetricsRegistry implements MetricsSource {
+    private static final long HISTOGRAM_WINDOW_MS = 60_000L;
+    private static final int HISTOGRAM_WINDOW_SLOTS = 6;
+
+    private final ConcurrentHashMap<String, LongAdder> counters;
+    private final ConcurrentHashMap<String, LongSupplier> gauges;
+    private final ConcurrentHashMap<String, RollingHistogram> histograms;
+
+    public MetricsRegistry() {
+        this.counters = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+    }
+
+    public LongAdder counter(String name) {
+        final LongAdder counter = this.counters.get(name);
+        return counter != null ? counter : this.counters.computeIfAbsent(name, (n) -> new LongAdder());
+    }
+
+    /**
+     * Register a gauge, replacing any gauge of the same name
+     * @param name the gauge name
+     * @param supplier the supplier of its current value, called on each read
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        this.gauges.put(name, supplier);
+    }
+
+    public RollingHistogram histogram(String name) {
+        final RollingHistogram histogram = this.histograms.get(name);
+        return histogram != null ? histogram : this.histograms.computeIfAbsent(name,
+                (n) -> new RollingHistogram(HISTOGRAM_WINDOW_MS, HISTOGRAM_WINDOW_SLOTS));
+    }
+
+    public long getCount(String name) {
+        final LongAdder counter = this.counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    public long getGauge(String name) {
+        final LongSupplier supplier = this.gauges.get(name);
+        return supplier != null ? supplier.getAsLong() : 0;
+    }
+
+    public HistogramSnapshot getHistogram(String name) {
+        return this.histogram(name).getSnapshot();
+    }
+
+    @Override
+    public JSONObject toJSONObject() throws JSONException {
+        final JSONObject jsonCounters = new JSONObject();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(this.counters).entrySet()) {
+            jsonCounters.put(entry.getKey(), entry.getValue().sum());
+        }
+        final JSONObject jsonGauges = new JSONObject();
+        for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(this.gauges).entrySet()) {
+            jsonGauges.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        final JSONObject jsonHistograms = new JSONObject();
+        for (Map.Entry<String, RollingHistogram> entry : new TreeMap<>(this.histograms).entrySet()) {
+            jsonHistograms.put(entry.getKey(), entry.getValue().getSnapshot().toJSONObject());
+        }
+        final JSONObject obj = new JSONObject();
+        obj.put("windowMs", HISTOGRAM_WINDOW_MS);
+        obj.put("counters", jsonCounters);
+        obj.put("gauges", jsonGauges);
+        obj.put("histograms", jsonHistograms);
+        return obj;
+    }
+}
@@ -0,0 +1,12 @@
+package lems.mobileProctorAgent.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Provider of metrics the proctoring server can read
+ */
+public interface MetricsSource {
+
+    JSONObject toJSONObject() throws JSONException;
+}
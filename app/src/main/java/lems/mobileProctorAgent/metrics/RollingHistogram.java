@@ -0,0 +1,143 @@
+package lems.mobileProctorAgent.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of the values recorded over a rolling time window.
+ * Values are counted in log-linear buckets (HDR-style): exact below {@link #SUB_BUCKET_COUNT}, then
+ * {@link #SUB_BUCKET_COUNT} buckets per power of two, i.e. a relative precision of about 6%.
+ * The window is made of slots recycled as time goes by. A sample recorded while its slot is being recycled may be lost,
+ * which is fine for monitoring purposes.
+ */
+public class RollingHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Values above 2^MAX_MAGNITUDE are counted in the last bucket
+    private static final int MAX_MAGNITUDE = 32;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long slotDurationMs;
+    private final Slot[] slots;
+
+    /**
+     * @param windowMs the duration over which samples are kept
+     * @param slotCount the number of slots of the window: samples expire by slices of windowMs / slotCount
+     */
+    public RollingHistogram(long windowMs, int slotCount) {
+        this.slotDurationMs = Math.max(1L, windowMs / slotCount);
+        this.slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            this.slots[i] = new Slot();
+        }
+    }
+
+    public void record(long value) {
+        this.record(value, System.currentTimeMillis());
+    }
+
+    public void record(long sample, long nowMs) {
+        final long value = Math.max(0L, sample);
+        final long epoch = nowMs / this.slotDurationMs;
+        final Slot slot = this.slots[(int) (epoch % this.slots.length)];
+        final long slotEpoch = slot.epoch.get();
+        if (slotEpoch < epoch && slot.epoch.compareAndSet(slotEpoch, epoch)) {
+            slot.clear();
+        }
+        slot.counts.incrementAndGet(bucketIndex(value));
+        slot.count.incrementAndGet();
+        slot.sum.addAndGet(value);
+        long max;
+        while (value > (max = slot.max.get()) && !slot.max.compareAndSet(max, value)) {
+            // retry
+        }
+    }
+
+    public HistogramSnapshot getSnapshot() {
+        return this.getSnapshot(System.currentTimeMillis());
+    }
+
+    /**
+     * @param nowMs the current time
+     * @return the statistics of the samples of the window ending now
+     */
+    public HistogramSnapshot getSnapshot(long nowMs) {
+        final long currentEpoch = nowMs / this.slotDurationMs;
+        final long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (Slot slot : this.slots) {
+            final long epoch = slot.epoch.get();
+            if (epoch > currentEpoch || epoch <= currentEpoch - this.slots.length) {
+                continue;
+            }
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += slot.counts.get(i);
+            }
+            count += slot.count.get();
+            sum += slot.sum.get();
+            max = Math.max(max, slot.max.get());
+        }
+        // Bucket bounds may exceed the largest sample
+        return new HistogramSnapshot(count, count > 0 ? (double) sum / count : 0,
+                Math.min(max, valueAtPercentile(counts, count, 50)),
+                Math.min(max, valueAtPercentile(counts, count, 95)),
+                Math.min(max, valueAtPercentile(counts, count, 99)), max);
+    }
+
+    private static long valueAtPercentile(long[] counts, long totalCount, double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(totalCount * percentile / 100.0));
+        long cumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(counts.length - 1);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // Highest value counted in a bucket
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        final int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    private static class Slot {
+        private final AtomicLong epoch = new AtomicLong(-1);
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void clear() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package lems.mobileProctorAgent.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import lems.mobileProctorAgent.model.HighResSnapshot;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.websocket.SnapshotDeliveryListener;
+
+/**
+ * Track the latency of the acknowledged picture snapshots: capture to emit (time spent queued), emit to
+ * acknowledgement (network and server) and capture to acknowledgement (end to end), in rolling histograms.
+ * Snapshots replayed from the spool are only accounted for their emit to acknowledgement latency.
+ * High resolution snapshots are tracked apart, once their last chunk is acknowledged: capture to acknowledgement
+ * (transfer) and request to acknowledgement (end to end).
+ */
+public class SnapshotLatencyTracker implements SnapshotDeliveryListener {
+    private final RollingHistogram captureToEmitMs;
+    private final RollingHistogram emitToAckMs;
+    private final RollingHistogram captureToAckMs;
+    private final LongAdder acknowledged;
+    private final RollingHistogram highResCaptureToAckMs;
+    private final RollingHistogram highResRequestToAckMs;
+    private final LongAdder highResAcknowledged;
+
+    public SnapshotLatencyTracker(MetricsRegistry metricsRegistry) {
+        this.captureToEmitMs = metricsRegistry.histogram(MetricNames.SNAPSHOT_CAPTURE_TO_EMIT_MS);
+        this.emitToAckMs = metricsRegistry.histogram(MetricNames.SNAPSHOT_EMIT_TO_ACK_MS);
+        this.captureToAckMs = metricsRegistry.histogram(MetricNames.SNAPSHOT_CAPTURE_TO_ACK_MS);
+        this.acknowledged = metricsRegistry.counter(MetricNames.SNAPSHOT_ACKNOWLEDGED);
+        this.highResCaptureToAckMs = metricsRegistry.histogram(MetricNames.HIGH_RES_CAPTURE_TO_ACK_MS);
+        this.highResRequestToAckMs = metricsRegistry.histogram(MetricNames.HIGH_RES_REQUEST_TO_ACK_MS);
+        this.highResAcknowledged = metricsRegistry.counter(MetricNames.HIGH_RES_ACKNOWLEDGED);
+    }
+
+    @Override
+    public void onSnapshotAcknowledged(PictureSnapshot pictureSnapshot, int wireSizeBytes, long emitTimeMs, long ackTimeMs) {
+        this.acknowledged.increment();
+        this.emitToAckMs.record(ackTimeMs - emitTimeMs, ackTimeMs);
+        final Long captureTimeMs = pictureSnapshot.getTimestamp();
+        if (captureTimeMs != null && !pictureSnapshot.isReplayed()) {
+            this.captureToEmitMs.record(emitTimeMs - captureTimeMs, ackTimeMs);
+            this.captureToAckMs.record(ackTimeMs - captureTimeMs, ackTimeMs);
+        }
+    }
+
+    @Override
+    public void onHighResChunkAcknowledged(HighResSnapshot highResSnapshot, int chunkIndex, long emitTimeMs, long ackTimeMs) {
+        if (!highResSnapshot.isLastChunk(chunkIndex)) {
+            return;
+        }
+        this.highResAcknowledged.increment();
+        this.highResRequestToAckMs.record(ackTimeMs - highResSnapshot.getRequestTime(), ackTimeMs);
+        final Long captureTimeMs = highResSnapshot.getPictureSnapshot().getTimestamp();
+        if (captureTimeMs != null) {
+            this.highResCaptureToAckMs.record(ackTimeMs - captureTimeMs, ackTimeMs);
+        }
+    }
+}
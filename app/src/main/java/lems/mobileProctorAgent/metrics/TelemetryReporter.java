@@ -0,0 +1,125 @@
+package lems.mobileProctorAgent.metrics;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.device.DeviceStateSource;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.websocket.WebsocketManager;
+
+/**
+ * Send a periodic telemetry event summing up the device health and the capture pipeline state over the last period:
+ * battery and thermal state, capture rate achieved per camera, queue depth and drops, bluetooth controller link.
+ * Rates and drops are computed on the device from the metrics registry, so that nothing is sent per sample.
+ */
+public class TelemetryReporter implements AutoCloseable {
+    private final static String LOG_TAG = TelemetryReporter.class.getName();
+
+    private final MetricsRegistry metricsRegistry;
+    private final DeviceStateSource deviceStateSource;
+    private final WebsocketManager wsManager;
+    private final long periodMs;
+    private final long[] lastCaptureCounts;
+    private final Map<String, MetricsSource> sections = new ConcurrentHashMap<>();
+    private long lastDroppedCount;
+    private long lastReportTimeMs;
+    private ScheduledFuture<?> futureReport;
+
+    public TelemetryReporter(MetricsRegistry metricsRegistry, DeviceStateSource deviceStateSource,
+                             WebsocketManager wsManager, long periodMs) {
+        this.metricsRegistry = metricsRegistry;
+        this.deviceStateSource = deviceStateSource;
+        this.wsManager = wsManager;
+        this.periodMs = periodMs;
+        this.lastCaptureCounts = new long[PictureSnapshot.CameraType.values().length];
+    }
+
+    /**
+     * Add a section to the telemetry event
+     * @param name the name of the section
+     * @param source the source of the section content
+     */
+    public void addSection(String name, MetricsSource source) {
+        this.sections.put(name, source);
+    }
+
+    public synchronized void open(ScheduledExecutorService executorService) {
+        if (this.futureReport != null) {
+            return;
+        }
+        this.lastReportTimeMs = System.currentTimeMillis();
+        this.futureReport = executorService.scheduleAtFixedRate(this::report, this.periodMs, this.periodMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.futureReport != null) {
+            this.futureReport.cancel(false);
+            this.futureReport = null;
+        }
+    }
+
+    void report() {
+        // Not built otherwise: building the telemetry starts a new period
+        if (!this.wsManager.isAuthenticated()) {
+            return;
+        }
+        try {
+            this.wsManager.sendTelemetry(this.buildTelemetry(System.currentTimeMillis()));
+        } catch (JSONException ex) {
+            Log.e(LOG_TAG, "Cannot build telemetry: " + ex.getMessage());
+        } catch (Exception ex) {
+            Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while reporting telemetry: " + ex.getMessage());
+        }
+    }
+
+    synchronized JSONObject buildTelemetry(long nowMs) throws JSONException {
+        final double elapsedS = Math.max(1L, nowMs - this.lastReportTimeMs) / 1000.0;
+        this.lastReportTimeMs = nowMs;
+
+        final JSONObject fps = new JSONObject();
+        for (PictureSnapshot.CameraType cameraType : PictureSnapshot.CameraType.values()) {
+            final long count = this.metricsRegistry.getCount(MetricNames.CAPTURE_PICTURES_PREFIX + cameraType);
+            fps.put(cameraType.toString(), Math.round((count - this.lastCaptureCounts[cameraType.ordinal()]) / elapsedS * 100) / 100.0);
+            this.lastCaptureCounts[cameraType.ordinal()] = count;
+        }
+        final JSONObject capture = new JSONObject();
+        capture.put("fps", fps);
+
+        final long droppedCount = this.metricsRegistry.getGauge(MetricNames.QUEUE_DROPPED);
+        final JSONObject queue = new JSONObject();
+        queue.put("depth", this.metricsRegistry.getGauge(MetricNames.QUEUE_DEPTH));
+        queue.put("spoolDepth", this.metricsRegistry.getGauge(MetricNames.SPOOL_DEPTH));
+        queue.put("dropped", droppedCount - this.lastDroppedCount);
+        this.lastDroppedCount = droppedCount;
+
+        final JSONObject ble = new JSONObject();
+        ble.put("connected", this.metricsRegistry.getGauge(MetricNames.BLE_CONNECTED) != 0);
+        ble.put("controlled", this.metricsRegistry.getGauge(MetricNames.BLE_CONTROLLED) != 0);
+        ble.put("queueDepth", this.metricsRegistry.getGauge(MetricNames.BLE_QUEUE_DEPTH));
+        final HistogramSnapshot writeLatency = this.metricsRegistry.getHistogram(MetricNames.BLE_WRITE_LATENCY_MS);
+        // Write request to write confirmation
+        ble.put("writeLatencyP50Ms", writeLatency.getCount() > 0 ? writeLatency.getP50() : JSONObject.NULL);
+
+        final JSONObject telemetry = new JSONObject();
+        telemetry.put("timestamp", nowMs);
+        telemetry.put("periodMs", this.periodMs);
+        telemetry.put("device", this.deviceStateSource.getDeviceState().toJSONObject());
+        telemetry.put("capture", capture);
+        telemetry.put("queue", queue);
+        telemetry.put("ble", ble);
+        for (Map.Entry<String, MetricsSource> section : this.sections.entrySet()) {
+            telemetry.put(section.getKey(), section.getValue().toJSONObject());
+        }
+        return telemetry;
+    }
+}
@@ -1,7 +1,5 @@
 package lems.mobileProctorAgent.model;
 
-import android.util.Log;
-
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -9,6 +7,8 @@ public class ControlOrder {
     private final ControlerOrderCode code;
     private Integer rotation; // <0: counter-clockwise | 0: stop | >0: clockwise
     private Integer pitch; // <0: down | 0: stop | >0: up
+    private PictureSnapshot.CameraType source; // camera of a high resolution snapshot
+    private String requestId; // given back with a high resolution snapshot
 
     public ControlOrder(ControlerOrderCode code) {
         this.code = code;
@@ -34,11 +34,28 @@ public class ControlOrder {
         this.pitch = pitch;
     }
 
+    public PictureSnapshot.CameraType getSource() {
+        return source;
+    }
+
+    public void setSource(PictureSnapshot.CameraType source) {
+        this.source = source;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
     public boolean isValidCode() {
         switch (code) {
             case LOCK:
             case UNLOCK:
             case MOVE:
+            case HIGH_RES_SNAPSHOT:
                 return true;
             default:
                 return false;
@@ -55,6 +72,10 @@ public class ControlOrder {
         return true;
     }
 
+    public boolean isValidHighResSnapshotCommand() {
+        return this.code == ControlerOrderCode.HIGH_RES_SNAPSHOT && this.source != null;
+    }
+
     public static ControlOrder fromJSONObject(JSONObject jsonObj) {
         try {
             final String sCode = jsonObj.getString("code");
@@ -66,6 +87,12 @@ public class ControlOrder {
             if (jsonObj.has("pitch")) {
                 order.setPitch(jsonObj.getInt("pitch"));
             }
+            if (jsonObj.has("source")) {
+                order.setSource(PictureSnapshot.CameraType.valueOf(jsonObj.getString("source")));
+            }
+            if (jsonObj.has("requestId")) {
+                order.setRequestId(jsonObj.getString("requestId"));
+            }
             return order;
         } catch (IllegalArgumentException | JSONException ex) {
             return null;
@@ -73,6 +100,6 @@ public class ControlOrder {
     }
 
     public enum ControlerOrderCode {
-        LOCK, UNLOCK, MOVE
+        LOCK, UNLOCK, MOVE, HIGH_RES_SNAPSHOT
     }
 }
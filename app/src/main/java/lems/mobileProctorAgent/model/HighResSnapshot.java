@@ -0,0 +1,134 @@
+package lems.mobileProctorAgent.model;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A high resolution picture taken on the server request, sent as a sequence of chunks so that it does not hold the
+ * regular pictures back. Each chunk carries the header of the picture, its rank and the number of chunks.
+ * The sending progress (chunks emitted, chunks acknowledged) is only updated by the sender.
+ */
+public class HighResSnapshot {
+    private final String requestId;
+    private final long requestTime;
+    private final PictureSnapshot pictureSnapshot;
+    private final int chunkSize;
+    private final int chunkCount;
+    private int emittedChunkCount;
+    private int acknowledgedChunkCount;
+    private long rewindTimeMs;
+
+    /**
+     * @param requestId the id of the request, given back to the server, null if none
+     * @param requestTime the epoch time in ms the request has been received
+     * @param pictureSnapshot the picture
+     * @param chunkSize the maximum size of the data of a chunk, in bytes
+     */
+    public HighResSnapshot(String requestId, long requestTime, PictureSnapshot pictureSnapshot, int chunkSize) {
+        this.requestId = requestId;
+        this.requestTime = requestTime;
+        this.pictureSnapshot = pictureSnapshot;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.chunkCount = Math.max(1, (pictureSnapshot.getDataLength() + this.chunkSize - 1) / this.chunkSize);
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    public PictureSnapshot getPictureSnapshot() {
+        return pictureSnapshot;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public boolean isLastChunk(int chunkIndex) {
+        return chunkIndex == this.chunkCount - 1;
+    }
+
+    public int getChunkLength(int chunkIndex) {
+        final int offset = chunkIndex * this.chunkSize;
+        return Math.max(0, Math.min(this.chunkSize, this.pictureSnapshot.getDataLength() - offset));
+    }
+
+    public boolean hasNextChunk() {
+        return this.emittedChunkCount < this.chunkCount;
+    }
+
+    /**
+     * @return the index of the next chunk to emit, now counted as emitted
+     */
+    public int nextChunk() {
+        return this.emittedChunkCount++;
+    }
+
+    public void onChunkAcknowledged() {
+        this.acknowledgedChunkCount++;
+    }
+
+    /**
+     * @param emitTimeMs the time an acknowledged chunk has been emitted (epoch ms)
+     * @return true if the chunk was emitted before the last rewind: its acknowledgement no longer counts
+     */
+    public boolean isStaleAcknowledgement(long emitTimeMs) {
+        return emitTimeMs < this.rewindTimeMs;
+    }
+
+    public int getInFlightChunkCount() {
+        return this.emittedChunkCount - this.acknowledgedChunkCount;
+    }
+
+    public boolean isAcknowledged() {
+        return this.acknowledgedChunkCount >= this.chunkCount;
+    }
+
+    /**
+     * Send again from the first chunk, e.g. after a reconnection or a lost acknowledgement
+     */
+    public void rewind() {
+        this.emittedChunkCount = 0;
+        this.acknowledgedChunkCount = 0;
+        this.rewindTimeMs = System.currentTimeMillis();
+    }
+
+    /**
+     * Build the binary form of a chunk, the part of the picture data attached as is
+     * @param chunkIndex the rank of the chunk, from 0
+     * @return the json object holding the header fields and the binary data
+     * @throws JSONException if the header cannot be built
+     */
+    public JSONObject toChunkJSONObject(int chunkIndex) throws JSONException {
+        final int offset = chunkIndex * this.chunkSize;
+        final JSONObject obj = new JSONObject();
+        if (this.requestId != null) {
+            obj.put("requestId", this.requestId);
+        }
+        obj.put("source", Objects.toString(this.pictureSnapshot.getSource()));
+        obj.put("timestamp", this.pictureSnapshot.getTimestamp());
+        obj.put("index", chunkIndex);
+        obj.put("count", this.chunkCount);
+        obj.put("length", this.pictureSnapshot.getDataLength());
+        obj.put("data", Arrays.copyOfRange(this.pictureSnapshot.getData(), offset, offset + this.getChunkLength(chunkIndex)));
+        return obj;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "HighResSnapshot{requestId = '%s', source = '%s', |data| = %d, chunks = %d}",
+                this.requestId, Objects.toString(this.pictureSnapshot.getSource()), this.pictureSnapshot.getDataLength(),
+                this.chunkCount);
+    }
+}
@@ -11,18 +11,22 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.lang.reflect.Type;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Locale;
 import java.util.Objects;
 
 public class PictureSnapshot {
     public enum CameraType {FRONT, BACK}
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
     private CameraType source;
     private Long timestamp;
     private byte[] data;
+    private int dataLength;
+    private boolean replayed;
+    private Long keyframeTimestamp;
+    private Long captureId;
 
     public PictureSnapshot() {
     }
@@ -30,13 +34,26 @@ public class PictureSnapshot {
     public PictureSnapshot(CameraType source, Long timestamp, byte[] data) {
         this.source = source;
         this.timestamp = timestamp;
-        this.data = data;
+        this.setData(data);
     }
 
     public PictureSnapshot(CameraType source, byte[] data) {
         this.source = source;
-        this.timestamp = (new Date()).getTime();
-        this.data = data;
+        this.timestamp = System.currentTimeMillis();
+        this.setData(data);
+    }
+
+    /**
+     * Build a "still same" heartbeat: a picture without data, unchanged since the last keyframe of its camera
+     * @param source the camera
+     * @param timestamp the capture time
+     * @param keyframeTimestamp the capture time of the keyframe the picture is the same as
+     * @return the heartbeat
+     */
+    public static PictureSnapshot stillSame(CameraType source, Long timestamp, long keyframeTimestamp) {
+        final PictureSnapshot pictureSnapshot = new PictureSnapshot(source, timestamp, null);
+        pictureSnapshot.keyframeTimestamp = keyframeTimestamp;
+        return pictureSnapshot;
     }
 
     public CameraType getSource() {
@@ -55,26 +72,122 @@ public class PictureSnapshot {
         this.timestamp = timestamp;
     }
 
+    /**
+     * @return the jpeg bytes of the picture, exactly
+     */
     public byte[] getData() {
         return data;
     }
 
     public void setData(byte[] data) {
         this.data = data;
+        this.dataLength = data != null ? data.length : 0;
+    }
+
+    public int getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * @return true if the snapshot has been taken offline and replayed from the spool
+     */
+    public boolean isReplayed() {
+        return replayed;
+    }
+
+    public void setReplayed(boolean replayed) {
+        this.replayed = replayed;
+    }
+
+    /**
+     * @return the id shared by the pictures taken at the same time from both cameras (the epoch time in ms their
+     * capture was triggered), null if the picture was taken alone
+     */
+    public Long getCaptureId() {
+        return captureId;
+    }
+
+    public void setCaptureId(Long captureId) {
+        this.captureId = captureId;
+    }
+
+    /**
+     * @return true if the snapshot is a "still same" heartbeat, without data
+     */
+    public boolean isStillSame() {
+        return this.keyframeTimestamp != null;
+    }
+
+    /**
+     * @return the capture time of the keyframe a "still same" heartbeat is the same as, null for a full picture
+     */
+    public Long getKeyframeTimestamp() {
+        return keyframeTimestamp;
+    }
+
+    /**
+     * Build the binary form of the snapshot: a compact header (source, epoch timestamp in ms, data size, capture id
+     * if paired)
+     * with the raw jpeg bytes attached, to be sent as a socket.io binary attachment.
+     * The attachment is the captured array itself, not a copy: it must not be modified once the snapshot is emitted.
+     * @return the json object holding the header fields and the binary data
+     * @throws JSONException if the header cannot be built
+     */
+    public JSONObject toBinaryJSONObject() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("source", Objects.toString(this.source));
+        obj.put("timestamp", this.timestamp != null ? this.timestamp : JSONObject.NULL);
+        obj.put("size", this.dataLength);
+        obj.put("data", this.data);
+        if (this.captureId != null) {
+            obj.put("captureId", this.captureId.longValue());
+        }
+        return obj;
+    }
+
+    /**
+     * Build the "still same" heartbeat form of the snapshot: source, epoch timestamp and keyframe epoch timestamp in ms
+     * @return the json object
+     * @throws JSONException if the object cannot be built
+     */
+    public JSONObject toStillSameJSONObject() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("source", Objects.toString(this.source));
+        obj.put("timestamp", this.timestamp != null ? this.timestamp : JSONObject.NULL);
+        obj.put("keyframeTimestamp", this.keyframeTimestamp);
+        if (this.captureId != null) {
+            obj.put("captureId", this.captureId.longValue());
+        }
+        return obj;
+    }
+
+    /**
+     * Format a snapshot timestamp as sent to the server
+     * @param timestamp the epoch timestamp in ms
+     * @return the formatted timestamp, null if the timestamp is null
+     */
+    public static String formatTimestamp(Long timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        try {
+            return TimestampFormat.formatIso8601(timestamp);
+        } catch (IllegalArgumentException ex) {
+            return Long.toString(timestamp);
+        }
     }
 
     @NonNull
     @Override
     public String toString() {
-        String tsRep;
-        try {
-            tsRep = DATE_FORMAT.format(timestamp);
-        } catch (IllegalArgumentException ex) {
-            tsRep = timestamp != null ? Long.toString(timestamp) : "null";
+        final String tsRep = Objects.toString(formatTimestamp(timestamp));
+        if (this.isStillSame()) {
+            return String.format(Locale.ENGLISH, "Proof{source = '%s', timestamp = '%s', stillSame = '%s'}",
+                    Objects.toString(this.source), tsRep, formatTimestamp(this.keyframeTimestamp));
         }
         return String.format(Locale.ENGLISH,
                 "Proof{source = '%s', timestamp = '%s', |data| = %d}",
-                Objects.toString(this.source), tsRep, (data != null ? data.length : -1));
+                Objects.toString(this.source), tsRep, (data != null ? dataLength : -1));
     }
 
     public static class Serializer implements JsonSerializer<PictureSnapshot> {
@@ -83,15 +196,10 @@ public class PictureSnapshot {
         public JsonElement serialize(PictureSnapshot pictureSnapshot, Type typeOfSrc, JsonSerializationContext context) {
             final JsonObject obj = new JsonObject();
             obj.add("source", new JsonPrimitive(Objects.toString(pictureSnapshot.getSource())));
-            String tsRep;
-            try {
-                tsRep = DATE_FORMAT.format(pictureSnapshot.getTimestamp());
-            } catch (IllegalArgumentException ex) {
-                tsRep = pictureSnapshot.getTimestamp() != null ? Long.toString(pictureSnapshot.getTimestamp()) : null;
-            }
+            final String tsRep = formatTimestamp(pictureSnapshot.getTimestamp());
             obj.add("timestamp", tsRep != null ? new JsonPrimitive(tsRep) : JsonNull.INSTANCE);
             String dataRepr = Base64.encodeToString(pictureSnapshot.getData(), 0,
-                    pictureSnapshot.getData().length, Base64.DEFAULT);
+                    pictureSnapshot.getDataLength(), Base64.DEFAULT);
             obj.add("data", new JsonPrimitive(dataRepr));
             return obj;
         }
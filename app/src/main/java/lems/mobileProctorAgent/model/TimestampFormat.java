@@ -0,0 +1,138 @@
+package lems.mobileProctorAgent.model;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Thread-safe ISO-8601 timestamp formatter, producing the same text as the
+ * "yyyy-MM-dd'T'HH:mm:ss.SSSZ" SimpleDateFormat pattern (e.g. 2022-02-09T10:15:30.123+0100).
+ * No shared mutable state: the zone offset is cached in an immutable holder, valid until the next offset
+ * transition of the zone, and each call only allocates the resulting string.
+ * The system default zone is cached as well, as looking it up clones the default TimeZone: it has to be refreshed
+ * with {@link #onDefaultZoneChanged()} when the device time zone changes.
+ */
+public final class TimestampFormat {
+    private static final int FORMATTED_LENGTH = 28;
+    private static final long MS_PER_DAY = 86_400_000L;
+    private static final int MAX_FORMATTED_YEAR = 9999;
+
+    private static volatile OffsetPeriod cachedOffset;
+    private static volatile ZoneId cachedDefaultZone;
+
+    private TimestampFormat() {
+    }
+
+    /**
+     * @param epochMs the epoch timestamp in ms
+     * @return the timestamp formatted in the system default time zone
+     */
+    public static String formatIso8601(long epochMs) {
+        ZoneId zone = cachedDefaultZone;
+        if (zone == null) {
+            zone = ZoneId.systemDefault();
+            cachedDefaultZone = zone;
+        }
+        return formatIso8601(epochMs, zone);
+    }
+
+    /**
+     * Forget the cached system default zone, looked up again on the next format
+     */
+    public static void onDefaultZoneChanged() {
+        cachedDefaultZone = null;
+    }
+
+    /**
+     * @param epochMs the epoch timestamp in ms
+     * @param zone the time zone
+     * @return the timestamp formatted in the given time zone
+     */
+    public static String formatIso8601(long epochMs, ZoneId zone) {
+        OffsetPeriod offsetPeriod = cachedOffset;
+        if (offsetPeriod == null || !offsetPeriod.covers(epochMs, zone)) {
+            offsetPeriod = OffsetPeriod.of(epochMs, zone);
+            cachedOffset = offsetPeriod;
+        }
+        final int offsetSeconds = offsetPeriod.offsetSeconds;
+        final long localMs = epochMs + offsetSeconds * 1000L;
+        final long epochDay = Math.floorDiv(localMs, MS_PER_DAY);
+        final int msOfDay = (int) Math.floorMod(localMs, MS_PER_DAY);
+
+        // Civil date from the epoch day (proleptic gregorian calendar)
+        final long z = epochDay + 719_468L;
+        final long era = Math.floorDiv(z, 146_097L);
+        final long dayOfEra = z - era * 146_097L;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        final int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > MAX_FORMATTED_YEAR) {
+            throw new IllegalArgumentException("Year out of range: " + year);
+        }
+
+        final char[] chars = new char[FORMATTED_LENGTH];
+        writeDigits(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, month, 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, day, 2);
+        chars[10] = 'T';
+        writeDigits(chars, 11, msOfDay / 3_600_000, 2);
+        chars[13] = ':';
+        writeDigits(chars, 14, (msOfDay / 60_000) % 60, 2);
+        chars[16] = ':';
+        writeDigits(chars, 17, (msOfDay / 1000) % 60, 2);
+        chars[19] = '.';
+        writeDigits(chars, 20, msOfDay % 1000, 3);
+        final int absOffsetMinutes = Math.abs(offsetSeconds) / 60;
+        chars[23] = offsetSeconds < 0 ? '-' : '+';
+        writeDigits(chars, 24, absOffsetMinutes / 60, 2);
+        writeDigits(chars, 26, absOffsetMinutes % 60, 2);
+        return new String(chars);
+    }
+
+    private static void writeDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    // Offset of a zone over the period between two of its transitions
+    private static final class OffsetPeriod {
+        private final ZoneId zone;
+        private final long validFromMs;
+        private final long validUntilMs;
+        private final int offsetSeconds;
+
+        private OffsetPeriod(ZoneId zone, long validFromMs, long validUntilMs, int offsetSeconds) {
+            this.zone = zone;
+            this.validFromMs = validFromMs;
+            this.validUntilMs = validUntilMs;
+            this.offsetSeconds = offsetSeconds;
+        }
+
+        boolean covers(long epochMs, ZoneId zone) {
+            return epochMs >= this.validFromMs && epochMs < this.validUntilMs && this.zone.equals(zone);
+        }
+
+        static OffsetPeriod of(long epochMs, ZoneId zone) {
+            final ZoneRules rules = zone.getRules();
+            final Instant instant = Instant.ofEpochMilli(epochMs);
+            final int offsetSeconds = rules.getOffset(instant).getTotalSeconds();
+            if (rules.isFixedOffset()) {
+                return new OffsetPeriod(zone, Long.MIN_VALUE, Long.MAX_VALUE, offsetSeconds);
+            }
+            final ZoneOffsetTransition previous = rules.previousTransition(instant.plusMillis(1));
+            final ZoneOffsetTransition next = rules.nextTransition(instant);
+            return new OffsetPeriod(zone,
+                    previous != null ? previous.toEpochSecond() * 1000L : Long.MIN_VALUE,
+                    next != null ? next.toEpochSecond() * 1000L : Long.MAX_VALUE,
+                    offsetSeconds);
+        }
+    }
+}
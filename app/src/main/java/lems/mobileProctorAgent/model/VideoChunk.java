@@ -0,0 +1,88 @@
+package lems.mobileProctorAgent.model;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A piece of an encoded video stream: one H.264 access unit (Annex B byte stream). Keyframes start with the codec
+ * configuration (SPS and PPS), so that a receiver can start decoding from any of them.
+ */
+public class VideoChunk {
+    private final PictureSnapshot.CameraType source;
+    private final long sequence;
+    private final long timestamp;
+    private final long presentationTimeUs;
+    private final boolean keyframe;
+    private final byte[] data;
+
+    /**
+     * @param source the camera
+     * @param sequence the rank of the chunk in the stream, from 0
+     * @param timestamp the epoch time in ms the chunk was encoded
+     * @param presentationTimeUs the presentation time of the frame, in the time base of the stream
+     * @param keyframe true if the chunk can be decoded alone
+     * @param data the encoded frame
+     */
+    public VideoChunk(PictureSnapshot.CameraType source, long sequence, long timestamp, long presentationTimeUs,
+                      boolean keyframe, byte[] data) {
+        this.source = source;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.presentationTimeUs = presentationTimeUs;
+        this.keyframe = keyframe;
+        this.data = data;
+    }
+
+    public PictureSnapshot.CameraType getSource() {
+        return source;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getPresentationTimeUs() {
+        return presentationTimeUs;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Build the binary form of the chunk: a compact header with the encoded frame attached as is, to be sent as a
+     * socket.io binary attachment
+     * @return the json object holding the header fields and the binary data
+     * @throws JSONException if the header cannot be built
+     */
+    public JSONObject toBinaryJSONObject() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("source", Objects.toString(this.source));
+        obj.put("sequence", this.sequence);
+        obj.put("timestamp", this.timestamp);
+        obj.put("pts", this.presentationTimeUs);
+        obj.put("keyframe", this.keyframe);
+        obj.put("data", this.data);
+        return obj;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "VideoChunk{source = '%s', sequence = %d, keyframe = %b, |data| = %d}",
+                Objects.toString(this.source), this.sequence, this.keyframe, this.data.length);
+    }
+}
@@ -3,6 +3,16 @@ package lems.mobileProctorAgent.model;
 public interface WebSocketEventTypes {
     String TEST_EVENT_TYPE = "testEvent";
     String PICTURE_SNAPSHOT_EVENT_TYPE = "pictureSnapshot";
+    String PICTURE_STILL_SAME_EVENT_TYPE = "pictureStillSame";
+    String PICTURE_SNAPSHOT_PAIR_EVENT_TYPE = "pictureSnapshotPair";
     String MOBILE_CONTROL_EVENT_TYPE = "mobileControl";
     String CONTROL_COMMAND_EVENT_TYPE = "controlCommand";
+    String AUTHENTICATE_EVENT_TYPE = "authenticate";
+    String SERVER_CAPABILITIES_EVENT_TYPE = "serverCapabilities";
+    String METRICS_REQUEST_EVENT_TYPE = "metricsRequest";
+    String TELEMETRY_EVENT_TYPE = "telemetry";
+    String CAPTURE_PROFILE_EVENT_TYPE = "captureProfile";
+    String VIDEO_CHUNK_EVENT_TYPE = "videoChunk";
+    String STILL_REQUEST_EVENT_TYPE = "stillRequest";
+    String HIGH_RES_SNAPSHOT_CHUNK_EVENT_TYPE = "highResSnapshotChunk";
 }
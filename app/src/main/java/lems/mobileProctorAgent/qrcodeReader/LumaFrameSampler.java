@@ -0,0 +1,101 @@
+package lems.mobileProctorAgent.qrcodeReader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Front stage of the QR code analysis: sample the centered region of interest of a luma (Y) plane into a reusable
+ * NV21 frame, downsampled so that its largest side does not exceed a maximum size.
+ * The plane is read in place: only the rows of the sampled pixels are read, nothing else is copied. QR code detection
+ * only uses the luma: the chroma of the frame is left neutral.
+ */
+public class LumaFrameSampler {
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    private final float roiFraction;
+    private final int maxFrameSize;
+    private byte[] frame;
+    private byte[] row;
+    private int frameWidth;
+    private int frameHeight;
+
+    /**
+     * @param roiFraction the part of the width and of the height kept around the center, in ]0, 1]
+     * @param maxFrameSize the maximum width and height of the sampled frame
+     */
+    public LumaFrameSampler(float roiFraction, int maxFrameSize) {
+        if (roiFraction <= 0f || roiFraction > 1f) {
+            throw new IllegalArgumentException("Region of interest fraction must be in ]0, 1]");
+        }
+        if (maxFrameSize < 2) {
+            throw new IllegalArgumentException("Maximum frame size must be at least 2");
+        }
+        this.roiFraction = roiFraction;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Sample the region of interest
+     * @param yPlane the luma plane, from its position
+     * @param rowStride the bytes between the start of two rows of the plane
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the NV21 frame of the region, valid until the next call; of {@link #getFrameWidth()} x
+     * {@link #getFrameHeight()}
+     */
+    public byte[] sample(ByteBuffer yPlane, int rowStride, int width, int height) {
+        final int roiWidth = Math.max(2, Math.round(width * this.roiFraction));
+        final int roiHeight = Math.max(2, Math.round(height * this.roiFraction));
+        final int step = (Math.max(roiWidth, roiHeight) - 1) / this.maxFrameSize + 1;
+        // NV21 needs even dimensions
+        final int sampledWidth = Math.max(2, (roiWidth / step) & ~1);
+        final int sampledHeight = Math.max(2, (roiHeight / step) & ~1);
+        final int left = (width - sampledWidth * step) / 2;
+        final int top = (height - sampledHeight * step) / 2;
+        this.ensureFrame(sampledWidth, sampledHeight);
+        final int base = yPlane.position();
+        if (step == 1) {
+            for (int row = 0; row < sampledHeight; row++) {
+                yPlane.position(base + (top + row) * rowStride + left);
+                yPlane.get(this.frame, row * sampledWidth, sampledWidth);
+            }
+        } else {
+            // Bulk reads of the sampled rows only, much faster than reading the pixels one by one from the plane
+            final int rowLength = (sampledWidth - 1) * step + 1;
+            if (this.row == null || this.row.length < rowLength) {
+                this.row = new byte[rowLength];
+            }
+            final byte[] frame = this.frame;
+            final byte[] row = this.row;
+            for (int r = 0; r < sampledHeight; r++) {
+                yPlane.position(base + (top + r * step) * rowStride + left);
+                yPlane.get(row, 0, rowLength);
+                final int dst = r * sampledWidth;
+                for (int c = 0; c < sampledWidth; c++) {
+                    frame[dst + c] = row[c * step];
+                }
+            }
+        }
+        yPlane.position(base);
+        return this.frame;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    private void ensureFrame(int width, int height) {
+        if (this.frame != null && this.frameWidth == width && this.frameHeight == height) {
+            return;
+        }
+        this.frameWidth = width;
+        this.frameHeight = height;
+        this.frame = new byte[width * height * 3 / 2];
+        for (int i = width * height; i < this.frame.length; i++) {
+            this.frame[i] = NEUTRAL_CHROMA;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package lems.mobileProctorAgent.qrcodeReader;
+
+import android.annotation.SuppressLint;
+import android.media.Image;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+
+/**
+ * Look for the lems pairing uri in the analyzed frames.
+ * A single scanner is used for the lifetime of the analyzer and at most one frame is processed at a time: frames
+ * arriving meanwhile are dropped. Frames are sampled to a downscaled centered region of interest before detection;
+ * after repeated misses, one full frame is analyzed in case the code is outside the region or too small once
+ * downscaled. The time from the creation of the analyzer to the first decoded uri is recorded.
+ */
+public class QRCodeAnalyzer implements ImageAnalysis.Analyzer, AutoCloseable {
+    private final static String LOG_TAG = QRCodeAnalyzer.class.getName();
+    public static final String LEMS_URI_SCHEME = "lems";
+
+    private final BarcodeScanner scanner;
+    private final Executor listenerExecutor;
+    private final Consumer<Uri> uriConsumer;
+    private final MetricsRegistry metricsRegistry;
+    private final LumaFrameSampler sampler;
+    private final int missesBeforeFullFrame;
+    // Only accessed while processing a frame
+    private int consecutiveMisses;
+    private final AtomicBoolean processing = new AtomicBoolean(false);
+    private final AtomicInteger analyzedFrameCount = new AtomicInteger();
+    private final long startTimeMs;
+    private volatile boolean uriFound;
+
+    /**
+     * @param listenerExecutor the executor of the scanner result listeners
+     * @param uriConsumer notified with the first lems uri found
+     * @param metricsRegistry the registry of the analysis metrics
+     * @param sampler the front stage sampling the analyzed region of the frames
+     * @param missesBeforeFullFrame the number of sampled frames without code before analyzing a full frame
+     */
+    public QRCodeAnalyzer(Executor listenerExecutor, Consumer<Uri> uriConsumer, MetricsRegistry metricsRegistry,
+                          LumaFrameSampler sampler, int missesBeforeFullFrame) {
+        this.scanner = BarcodeScanning.getClient(new BarcodeScannerOptions.Builder()
+                .setBarcodeFormats(Barcode.FORMAT_QR_CODE).build());
+        this.listenerExecutor = listenerExecutor;
+        this.uriConsumer = uriConsumer;
+        this.metricsRegistry = metricsRegistry;
+        this.sampler = sampler;
+        this.missesBeforeFullFrame = missesBeforeFullFrame;
+        this.startTimeMs = System.currentTimeMillis();
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy imageProxy) {
+        if (this.uriFound || !this.processing.compareAndSet(false, true)) {
+            this.metricsRegistry.counter(MetricNames.QR_FRAMES_SKIPPED).increment();
+            imageProxy.close();
+            return;
+        }
+        final long analysisStartMs = System.currentTimeMillis();
+        final boolean fullFrame = this.consecutiveMisses >= this.missesBeforeFullFrame;
+        final InputImage image;
+        try {
+            image = fullFrame ? toFullInputImage(imageProxy) : this.toSampledInputImage(imageProxy);
+        } catch (RuntimeException ex) {
+            Log.w(LOG_TAG, "Cannot prepare frame for analysis: " + ex.getMessage());
+            imageProxy.close();
+            this.processing.set(false);
+            return;
+        }
+        if (image == null) {
+            imageProxy.close();
+            this.processing.set(false);
+            return;
+        }
+        if (!fullFrame) {
+            // Region copied: the camera can reuse the frame
+            imageProxy.close();
+        } else {
+            this.metricsRegistry.counter(MetricNames.QR_FULL_FRAMES_ANALYZED).increment();
+        }
+        this.scanner.process(image)
+                .addOnSuccessListener(this.listenerExecutor, (barcodes) -> {
+                    if (this.onBarcodesDetected(barcodes) || fullFrame) {
+                        this.consecutiveMisses = 0;
+                    } else {
+                        this.consecutiveMisses++;
+                    }
+                })
+                .addOnFailureListener(this.listenerExecutor,
+                        (@NonNull Exception ex) -> Log.w(LOG_TAG, "Error while processing barcode: " + ex.getMessage()))
+                .addOnCompleteListener(this.listenerExecutor, (task) -> {
+                    if (fullFrame) {
+                        imageProxy.close();
+                    }
+                    this.analyzedFrameCount.incrementAndGet();
+                    this.metricsRegistry.counter(MetricNames.QR_FRAMES_ANALYZED).increment();
+                    this.metricsRegistry.histogram(MetricNames.QR_ANALYSIS_MS).record(System.currentTimeMillis() - analysisStartMs);
+                    this.processing.set(false);
+                });
+    }
+
+    private InputImage toSampledInputImage(ImageProxy imageProxy) {
+        final ImageProxy.PlaneProxy yPlane = imageProxy.getPlanes()[0];
+        final byte[] frame = this.sampler.sample(yPlane.getBuffer(), yPlane.getRowStride(),
+                imageProxy.getWidth(), imageProxy.getHeight());
+        return InputImage.fromByteArray(frame, this.sampler.getFrameWidth(), this.sampler.getFrameHeight(),
+                imageProxy.getImageInfo().getRotationDegrees(), InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    @SuppressLint("UnsafeOptInUsageError")
+    private static InputImage toFullInputImage(ImageProxy imageProxy) {
+        final Image mediaImage = imageProxy.getImage();
+        return mediaImage != null
+                ? InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees()) : null;
+    }
+
+    // True if a lems uri was found
+    private boolean onBarcodesDetected(List<Barcode> barcodes) {
+        for (Barcode barcode : barcodes) {
+            String rawUri = null;
+            if (barcode.getValueType() == Barcode.TYPE_URL) {
+                rawUri = barcode.getUrl().getUrl();
+            } else if (barcode.getValueType() == Barcode.TYPE_TEXT) {
+                rawUri = barcode.getRawValue();
+            }
+            if (rawUri == null) {
+                continue;
+            }
+            try {
+                final Uri uri = Uri.parse(rawUri);
+                if (uri != null && LEMS_URI_SCHEME.equals(uri.getScheme())) {
+                    this.onUriFound(uri);
+                    return true;
+                }
+            } catch (Exception ex) {
+                Log.i(LOG_TAG, "Unable to parse uri to Uri: " + ex.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void onUriFound(Uri uri) {
+        if (this.uriFound) {
+            return;
+        }
+        this.uriFound = true;
+        final long timeToFirstDecodeMs = System.currentTimeMillis() - this.startTimeMs;
+        this.metricsRegistry.histogram(MetricNames.QR_TIME_TO_FIRST_DECODE_MS).record(timeToFirstDecodeMs);
+        Log.i(LOG_TAG, "Pairing uri decoded in " + timeToFirstDecodeMs + " ms, after "
+                + this.analyzedFrameCount.get() + " analyzed frames");
+        this.uriConsumer.accept(uri);
+    }
+
+    @Override
+    public void close() {
+        this.scanner.close();
+    }
+}
@@ -11,23 +11,14 @@ import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.LifecycleOwner;
 
-import android.annotation.SuppressLint;
-import android.media.Image;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 import android.util.Size;
 import android.view.WindowManager;
 
-import com.google.android.gms.tasks.Task;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.mlkit.vision.barcode.BarcodeScanner;
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
-import com.google.mlkit.vision.barcode.common.Barcode;
-import com.google.mlkit.vision.common.InputImage;
 
-import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import lems.mobileProctorAgent.AppConstants;
@@ -39,7 +30,7 @@ public class QRCodeReaderActivity extends AppCompatActivity {
 
     private final static Size capturingResolution = new Size(1280, 720);
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
-    private BarcodeScannerOptions barcodeScannerOptions;
+    private QRCodeAnalyzer qrCodeAnalyzer;
 
     @GuardedBy("this")
     private Uri uriFound = null; // The uri that will be found
@@ -62,32 +53,21 @@ public class QRCodeReaderActivity extends AppCompatActivity {
 
         // Get CameraProvide
         this.cameraProviderFuture = ProcessCameraProvider.getInstance(this);
-        // Prepare Barscanner options
-        this.barcodeScannerOptions = new BarcodeScannerOptions.Builder()
-                .setBarcodeFormats(Barcode.FORMAT_QR_CODE).build();
         // Prepare image analysis
         ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
                 .setTargetResolution(capturingResolution)
                 .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                 .build();
-        // Retrieve main app to get the executor service
+        // Retrieve main app to get the analysis executor
         LEMSMobileProcotorAgentApplication app = (LEMSMobileProcotorAgentApplication) getApplication();
         // Create the bar code analyzer and set it to the analysis
-        imageAnalysis.setAnalyzer(app.getExecutorService(), imageProxy -> {
-            @SuppressLint("UnsafeOptInUsageError") Image mediaImage = imageProxy.getImage();
-            if (mediaImage != null) {
-                // Retrieve the image set with the good angle (based on the device rotation)
-                InputImage image = InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
-                // Get a scanner configured with our options
-                BarcodeScanner scanner = BarcodeScanning.getClient(this.barcodeScannerOptions);
-                // Start processing the image through the scanner.
-                // At the end, if an uri was found, prepare to unbind camera and return
-                this.startProcessingImage(scanner, image).addOnCompleteListener((listTask) -> {
-                    imageProxy.close();
-                    this.checkUriFoundAndstopPreviewAndFinish();
-                });
-            }
-        });
+        // At the end, if an uri was found, prepare to unbind camera and return
+        this.qrCodeAnalyzer = new QRCodeAnalyzer(app.getExecutors().analysis(), (uri) -> {
+            this.setUriFound(uri);
+            this.checkUriFoundAndstopPreviewAndFinish();
+        }, app.getMetricsRegistry(), new LumaFrameSampler(AppConstants.QR_ROI_FRACTION, AppConstants.QR_MAX_FRAME_SIZE),
+                AppConstants.QR_MISSES_BEFORE_FULL_FRAME);
+        imageAnalysis.setAnalyzer(app.getExecutors().analysis(), this.qrCodeAnalyzer);
         // Bind the camera to the analysis and preview
         cameraProviderFuture.addListener(() -> {
             try {
@@ -121,6 +101,9 @@ public class QRCodeReaderActivity extends AppCompatActivity {
         super.onDestroy();
         // Stop Preventing screen off
         getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        if (this.qrCodeAnalyzer != null) {
+            this.qrCodeAnalyzer.close();
+        }
     }
 
     private void bindCamera(@NonNull ProcessCameraProvider cameraProvider, ImageAnalysis imageAnalysis) {
@@ -138,34 +121,6 @@ public class QRCodeReaderActivity extends AppCompatActivity {
         cameraProvider.bindToLifecycle((LifecycleOwner) this, cameraSelector, imageAnalysis, preview);
     }
 
-    private Task<List<Barcode>> startProcessingImage(BarcodeScanner scanner, InputImage image) {
-        return scanner.process(image)
-                .addOnSuccessListener((List<Barcode> barcodes) -> {
-                    for (Barcode barcode : barcodes) {
-                        String rawUri = null;
-                        if (barcode.getValueType() == Barcode.TYPE_URL) {
-                            rawUri = barcode.getUrl().getUrl();
-                        } else if (barcode.getValueType() == Barcode.TYPE_TEXT) {
-                            rawUri = barcode.getRawValue();
-                        }
-                        if (rawUri != null) {
-                            try {
-                                Uri uri = Uri.parse(rawUri);
-                                if (uri != null && uri.getScheme().equals("lems")) {
-                                    this.setUriFound(uri);
-                                    break;
-                                }
-                            } catch (Exception ex){
-                                Log.i(LOG_TAG, "Unable to parse uri to Uri: " + ex.getMessage());
-                            }
-                        }
-                    }
-                })
-                .addOnFailureListener((@NonNull Exception ex) -> {
-                    Log.w(LOG_TAG, "Error while processing barcode: " + ex.getMessage());
-                });
-    }
-
     private synchronized void setUriFound(Uri uri) {
         this.uriFound = uri;
     }
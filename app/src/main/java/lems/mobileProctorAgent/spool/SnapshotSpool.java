@@ -0,0 +1,313 @@
+package lems.mobileProctorAgent.spool;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+/**
+ * Append-only on-disk spool of picture snapshots, used to keep the pictures taken while the websocket is down.
+ * Snapshots are written in fixed size memory-mapped segment files. Once the spool reaches its maximum size,
+ * the oldest segment is evicted to make room for the new pictures.
+ * Segment format: [int magic][int version] then the records. A segment of another format is ignored.
+ * Record format: [int length][byte source][long timestamp][long captureId][data], length covering all the fields but
+ * itself.
+ * A record already replayed has its length negated, so that a restarted spool does not replay it twice.
+ */
+public class SnapshotSpool implements AutoCloseable {
+    private final static String LOG_TAG = SnapshotSpool.class.getName();
+    private final static String SEGMENT_PREFIX = "segment-";
+    private final static String SEGMENT_SUFFIX = ".spool";
+    private final static int SEGMENT_MAGIC = 0x4C534E50; // "LSNP"
+    private final static int SEGMENT_HEADER_SIZE = 4 + 4;
+    private final static int FORMAT_VERSION = 1;
+    private final static int LENGTH_SIZE = 4;
+    // Size of the record fields between the length and the data
+    private final static int RECORD_META_SIZE = 1 + 8 + 8;
+    private final static long NULL_TIMESTAMP = Long.MIN_VALUE;
+    private final static long NULL_CAPTURE_ID = Long.MIN_VALUE;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ArrayDeque<Segment> segments;
+    private long nextSequence;
+    private int pendingCount;
+    private long evictedCount;
+
+    public SnapshotSpool(File directory, int segmentSize, long maxSizeBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2L, maxSizeBytes / segmentSize);
+        this.segments = new ArrayDeque<>();
+        this.recover();
+    }
+
+    /**
+     * Append a snapshot to the spool. If the spool is full, the oldest segment is evicted.
+     * @param pictureSnapshot the snapshot to store
+     * @return false if the snapshot is too large to fit in a segment
+     * @throws IOException if a new segment file cannot be created
+     */
+    public synchronized boolean append(PictureSnapshot pictureSnapshot) throws IOException {
+        final int recordLength = RECORD_META_SIZE + pictureSnapshot.getDataLength();
+        if (SEGMENT_HEADER_SIZE + LENGTH_SIZE + recordLength > this.segmentSize) {
+            Log.w(LOG_TAG, "Snapshot of " + pictureSnapshot.getDataLength() + " bytes does not fit in a spool segment");
+            return false;
+        }
+        Segment segment = this.segments.peekLast();
+        if (segment == null || !segment.canAppend(recordLength)) {
+            if (segment != null) {
+                segment.seal();
+            }
+            segment = this.createSegment();
+        }
+        segment.append(pictureSnapshot, recordLength);
+        this.pendingCount++;
+        return true;
+    }
+
+    /**
+     * Retrieve, without removing it, the oldest snapshot of the spool.
+     * @return the snapshot with its original timestamp, or null if the spool is empty
+     */
+    public synchronized PictureSnapshot peek() {
+        Segment segment;
+        while ((segment = this.segments.peekFirst()) != null) {
+            final PictureSnapshot pictureSnapshot = segment.peek();
+            if (pictureSnapshot != null) {
+                return pictureSnapshot;
+            }
+            if (segment == this.segments.peekLast()) {
+                return null;
+            }
+            this.segments.pollFirst();
+            segment.delete();
+        }
+        return null;
+    }
+
+    /**
+     * Remove the oldest snapshot of the spool, once replayed.
+     */
+    public synchronized void remove() {
+        if (this.peek() != null && this.segments.peekFirst().remove()) {
+            this.pendingCount--;
+        }
+    }
+
+    /**
+     * Retrieve and remove the oldest snapshot of the spool.
+     * @return the snapshot with its original timestamp, or null if the spool is empty
+     */
+    public synchronized PictureSnapshot poll() {
+        final PictureSnapshot pictureSnapshot = this.peek();
+        if (pictureSnapshot != null) {
+            this.remove();
+        }
+        return pictureSnapshot;
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.pendingCount == 0;
+    }
+
+    public synchronized int size() {
+        return this.pendingCount;
+    }
+
+    public synchronized long getEvictedCount() {
+        return this.evictedCount;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : this.segments) {
+            segment.seal();
+        }
+        this.segments.clear();
+    }
+
+    private Segment createSegment() throws IOException {
+        while (this.segments.size() >= this.maxSegments) {
+            final Segment evicted = this.segments.pollFirst();
+            Log.w(LOG_TAG, "Spool full, evict segment " + evicted.sequence + " with " + evicted.pendingCount + " snapshots");
+            this.evictedCount += evicted.pendingCount;
+            this.pendingCount -= evicted.pendingCount;
+            evicted.delete();
+        }
+        final File file = new File(this.directory, SEGMENT_PREFIX + this.nextSequence + SEGMENT_SUFFIX);
+        final Segment segment = new Segment(this.nextSequence++, file, this.segmentSize);
+        segment.writeHeader();
+        this.segments.addLast(segment);
+        return segment;
+    }
+
+    private void recover() throws IOException {
+        final File[] files = this.directory.listFiles();
+        final List<Long> sequences = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                final String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        sequences.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException ex) {
+                        Log.w(LOG_TAG, "Ignore unexpected spool file " + name);
+                    }
+                }
+            }
+        }
+        Collections.sort(sequences);
+        for (Long sequence : sequences) {
+            final File file = new File(this.directory, SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+            final Segment segment = new Segment(sequence, file, this.segmentSize);
+            segment.scan();
+            this.segments.addLast(segment);
+            this.pendingCount += segment.pendingCount;
+            this.nextSequence = sequence + 1;
+        }
+        if (this.pendingCount > 0) {
+            Log.i(LOG_TAG, "Recovered " + this.pendingCount + " spooled snapshots");
+        }
+    }
+
+    private static class Segment {
+        private final long sequence;
+        private final File file;
+        private final int size;
+        // The mapping is only released once the buffer is garbage collected, even after the file is deleted
+        private MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+        private int pendingCount;
+
+        Segment(long sequence, File file, int size) throws IOException {
+            this.sequence = sequence;
+            this.file = file;
+            this.size = size;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                // The mapping stays valid once the channel is closed
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        void writeHeader() {
+            this.buffer.putInt(0, SEGMENT_MAGIC);
+            this.buffer.putInt(4, FORMAT_VERSION);
+            this.writePosition = SEGMENT_HEADER_SIZE;
+            this.readPosition = SEGMENT_HEADER_SIZE;
+        }
+
+        boolean canAppend(int recordLength) {
+            return this.writePosition + LENGTH_SIZE + recordLength <= this.size;
+        }
+
+        void append(PictureSnapshot pictureSnapshot, int recordLength) {
+            this.buffer.position(this.writePosition + LENGTH_SIZE);
+            this.buffer.put((byte) pictureSnapshot.getSource().ordinal());
+            this.buffer.putLong(pictureSnapshot.getTimestamp() != null ? pictureSnapshot.getTimestamp() : NULL_TIMESTAMP);
+            this.buffer.putLong(pictureSnapshot.getCaptureId() != null ? pictureSnapshot.getCaptureId() : NULL_CAPTURE_ID);
+            this.buffer.put(pictureSnapshot.getData(), 0, pictureSnapshot.getDataLength());
+            // Length written last: a record is visible to the reader only once complete
+            this.buffer.putInt(this.writePosition, recordLength);
+            this.writePosition += LENGTH_SIZE + recordLength;
+            this.pendingCount++;
+        }
+
+        PictureSnapshot peek() {
+            if (!this.skipReplayed()) {
+                return null;
+            }
+            final int length = this.buffer.getInt(this.readPosition);
+            this.buffer.position(this.readPosition + LENGTH_SIZE);
+            final PictureSnapshot.CameraType source = PictureSnapshot.CameraType.values()[this.buffer.get()];
+            final long timestamp = this.buffer.getLong();
+            final long captureId = this.buffer.getLong();
+            final byte[] data = new byte[length - RECORD_META_SIZE];
+            this.buffer.get(data);
+            final PictureSnapshot pictureSnapshot = new PictureSnapshot(source,
+                    timestamp != NULL_TIMESTAMP ? timestamp : null, data);
+            pictureSnapshot.setCaptureId(captureId != NULL_CAPTURE_ID ? captureId : null);
+            pictureSnapshot.setReplayed(true);
+            return pictureSnapshot;
+        }
+
+        boolean remove() {
+            if (!this.skipReplayed()) {
+                return false;
+            }
+            final int length = this.buffer.getInt(this.readPosition);
+            this.buffer.putInt(this.readPosition, -length);
+            this.readPosition += LENGTH_SIZE + length;
+            this.pendingCount--;
+            return true;
+        }
+
+        // Move the read position to the next record not replayed yet. Returns false if there is none
+        private boolean skipReplayed() {
+            while (this.readPosition < this.writePosition) {
+                final int length = this.buffer.getInt(this.readPosition);
+                if (length > 0) {
+                    return true;
+                }
+                this.readPosition += LENGTH_SIZE - length;
+            }
+            return false;
+        }
+
+        // Rebuild positions and pending count of a segment written by a previous run
+        void scan() {
+            if (this.buffer.getInt(0) != SEGMENT_MAGIC || this.buffer.getInt(4) != FORMAT_VERSION) {
+                Log.w(LOG_TAG, "Ignore spool segment " + this.sequence + " of unknown format");
+                this.writePosition = this.size;
+                this.readPosition = this.size;
+                return;
+            }
+            int position = SEGMENT_HEADER_SIZE;
+            this.readPosition = position;
+            boolean allReplayed = true;
+            while (position + LENGTH_SIZE <= this.size) {
+                final int length = this.buffer.getInt(position);
+                final int recordLength = Math.abs(length);
+                if (length == 0 || recordLength < RECORD_META_SIZE || position + LENGTH_SIZE + recordLength > this.size) {
+                    break;
+                }
+                if (length > 0) {
+                    this.pendingCount++;
+                    allReplayed = false;
+                } else if (allReplayed) {
+                    this.readPosition = position + LENGTH_SIZE + recordLength;
+                }
+                position += LENGTH_SIZE + recordLength;
+            }
+            this.writePosition = position;
+        }
+
+        void seal() {
+            if (this.buffer != null) {
+                this.buffer.force();
+            }
+        }
+
+        void delete() {
+            // The file can be deleted while mapped; its storage is reclaimed once the mapping is released
+            this.buffer = null;
+            if (!this.file.delete()) {
+                Log.w(LOG_TAG, "Cannot delete spool segment " + this.file);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package lems.mobileProctorAgent.video;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.model.VideoChunk;
+
+/**
+ * Hardware H.264 encoder fed by a surface: the camera draws its frames on {@link #getInputSurface()}, each encoded
+ * frame is handed to the chunk consumer, on the encoder thread.
+ * The codec configuration is kept and prepended to each keyframe.
+ * On a codec error that is not transient, the encoder closes itself and notifies the error consumer: the camera has
+ * to draw on the surface of a new start.
+ */
+public class H264Encoder implements AutoCloseable {
+    private final static String LOG_TAG = H264Encoder.class.getName();
+    private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+
+    private final PictureSnapshot.CameraType source;
+    private final VideoSettings videoSettings;
+    private final Consumer<VideoChunk> chunkConsumer;
+    private final Consumer<Exception> errorConsumer;
+    private HandlerThread encoderThread;
+    private MediaCodec codec;
+    private Surface inputSurface;
+    private byte[] codecConfig;
+    private long sequence;
+
+    public H264Encoder(PictureSnapshot.CameraType source, VideoSettings videoSettings, Consumer<VideoChunk> chunkConsumer,
+                       Consumer<Exception> errorConsumer) {
+        this.source = source;
+        this.videoSettings = videoSettings;
+        this.chunkConsumer = chunkConsumer;
+        this.errorConsumer = errorConsumer;
+    }
+
+    /**
+     * Configure and start the encoder
+     * @param resolution the size of the frames the camera will draw
+     * @throws IOException if no H.264 encoder is available
+     */
+    public synchronized void start(Size resolution) throws IOException {
+        if (this.codec != null) {
+            return;
+        }
+        this.encoderThread = new HandlerThread("lems-h264");
+        this.encoderThread.start();
+        final Handler handler = new Handler(this.encoderThread.getLooper());
+        this.codec = MediaCodec.createEncoderByType(MIME_TYPE);
+        this.codec.setCallback(new EncoderCallback(), handler);
+        try {
+            this.codec.configure(this.buildFormat(resolution, true), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        } catch (MediaCodec.CodecException ex) {
+            // Not all encoders support constant bit rate
+            Log.w(LOG_TAG, "Cannot configure encoder with constant bit rate: " + ex.getMessage());
+            this.codec.reset();
+            this.codec.setCallback(new EncoderCallback(), handler);
+            this.codec.configure(this.buildFormat(resolution, false), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        }
+        this.inputSurface = this.codec.createInputSurface();
+        this.codecConfig = null;
+        this.sequence = 0;
+        this.codec.start();
+        Log.i(LOG_TAG, "Encoder started at " + resolution + " with " + this.videoSettings);
+    }
+
+    private MediaFormat buildFormat(Size resolution, boolean constantBitRate) {
+        final MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, resolution.getWidth(), resolution.getHeight());
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, this.videoSettings.getBitRate());
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, this.videoSettings.getFrameRate());
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, this.videoSettings.getKeyframeIntervalS());
+        if (constantBitRate) {
+            // Steady bit rate: the stream shares the uplink with the other events
+            format.setInteger(MediaFormat.KEY_BITRATE_MODE, MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR);
+        }
+        return format;
+    }
+
+    public synchronized Surface getInputSurface() {
+        return this.inputSurface;
+    }
+
+    public synchronized boolean isStarted() {
+        return this.codec != null;
+    }
+
+    /**
+     * Ask for a keyframe as soon as possible, e.g. after chunks have been lost
+     */
+    public synchronized void requestKeyframe() {
+        if (this.codec == null) {
+            return;
+        }
+        final Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        try {
+            this.codec.setParameters(params);
+        } catch (IllegalStateException ex) {
+            Log.w(LOG_TAG, "Cannot request keyframe: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Stop the encoder. It can be started again.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.codec == null) {
+            return;
+        }
+        Log.i(LOG_TAG, "Stop encoder");
+        try {
+            this.codec.stop();
+        } catch (IllegalStateException ex) {
+            Log.w(LOG_TAG, "Encoder not stopped cleanly: " + ex.getMessage());
+        }
+        this.codec.release();
+        this.codec = null;
+        this.inputSurface.release();
+        this.inputSurface = null;
+        this.encoderThread.quitSafely();
+        this.encoderThread = null;
+    }
+
+    private synchronized VideoChunk toChunk(MediaCodec codec, int index, MediaCodec.BufferInfo info) {
+        if (codec != this.codec) {
+            return null;
+        }
+        final ByteBuffer buffer = codec.getOutputBuffer(index);
+        if (buffer == null || info.size == 0) {
+            return null;
+        }
+        buffer.position(info.offset);
+        buffer.limit(info.offset + info.size);
+        if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+            this.codecConfig = new byte[info.size];
+            buffer.get(this.codecConfig);
+            return null;
+        }
+        final boolean keyframe = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        final int prefixLength = keyframe && this.codecConfig != null ? this.codecConfig.length : 0;
+        final byte[] data = new byte[prefixLength + info.size];
+        if (prefixLength > 0) {
+            System.arraycopy(this.codecConfig, 0, data, 0, prefixLength);
+        }
+        buffer.get(data, prefixLength, info.size);
+        return new VideoChunk(this.source, this.sequence++, System.currentTimeMillis(), info.presentationTimeUs,
+                keyframe, data);
+    }
+
+    private class EncoderCallback extends MediaCodec.Callback {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            // Input from the surface
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            final VideoChunk chunk;
+            try {
+                chunk = toChunk(codec, index, info);
+                codec.releaseOutputBuffer(index, false);
+            } catch (IllegalStateException ex) {
+                // Encoder stopped meanwhile
+                return;
+            }
+            if (chunk != null) {
+                chunkConsumer.accept(chunk);
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException ex) {
+            if (ex.isTransient()) {
+                Log.w(LOG_TAG, "Transient encoder error: " + ex.getMessage());
+                return;
+            }
+            Log.e(LOG_TAG, "Encoder error: " + ex.getMessage());
+            synchronized (H264Encoder.this) {
+                if (codec != H264Encoder.this.codec) {
+                    return; // already closed
+                }
+                close();
+            }
+            errorConsumer.accept(ex);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            Log.d(LOG_TAG, "Encoder output format: " + format);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package lems.mobileProctorAgent.video;
+
+import android.util.Log;
+
+import lems.mobileProctorAgent.camera.CaptureManager;
+
+/**
+ * Capture mode asked for a session by the query parameters of its link: "capture=video" for a video stream, with an
+ * optional "keyframeInterval" in seconds; pictures otherwise.
+ */
+public class SessionCaptureParameters {
+    private final static String LOG_TAG = SessionCaptureParameters.class.getName();
+    public static final String CAPTURE_PARAMETER = "capture";
+    public static final String KEYFRAME_INTERVAL_PARAMETER = "keyframeInterval";
+    private static final String VIDEO_CAPTURE = "video";
+
+    private final CaptureManager.CaptureMode captureMode;
+    private final VideoSettings videoSettings;
+
+    private SessionCaptureParameters(CaptureManager.CaptureMode captureMode, VideoSettings videoSettings) {
+        this.captureMode = captureMode;
+        this.videoSettings = videoSettings;
+    }
+
+    /**
+     * @param capture the value of the capture parameter, null if absent
+     * @param keyframeInterval the value of the keyframe interval parameter, null if absent
+     * @param defaultVideoSettings the video settings of the sessions that do not set them
+     * @return the parameters of the session; an invalid keyframe interval is ignored
+     */
+    public static SessionCaptureParameters parse(String capture, String keyframeInterval, VideoSettings defaultVideoSettings) {
+        if (!VIDEO_CAPTURE.equalsIgnoreCase(capture)) {
+            return new SessionCaptureParameters(CaptureManager.CaptureMode.STILLS, defaultVideoSettings);
+        }
+        VideoSettings videoSettings = defaultVideoSettings;
+        if (keyframeInterval != null) {
+            try {
+                final int keyframeIntervalS = Integer.parseInt(keyframeInterval.trim());
+                if (keyframeIntervalS > 0) {
+                    videoSettings = defaultVideoSettings.withKeyframeIntervalS(keyframeIntervalS);
+                } else {
+                    Log.w(LOG_TAG, "Invalid keyframe interval: " + keyframeInterval);
+                }
+            } catch (NumberFormatException ex) {
+                Log.w(LOG_TAG, "Invalid keyframe interval: " + keyframeInterval);
+            }
+        }
+        return new SessionCaptureParameters(CaptureManager.CaptureMode.VIDEO, videoSettings);
+    }
+
+    public CaptureManager.CaptureMode getCaptureMode() {
+        return captureMode;
+    }
+
+    public VideoSettings getVideoSettings() {
+        return videoSettings;
+    }
+}
@@ -0,0 +1,362 @@
+package lems.mobileProctorAgent.video;
+
+import android.util.Log;
+import android.util.Size;
+
+import androidx.activity.ComponentActivity;
+import androidx.annotation.NonNull;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageCapture;
+import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.core.content.ContextCompat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import lems.mobileProctorAgent.camera.CameraBackend;
+import lems.mobileProctorAgent.camera.CaptureProfile;
+import lems.mobileProctorAgent.camera.CaptureManager;
+import lems.mobileProctorAgent.camera.CaptureSettings;
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.model.VideoChunk;
+import lems.mobileProctorAgent.websocket.SnapshotDeliveryListener;
+import lems.mobileProctorAgent.websocket.StillRequestListener;
+import lems.mobileProctorAgent.websocket.TransportCapabilities;
+import lems.mobileProctorAgent.websocket.WebsocketListener;
+import lems.mobileProctorAgent.websocket.WebsocketManager;
+
+/**
+ * Capture the exam environment as a continuous H.264 stream instead of periodic pictures.
+ * The camera preview is drawn on the input surface of a hardware encoder, and the encoded chunks are sent as
+ * "videoChunk" events. A capture use case is bound beside the preview, so that the server can still ask for a picture
+ * at any time ("stillRequest" event); the pictures go the usual way.
+ * Chunks are sent from the sender executor and acknowledged by the server, with a bounded number and size of chunks
+ * not acknowledged yet (see {@link VideoChunkFlowControl}): past it, or while the server does not accept the stream,
+ * chunks are dropped up to the next keyframe, which is requested at once.
+ * On an encoder error, the capture is bound again with a new encoder, a limited number of times per opening.
+ * The stream settings are capped by the capture profile (thermal and battery pressure): a profile change that alters
+ * them restarts the capture.
+ */
+public class VideoCaptureManager implements CaptureManager, StillRequestListener, WebsocketListener,
+        SnapshotDeliveryListener {
+    private final static String LOG_TAG = VideoCaptureManager.class.getName();
+    public static final int DFLT_MAX_PENDING_CHUNKS = 30;
+    public static final int DFLT_MAX_PENDING_BYTES = 128 * 1024;
+    public static final long DFLT_CHUNK_ACK_TIMEOUT_MS = 5000L;
+    public static final int DFLT_MAX_ENCODER_RESTARTS = 3;
+
+    private final Executor senderExecutor;
+    private final Executor pictureCallbackExecutor;
+    private final WebsocketManager wsMgr;
+    private final Consumer<PictureSnapshot> stillConsumer;
+    private final MetricsRegistry metricsRegistry;
+    private final PictureSnapshot.CameraType cameraType;
+    private final CaptureSettings stillSettings;
+    private final VideoChunkFlowControl flowControl;
+    private volatile VideoSettings videoSettings;
+    private CaptureProfile captureProfile = CaptureProfile.NOMINAL;
+    private ComponentActivity context;
+    private volatile H264Encoder encoder;
+    // Set from the main thread
+    private Preview preview;
+    private volatile ImageCapture imageCapture;
+    private volatile boolean opened;
+    private int encoderRestartCount;
+
+    /**
+     * @param senderExecutor the executor sending the chunks
+     * @param pictureCallbackExecutor the executor of the still picture callbacks
+     * @param wsMgr the websocket the chunks are sent over
+     * @param stillConsumer the consumer of the still pictures
+     * @param metricsRegistry the registry of the stream metrics
+     * @param cameraType the camera streamed
+     * @param videoSettings the initial stream settings
+     * @param stillSettings the format of the still pictures
+     */
+    public VideoCaptureManager(Executor senderExecutor, Executor pictureCallbackExecutor, WebsocketManager wsMgr,
+                               Consumer<PictureSnapshot> stillConsumer,
+                               MetricsRegistry metricsRegistry, PictureSnapshot.CameraType cameraType,
+                               VideoSettings videoSettings, CaptureSettings stillSettings) {
+        this.senderExecutor = senderExecutor;
+        this.pictureCallbackExecutor = pictureCallbackExecutor;
+        this.wsMgr = wsMgr;
+        this.stillConsumer = stillConsumer;
+        this.metricsRegistry = metricsRegistry;
+        this.cameraType = cameraType;
+        this.videoSettings = videoSettings;
+        this.stillSettings = stillSettings;
+        this.flowControl = new VideoChunkFlowControl(DFLT_MAX_PENDING_CHUNKS, DFLT_MAX_PENDING_BYTES, DFLT_CHUNK_ACK_TIMEOUT_MS);
+        this.metricsRegistry.gauge(MetricNames.VIDEO_PENDING_CHUNKS, this.flowControl::getInFlightChunkCount);
+        this.metricsRegistry.gauge(MetricNames.VIDEO_PENDING_BYTES, this.flowControl::getInFlightBytes);
+    }
+
+    @Override
+    public void setContext(ComponentActivity context) {
+        this.context = context;
+    }
+
+    public VideoSettings getVideoSettings() {
+        return this.videoSettings;
+    }
+
+    /**
+     * @param videoSettings the stream settings, applied from the next opening
+     */
+    public void setVideoSettings(VideoSettings videoSettings) {
+        this.videoSettings = videoSettings;
+    }
+
+    /**
+     * Cap the stream settings by a capture profile. If the capture is opened and its settings change, it is restarted.
+     * @param captureProfile the new profile
+     */
+    public synchronized void applyCaptureProfile(CaptureProfile captureProfile) {
+        final VideoSettings previous = this.captureProfile.constrain(this.videoSettings);
+        this.captureProfile = captureProfile;
+        final VideoSettings videoSettings = captureProfile.constrain(this.videoSettings);
+        if (!this.opened || videoSettings.equals(previous)) {
+            return;
+        }
+        Log.i(LOG_TAG, "Restart video capture with " + videoSettings + " (" + captureProfile + ")");
+        this.close();
+        this.startCapture();
+    }
+
+    @Override
+    public synchronized void open() {
+        if (this.opened) {
+            return;
+        }
+        Log.i(LOG_TAG, "Opening video capture from camera " + this.cameraType + " with "
+                + this.captureProfile.constrain(this.videoSettings) + " (" + this.captureProfile + ")");
+        this.encoderRestartCount = 0;
+        this.startCapture();
+    }
+
+    // Must hold the lock
+    private void startCapture() {
+        this.opened = true;
+        this.flowControl.reset();
+        final VideoSettings settings = this.captureProfile.constrain(this.videoSettings);
+        final H264Encoder encoder = new H264Encoder(this.cameraType, settings, this::onChunk, this::onEncoderError);
+        this.encoder = encoder;
+        final Executor mainExecutor = ContextCompat.getMainExecutor(this.context);
+        final ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this.context);
+        cameraProviderFuture.addListener(() -> {
+            try {
+                final ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
+                this.preview = new Preview.Builder()
+                        .setTargetResolution(new Size(settings.getWidth(), settings.getHeight()))
+                        .build();
+                this.preview.setSurfaceProvider(mainExecutor, (request) -> {
+                    try {
+                        encoder.start(request.getResolution());
+                    } catch (IOException | IllegalStateException ex) {
+                        Log.e(LOG_TAG, "Cannot start video encoder: " + ex.getMessage());
+                        request.willNotProvideSurface();
+                        return;
+                    }
+                    // The encoder is stopped once the camera does not draw on its surface anymore
+                    request.provideSurface(encoder.getInputSurface(), mainExecutor, (result) -> encoder.close());
+                });
+                this.imageCapture = new ImageCapture.Builder()
+                        .setCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY)
+                        .setTargetResolution(new Size(this.stillSettings.getPictureWidth(), this.stillSettings.getPictureHeight()))
+                        .setJpegQuality(this.stillSettings.getJpegQuality())
+                        .build();
+                cameraProvider.bindToLifecycle(this.context, this.cameraType == PictureSnapshot.CameraType.FRONT
+                        ? CameraSelector.DEFAULT_FRONT_CAMERA : CameraSelector.DEFAULT_BACK_CAMERA,
+                        this.preview, this.imageCapture);
+            } catch (InterruptedException | ExecutionException | IllegalStateException | IllegalArgumentException ex) {
+                Log.e(LOG_TAG, "Cannot bind camera " + this.cameraType + " for video capture", ex);
+            }
+        }, mainExecutor);
+    }
+
+    @Override
+    public boolean isOpened() {
+        return this.opened;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!this.opened) {
+            return;
+        }
+        Log.i(LOG_TAG, "Closing video capture");
+        this.opened = false;
+        final ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this.context);
+        cameraProviderFuture.addListener(() -> {
+            try {
+                final ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
+                if (this.preview != null) {
+                    cameraProvider.unbind(this.preview, this.imageCapture);
+                }
+                this.preview = null;
+                this.imageCapture = null;
+            } catch (InterruptedException | ExecutionException ex) {
+                Log.w(LOG_TAG, "interruption or execution ex while releasing camera", ex);
+            }
+        }, ContextCompat.getMainExecutor(this.context));
+    }
+
+    // On the encoder thread
+    private void onChunk(VideoChunk chunk) {
+        if (!this.opened) {
+            return;
+        }
+        final boolean streamAccepted = this.wsMgr.isAuthenticated()
+                && this.wsMgr.getCapabilities().supports(TransportCapabilities.VIDEO_STREAM);
+        final VideoChunkFlowControl.Decision decision = this.flowControl.onChunk(chunk, streamAccepted,
+                System.currentTimeMillis());
+        if (decision != VideoChunkFlowControl.Decision.SEND) {
+            this.metricsRegistry.counter(MetricNames.VIDEO_CHUNKS_DROPPED).increment();
+            if (decision == VideoChunkFlowControl.Decision.DROP_AND_REQUEST_KEYFRAME) {
+                this.requestKeyframe();
+            }
+            return;
+        }
+        this.senderExecutor.execute(() -> {
+            if (!this.wsMgr.sendVideoChunk(chunk)) {
+                this.metricsRegistry.counter(MetricNames.VIDEO_CHUNKS_DROPPED).increment();
+                if (this.flowControl.onSendFailed(chunk)) {
+                    this.requestKeyframe();
+                }
+            }
+        });
+    }
+
+    // The chunks up to the next keyframe cannot be decoded anymore: ask for a keyframe at once
+    private void requestKeyframe() {
+        final H264Encoder currentEncoder = this.encoder;
+        if (currentEncoder != null) {
+            currentEncoder.requestKeyframe();
+        }
+    }
+
+    // On the encoder thread, the encoder being already closed: bind the capture again with a new encoder
+    private synchronized void onEncoderError(Exception ex) {
+        this.metricsRegistry.counter(MetricNames.VIDEO_ENCODER_ERRORS).increment();
+        if (!this.opened) {
+            return;
+        }
+        if (this.encoderRestartCount >= DFLT_MAX_ENCODER_RESTARTS) {
+            Log.e(LOG_TAG, "Video encoder failed " + (this.encoderRestartCount + 1) + " times, stop video capture: " + ex.getMessage());
+            this.close();
+            return;
+        }
+        this.encoderRestartCount++;
+        Log.w(LOG_TAG, "Video encoder failed, restart video capture: " + ex.getMessage());
+        this.close();
+        this.startCapture();
+    }
+
+    @Override
+    public void onSnapshotAcknowledged(PictureSnapshot pictureSnapshot, int wireSizeBytes, long emitTimeMs, long ackTimeMs) {
+    }
+
+    @Override
+    public void onVideoChunkAcknowledged(VideoChunk videoChunk, long emitTimeMs, long ackTimeMs) {
+        this.flowControl.onAcknowledged(videoChunk);
+    }
+
+    @Override
+    public void onStillRequested() {
+        Log.i(LOG_TAG, "Still requested");
+        this.takeStill(new CameraBackend.PictureCallback() {
+            @Override
+            public void onPictureTaken(PictureSnapshot pictureSnapshot) {
+                stillConsumer.accept(pictureSnapshot);
+            }
+
+            @Override
+            public void onPictureFailed(Exception ex) {
+                Log.w(LOG_TAG, "Still not captured from cam. " + cameraType + ": " + ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Only from the streamed camera, in the format of the stills: the capture use case is bound with the stream
+     */
+    @Override
+    public void takePriorityPicture(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings,
+                                    CameraBackend.PictureCallback callback) {
+        if (cameraType != this.cameraType) {
+            callback.onPictureFailed(new IllegalStateException("Camera " + cameraType + " not streamed"));
+            return;
+        }
+        this.takeStill(callback);
+    }
+
+    private void takeStill(CameraBackend.PictureCallback callback) {
+        final ImageCapture currentImageCapture = this.imageCapture;
+        if (!this.opened || currentImageCapture == null) {
+            callback.onPictureFailed(new IllegalStateException("Video capture not opened"));
+            return;
+        }
+        currentImageCapture.takePicture(this.pictureCallbackExecutor, new ImageCapture.OnImageCapturedCallback() {
+            @Override
+            public void onCaptureSuccess(@NonNull ImageProxy image) {
+                final PictureSnapshot still;
+                try {
+                    // Copy buffer data to an array of the exact picture size, attached as is to the websocket event:
+                    // the image has to be closed as soon as possible
+                    final ByteBuffer bb = image.getPlanes()[0].getBuffer();
+                    final byte[] pictData = new byte[bb.remaining()];
+                    bb.get(pictData);
+                    still = new PictureSnapshot(cameraType, System.currentTimeMillis(), pictData);
+                } finally {
+                    image.close();
+                }
+                callback.onPictureTaken(still);
+            }
+
+            @Override
+            public void onError(@NonNull ImageCaptureException exception) {
+                callback.onPictureFailed(exception);
+            }
+        });
+    }
+
+    @Override
+    public void onConnect(Object[] info) {
+    }
+
+    @Override
+    public void onAuthenticated(TransportCapabilities capabilities) {
+        // A new connection cannot decode the stream before its next keyframe
+        final H264Encoder currentEncoder = this.encoder;
+        if (this.opened && currentEncoder != null) {
+            currentEncoder.requestKeyframe();
+        }
+    }
+
+    @Override
+    public void onDisconnect(Object[] info) {
+        // The chunks in flight will not be acknowledged anymore
+        this.flowControl.reset();
+    }
+
+    @Override
+    public void onReconnecting(int attempt) {
+    }
+
+    @Override
+    public void onConnectError(Exception ex) {
+    }
+
+    @Override
+    public void onDataSent(String eventType, Object data) {
+    }
+}
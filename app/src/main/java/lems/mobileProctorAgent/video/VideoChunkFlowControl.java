@@ -0,0 +1,139 @@
+package lems.mobileProctorAgent.video;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import lems.mobileProctorAgent.model.VideoChunk;
+
+/**
+ * Flow control of the video chunks: bound the chunks handed to the websocket and not acknowledged yet, in number and
+ * in bytes, so that the stream never queues up more than the uplink carries. Once a chunk is dropped, the following
+ * ones cannot be decoded anymore: they are dropped up to the next keyframe. A chunk whose acknowledgement does not
+ * come in time no longer counts as in flight.
+ * Thread-safe.
+ */
+public class VideoChunkFlowControl {
+
+    public enum Decision {
+        /** hand the chunk to the websocket */
+        SEND,
+        /** drop the chunk */
+        DROP,
+        /** drop the chunk and ask the encoder for a keyframe at once */
+        DROP_AND_REQUEST_KEYFRAME
+    }
+
+    private final int maxInFlightChunks;
+    private final int maxInFlightBytes;
+    private final long ackTimeoutMs;
+    private final ArrayDeque<InFlightChunk> inFlightChunks;
+    private int inFlightBytes;
+    private boolean awaitingKeyframe;
+
+    /**
+     * @param maxInFlightChunks the maximum number of chunks not acknowledged yet
+     * @param maxInFlightBytes the maximum size of the chunks not acknowledged yet; a chunk is always accepted when
+     *                         none is in flight
+     * @param ackTimeoutMs the time after which a chunk not acknowledged no longer counts as in flight
+     */
+    public VideoChunkFlowControl(int maxInFlightChunks, int maxInFlightBytes, long ackTimeoutMs) {
+        this.maxInFlightChunks = maxInFlightChunks;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.inFlightChunks = new ArrayDeque<>();
+    }
+
+    /**
+     * @param chunk a chunk just encoded
+     * @param streamAccepted true if the server currently accepts the stream
+     * @param nowMs the current time (epoch ms)
+     * @return what to do with the chunk. If it is to be sent, it now counts as in flight.
+     */
+    public synchronized Decision onChunk(VideoChunk chunk, boolean streamAccepted, long nowMs) {
+        this.expire(nowMs);
+        if (this.awaitingKeyframe && !chunk.isKeyframe()) {
+            return Decision.DROP;
+        }
+        final int length = chunk.getData().length;
+        if (!streamAccepted || this.inFlightChunks.size() >= this.maxInFlightChunks
+                || (!this.inFlightChunks.isEmpty() && this.inFlightBytes + length > this.maxInFlightBytes)) {
+            return this.skipToNextKeyframe();
+        }
+        this.awaitingKeyframe = false;
+        this.inFlightChunks.add(new InFlightChunk(chunk, nowMs));
+        this.inFlightBytes += length;
+        return Decision.SEND;
+    }
+
+    /**
+     * @param chunk a chunk the websocket did not accept
+     * @return true if a keyframe has to be requested
+     */
+    public synchronized boolean onSendFailed(VideoChunk chunk) {
+        this.remove(chunk);
+        return this.skipToNextKeyframe() == Decision.DROP_AND_REQUEST_KEYFRAME;
+    }
+
+    /**
+     * @param chunk a chunk acknowledged by the server
+     */
+    public synchronized void onAcknowledged(VideoChunk chunk) {
+        this.remove(chunk);
+    }
+
+    /**
+     * Forget the chunks in flight, e.g. on disconnection: their acknowledgement will never come. The next chunk sent
+     * is a keyframe.
+     */
+    public synchronized void reset() {
+        this.inFlightChunks.clear();
+        this.inFlightBytes = 0;
+        this.awaitingKeyframe = true;
+    }
+
+    public synchronized int getInFlightChunkCount() {
+        return this.inFlightChunks.size();
+    }
+
+    public synchronized int getInFlightBytes() {
+        return this.inFlightBytes;
+    }
+
+    private Decision skipToNextKeyframe() {
+        if (this.awaitingKeyframe) {
+            return Decision.DROP;
+        }
+        this.awaitingKeyframe = true;
+        return Decision.DROP_AND_REQUEST_KEYFRAME;
+    }
+
+    private void expire(long nowMs) {
+        InFlightChunk oldest;
+        while ((oldest = this.inFlightChunks.peek()) != null && nowMs - oldest.sentTimeMs >= this.ackTimeoutMs) {
+            this.inFlightChunks.poll();
+            this.inFlightBytes -= oldest.chunk.getData().length;
+        }
+    }
+
+    private void remove(VideoChunk chunk) {
+        final Iterator<InFlightChunk> iterator = this.inFlightChunks.iterator();
+        while (iterator.hasNext()) {
+            final InFlightChunk inFlightChunk = iterator.next();
+            if (inFlightChunk.chunk == chunk) {
+                iterator.remove();
+                this.inFlightBytes -= chunk.getData().length;
+                return;
+            }
+        }
+    }
+
+    private static class InFlightChunk {
+        private final VideoChunk chunk;
+        private final long sentTimeMs;
+
+        InFlightChunk(VideoChunk chunk, long sentTimeMs) {
+            this.chunk = chunk;
+            this.sentTimeMs = sentTimeMs;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package lems.mobileProctorAgent.video;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Immutable video stream settings: target resolution, bit rate, frame rate and interval between two keyframes.
+ */
+public class VideoSettings {
+    private final int width;
+    private final int height;
+    private final int bitRate;
+    private final int frameRate;
+    private final int keyframeIntervalS;
+
+    public VideoSettings(int width, int height, int bitRate, int frameRate, int keyframeIntervalS) {
+        this.width = width;
+        this.height = height;
+        this.bitRate = bitRate;
+        this.frameRate = frameRate;
+        this.keyframeIntervalS = keyframeIntervalS;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the target bit rate, in bits per second
+     */
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    public int getKeyframeIntervalS() {
+        return keyframeIntervalS;
+    }
+
+    /**
+     * @param keyframeIntervalS the new keyframe interval
+     * @return the same settings with another keyframe interval
+     */
+    public VideoSettings withKeyframeIntervalS(int keyframeIntervalS) {
+        return new VideoSettings(this.width, this.height, this.bitRate, this.frameRate, keyframeIntervalS);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof VideoSettings)) {
+            return false;
+        }
+        final VideoSettings other = (VideoSettings) o;
+        return this.width == other.width && this.height == other.height && this.bitRate == other.bitRate
+                && this.frameRate == other.frameRate && this.keyframeIntervalS == other.keyframeIntervalS;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.width, this.height, this.bitRate, this.frameRate, this.keyframeIntervalS);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "VideoSettings{size = %dx%d, bitRate = %d, frameRate = %d, keyframeInterval = %d s}",
+                this.width, this.height, this.bitRate, this.frameRate, this.keyframeIntervalS);
+    }
+}
@@ -0,0 +1,49 @@
+package lems.mobileProctorAgent.websocket;
+
+import lems.mobileProctorAgent.model.HighResSnapshot;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.model.VideoChunk;
+
+public interface SnapshotDeliveryListener {
+
+    /**
+     * @param pictureSnapshot the snapshot acknowledged by the server
+     * @param wireSizeBytes the size of its payload
+     * @param emitTimeMs the time it has been emitted (epoch ms)
+     * @param ackTimeMs the time its acknowledgement has been received (epoch ms)
+     */
+    void onSnapshotAcknowledged(PictureSnapshot pictureSnapshot, int wireSizeBytes, long emitTimeMs, long ackTimeMs);
+
+    /**
+     * The single acknowledgement of a pair of pictures sent as one event. By default, each picture of the pair that
+     * is not a "still same" heartbeat is reported as if it had been acknowledged alone.
+     * @param faces the pictures of the pair
+     * @param wireSizesBytes the size of the payload of each picture, 0 for a heartbeat
+     * @param emitTimeMs the time the pair has been emitted (epoch ms)
+     * @param ackTimeMs the time its acknowledgement has been received (epoch ms)
+     */
+    default void onSnapshotPairAcknowledged(PictureSnapshot[] faces, int[] wireSizesBytes, long emitTimeMs, long ackTimeMs) {
+        for (int i = 0; i < faces.length; i++) {
+            if (!faces[i].isStillSame()) {
+                this.onSnapshotAcknowledged(faces[i], wireSizesBytes[i], emitTimeMs, ackTimeMs);
+            }
+        }
+    }
+
+    /**
+     * @param highResSnapshot the high resolution snapshot the chunk belongs to
+     * @param chunkIndex the rank of the chunk acknowledged by the server
+     * @param emitTimeMs the time the chunk has been emitted (epoch ms)
+     * @param ackTimeMs the time its acknowledgement has been received (epoch ms)
+     */
+    default void onHighResChunkAcknowledged(HighResSnapshot highResSnapshot, int chunkIndex, long emitTimeMs, long ackTimeMs) {
+    }
+
+    /**
+     * @param videoChunk the video chunk acknowledged by the server
+     * @param emitTimeMs the time it has been emitted (epoch ms)
+     * @param ackTimeMs the time its acknowledgement has been received (epoch ms)
+     */
+    default void onVideoChunkAcknowledged(VideoChunk videoChunk, long emitTimeMs, long ackTimeMs) {
+    }
+}
@@ -0,0 +1,12 @@
+package lems.mobileProctorAgent.websocket;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+public interface SnapshotDropListener {
+
+    /**
+     * A snapshot will never reach the server: dropped from the outbound queue or failed to be sent
+     * @param pictureSnapshot the snapshot
+     */
+    void onSnapshotDropped(PictureSnapshot pictureSnapshot);
+}
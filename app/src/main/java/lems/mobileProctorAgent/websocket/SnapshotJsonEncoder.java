@@ -0,0 +1,97 @@
+package lems.mobileProctorAgent.websocket;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+/**
+ * Encode picture snapshots in the json form produced by {@link PictureSnapshot.Serializer}
+ * ({"source": ..., "timestamp": ..., "data": base64}, plus "captureId" for paired pictures), without building the
+ * whole payload as a string first.
+ * The jpeg data is base64 encoded (no line wrapping) into a buffer reused from one snapshot to the other, and the
+ * envelope fields are put directly in the json object handed to the websocket.
+ * The websocket client only accepts json objects as event arguments, so the base64 data still ends up in one string.
+ */
+public class SnapshotJsonEncoder {
+    private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte BASE64_PADDING = '=';
+
+    private byte[] base64Buffer;
+
+    public SnapshotJsonEncoder(int initialBufferSize) {
+        this.base64Buffer = new byte[base64Length(initialBufferSize)];
+    }
+
+    /**
+     * @param pictureSnapshot the snapshot to encode
+     * @param epochTimestamp true to send the timestamp as an epoch ms number, false to send it formatted
+     * @return the json object to emit
+     * @throws JSONException if the json object cannot be built
+     */
+    public synchronized JSONObject encode(PictureSnapshot pictureSnapshot, boolean epochTimestamp) throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("source", Objects.toString(pictureSnapshot.getSource()));
+        final Long timestamp = pictureSnapshot.getTimestamp();
+        if (timestamp == null) {
+            obj.put("timestamp", JSONObject.NULL);
+        } else if (epochTimestamp) {
+            obj.put("timestamp", timestamp.longValue());
+        } else {
+            obj.put("timestamp", PictureSnapshot.formatTimestamp(timestamp));
+        }
+        if (pictureSnapshot.getCaptureId() != null) {
+            obj.put("captureId", pictureSnapshot.getCaptureId().longValue());
+        }
+        final int length = base64Length(pictureSnapshot.getDataLength());
+        if (this.base64Buffer.length < length) {
+            this.base64Buffer = new byte[length];
+        }
+        encodeBase64(pictureSnapshot.getData(), 0, pictureSnapshot.getDataLength(), this.base64Buffer, 0);
+        obj.put("data", new String(this.base64Buffer, 0, length, StandardCharsets.US_ASCII));
+        return obj;
+    }
+
+    /**
+     * @param dataLength a number of bytes
+     * @return the length of their base64 representation, padding included
+     */
+    public static int base64Length(int dataLength) {
+        return ((dataLength + 2) / 3) * 4;
+    }
+
+    /**
+     * Base64 encode (standard alphabet, padding, no line wrapping) a range of bytes into a destination buffer
+     * @param src the source buffer
+     * @param offset the offset of the first byte to encode
+     * @param length the number of bytes to encode
+     * @param dst the destination buffer, at least {@link #base64Length(int)} long after dstOffset
+     * @param dstOffset the offset of the first encoded character
+     * @return the number of characters written
+     */
+    public static int encodeBase64(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int s = offset;
+        int d = dstOffset;
+        final int end = offset + length - length % 3;
+        while (s < end) {
+            final int bits = (src[s++] & 0xFF) << 16 | (src[s++] & 0xFF) << 8 | (src[s++] & 0xFF);
+            dst[d++] = BASE64_ALPHABET[(bits >>> 18) & 0x3F];
+            dst[d++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+            dst[d++] = BASE64_ALPHABET[(bits >>> 6) & 0x3F];
+            dst[d++] = BASE64_ALPHABET[bits & 0x3F];
+        }
+        final int remaining = length % 3;
+        if (remaining > 0) {
+            final int bits = (src[s] & 0xFF) << 16 | (remaining == 2 ? (src[s + 1] & 0xFF) << 8 : 0);
+            dst[d++] = BASE64_ALPHABET[(bits >>> 18) & 0x3F];
+            dst[d++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+            dst[d++] = remaining == 2 ? BASE64_ALPHABET[(bits >>> 6) & 0x3F] : BASE64_PADDING;
+            dst[d++] = BASE64_PADDING;
+        }
+        return d - dstOffset;
+    }
+}
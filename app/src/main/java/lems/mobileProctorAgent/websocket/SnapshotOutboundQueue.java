@@ -0,0 +1,582 @@
+package lems.mobileProctorAgent.websocket;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lems.mobileProctorAgent.model.HighResSnapshot;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.spool.SnapshotSpool;
+
+/**
+ * Bounded outbound queue between the cameras and the websocket.
+ * Producers (camera callbacks) never block: each camera has its own bounded lane, and a full lane drops frames
+ * according to its {@link OverflowPolicy}. Frames are sent from the sender executor, only while the websocket is
+ * opened; otherwise they wait in their lane until the next connection or, if a spool is set, they are written to
+ * the spool and replayed at a limited rate once the websocket is authenticated again.
+ * "Still same" heartbeats are only worth sending right away: they never replace a pending picture and are not spooled.
+ * The pictures taken at the same time from both cameras are sent as a single event if the server accepts it and both
+ * are at the head of their lane.
+ * High resolution snapshots requested by the server have a priority lane: one of their chunks is sent before each
+ * regular picture, with a bounded number of chunks waiting for their acknowledgement, so that they jump ahead of the
+ * queued pictures without holding the regular stream back. They are kept in memory only, and sent again from their
+ * first chunk after a reconnection, once the server has accepted them again on authentication, or when a chunk is
+ * not acknowledged in time.
+ */
+public class SnapshotOutboundQueue implements WebsocketListener, SnapshotDeliveryListener, AutoCloseable {
+    private final static String LOG_TAG = SnapshotOutboundQueue.class.getName();
+    public static final int DFLT_HIGH_RES_CAPACITY = 2;
+    public static final int DFLT_MAX_IN_FLIGHT_HIGH_RES_CHUNKS = 2;
+    public static final long DFLT_HIGH_RES_CHUNK_ACK_TIMEOUT_MS = 10000L;
+
+    public enum OverflowPolicy {
+        /** keep the most recent frames up to the lane capacity, drop the oldest one on overflow */
+        DROP_OLDEST,
+        /** keep only the last frame, whatever the capacity */
+        LATEST_WINS
+    }
+
+    private final WebsocketManager wsMgr;
+    private final ScheduledExecutorService senderExecutor;
+    private final EnumMap<PictureSnapshot.CameraType, Lane> lanes;
+    // Only accessed from the sender executor
+    private final ArrayDeque<HighResSnapshot> highResSnapshots;
+    private final ArrayList<SnapshotDropListener> dropListeners;
+    private final AtomicBoolean drainScheduled;
+    private final AtomicLong enqueuedCount;
+    private final AtomicLong droppedCount;
+    private final AtomicLong sentCount;
+    private final AtomicLong spooledCount;
+    private final AtomicLong replayedCount;
+    private PictureSnapshot.CameraType nextLane;
+    private volatile SnapshotSpool spool;
+    private long replayIntervalMs;
+    private ScheduledFuture<?> replayTask;
+    private ScheduledFuture<?> highResAckTimeout;
+
+    public SnapshotOutboundQueue(WebsocketManager wsMgr, ScheduledExecutorService senderExecutor,
+                                 Map<PictureSnapshot.CameraType, OverflowPolicy> policies, int capacityPerCamera) {
+        this.wsMgr = wsMgr;
+        this.senderExecutor = senderExecutor;
+        this.lanes = new EnumMap<>(PictureSnapshot.CameraType.class);
+        for (PictureSnapshot.CameraType cameraType : PictureSnapshot.CameraType.values()) {
+            final OverflowPolicy policy = policies.getOrDefault(cameraType, OverflowPolicy.DROP_OLDEST);
+            this.lanes.put(cameraType, policy == OverflowPolicy.LATEST_WINS
+                    ? new LatestWinsLane() : new DropOldestLane(capacityPerCamera));
+        }
+        this.highResSnapshots = new ArrayDeque<>();
+        this.dropListeners = new ArrayList<>();
+        this.drainScheduled = new AtomicBoolean(false);
+        this.enqueuedCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+        this.sentCount = new AtomicLong();
+        this.spooledCount = new AtomicLong();
+        this.replayedCount = new AtomicLong();
+        this.nextLane = PictureSnapshot.CameraType.FRONT;
+    }
+
+    public void addSnapshotDropListener(SnapshotDropListener listener) {
+        if (!this.dropListeners.contains(listener)) {
+            this.dropListeners.add(listener);
+        }
+    }
+
+    public void removeSnapshotDropListener(SnapshotDropListener listener) {
+        this.dropListeners.remove(listener);
+    }
+
+    /**
+     * Set the spool used to keep snapshots while the websocket is not opened
+     * @param spool the spool, null to keep snapshots in memory only
+     * @param replayRatePerSecond the maximum number of spooled snapshots replayed per second
+     */
+    public void setSpool(SnapshotSpool spool, int replayRatePerSecond) {
+        this.senderExecutor.execute(() -> {
+            this.stopReplay();
+            if (this.spool != null && this.spool != spool) {
+                this.spool.close();
+            }
+            this.spool = spool;
+            this.replayIntervalMs = 1000L / Math.max(1, replayRatePerSecond);
+            if (this.wsMgr.isAuthenticated()) {
+                this.startReplay();
+            }
+        });
+    }
+
+    /**
+     * Enqueue a snapshot to be sent. Never blocks.
+     * @param pictureSnapshot the snapshot
+     */
+    public void offer(PictureSnapshot pictureSnapshot) {
+        if (pictureSnapshot == null || pictureSnapshot.getSource() == null) {
+            return;
+        }
+        final Lane lane = this.lanes.get(pictureSnapshot.getSource());
+        if (pictureSnapshot.isStillSame() && lane.size() > 0) {
+            // The pending picture is at least as recent as the keyframe the heartbeat refers to
+            return;
+        }
+        this.enqueuedCount.incrementAndGet();
+        final PictureSnapshot dropped = lane.offer(pictureSnapshot);
+        if (dropped != null) {
+            this.drop(dropped);
+        }
+        this.scheduleDrain();
+    }
+
+    /**
+     * Enqueue a high resolution snapshot, sent before the regular pictures. Never blocks. Beyond the capacity of the
+     * priority lane, the oldest snapshot is dropped.
+     * @param highResSnapshot the snapshot
+     */
+    public void offerHighRes(HighResSnapshot highResSnapshot) {
+        this.senderExecutor.execute(() -> {
+            this.highResSnapshots.offer(highResSnapshot);
+            while (this.highResSnapshots.size() > DFLT_HIGH_RES_CAPACITY) {
+                Log.w(LOG_TAG, "Too many high resolution snapshots pending, drop the oldest one");
+                this.droppedCount.incrementAndGet();
+                this.highResSnapshots.poll();
+            }
+            this.drain();
+        });
+    }
+
+    public long getEnqueuedCount() {
+        return this.enqueuedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    public long getSentCount() {
+        return this.sentCount.get();
+    }
+
+    public long getSpooledCount() {
+        return this.spooledCount.get();
+    }
+
+    public long getReplayedCount() {
+        return this.replayedCount.get();
+    }
+
+    public boolean hasSpool() {
+        return this.spool != null;
+    }
+
+    /**
+     * Close the spool: snapshots are then kept in memory only, until a spool is set again.
+     * The spooled snapshots stay on disk and are recovered by the next spool opened on the same directory.
+     */
+    public void closeSpool() {
+        this.senderExecutor.execute(() -> {
+            this.stopReplay();
+            if (this.spool != null) {
+                this.spool.close();
+                this.spool = null;
+            }
+        });
+    }
+
+    public int getSpoolDepth() {
+        final SnapshotSpool currentSpool = this.spool;
+        return currentSpool != null ? currentSpool.size() : 0;
+    }
+
+    public int getDepth() {
+        int depth = 0;
+        for (Lane lane : this.lanes.values()) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    public void clear() {
+        for (Lane lane : this.lanes.values()) {
+            PictureSnapshot pictureSnapshot;
+            while ((pictureSnapshot = lane.poll()) != null) {
+                this.drop(pictureSnapshot);
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (this.drainScheduled.compareAndSet(false, true)) {
+            this.senderExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        this.drainScheduled.set(false);
+        boolean sent = true;
+        while (sent) {
+            // One chunk of the high resolution snapshot first, then one regular picture
+            final boolean chunkSent = this.sendNextHighResChunk();
+            sent = this.sendNextSnapshot() || chunkSent;
+        }
+    }
+
+    // Only called from the sender executor. Returns false if no snapshot was pending
+    private boolean sendNextSnapshot() {
+        if (!this.wsMgr.isOpened() && this.spool == null) {
+            return false;
+        }
+        final PictureSnapshot pictureSnapshot = this.pollNext();
+        if (pictureSnapshot == null) {
+            return false;
+        }
+        final PictureSnapshot pairedSnapshot;
+        if (!this.wsMgr.isOpened()) {
+            this.spoolSnapshot(pictureSnapshot);
+        } else if ((pairedSnapshot = this.pollPaired(pictureSnapshot)) != null) {
+            if (this.wsMgr.sendPictureSnapshotPair(pictureSnapshot, pairedSnapshot)) {
+                this.sentCount.addAndGet(2);
+            } else {
+                this.drop(pictureSnapshot);
+                this.drop(pairedSnapshot);
+            }
+        } else if (this.wsMgr.sendPictureSnapshot(pictureSnapshot)) {
+            this.sentCount.incrementAndGet();
+        } else {
+            this.drop(pictureSnapshot);
+        }
+        return true;
+    }
+
+    // Count a snapshot that will not be sent and tell the listeners
+    private void drop(PictureSnapshot pictureSnapshot) {
+        this.droppedCount.incrementAndGet();
+        this.dropListeners.forEach((l) -> l.onSnapshotDropped(pictureSnapshot));
+    }
+
+    // Only called from the sender executor. Returns false if no chunk could be sent
+    private boolean sendNextHighResChunk() {
+        final HighResSnapshot highResSnapshot = this.highResSnapshots.peek();
+        // The capabilities are only known once authenticated: until then, wait for onAuthenticated
+        if (highResSnapshot == null || !this.wsMgr.isOpened() || !this.wsMgr.isAuthenticated()
+                || !highResSnapshot.hasNextChunk()
+                || highResSnapshot.getInFlightChunkCount() >= DFLT_MAX_IN_FLIGHT_HIGH_RES_CHUNKS) {
+            return false;
+        }
+        if (this.wsMgr.getCapabilities().supports(TransportCapabilities.HIGH_RES_SNAPSHOT)
+                && this.wsMgr.sendHighResChunk(highResSnapshot, highResSnapshot.nextChunk())) {
+            if (this.highResAckTimeout == null) {
+                this.restartHighResAckTimeout();
+            }
+            return true;
+        }
+        if (!this.wsMgr.isOpened() || !this.wsMgr.isAuthenticated()) {
+            // Disconnected meanwhile
+            highResSnapshot.rewind();
+            this.restartHighResAckTimeout();
+            return false;
+        }
+        Log.w(LOG_TAG, "Cannot send " + highResSnapshot + ", drop it");
+        this.highResSnapshots.poll();
+        this.droppedCount.incrementAndGet();
+        this.restartHighResAckTimeout();
+        return false;
+    }
+
+    // Only called from the sender executor: wait for the next acknowledgement of the high resolution snapshot in
+    // progress, if some of its chunks are in flight
+    private void restartHighResAckTimeout() {
+        if (this.highResAckTimeout != null) {
+            this.highResAckTimeout.cancel(false);
+            this.highResAckTimeout = null;
+        }
+        final HighResSnapshot highResSnapshot = this.highResSnapshots.peek();
+        if (highResSnapshot != null && highResSnapshot.getInFlightChunkCount() > 0) {
+            this.highResAckTimeout = this.senderExecutor.schedule(() -> this.onHighResAckTimeout(highResSnapshot),
+                    DFLT_HIGH_RES_CHUNK_ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // A lost acknowledgement would hold the snapshot in progress forever: send it again from its first chunk
+    private void onHighResAckTimeout(HighResSnapshot highResSnapshot) {
+        this.highResAckTimeout = null;
+        if (this.highResSnapshots.peek() != highResSnapshot || highResSnapshot.getInFlightChunkCount() == 0) {
+            // Dropped meanwhile: watch the next one instead
+            this.restartHighResAckTimeout();
+            return;
+        }
+        Log.w(LOG_TAG, "No acknowledgement of " + highResSnapshot + " in time, send it again");
+        highResSnapshot.rewind();
+        this.drain();
+    }
+
+    // Spool a snapshot: the spool keeps its own copy
+    private void spoolSnapshot(PictureSnapshot pictureSnapshot) {
+        if (pictureSnapshot.isStillSame()) {
+            // Worthless once replayed: the keyframe timeline is reset on reconnection
+            return;
+        }
+        try {
+            if (this.spool.append(pictureSnapshot)) {
+                this.spooledCount.incrementAndGet();
+                return;
+            }
+        } catch (IOException ex) {
+            Log.w(LOG_TAG, "Cannot spool picture snapshot: " + ex.getMessage());
+        }
+        this.droppedCount.incrementAndGet();
+    }
+
+    // Only called from the sender executor
+    private void startReplay() {
+        if (this.replayTask != null || this.spool == null || this.spool.isEmpty()) {
+            return;
+        }
+        Log.i(LOG_TAG, "Replay " + this.spool.size() + " spooled snapshots");
+        this.replayTask = this.senderExecutor.scheduleAtFixedRate(this::replayNext,
+                0L, this.replayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Only called from the sender executor
+    private void stopReplay() {
+        if (this.replayTask != null) {
+            this.replayTask.cancel(false);
+            this.replayTask = null;
+        }
+    }
+
+    private void replayNext() {
+        if (!this.wsMgr.isAuthenticated()) {
+            this.stopReplay();
+            return;
+        }
+        if (this.getDepth() > 0) {
+            return; // live snapshots first
+        }
+        // Removed from the spool only once sent, so that the backlog keeps its order
+        final PictureSnapshot pictureSnapshot = this.spool.peek();
+        if (pictureSnapshot == null) {
+            Log.i(LOG_TAG, "Spool replay done");
+            this.stopReplay();
+        } else if (this.wsMgr.sendPictureSnapshot(pictureSnapshot)) {
+            this.spool.remove();
+            this.replayedCount.incrementAndGet();
+        } else {
+            // Resumed on the next authentication
+            Log.w(LOG_TAG, "Cannot replay spooled snapshot, stop the replay");
+            this.stopReplay();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.closeSpool();
+    }
+
+    // Only called from the sender executor: alternate between lanes so that one camera cannot starve the other
+    private PictureSnapshot pollNext() {
+        final PictureSnapshot.CameraType[] cameraTypes = PictureSnapshot.CameraType.values();
+        for (int i = 0; i < cameraTypes.length; i++) {
+            final PictureSnapshot.CameraType cameraType = this.nextLane;
+            this.nextLane = cameraTypes[(cameraType.ordinal() + 1) % cameraTypes.length];
+            final PictureSnapshot pictureSnapshot = this.lanes.get(cameraType).poll();
+            if (pictureSnapshot != null) {
+                return pictureSnapshot;
+            }
+        }
+        return null;
+    }
+
+    // Only called from the sender executor: the other picture of the pair of a picture, removed from its lane, if it is
+    // next in its lane and the server accepts pairs.
+    // Pairing relies on both pictures being in their lane when the first one is polled. The sender executor
+    // (AppExecutors.network()) is single-threaded, and a complete pair is delivered by the capture state machine
+    // (CaptureStateMachine.deliver) from the picture callbacks, which run on that same executor: both pictures are
+    // offered before the drain they schedule can run. A pair cut short by a capture timeout is delivered from the
+    // capture executor instead; its pictures may then be sent on their own, which the server accepts too.
+    private PictureSnapshot pollPaired(PictureSnapshot pictureSnapshot) {
+        final TransportCapabilities capabilities = this.wsMgr.getCapabilities();
+        final Long captureId = pictureSnapshot.getCaptureId();
+        if (captureId == null || !capabilities.supports(TransportCapabilities.SNAPSHOT_PAIR)) {
+            return null;
+        }
+        for (Map.Entry<PictureSnapshot.CameraType, Lane> entry : this.lanes.entrySet()) {
+            if (entry.getKey() == pictureSnapshot.getSource()) {
+                continue;
+            }
+            final PictureSnapshot head = entry.getValue().peek();
+            if (head == null || !captureId.equals(head.getCaptureId())) {
+                continue;
+            }
+            if ((head.isStillSame() || pictureSnapshot.isStillSame())
+                    && !capabilities.supports(TransportCapabilities.STILL_SAME)) {
+                return null;
+            }
+            if (entry.getValue().remove(head)) {
+                return head;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onConnect(Object[] info) {
+        Log.d(LOG_TAG, "Websocket connected, drain " + this.getDepth() + " pending snapshots");
+        this.scheduleDrain();
+    }
+
+    @Override
+    public void onAuthenticated(TransportCapabilities capabilities) {
+        this.senderExecutor.execute(this::startReplay);
+        // The high resolution snapshots wait for the capabilities of the new connection
+        this.scheduleDrain();
+    }
+
+    @Override
+    public void onDisconnect(Object[] info) {
+        // The chunks of the high resolution snapshot in progress will not be acknowledged anymore
+        this.senderExecutor.execute(() -> {
+            final HighResSnapshot highResSnapshot = this.highResSnapshots.peek();
+            if (highResSnapshot != null) {
+                highResSnapshot.rewind();
+            }
+            this.restartHighResAckTimeout();
+        });
+        // Move pending snapshots to the spool, if any
+        this.scheduleDrain();
+    }
+
+    @Override
+    public void onReconnecting(int attempt) {
+    }
+
+    @Override
+    public void onConnectError(Exception ex) {
+    }
+
+    @Override
+    public void onDataSent(String eventType, Object data) {
+    }
+
+    @Override
+    public void onSnapshotAcknowledged(PictureSnapshot pictureSnapshot, int wireSizeBytes, long emitTimeMs, long ackTimeMs) {
+    }
+
+    @Override
+    public void onHighResChunkAcknowledged(HighResSnapshot highResSnapshot, int chunkIndex, long emitTimeMs, long ackTimeMs) {
+        this.senderExecutor.execute(() -> {
+            if (this.highResSnapshots.peek() != highResSnapshot || highResSnapshot.isStaleAcknowledgement(emitTimeMs)) {
+                return; // dropped or sent again meanwhile
+            }
+            highResSnapshot.onChunkAcknowledged();
+            if (highResSnapshot.isAcknowledged()) {
+                this.highResSnapshots.poll();
+                this.sentCount.incrementAndGet();
+            }
+            this.restartHighResAckTimeout();
+            this.drain();
+        });
+    }
+
+    private interface Lane {
+        /**
+         * @return the frame dropped to accept this one, null if none
+         */
+        PictureSnapshot offer(PictureSnapshot pictureSnapshot);
+
+        PictureSnapshot poll();
+
+        PictureSnapshot peek();
+
+        /**
+         * @return true if the frame was still in the lane
+         */
+        boolean remove(PictureSnapshot pictureSnapshot);
+
+        int size();
+    }
+
+    private static class DropOldestLane implements Lane {
+        private final int capacity;
+        private final ConcurrentLinkedQueue<PictureSnapshot> items;
+        private final AtomicInteger size;
+
+        public DropOldestLane(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.items = new ConcurrentLinkedQueue<>();
+            this.size = new AtomicInteger();
+        }
+
+        @Override
+        public PictureSnapshot offer(PictureSnapshot pictureSnapshot) {
+            this.items.offer(pictureSnapshot);
+            return this.size.incrementAndGet() > this.capacity ? this.poll() : null;
+        }
+
+        @Override
+        public PictureSnapshot poll() {
+            final PictureSnapshot pictureSnapshot = this.items.poll();
+            if (pictureSnapshot != null) {
+                this.size.decrementAndGet();
+            }
+            return pictureSnapshot;
+        }
+
+        @Override
+        public PictureSnapshot peek() {
+            return this.items.peek();
+        }
+
+        @Override
+        public boolean remove(PictureSnapshot pictureSnapshot) {
+            if (this.items.remove(pictureSnapshot)) {
+                this.size.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return this.size.get();
+        }
+    }
+
+    private static class LatestWinsLane implements Lane {
+        private final AtomicReference<PictureSnapshot> slot = new AtomicReference<>();
+
+        @Override
+        public PictureSnapshot offer(PictureSnapshot pictureSnapshot) {
+            return this.slot.getAndSet(pictureSnapshot);
+        }
+
+        @Override
+        public PictureSnapshot poll() {
+            return this.slot.getAndSet(null);
+        }
+
+        @Override
+        public PictureSnapshot peek() {
+            return this.slot.get();
+        }
+
+        @Override
+        public boolean remove(PictureSnapshot pictureSnapshot) {
+            return this.slot.compareAndSet(pictureSnapshot, null);
+        }
+
+        @Override
+        public int size() {
+            return this.slot.get() == null ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package lems.mobileProctorAgent.websocket;
+
+public interface StillRequestListener {
+
+    /**
+     * The server asks for a picture, while the environment is captured as a video stream
+     */
+    void onStillRequested();
+}
@@ -0,0 +1,102 @@
+package lems.mobileProctorAgent.websocket;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Transport features negotiated with the proctoring server.
+ * The client advertises {@link #CLIENT_CAPABILITIES} in its authenticate message, the server answers with
+ * the subset it accepts. Until the server answers (or if it never does), the legacy behaviour is used.
+ */
+public class TransportCapabilities {
+    /** Picture snapshots sent as a small json header plus the raw jpeg bytes as a binary attachment */
+    public static final String BINARY_SNAPSHOT = "binarySnapshot";
+    /** The server acknowledges each picture snapshot event */
+    public static final String SNAPSHOT_ACK = "snapshotAck";
+    /** Picture snapshot timestamps sent as epoch ms numbers instead of formatted dates */
+    public static final String EPOCH_TIMESTAMP = "epochTimestamp";
+    /** Pictures unchanged since the last keyframe of their camera sent as small "still same" heartbeats */
+    public static final String STILL_SAME = "stillSame";
+    /** Pictures taken at the same time from both cameras sent as a single event */
+    public static final String SNAPSHOT_PAIR = "snapshotPair";
+    /** H.264 video chunks sent as acknowledged binary "videoChunk" events, for the sessions captured as a video stream */
+    public static final String VIDEO_STREAM = "videoStream";
+    /** High resolution pictures requested by a control order sent as acknowledged "highResSnapshotChunk" events */
+    public static final String HIGH_RES_SNAPSHOT = "highResSnapshot";
+
+    public static final String[] CLIENT_CAPABILITIES = new String[]{BINARY_SNAPSHOT, SNAPSHOT_ACK, EPOCH_TIMESTAMP,
+            STILL_SAME, SNAPSHOT_PAIR, VIDEO_STREAM, HIGH_RES_SNAPSHOT};
+
+    private static final TransportCapabilities LEGACY = new TransportCapabilities(Collections.emptySet());
+
+    private final Set<String> capabilities;
+
+    private TransportCapabilities(Set<String> capabilities) {
+        this.capabilities = capabilities;
+    }
+
+    public static TransportCapabilities legacy() {
+        return LEGACY;
+    }
+
+    /**
+     * @param capabilities the capabilities, as if accepted by the server
+     * @return the negotiated capabilities
+     */
+    static TransportCapabilities of(String... capabilities) {
+        return new TransportCapabilities(new HashSet<>(Arrays.asList(capabilities)));
+    }
+
+    public boolean supports(String capability) {
+        return this.capabilities.contains(capability);
+    }
+
+    public Set<String> getCapabilities() {
+        return Collections.unmodifiableSet(this.capabilities);
+    }
+
+    public static JSONArray clientCapabilitiesToJSONArray() {
+        final JSONArray array = new JSONArray();
+        for (String capability : CLIENT_CAPABILITIES) {
+            array.put(capability);
+        }
+        return array;
+    }
+
+    /**
+     * Build the negotiated capabilities from the server answer: {"capabilities": ["binarySnapshot", ...]}.
+     * Capabilities the client does not know are ignored.
+     * @param jsonObj the server answer
+     * @return the negotiated capabilities, legacy ones if the answer cannot be read
+     */
+    public static TransportCapabilities fromJSONObject(JSONObject jsonObj) {
+        if (jsonObj == null || !jsonObj.has("capabilities")) {
+            return LEGACY;
+        }
+        try {
+            final JSONArray serverCapabilities = jsonObj.getJSONArray("capabilities");
+            final Set<String> known = new HashSet<>(Arrays.asList(CLIENT_CAPABILITIES));
+            final Set<String> negotiated = new HashSet<>();
+            for (int i = 0; i < serverCapabilities.length(); i++) {
+                final String capability = serverCapabilities.getString(i);
+                if (known.contains(capability)) {
+                    negotiated.add(capability);
+                }
+            }
+            return new TransportCapabilities(negotiated);
+        } catch (JSONException ex) {
+            return LEGACY;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TransportCapabilities" + this.capabilities;
+    }
+}
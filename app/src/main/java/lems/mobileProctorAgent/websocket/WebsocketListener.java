@@ -6,8 +6,12 @@ public interface WebsocketListener {
 
     void onConnect(Object[] info);
 
+    void onAuthenticated(TransportCapabilities capabilities);
+
     void onDisconnect(Object[] info);
 
+    void onReconnecting(int attempt);
+
     void onConnectError(Exception ex);
 
     void onDataSent(String eventType, Object data);
@@ -5,6 +5,7 @@ import android.util.Log;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -14,6 +15,7 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
@@ -22,6 +24,7 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
+import io.socket.client.Ack;
 import io.socket.client.IO;
 import io.socket.client.Socket;
 //import io.socket.client.SocketOptionBuilder;
@@ -29,31 +32,56 @@ import io.socket.emitter.Emitter;
 import io.socket.engineio.client.EngineIOException;
 import io.socket.engineio.client.transports.Polling;
 import io.socket.engineio.client.transports.WebSocket;
+import lems.mobileProctorAgent.AppConstants;
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+import lems.mobileProctorAgent.metrics.MetricsSource;
 import lems.mobileProctorAgent.model.ControlInfo;
 import lems.mobileProctorAgent.model.ControlOrder;
+import lems.mobileProctorAgent.model.HighResSnapshot;
 import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.model.VideoChunk;
 import lems.mobileProctorAgent.model.WebSocketEventTypes;
 import okhttp3.OkHttpClient;
 
 public class WebsocketManager implements AutoCloseable {
     private final static String LOG_TAG = WebsocketManager.class.getName();
-
+    // Legacy servers never answer the capabilities: consider them authenticated after this delay
+    private final static long AUTHENTICATION_TIMEOUT_MS = 2000L;
+    private final static int SNAPSHOT_ENCODER_BUFFER_SIZE = 64 * 1024;
+    // Disconnection reason when the server closes the socket: socket.io does not reconnect then
+    private final static String SERVER_DISCONNECT_REASON = "io server disconnect";
+
+    private final ScheduledExecutorService executorService;
+    private final MetricsRegistry metricsRegistry;
     private final Gson jsonConverter;
+    private final SnapshotJsonEncoder snapshotJsonEncoder;
     private final ArrayList<WebsocketListener> websocketListeners;
     private final ArrayList<DeviceControlListener> deviceControlListeners;
+    private final ArrayList<SnapshotDeliveryListener> snapshotDeliveryListeners;
+    private final ArrayList<StillRequestListener> stillRequestListeners;
+    private final WebsocketSession session;
     private boolean connecting;
     private String endpoint;
     private Socket websocket;
     private Map<String, String> authenticator;
+    private volatile MetricsSource metricsSource;
 
 
-    public WebsocketManager() {
+    public WebsocketManager(ScheduledExecutorService executorService, MetricsRegistry metricsRegistry) {
+        this.executorService = executorService;
+        this.metricsRegistry = metricsRegistry;
         this.jsonConverter = new GsonBuilder()
                 .registerTypeAdapter(PictureSnapshot.class, new PictureSnapshot.Serializer())
                 .serializeNulls()
                 .create();
+        this.snapshotJsonEncoder = new SnapshotJsonEncoder(SNAPSHOT_ENCODER_BUFFER_SIZE);
         this.websocketListeners = new ArrayList<>();
         this.deviceControlListeners = new ArrayList<>();
+        this.snapshotDeliveryListeners = new ArrayList<>();
+        this.stillRequestListeners = new ArrayList<>();
+        this.session = new WebsocketSession(executorService, metricsRegistry, AUTHENTICATION_TIMEOUT_MS,
+                this::onAuthenticated);
     }
 
     public void addWebsocketListener(WebsocketListener listener) {
@@ -76,6 +104,33 @@ public class WebsocketManager implements AutoCloseable {
         this.deviceControlListeners.remove(listener);
     }
 
+    public void addSnapshotDeliveryListener(SnapshotDeliveryListener listener) {
+        if (!this.snapshotDeliveryListeners.contains(listener)) {
+            this.snapshotDeliveryListeners.add(listener);
+        }
+    }
+
+    public void removeSnapshotDeliveryListener(SnapshotDeliveryListener listener) {
+        this.snapshotDeliveryListeners.remove(listener);
+    }
+
+    public void addStillRequestListener(StillRequestListener listener) {
+        if (!this.stillRequestListeners.contains(listener)) {
+            this.stillRequestListeners.add(listener);
+        }
+    }
+
+    public void removeStillRequestListener(StillRequestListener listener) {
+        this.stillRequestListeners.remove(listener);
+    }
+
+    /**
+     * @param metricsSource the metrics sent back to the server when it requests them, null to answer nothing
+     */
+    public void setMetricsSource(MetricsSource metricsSource) {
+        this.metricsSource = metricsSource;
+    }
+
     private void updateSockOptionOnHttps(String wsEndpoint, IO.Options sockOptions) {
         final String wsEndpointLowerCase = wsEndpoint.toLowerCase();
         if (wsEndpointLowerCase.startsWith("https") || wsEndpointLowerCase.startsWith("wss")) {
@@ -121,8 +176,15 @@ public class WebsocketManager implements AutoCloseable {
         this.authenticator = new HashMap<>();
         Log.d(LOG_TAG, "Create authenticator with jwt " + jwt.toString());
         this.authenticator.put("jwt", jwt);
+        this.session.start();
         IO.Options sockOptions = new IO.Options();
-        sockOptions.reconnectionAttempts = 1;
+        // Once the session is established, reconnect with a capped exponential backoff. The jitter spreads the
+        // reconnections of all the phones of an exam room when their access point comes back.
+        sockOptions.reconnection = true;
+        sockOptions.reconnectionAttempts = AppConstants.WS_RECONNECTION_ATTEMPTS;
+        sockOptions.reconnectionDelay = AppConstants.WS_RECONNECTION_DELAY_MS;
+        sockOptions.reconnectionDelayMax = AppConstants.WS_RECONNECTION_DELAY_MAX_MS;
+        sockOptions.randomizationFactor = AppConstants.WS_RECONNECTION_RANDOMIZATION_FACTOR;
         sockOptions.transports = new String[] { WebSocket.NAME, Polling.NAME};
         //Log.w(LOG_TAG, "Raw jwt " + jwt);
         //sockOptions.query = String.format("{\"jwt\": \"%s\"}", jwt);
@@ -139,7 +201,12 @@ public class WebsocketManager implements AutoCloseable {
             this.websocket.on(Socket.EVENT_CONNECT, this.intOnConnect);
             this.websocket.on(Socket.EVENT_DISCONNECT, this.intOnDisconnect);
             this.websocket.on(Socket.EVENT_CONNECT_ERROR, this.intOnConnectError);
+            this.websocket.on(Socket.EVENT_RECONNECTING, this.intOnReconnecting);
+            this.websocket.on(Socket.EVENT_RECONNECT_FAILED, this.intOnReconnectFailed);
             this.websocket.on(WebSocketEventTypes.CONTROL_COMMAND_EVENT_TYPE, this.intOnControlCommand);
+            this.websocket.on(WebSocketEventTypes.SERVER_CAPABILITIES_EVENT_TYPE, this.intOnServerCapabilities);
+            this.websocket.on(WebSocketEventTypes.METRICS_REQUEST_EVENT_TYPE, this.intOnMetricsRequest);
+            this.websocket.on(WebSocketEventTypes.STILL_REQUEST_EVENT_TYPE, this.intOnStillRequest);
             this.websocket.connect();
         } catch (Exception ex) {
             this.connecting = false;
@@ -151,17 +218,42 @@ public class WebsocketManager implements AutoCloseable {
         return this.connecting;
     }
 
+    /**
+     * Tell whether a disconnection was initiated by the server, in which case the socket is not reconnected.
+     * @param info the arguments of WebsocketListener.onDisconnect
+     * @return true if the server closed the socket
+     */
+    public static boolean isServerDisconnect(Object[] info) {
+        return info != null && info.length > 0 && SERVER_DISCONNECT_REASON.equals(info[0]);
+    }
+
     public boolean isOpened() {
         return this.websocket != null && this.websocket.connected();
     }
 
+    public synchronized boolean isAuthenticated() {
+        return this.isOpened() && this.session.isAuthenticated();
+    }
+
     public String getEndpoint() {
         return this.websocket != null ? this.endpoint : null;
     }
 
+    public TransportCapabilities getCapabilities() {
+        return this.session.getCapabilities();
+    }
+
+    /**
+     * @return true if the session has already been authenticated once, i.e. the websocket resumes it on reconnection
+     */
+    public boolean isSessionEstablished() {
+        return this.session.isEstablished();
+    }
+
     @Override
     public synchronized void close() {
         this.connecting = false;
+        this.session.reset();
         if (this.websocket != null) {
             if (this.websocket.connected()) {
                 this.websocket.disconnect();
@@ -169,29 +261,235 @@ public class WebsocketManager implements AutoCloseable {
             this.websocket.off(Socket.EVENT_CONNECT, this.intOnConnect);
             this.websocket.off(Socket.EVENT_DISCONNECT, this.intOnDisconnect);
             this.websocket.off(Socket.EVENT_CONNECT_ERROR, this.intOnConnectError);
+            this.websocket.off(Socket.EVENT_RECONNECTING, this.intOnReconnecting);
+            this.websocket.off(Socket.EVENT_RECONNECT_FAILED, this.intOnReconnectFailed);
+            this.websocket.off(WebSocketEventTypes.CONTROL_COMMAND_EVENT_TYPE, this.intOnControlCommand);
+            this.websocket.off(WebSocketEventTypes.SERVER_CAPABILITIES_EVENT_TYPE, this.intOnServerCapabilities);
+            this.websocket.off(WebSocketEventTypes.METRICS_REQUEST_EVENT_TYPE, this.intOnMetricsRequest);
+            this.websocket.off(WebSocketEventTypes.STILL_REQUEST_EVENT_TYPE, this.intOnStillRequest);
             this.websocket.close();
             this.websocket = null;
         }
 
     }
 
-    public void sendPictureSnapshot(PictureSnapshot pictureSnapshot) {
+    /**
+     * Send a picture snapshot over the websocket.
+     * @param pictureSnapshot the snapshot to send
+     * @return true if the snapshot has been handed to the websocket
+     */
+    public boolean sendPictureSnapshot(PictureSnapshot pictureSnapshot) {
         if (pictureSnapshot == null) {
-            return;
+            return false;
         }
         if (!this.isOpened()) {
             Log.w(LOG_TAG, "Cannot send picture snapshot");
-            return;
+            return false;
+        }
+        if (pictureSnapshot.isStillSame()) {
+            return this.sendStillSame(pictureSnapshot);
         }
         try {
-            final JSONObject jsonObject = new JSONObject(this.jsonConverter.toJson(pictureSnapshot));
-            this.websocket.emit(WebSocketEventTypes.PICTURE_SNAPSHOT_EVENT_TYPE, jsonObject);
+            final TransportCapabilities currentCapabilities = this.session.getCapabilities();
+            final boolean acknowledged = currentCapabilities.supports(TransportCapabilities.SNAPSHOT_ACK);
+            final long encodeStartNs = System.nanoTime();
+            final JSONObject jsonObject = this.encodePicture(pictureSnapshot, currentCapabilities);
+            final int wireSize = wireSize(pictureSnapshot, currentCapabilities);
+            this.metricsRegistry.histogram(MetricNames.SNAPSHOT_ENCODE_US)
+                    .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - encodeStartNs));
+            if (acknowledged) {
+                final long emitTimeMs = System.currentTimeMillis();
+                this.websocket.emit(WebSocketEventTypes.PICTURE_SNAPSHOT_EVENT_TYPE, new Object[]{jsonObject}, new Ack() {
+                    @Override
+                    public void call(Object... args) {
+                        final long ackTimeMs = System.currentTimeMillis();
+                        snapshotDeliveryListeners.forEach((l) -> l.onSnapshotAcknowledged(pictureSnapshot, wireSize, emitTimeMs, ackTimeMs));
+                    }
+                });
+            } else {
+                this.websocket.emit(WebSocketEventTypes.PICTURE_SNAPSHOT_EVENT_TYPE, jsonObject);
+            }
+            this.metricsRegistry.counter(MetricNames.SNAPSHOT_SENT_PREFIX + pictureSnapshot.getSource()).increment();
+            this.metricsRegistry.counter(MetricNames.SNAPSHOT_SENT_BYTES).add(wireSize);
             websocketListeners.forEach((l) -> l.onDataSent(WebSocketEventTypes.PICTURE_SNAPSHOT_EVENT_TYPE, pictureSnapshot));
+            return true;
         } catch (JSONException ex) {
             Log.e(LOG_TAG, "Cannot convert picture snapshot to json: " + ex.getMessage());
         } catch (Exception ex) {
             Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while sending picture snapshot over websocket: " + ex.getMessage());
         }
+        this.metricsRegistry.counter(MetricNames.SNAPSHOT_SEND_FAILURES).increment();
+        return false;
+    }
+
+    /**
+     * Send the pictures taken at the same time from both cameras as a single event:
+     * {"captureId": ..., "faces": [front, back]}, each face in the form it would have alone (picture or "still same"
+     * heartbeat). Only done if the server supports {@link TransportCapabilities#SNAPSHOT_PAIR}.
+     * With acknowledgements, the single acknowledgement of the pair is reported once, see
+     * {@link SnapshotDeliveryListener#onSnapshotPairAcknowledged}.
+     * @param first a picture of the pair
+     * @param second the other picture, with the same capture id
+     * @return true if the pair has been handed to the websocket
+     */
+    public boolean sendPictureSnapshotPair(PictureSnapshot first, PictureSnapshot second) {
+        final TransportCapabilities currentCapabilities = this.session.getCapabilities();
+        if (!this.isOpened() || !currentCapabilities.supports(TransportCapabilities.SNAPSHOT_PAIR)) {
+            return false;
+        }
+        try {
+            final boolean acknowledged = currentCapabilities.supports(TransportCapabilities.SNAPSHOT_ACK);
+            final PictureSnapshot[] faces = first.getSource().compareTo(second.getSource()) <= 0
+                    ? new PictureSnapshot[]{first, second} : new PictureSnapshot[]{second, first};
+            final int[] wireSizes = new int[faces.length];
+            final JSONArray facesArray = new JSONArray();
+            final long encodeStartNs = System.nanoTime();
+            for (int i = 0; i < faces.length; i++) {
+                facesArray.put(this.encodePicture(faces[i], currentCapabilities));
+                wireSizes[i] = wireSize(faces[i], currentCapabilities);
+            }
+            final JSONObject jsonObject = new JSONObject();
+            jsonObject.put("captureId", first.getCaptureId().longValue());
+            jsonObject.put("faces", facesArray);
+            this.metricsRegistry.histogram(MetricNames.SNAPSHOT_ENCODE_US)
+                    .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - encodeStartNs));
+            if (acknowledged) {
+                final long emitTimeMs = System.currentTimeMillis();
+                this.websocket.emit(WebSocketEventTypes.PICTURE_SNAPSHOT_PAIR_EVENT_TYPE, new Object[]{jsonObject}, new Ack() {
+                    @Override
+                    public void call(Object... args) {
+                        final long ackTimeMs = System.currentTimeMillis();
+                        snapshotDeliveryListeners.forEach((l) -> l.onSnapshotPairAcknowledged(faces, wireSizes, emitTimeMs, ackTimeMs));
+                    }
+                });
+            } else {
+                this.websocket.emit(WebSocketEventTypes.PICTURE_SNAPSHOT_PAIR_EVENT_TYPE, jsonObject);
+            }
+            for (int i = 0; i < faces.length; i++) {
+                if (faces[i].isStillSame()) {
+                    this.metricsRegistry.counter(MetricNames.SNAPSHOT_STILL_SAME_SENT).increment();
+                } else {
+                    this.metricsRegistry.counter(MetricNames.SNAPSHOT_SENT_PREFIX + faces[i].getSource()).increment();
+                    this.metricsRegistry.counter(MetricNames.SNAPSHOT_SENT_BYTES).add(wireSizes[i]);
+                }
+            }
+            this.metricsRegistry.counter(MetricNames.SNAPSHOT_PAIRS_SENT).increment();
+            websocketListeners.forEach((l) -> l.onDataSent(WebSocketEventTypes.PICTURE_SNAPSHOT_PAIR_EVENT_TYPE, faces));
+            return true;
+        } catch (JSONException ex) {
+            Log.e(LOG_TAG, "Cannot convert picture snapshot pair to json: " + ex.getMessage());
+        } catch (Exception ex) {
+            Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while sending picture snapshot pair over websocket: " + ex.getMessage());
+        }
+        this.metricsRegistry.counter(MetricNames.SNAPSHOT_SEND_FAILURES).increment();
+        return false;
+    }
+
+    // Picture in the form negotiated with the server
+    private JSONObject encodePicture(PictureSnapshot pictureSnapshot, TransportCapabilities currentCapabilities) throws JSONException {
+        if (pictureSnapshot.isStillSame()) {
+            return pictureSnapshot.toStillSameJSONObject();
+        }
+        if (currentCapabilities.supports(TransportCapabilities.BINARY_SNAPSHOT)) {
+            return pictureSnapshot.toBinaryJSONObject();
+        }
+        return this.snapshotJsonEncoder.encode(pictureSnapshot,
+                currentCapabilities.supports(TransportCapabilities.EPOCH_TIMESTAMP));
+    }
+
+    private static int wireSize(PictureSnapshot pictureSnapshot, TransportCapabilities currentCapabilities) {
+        if (pictureSnapshot.isStillSame()) {
+            return 0;
+        }
+        return currentCapabilities.supports(TransportCapabilities.BINARY_SNAPSHOT)
+                ? pictureSnapshot.getDataLength() : SnapshotJsonEncoder.base64Length(pictureSnapshot.getDataLength());
+    }
+
+    // A heartbeat only makes sense to a server that negotiated it: otherwise it is not sent
+    private boolean sendStillSame(PictureSnapshot pictureSnapshot) {
+        if (!this.session.getCapabilities().supports(TransportCapabilities.STILL_SAME)) {
+            return false;
+        }
+        try {
+            this.websocket.emit(WebSocketEventTypes.PICTURE_STILL_SAME_EVENT_TYPE, pictureSnapshot.toStillSameJSONObject());
+            this.metricsRegistry.counter(MetricNames.SNAPSHOT_STILL_SAME_SENT).increment();
+            websocketListeners.forEach((l) -> l.onDataSent(WebSocketEventTypes.PICTURE_STILL_SAME_EVENT_TYPE, pictureSnapshot));
+            return true;
+        } catch (JSONException ex) {
+            Log.e(LOG_TAG, "Cannot convert still same heartbeat to json: " + ex.getMessage());
+        } catch (Exception ex) {
+            Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while sending still same heartbeat over websocket: " + ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Send a chunk of the video stream, as a binary attachment. Only done if the server supports
+     * {@link TransportCapabilities#VIDEO_STREAM}. The acknowledgement of the chunk is reported to the delivery
+     * listeners.
+     * @param videoChunk the chunk to send
+     * @return true if the chunk has been handed to the websocket
+     */
+    public boolean sendVideoChunk(VideoChunk videoChunk) {
+        if (!this.isOpened() || !this.session.getCapabilities().supports(TransportCapabilities.VIDEO_STREAM)) {
+            return false;
+        }
+        try {
+            final long emitTimeMs = System.currentTimeMillis();
+            this.websocket.emit(WebSocketEventTypes.VIDEO_CHUNK_EVENT_TYPE, new Object[]{videoChunk.toBinaryJSONObject()}, new Ack() {
+                @Override
+                public void call(Object... args) {
+                    final long ackTimeMs = System.currentTimeMillis();
+                    snapshotDeliveryListeners.forEach((l) -> l.onVideoChunkAcknowledged(videoChunk, emitTimeMs, ackTimeMs));
+                }
+            });
+            this.metricsRegistry.counter(MetricNames.VIDEO_CHUNKS_SENT).increment();
+            this.metricsRegistry.counter(MetricNames.VIDEO_SENT_BYTES).add(videoChunk.getData().length);
+            if (videoChunk.isKeyframe()) {
+                this.metricsRegistry.counter(MetricNames.VIDEO_KEYFRAMES_SENT).increment();
+            }
+            websocketListeners.forEach((l) -> l.onDataSent(WebSocketEventTypes.VIDEO_CHUNK_EVENT_TYPE, videoChunk));
+            return true;
+        } catch (JSONException ex) {
+            Log.e(LOG_TAG, "Cannot convert video chunk to json: " + ex.getMessage());
+        } catch (Exception ex) {
+            Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while sending video chunk over websocket: " + ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Send a chunk of a high resolution snapshot, as a binary attachment. Only done if the server supports
+     * {@link TransportCapabilities#HIGH_RES_SNAPSHOT}. The acknowledgement of the chunk is reported to the delivery
+     * listeners.
+     * @param highResSnapshot the snapshot
+     * @param chunkIndex the rank of the chunk to send
+     * @return true if the chunk has been handed to the websocket
+     */
+    public boolean sendHighResChunk(HighResSnapshot highResSnapshot, int chunkIndex) {
+        if (!this.isOpened() || !this.session.getCapabilities().supports(TransportCapabilities.HIGH_RES_SNAPSHOT)) {
+            return false;
+        }
+        try {
+            final JSONObject jsonObject = highResSnapshot.toChunkJSONObject(chunkIndex);
+            final long emitTimeMs = System.currentTimeMillis();
+            this.websocket.emit(WebSocketEventTypes.HIGH_RES_SNAPSHOT_CHUNK_EVENT_TYPE, new Object[]{jsonObject}, new Ack() {
+                @Override
+                public void call(Object... args) {
+                    final long ackTimeMs = System.currentTimeMillis();
+                    snapshotDeliveryListeners.forEach((l) -> l.onHighResChunkAcknowledged(highResSnapshot, chunkIndex, emitTimeMs, ackTimeMs));
+                }
+            });
+            this.metricsRegistry.counter(MetricNames.HIGH_RES_CHUNKS_SENT).increment();
+            this.metricsRegistry.counter(MetricNames.HIGH_RES_SENT_BYTES).add(highResSnapshot.getChunkLength(chunkIndex));
+            websocketListeners.forEach((l) -> l.onDataSent(WebSocketEventTypes.HIGH_RES_SNAPSHOT_CHUNK_EVENT_TYPE, highResSnapshot));
+            return true;
+        } catch (JSONException ex) {
+            Log.e(LOG_TAG, "Cannot convert high resolution snapshot chunk to json: " + ex.getMessage());
+        } catch (Exception ex) {
+            Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while sending high resolution snapshot chunk over websocket: " + ex.getMessage());
+        }
+        return false;
     }
 
     public void sendControlInfo(ControlInfo controlInfo) {
@@ -206,16 +504,45 @@ public class WebsocketManager implements AutoCloseable {
         }
     }
 
+    public void sendTelemetry(JSONObject telemetry) {
+        try {
+            websocket.emit(WebSocketEventTypes.TELEMETRY_EVENT_TYPE, telemetry);
+            websocketListeners.forEach((l) -> l.onDataSent(WebSocketEventTypes.TELEMETRY_EVENT_TYPE, telemetry));
+        } catch (Exception ex) {
+            Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while sending telemetry over websocket: " + ex.getMessage());
+        }
+    }
+
+    public void sendCaptureProfile(JSONObject captureProfile) {
+        try {
+            websocket.emit(WebSocketEventTypes.CAPTURE_PROFILE_EVENT_TYPE, captureProfile);
+            websocketListeners.forEach((l) -> l.onDataSent(WebSocketEventTypes.CAPTURE_PROFILE_EVENT_TYPE, captureProfile));
+        } catch (Exception ex) {
+            Log.e(LOG_TAG, "Exception " + ex.getClass().getName() + " while sending capture profile over websocket: " + ex.getMessage());
+        }
+    }
+
+    // Called by the session once a connection is authenticated
+    private void onAuthenticated(TransportCapabilities negotiated) {
+        Log.i(LOG_TAG, "Websocket authenticated, negotiated transport capabilities: " + negotiated);
+        websocketListeners.forEach((l) -> l.onAuthenticated(negotiated));
+    }
+
     private final Emitter.Listener intOnConnect = new Emitter.Listener() {
         @Override
         public void call(Object... args) {
             Log.d(LOG_TAG, "Websocket connected");
             connecting = false;
+            session.onConnected();
             websocketListeners.forEach((l) -> l.onConnect(args));
             Log.d(LOG_TAG, "Authenticate Websocket with authenticator " + authenticator.toString());
             try {
                 final JSONObject jsonObject = new JSONObject(jsonConverter.toJson(authenticator));
-                websocket.emit("authenticate", jsonObject);
+                jsonObject.put("capabilities", TransportCapabilities.clientCapabilitiesToJSONArray());
+                // The same session id on reconnection lets the server resume the session instead of starting a new one
+                jsonObject.put("sessionId", session.getSessionId());
+                jsonObject.put("resume", session.isEstablished());
+                websocket.emit(WebSocketEventTypes.AUTHENTICATE_EVENT_TYPE, jsonObject);
             } catch (JSONException ex) {
                 Log.e(LOG_TAG, "Cannot convert authenticator to json");
             }
@@ -233,6 +560,8 @@ public class WebsocketManager implements AutoCloseable {
                 Log.d(LOG_TAG, "- arg: " + arg + " (class: " + arg.getClass().getName() + ")");
             }
             connecting = false;
+            session.onDisconnected();
+            metricsRegistry.counter(MetricNames.WS_DISCONNECTIONS).increment();
             websocketListeners.forEach((l) -> l.onDisconnect(args));
         }
     };
@@ -277,12 +606,42 @@ public class WebsocketManager implements AutoCloseable {
                     break;
                 }
             }
+            if (isSessionEstablished()) {
+                // Transient: the websocket keeps reconnecting with backoff until the attempts are exhausted
+                Log.i(LOG_TAG, "Connection attempt failed, waiting for the next reconnection attempt");
+                return;
+            }
+            // The first connection failed: wrong endpoint or credentials, do not retry
             connecting = false;
+            if (websocket != null) {
+                websocket.close();
+            }
             final Exception ex = exception;
             websocketListeners.forEach((l) -> l.onConnectError(ex));
         }
     };
 
+    private final Emitter.Listener intOnReconnecting = new Emitter.Listener() {
+        @Override
+        public void call(Object... args) {
+            final int attempt = args.length > 0 && args[0] instanceof Integer ? (Integer) args[0] : 0;
+            Log.i(LOG_TAG, "Websocket reconnecting, attempt " + attempt);
+            connecting = true;
+            metricsRegistry.counter(MetricNames.WS_RECONNECT_ATTEMPTS).increment();
+            websocketListeners.forEach((l) -> l.onReconnecting(attempt));
+        }
+    };
+
+    private final Emitter.Listener intOnReconnectFailed = new Emitter.Listener() {
+        @Override
+        public void call(Object... args) {
+            Log.e(LOG_TAG, "Websocket reconnection failed");
+            connecting = false;
+            final Exception ex = new Exception("Reconnection failed after " + AppConstants.WS_RECONNECTION_ATTEMPTS + " attempts");
+            websocketListeners.forEach((l) -> l.onConnectError(ex));
+        }
+    };
+
     private final Emitter.Listener intOnControlCommand = new Emitter.Listener() {
         @Override
         public void call(Object... args) {
@@ -301,6 +660,40 @@ public class WebsocketManager implements AutoCloseable {
         }
     };
 
+    private final Emitter.Listener intOnServerCapabilities = new Emitter.Listener() {
+        @Override
+        public void call(Object... args) {
+            final JSONObject jsonObj = args.length > 0 && args[0] instanceof JSONObject ? (JSONObject) args[0] : null;
+            session.onAuthenticated(TransportCapabilities.fromJSONObject(jsonObj));
+        }
+    };
+
+    private final Emitter.Listener intOnMetricsRequest = new Emitter.Listener() {
+        @Override
+        public void call(Object... args) {
+            // The metrics are returned through the acknowledgement of the request
+            if (args.length == 0 || !(args[args.length - 1] instanceof Ack)) {
+                Log.d(LOG_TAG, "Metrics request without acknowledgement callback");
+                return;
+            }
+            final Ack ack = (Ack) args[args.length - 1];
+            final MetricsSource source = metricsSource;
+            try {
+                ack.call(source != null ? source.toJSONObject() : new JSONObject());
+            } catch (JSONException ex) {
+                Log.e(LOG_TAG, "Cannot convert metrics to json: " + ex.getMessage());
+            }
+        }
+    };
+
+    private final Emitter.Listener intOnStillRequest = new Emitter.Listener() {
+        @Override
+        public void call(Object... args) {
+            Log.d(LOG_TAG, "Received still request");
+            stillRequestListeners.forEach(StillRequestListener::onStillRequested);
+        }
+    };
+
     private final static HostnameVerifier hostnameVerifier = new HostnameVerifier() {
         @Override
         public boolean verify(String hostname, SSLSession sslSession) {
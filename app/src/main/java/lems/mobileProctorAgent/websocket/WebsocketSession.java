@@ -0,0 +1,131 @@
+package lems.mobileProctorAgent.websocket;
+
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+
+/**
+ * Authentication state of a websocket session across its connections.
+ * Each connection authenticates with the session id: once the session has been authenticated, the next connections
+ * resume it. The server answers the authentication with its transport capabilities. Legacy servers never answer, so a
+ * connection is considered authenticated with the legacy capabilities once the authentication timeout has elapsed.
+ * Thread-safe. The authentication listener is not called under the lock.
+ */
+public class WebsocketSession {
+    private final ScheduledExecutorService executorService;
+    private final MetricsRegistry metricsRegistry;
+    private final long authenticationTimeoutMs;
+    private final Consumer<TransportCapabilities> authenticationListener;
+    private String sessionId;
+    private boolean established;
+    private boolean authenticated;
+    private volatile TransportCapabilities capabilities;
+    private ScheduledFuture<?> authenticationTimeout;
+    private long disconnectionTimeMs;
+
+    /**
+     * @param executorService the executor of the authentication timeout
+     * @param metricsRegistry the registry of the reconnection metrics
+     * @param authenticationTimeoutMs the delay after which a connection without answer is considered authenticated
+     * @param authenticationListener called with the negotiated capabilities once a connection is authenticated
+     */
+    public WebsocketSession(ScheduledExecutorService executorService, MetricsRegistry metricsRegistry,
+                            long authenticationTimeoutMs, Consumer<TransportCapabilities> authenticationListener) {
+        this.executorService = executorService;
+        this.metricsRegistry = metricsRegistry;
+        this.authenticationTimeoutMs = authenticationTimeoutMs;
+        this.authenticationListener = authenticationListener;
+        this.capabilities = TransportCapabilities.legacy();
+    }
+
+    /**
+     * Start a new session, that the server does not resume
+     */
+    public synchronized void start() {
+        this.reset();
+        this.sessionId = UUID.randomUUID().toString();
+        this.established = false;
+        this.disconnectionTimeMs = 0;
+        this.capabilities = TransportCapabilities.legacy();
+    }
+
+    /**
+     * To be called once connected, before authenticating: until the server tells otherwise, stick to the legacy
+     * transport
+     */
+    public synchronized void onConnected() {
+        this.reset();
+        this.capabilities = TransportCapabilities.legacy();
+        this.authenticationTimeout = this.executorService.schedule(
+                () -> this.onAuthenticated(TransportCapabilities.legacy()),
+                this.authenticationTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * To be called when the server answers the authentication. Ignored if the connection is already authenticated.
+     * @param negotiated the capabilities accepted by the server
+     */
+    public void onAuthenticated(TransportCapabilities negotiated) {
+        synchronized (this) {
+            if (this.authenticated) {
+                return;
+            }
+            this.reset();
+            this.capabilities = negotiated;
+            this.authenticated = true;
+            this.established = true;
+            if (this.disconnectionTimeMs > 0) {
+                this.metricsRegistry.counter(MetricNames.WS_RECONNECTIONS).increment();
+                this.metricsRegistry.histogram(MetricNames.WS_RECONNECT_DURATION_MS)
+                        .record(System.currentTimeMillis() - this.disconnectionTimeMs);
+                this.disconnectionTimeMs = 0;
+            }
+        }
+        this.authenticationListener.accept(negotiated);
+    }
+
+    /**
+     * To be called once disconnected. The reconnection duration is measured from the first disconnection.
+     */
+    public synchronized void onDisconnected() {
+        this.reset();
+        if (this.disconnectionTimeMs == 0) {
+            this.disconnectionTimeMs = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Forget the authentication of the current connection
+     */
+    public synchronized void reset() {
+        this.authenticated = false;
+        if (this.authenticationTimeout != null) {
+            this.authenticationTimeout.cancel(false);
+            this.authenticationTimeout = null;
+        }
+    }
+
+    public synchronized boolean isAuthenticated() {
+        return this.authenticated;
+    }
+
+    /**
+     * @return true if the session has already been authenticated once, i.e. the next connections resume it
+     */
+    public synchronized boolean isEstablished() {
+        return this.established;
+    }
+
+    public synchronized String getSessionId() {
+        return this.sessionId;
+    }
+
+    public TransportCapabilities getCapabilities() {
+        return this.capabilities;
+    }
+}
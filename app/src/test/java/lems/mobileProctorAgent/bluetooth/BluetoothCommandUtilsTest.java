@@ -0,0 +1,43 @@
+package lems.mobileProctorAgent.bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BluetoothCommandUtilsTest {
+    // Expected {pitch byte, rotation byte} for a given movement sign
+    private static byte expectedMoveByte(int movement) {
+        return movement > 0 ? (byte) 0xFF : movement < 0 ? (byte) 0x00 : (byte) 0x80;
+    }
+
+    @Test
+    public void moveOrder_allCombinations() {
+        final int[] movements = new int[]{Integer.MIN_VALUE, -5, -1, 0, 1, 7, Integer.MAX_VALUE};
+        for (int rotation : movements) {
+            for (int pitch : movements) {
+                final byte[] expected = new byte[]{expectedMoveByte(pitch), expectedMoveByte(rotation)};
+                assertArrayEquals(expected, BluetoothCommandUtils.computeMoveOrderMessage(rotation, pitch));
+
+                final byte[] dst = new byte[]{0x11, 0x11, 0x11, 0x11};
+                assertEquals(BluetoothCommandUtils.MESSAGE_LENGTH,
+                        BluetoothCommandUtils.writeMoveOrderMessage(rotation, pitch, dst, 1));
+                assertArrayEquals(new byte[]{0x11, expected[0], expected[1], 0x11}, dst);
+
+                final int message = BluetoothCommandUtils.encodeMoveOrder(rotation, pitch);
+                assertEquals(expected[0] & 0xFF, message & 0xFF);
+                assertEquals(expected[1] & 0xFF, message >>> 8);
+            }
+        }
+    }
+
+    @Test
+    public void moveOrder_documentedValues() {
+        assertEquals(0x8080, BluetoothCommandUtils.encodeMoveOrder(0, 0));
+        assertEquals(0xFF80, BluetoothCommandUtils.encodeMoveOrder(1, 0));
+        assertEquals(0x0080, BluetoothCommandUtils.encodeMoveOrder(-1, 0));
+        assertEquals(0x80FF, BluetoothCommandUtils.encodeMoveOrder(0, 1));
+        assertEquals(0x8000, BluetoothCommandUtils.encodeMoveOrder(0, -1));
+        assertEquals(0xFFFF, BluetoothCommandUtils.encodeMoveOrder(1, 1));
+        assertEquals(0x0000, BluetoothCommandUtils.encodeMoveOrder(-1, -1));
+    }
+}
@@ -0,0 +1,96 @@
+package lems.mobileProctorAgent.bluetooth;
+
+import android.bluetooth.BluetoothGatt;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GattCommandQueueTest {
+    private static final long WRITE_TIMEOUT_MS = 200L;
+
+    private ScheduledThreadPoolExecutor executor;
+    // Written from the timeout executor thread in the timeout tests
+    private List<Integer> written;
+    private GattCommandQueue queue;
+
+    @Before
+    public void setUp() {
+        this.executor = new ScheduledThreadPoolExecutor(1);
+        this.written = new CopyOnWriteArrayList<>();
+        this.queue = new GattCommandQueue(this.executor, this.written::add, WRITE_TIMEOUT_MS, null);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    private void awaitWritten(int count) throws InterruptedException {
+        final long deadlineMs = System.currentTimeMillis() + 5000L;
+        while (this.written.size() < count && System.currentTimeMillis() < deadlineMs) {
+            TimeUnit.MILLISECONDS.sleep(5L);
+        }
+        assertEquals(count, this.written.size());
+    }
+
+    @Test
+    public void pendingMove_supersededByNewerOne() {
+        this.queue.offerMove(1);
+        this.queue.offerMove(2);
+        this.queue.offerMove(3);
+        assertEquals(Arrays.asList(1), this.written);
+        assertEquals(2, this.queue.getDepth());
+        assertEquals(1, this.queue.getCoalescedCount());
+
+        this.queue.onWriteCompleted(BluetoothGatt.GATT_SUCCESS);
+        assertEquals(Arrays.asList(1, 3), this.written);
+        this.queue.onWriteCompleted(BluetoothGatt.GATT_SUCCESS);
+        assertEquals(0, this.queue.getDepth());
+        assertEquals(2, this.queue.getWrittenCount());
+        assertEquals(0, this.queue.getFailedCount());
+    }
+
+    @Test
+    public void unconfirmedWrite_timesOutAndWritesNext() throws InterruptedException {
+        this.queue.offerMove(1);
+        this.queue.offerMove(2);
+        this.awaitWritten(2);
+        assertEquals(Arrays.asList(1, 2), this.written);
+        assertEquals(1, this.queue.getFailedCount());
+    }
+
+    @Test
+    public void lateCompletion_notAttributedToNextWrite() throws InterruptedException {
+        this.queue.offerMove(1);
+        this.queue.offerMove(2);
+        this.awaitWritten(2);
+        this.queue.offerMove(3);
+        // Late confirmation of the first write: the second one is still in flight
+        this.queue.onWriteCompleted(BluetoothGatt.GATT_SUCCESS);
+        assertEquals(Arrays.asList(1, 2), this.written);
+        assertEquals(2, this.queue.getDepth());
+        assertEquals(0, this.queue.getWrittenCount());
+
+        this.queue.onWriteCompleted(BluetoothGatt.GATT_SUCCESS);
+        assertEquals(Arrays.asList(1, 2, 3), this.written);
+        assertEquals(1, this.queue.getWrittenCount());
+    }
+
+    @Test
+    public void failedInitiation_dropsCommand() {
+        final GattCommandQueue failingQueue = new GattCommandQueue(this.executor, (command) -> false,
+                WRITE_TIMEOUT_MS, null);
+        failingQueue.offerMove(1);
+        assertEquals(0, failingQueue.getDepth());
+        assertEquals(1, failingQueue.getFailedCount());
+    }
+}
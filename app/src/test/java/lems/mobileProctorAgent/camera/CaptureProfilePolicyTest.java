@@ -0,0 +1,125 @@
+package lems.mobileProctorAgent.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import lems.mobileProctorAgent.device.DeviceState;
+import lems.mobileProctorAgent.device.DeviceStateSource;
+
+import static org.junit.Assert.*;
+
+public class CaptureProfilePolicyTest {
+    private final CaptureProfilePolicy policy = new CaptureProfilePolicy();
+
+    // Device state source replaying a scripted sequence of states, the last one being kept
+    private static class SimulatedDeviceStateSource implements DeviceStateSource {
+        private final Deque<DeviceState> states;
+        private DeviceState current;
+
+        SimulatedDeviceStateSource(DeviceState... states) {
+            this.states = new ArrayDeque<>(Arrays.asList(states));
+        }
+
+        @Override
+        public DeviceState getDeviceState() {
+            if (!this.states.isEmpty()) {
+                this.current = this.states.poll();
+            }
+            return this.current;
+        }
+    }
+
+    private static DeviceState charging(float thermalHeadroom) {
+        return new DeviceState(90, true, 30f, DeviceState.THERMAL_STATUS_NONE, thermalHeadroom);
+    }
+
+    private static DeviceState thermalStatus(int thermalStatus) {
+        return new DeviceState(90, true, Float.NaN, thermalStatus, Float.NaN);
+    }
+
+    private static DeviceState onBattery(int batteryLevel) {
+        return new DeviceState(batteryLevel, false, 30f, DeviceState.THERMAL_STATUS_NONE, Float.NaN);
+    }
+
+    private CaptureProfile[] run(DeviceStateSource source, int steps) {
+        final CaptureProfile[] profiles = new CaptureProfile[steps];
+        CaptureProfile profile = CaptureProfile.NOMINAL;
+        for (int i = 0; i < steps; i++) {
+            profile = this.policy.evaluate(source.getDeviceState(), profile);
+            profiles[i] = profile;
+        }
+        return profiles;
+    }
+
+    @Test
+    public void nominal_whenNothingKnown() {
+        final DeviceState unknown = new DeviceState(DeviceState.UNKNOWN, false, Float.NaN, DeviceState.UNKNOWN, Float.NaN);
+        assertEquals(CaptureProfile.NOMINAL, this.policy.evaluate(unknown, CaptureProfile.NOMINAL));
+    }
+
+    @Test
+    public void thermalStatus_stepsDownImmediately() {
+        assertEquals(CaptureProfile.REDUCED, this.policy.evaluate(thermalStatus(DeviceState.THERMAL_STATUS_LIGHT), CaptureProfile.NOMINAL));
+        assertEquals(CaptureProfile.SINGLE_CAMERA, this.policy.evaluate(thermalStatus(DeviceState.THERMAL_STATUS_MODERATE), CaptureProfile.NOMINAL));
+        assertEquals(CaptureProfile.MINIMAL, this.policy.evaluate(thermalStatus(DeviceState.THERMAL_STATUS_SEVERE), CaptureProfile.NOMINAL));
+        assertEquals(CaptureProfile.MINIMAL, this.policy.evaluate(thermalStatus(DeviceState.THERMAL_STATUS_SHUTDOWN), CaptureProfile.REDUCED));
+    }
+
+    @Test
+    public void heatingAndCooling_stepsUpOneProfileAtATime() {
+        final SimulatedDeviceStateSource source = new SimulatedDeviceStateSource(
+                charging(0.5f), charging(0.75f), charging(0.97f), charging(0.3f));
+        assertArrayEquals(new CaptureProfile[]{CaptureProfile.NOMINAL, CaptureProfile.REDUCED, CaptureProfile.MINIMAL,
+                        CaptureProfile.SINGLE_CAMERA, CaptureProfile.REDUCED, CaptureProfile.NOMINAL, CaptureProfile.NOMINAL},
+                this.run(source, 7));
+    }
+
+    @Test
+    public void headroomAroundThreshold_doesNotFlap() {
+        final SimulatedDeviceStateSource source = new SimulatedDeviceStateSource(
+                charging(0.72f), charging(0.68f), charging(0.71f), charging(0.67f), charging(0.64f));
+        assertArrayEquals(new CaptureProfile[]{CaptureProfile.REDUCED, CaptureProfile.REDUCED, CaptureProfile.REDUCED,
+                        CaptureProfile.REDUCED, CaptureProfile.NOMINAL},
+                this.run(source, 5));
+    }
+
+    @Test
+    public void lowBattery_onlyWhenNotCharging() {
+        assertEquals(CaptureProfile.REDUCED, this.policy.evaluate(onBattery(35), CaptureProfile.NOMINAL));
+        assertEquals(CaptureProfile.SINGLE_CAMERA, this.policy.evaluate(onBattery(20), CaptureProfile.NOMINAL));
+        assertEquals(CaptureProfile.MINIMAL, this.policy.evaluate(onBattery(10), CaptureProfile.NOMINAL));
+        final DeviceState chargingLow = new DeviceState(10, true, 30f, DeviceState.THERMAL_STATUS_NONE, Float.NaN);
+        assertEquals(CaptureProfile.NOMINAL, this.policy.evaluate(chargingLow, CaptureProfile.NOMINAL));
+    }
+
+    @Test
+    public void batteryTemperature_usedWithoutThermalStatus() {
+        final DeviceState hot = new DeviceState(90, true, 44f, DeviceState.UNKNOWN, Float.NaN);
+        assertEquals(CaptureProfile.SINGLE_CAMERA, this.policy.evaluate(hot, CaptureProfile.NOMINAL));
+    }
+
+    @Test
+    public void batteryTemperature_ignoredWithThermalStatus() {
+        final DeviceState hotBattery = new DeviceState(90, true, 44f, DeviceState.THERMAL_STATUS_NONE, Float.NaN);
+        assertEquals(CaptureProfile.NOMINAL, this.policy.evaluate(hotBattery, CaptureProfile.NOMINAL));
+    }
+
+    @Test
+    public void profiles_onlyCapSettings() {
+        final CaptureSettings requested = new CaptureSettings(1000, 416, 416, 85);
+        assertEquals(1000, CaptureProfile.NOMINAL.constrain(requested).getPictureIntervalMs());
+        assertTrue(CaptureProfile.NOMINAL.constrain(requested).hasSamePictureFormat(requested));
+        final CaptureSettings minimal = CaptureProfile.MINIMAL.constrain(requested);
+        assertEquals(10000, minimal.getPictureIntervalMs());
+        assertEquals(240, minimal.getPictureWidth());
+        assertEquals(60, minimal.getJpegQuality());
+        final CaptureSettings low = new CaptureSettings(20000, 160, 160, 50);
+        assertTrue(CaptureProfile.MINIMAL.constrain(low).hasSamePictureFormat(low));
+        assertEquals(20000, CaptureProfile.MINIMAL.constrain(low).getPictureIntervalMs());
+        assertFalse(CaptureProfile.NOMINAL.isSingleCamera());
+        assertTrue(CaptureProfile.SINGLE_CAMERA.isSingleCamera());
+    }
+}
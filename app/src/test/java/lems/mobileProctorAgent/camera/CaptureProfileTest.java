@@ -0,0 +1,47 @@
+package lems.mobileProctorAgent.camera;
+
+import org.junit.Test;
+
+import lems.mobileProctorAgent.video.VideoSettings;
+
+import static org.junit.Assert.*;
+
+public class CaptureProfileTest {
+    private final VideoSettings videoSettings = new VideoSettings(640, 480, 300000, 15, 2);
+
+    @Test
+    public void nominal_keepsVideoSettings() {
+        assertEquals(this.videoSettings, CaptureProfile.NOMINAL.constrain(this.videoSettings));
+    }
+
+    @Test
+    public void constrainedProfiles_stepVideoDown() {
+        final VideoSettings reduced = CaptureProfile.REDUCED.constrain(this.videoSettings);
+        assertEquals(480, reduced.getWidth());
+        assertEquals(360, reduced.getHeight());
+        assertEquals(200000, reduced.getBitRate());
+        assertEquals(10, reduced.getFrameRate());
+        assertEquals(2, reduced.getKeyframeIntervalS());
+
+        final VideoSettings minimal = CaptureProfile.MINIMAL.constrain(this.videoSettings);
+        assertEquals(320, minimal.getWidth());
+        assertEquals(240, minimal.getHeight());
+        assertEquals(80000, minimal.getBitRate());
+        assertEquals(5, minimal.getFrameRate());
+    }
+
+    @Test
+    public void constrainedProfiles_neverRaiseVideoSettings() {
+        final VideoSettings small = new VideoSettings(176, 144, 64000, 5, 4);
+        for (CaptureProfile captureProfile : CaptureProfile.values()) {
+            assertEquals(captureProfile.name(), small, captureProfile.constrain(small));
+        }
+    }
+
+    @Test
+    public void constrainedProfiles_keepEvenSizes() {
+        final VideoSettings wide = CaptureProfile.REDUCED.constrain(new VideoSettings(1280, 722, 300000, 15, 2));
+        assertEquals(0, wide.getWidth() % 2);
+        assertEquals(360, wide.getHeight());
+    }
+}
@@ -0,0 +1,340 @@
+package lems.mobileProctorAgent.camera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+import static org.junit.Assert.*;
+
+public class CaptureStateMachineTest {
+    private static final CaptureSettings SETTINGS = new CaptureSettings(1000, 416, 416, 85);
+    private static final CaptureSettings HIGH_RES_SETTINGS = new CaptureSettings(0, 1920, 1440, 90);
+    private static final long BIND_TIMEOUT_MS = 100L;
+    private static final long CAPTURE_TIMEOUT_MS = 500L;
+
+    // Camera backend whose callbacks are triggered by the test
+    private static class FakeCameraBackend implements CameraBackend {
+        final List<PictureSnapshot.CameraType> boundCameras = new ArrayList<>();
+        final List<CaptureSettings> boundSettings = new ArrayList<>();
+        final List<PictureSnapshot.CameraType> picturesRequested = new ArrayList<>();
+        final EnumMap<PictureSnapshot.CameraType, PictureCallback> pictureCallbacks = new EnumMap<>(PictureSnapshot.CameraType.class);
+        boolean concurrent;
+        int concurrentBindCount;
+        BindCallback bindCallback;
+        PictureCallback pictureCallback;
+        int releaseCount;
+
+        @Override
+        public synchronized void bind(PictureSnapshot.CameraType cameraType, CaptureSettings captureSettings, BindCallback callback) {
+            this.boundCameras.add(cameraType);
+            this.boundSettings.add(captureSettings);
+            this.bindCallback = callback;
+        }
+
+        @Override
+        public boolean supportsConcurrentCapture() {
+            return this.concurrent;
+        }
+
+        @Override
+        public synchronized void bindConcurrent(CaptureSettings captureSettings, BindCallback callback) {
+            this.concurrentBindCount++;
+            this.bindCallback = callback;
+        }
+
+        @Override
+        public synchronized void takePicture(PictureSnapshot.CameraType cameraType, PictureCallback callback) {
+            this.picturesRequested.add(cameraType);
+            this.pictureCallback = callback;
+            this.pictureCallbacks.put(cameraType, callback);
+        }
+
+        @Override
+        public synchronized void release() {
+            this.releaseCount++;
+        }
+
+        void deliverPicture(PictureSnapshot.CameraType cameraType) {
+            this.pictureCallback.onPictureTaken(new PictureSnapshot(cameraType, System.currentTimeMillis(), new byte[]{1, 2, 3}));
+        }
+
+        void deliverPairPicture(PictureSnapshot.CameraType cameraType) {
+            this.pictureCallbacks.get(cameraType).onPictureTaken(
+                    new PictureSnapshot(cameraType, System.currentTimeMillis(), new byte[]{1, 2, 3}));
+        }
+    }
+
+    // Priority picture callback recording its results
+    private static class RecordingPictureCallback implements CameraBackend.PictureCallback {
+        final List<PictureSnapshot> pictures = new ArrayList<>();
+        final List<Exception> failures = new ArrayList<>();
+
+        @Override
+        public synchronized void onPictureTaken(PictureSnapshot pictureSnapshot) {
+            this.pictures.add(pictureSnapshot);
+        }
+
+        @Override
+        public synchronized void onPictureFailed(Exception ex) {
+            this.failures.add(ex);
+        }
+
+        synchronized int failureCount() {
+            return this.failures.size();
+        }
+    }
+
+    private ScheduledExecutorService timeoutExecutor;
+    private FakeCameraBackend backend;
+    private List<PictureSnapshot> delivered;
+    private CaptureStateMachine stateMachine;
+
+    @Before
+    public void setUp() {
+        this.timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.backend = new FakeCameraBackend();
+        // Filled from the timeout executor thread in the timeout tests
+        this.delivered = new CopyOnWriteArrayList<>();
+        this.stateMachine = new CaptureStateMachine(this.backend, this.timeoutExecutor, this.delivered::add, SETTINGS,
+                BIND_TIMEOUT_MS, CAPTURE_TIMEOUT_MS);
+    }
+
+    @After
+    public void tearDown() {
+        this.timeoutExecutor.shutdownNow();
+    }
+
+    private void awaitState(CaptureStateMachine.State state) throws InterruptedException {
+        final long deadlineMs = System.currentTimeMillis() + 5000L;
+        while (this.stateMachine.getState() != state && System.currentTimeMillis() < deadlineMs) {
+            TimeUnit.MILLISECONDS.sleep(5L);
+        }
+        assertEquals(state, this.stateMachine.getState());
+    }
+
+    // The pictures are delivered once the state machine has left its lock, after the state change
+    private void awaitDelivered(int count) throws InterruptedException {
+        final long deadlineMs = System.currentTimeMillis() + 5000L;
+        while (this.delivered.size() < count && System.currentTimeMillis() < deadlineMs) {
+            TimeUnit.MILLISECONDS.sleep(5L);
+        }
+        assertEquals(count, this.delivered.size());
+    }
+
+    @Test
+    public void cycle_goesThroughAllStates() {
+        assertEquals(CaptureStateMachine.State.IDLE, this.stateMachine.getState());
+        this.stateMachine.run();
+        assertEquals(CaptureStateMachine.State.BINDING, this.stateMachine.getState());
+        assertEquals(PictureSnapshot.CameraType.BACK, this.backend.boundCameras.get(0));
+
+        this.backend.bindCallback.onCameraReady();
+        assertEquals(CaptureStateMachine.State.CAPTURING, this.stateMachine.getState());
+        assertEquals(1, this.backend.picturesRequested.size());
+
+        this.backend.deliverPicture(PictureSnapshot.CameraType.BACK);
+        assertEquals(CaptureStateMachine.State.DELIVERED, this.stateMachine.getState());
+        assertEquals(1, this.delivered.size());
+        assertEquals(PictureSnapshot.CameraType.BACK, this.delivered.get(0).getSource());
+    }
+
+    @Test
+    public void cycles_alternateCameras() {
+        for (int i = 0; i < 4; i++) {
+            this.stateMachine.run();
+            this.backend.bindCallback.onCameraReady();
+            this.backend.deliverPicture(this.backend.boundCameras.get(i));
+        }
+        assertEquals(4, this.delivered.size());
+        assertEquals(PictureSnapshot.CameraType.BACK, this.backend.boundCameras.get(0));
+        assertEquals(PictureSnapshot.CameraType.FRONT, this.backend.boundCameras.get(1));
+        assertEquals(PictureSnapshot.CameraType.BACK, this.backend.boundCameras.get(2));
+        assertEquals(PictureSnapshot.CameraType.FRONT, this.backend.boundCameras.get(3));
+    }
+
+    @Test
+    public void singleCamera_onlyFront() {
+        this.stateMachine.setSingleCamera(true);
+        for (int i = 0; i < 3; i++) {
+            this.stateMachine.run();
+            this.backend.bindCallback.onCameraReady();
+            this.backend.deliverPicture(PictureSnapshot.CameraType.FRONT);
+        }
+        for (PictureSnapshot.CameraType cameraType : this.backend.boundCameras) {
+            assertEquals(PictureSnapshot.CameraType.FRONT, cameraType);
+        }
+    }
+
+    @Test
+    public void runDuringCycle_isSkipped() {
+        this.stateMachine.run();
+        this.stateMachine.run();
+        assertEquals(1, this.backend.boundCameras.size());
+        assertEquals(1, this.stateMachine.getSkippedCycleCount());
+        assertEquals(CaptureStateMachine.State.BINDING, this.stateMachine.getState());
+    }
+
+    @Test
+    public void bindFailure_backToIdle() {
+        this.stateMachine.run();
+        this.backend.bindCallback.onBindFailed(new IllegalStateException("camera in use"));
+        assertEquals(CaptureStateMachine.State.IDLE, this.stateMachine.getState());
+        assertEquals(1, this.stateMachine.getFailedCycleCount());
+        assertTrue(this.backend.picturesRequested.isEmpty());
+    }
+
+    @Test
+    public void bindTimeout_takesPictureAnyway() throws InterruptedException {
+        this.stateMachine.run();
+        this.awaitState(CaptureStateMachine.State.CAPTURING);
+        assertEquals(1, this.backend.picturesRequested.size());
+        // Late bind notification ignored
+        this.backend.bindCallback.onCameraReady();
+        assertEquals(1, this.backend.picturesRequested.size());
+    }
+
+    @Test
+    public void captureTimeout_dropsLatePicture() throws InterruptedException {
+        this.stateMachine.run();
+        this.backend.bindCallback.onCameraReady();
+        this.awaitState(CaptureStateMachine.State.IDLE);
+        assertEquals(1, this.stateMachine.getFailedCycleCount());
+        this.backend.deliverPicture(PictureSnapshot.CameraType.BACK);
+        assertTrue(this.delivered.isEmpty());
+        assertEquals(CaptureStateMachine.State.IDLE, this.stateMachine.getState());
+    }
+
+    @Test
+    public void release_abortsCycle() {
+        this.stateMachine.run();
+        this.backend.bindCallback.onCameraReady();
+        this.stateMachine.release();
+        assertEquals(1, this.backend.releaseCount);
+        this.backend.deliverPicture(PictureSnapshot.CameraType.BACK);
+        assertTrue(this.delivered.isEmpty());
+        // A new cycle can start
+        this.stateMachine.run();
+        assertEquals(CaptureStateMachine.State.BINDING, this.stateMachine.getState());
+    }
+
+    @Test
+    public void concurrentBackend_takesPairs() {
+        this.backend.concurrent = true;
+        this.stateMachine.run();
+        assertEquals(1, this.backend.concurrentBindCount);
+        assertTrue(this.backend.boundCameras.isEmpty());
+        this.backend.bindCallback.onCameraReady();
+        assertEquals(2, this.backend.picturesRequested.size());
+
+        // Delivered together once both arrived, front first
+        this.backend.deliverPairPicture(PictureSnapshot.CameraType.BACK);
+        assertTrue(this.delivered.isEmpty());
+        this.backend.deliverPairPicture(PictureSnapshot.CameraType.FRONT);
+        assertEquals(CaptureStateMachine.State.DELIVERED, this.stateMachine.getState());
+        assertEquals(2, this.delivered.size());
+        assertEquals(PictureSnapshot.CameraType.FRONT, this.delivered.get(0).getSource());
+        assertEquals(PictureSnapshot.CameraType.BACK, this.delivered.get(1).getSource());
+        assertNotNull(this.delivered.get(0).getCaptureId());
+        assertEquals(this.delivered.get(0).getCaptureId(), this.delivered.get(1).getCaptureId());
+    }
+
+    @Test
+    public void concurrentBackend_failedFaceDeliversOther() {
+        this.backend.concurrent = true;
+        this.stateMachine.run();
+        this.backend.bindCallback.onCameraReady();
+        this.backend.pictureCallbacks.get(PictureSnapshot.CameraType.FRONT).onPictureFailed(new IllegalStateException("busy"));
+        this.backend.deliverPairPicture(PictureSnapshot.CameraType.BACK);
+        assertEquals(1, this.delivered.size());
+        assertEquals(PictureSnapshot.CameraType.BACK, this.delivered.get(0).getSource());
+        assertEquals(0, this.stateMachine.getFailedCycleCount());
+    }
+
+    @Test
+    public void concurrentBackend_captureTimeoutDeliversPartialPair() throws InterruptedException {
+        this.backend.concurrent = true;
+        this.stateMachine.run();
+        this.backend.bindCallback.onCameraReady();
+        this.backend.deliverPairPicture(PictureSnapshot.CameraType.FRONT);
+        this.awaitState(CaptureStateMachine.State.DELIVERED);
+        this.awaitDelivered(1);
+        // Late face dropped
+        this.backend.deliverPairPicture(PictureSnapshot.CameraType.BACK);
+        assertEquals(1, this.delivered.size());
+    }
+
+    @Test
+    public void concurrentBackend_singleCameraBindsFrontOnly() {
+        this.backend.concurrent = true;
+        this.stateMachine.setSingleCamera(true);
+        this.stateMachine.run();
+        assertEquals(0, this.backend.concurrentBindCount);
+        assertEquals(PictureSnapshot.CameraType.FRONT, this.backend.boundCameras.get(0));
+    }
+
+    @Test
+    public void priorityCapture_whenIdleStartsAtOnce() throws InterruptedException {
+        final RecordingPictureCallback callback = new RecordingPictureCallback();
+        this.stateMachine.requestPriorityCapture(PictureSnapshot.CameraType.FRONT, HIGH_RES_SETTINGS, callback);
+        this.awaitState(CaptureStateMachine.State.BINDING);
+        assertEquals(PictureSnapshot.CameraType.FRONT, this.backend.boundCameras.get(0));
+        assertSame(HIGH_RES_SETTINGS, this.backend.boundSettings.get(0));
+
+        this.backend.bindCallback.onCameraReady();
+        this.backend.deliverPicture(PictureSnapshot.CameraType.FRONT);
+        assertEquals(CaptureStateMachine.State.DELIVERED, this.stateMachine.getState());
+        assertEquals(1, callback.pictures.size());
+        assertEquals(0, this.delivered.size());
+    }
+
+    @Test
+    public void priorityCapture_duringCycleTakesNextCycle() {
+        final RecordingPictureCallback callback = new RecordingPictureCallback();
+        this.stateMachine.run();
+        this.stateMachine.requestPriorityCapture(PictureSnapshot.CameraType.FRONT, HIGH_RES_SETTINGS, callback);
+        assertEquals(1, this.backend.boundCameras.size());
+        this.backend.bindCallback.onCameraReady();
+        this.backend.deliverPicture(PictureSnapshot.CameraType.BACK);
+        assertEquals(1, this.delivered.size());
+
+        this.stateMachine.run();
+        assertEquals(PictureSnapshot.CameraType.FRONT, this.backend.boundCameras.get(1));
+        assertSame(HIGH_RES_SETTINGS, this.backend.boundSettings.get(1));
+        this.backend.bindCallback.onCameraReady();
+        this.backend.deliverPicture(PictureSnapshot.CameraType.FRONT);
+        assertEquals(1, callback.pictures.size());
+        assertEquals(1, this.delivered.size());
+
+        // Back to the periodic pictures
+        this.stateMachine.run();
+        assertSame(SETTINGS, this.backend.boundSettings.get(2));
+    }
+
+    @Test
+    public void priorityCapture_bindFailureNotifiesCallback() throws InterruptedException {
+        final RecordingPictureCallback callback = new RecordingPictureCallback();
+        this.stateMachine.run();
+        this.stateMachine.requestPriorityCapture(PictureSnapshot.CameraType.BACK, HIGH_RES_SETTINGS, callback);
+        this.backend.bindCallback.onCameraReady();
+        this.backend.deliverPicture(PictureSnapshot.CameraType.BACK);
+        this.stateMachine.run();
+        this.backend.bindCallback.onBindFailed(new IllegalStateException("no camera"));
+        assertEquals(CaptureStateMachine.State.IDLE, this.stateMachine.getState());
+        final long deadlineMs = System.currentTimeMillis() + 5000L;
+        while (callback.failureCount() == 0 && System.currentTimeMillis() < deadlineMs) {
+            TimeUnit.MILLISECONDS.sleep(5L);
+        }
+        assertEquals(1, callback.failureCount());
+        assertEquals(0, callback.pictures.size());
+    }
+}
@@ -0,0 +1,95 @@
+package lems.mobileProctorAgent.camera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+import static org.junit.Assert.*;
+
+public class FrameChangeDetectorTest {
+    private static final PictureSnapshot.CameraType FRONT = PictureSnapshot.CameraType.FRONT;
+    private static final PictureSnapshot.CameraType BACK = PictureSnapshot.CameraType.BACK;
+
+    // 16x16 grid, a cell may move by 12 levels, up to 5 cells may change
+    private final FrameChangeDetector detector = new FrameChangeDetector(12, 0.02f, 30000);
+
+    private static byte[] uniform(int luma) {
+        final byte[] signature = new byte[256];
+        Arrays.fill(signature, (byte) luma);
+        return signature;
+    }
+
+    private static byte[] withChangedCells(byte[] signature, int cellCount, int delta) {
+        final byte[] changed = signature.clone();
+        for (int i = 0; i < cellCount; i++) {
+            changed[i] = (byte) ((changed[i] & 0xFF) + delta);
+        }
+        return changed;
+    }
+
+    @Test
+    public void firstFrameIsKeyframe() {
+        assertNull(detector.detect(FRONT, uniform(100), 1000));
+    }
+
+    @Test
+    public void noiseIsStillSame() {
+        final byte[] keyframe = uniform(200);
+        detector.detect(FRONT, keyframe, 1000);
+        assertEquals(Long.valueOf(1000), detector.detect(FRONT, withChangedCells(keyframe, 256, 12), 2000));
+        assertEquals(Long.valueOf(1000), detector.detect(FRONT, withChangedCells(keyframe, 5, 50), 3000));
+    }
+
+    @Test
+    public void changedCellsPastThresholdMakeKeyframe() {
+        final byte[] keyframe = uniform(100);
+        detector.detect(FRONT, keyframe, 1000);
+        assertNull(detector.detect(FRONT, withChangedCells(keyframe, 6, 13), 2000));
+        // The new keyframe becomes the reference
+        assertEquals(Long.valueOf(2000), detector.detect(FRONT, withChangedCells(keyframe, 6, 13), 3000));
+    }
+
+    @Test
+    public void slowDriftComparedToKeyframe() {
+        final byte[] keyframe = uniform(100);
+        detector.detect(FRONT, keyframe, 1000);
+        assertNotNull(detector.detect(FRONT, uniform(108), 2000));
+        assertNull(detector.detect(FRONT, uniform(116), 3000));
+    }
+
+    @Test
+    public void keyframeAfterMaxInterval() {
+        detector.detect(FRONT, uniform(100), 1000);
+        assertNotNull(detector.detect(FRONT, uniform(100), 30999));
+        assertNull(detector.detect(FRONT, uniform(100), 31000));
+    }
+
+    @Test
+    public void camerasAreIndependent() {
+        detector.detect(FRONT, uniform(100), 1000);
+        assertNull(detector.detect(BACK, uniform(100), 1500));
+        assertEquals(Long.valueOf(1000), detector.detect(FRONT, uniform(100), 2000));
+    }
+
+    @Test
+    public void resetForgetsKeyframes() {
+        detector.detect(FRONT, uniform(100), 1000);
+        detector.reset();
+        assertNull(detector.detect(FRONT, uniform(100), 2000));
+    }
+
+    @Test
+    public void droppedKeyframeIsForgotten() {
+        final byte[] keyframe = uniform(100);
+        detector.detect(FRONT, keyframe, 1000);
+        detector.detect(BACK, keyframe, 1000);
+        // Another frame than the keyframe: kept
+        detector.reset(FRONT, 2000);
+        assertEquals(Long.valueOf(1000), detector.detect(FRONT, keyframe, 3000));
+        detector.reset(FRONT, 1000);
+        assertNull(detector.detect(FRONT, keyframe, 4000));
+        assertEquals(Long.valueOf(1000), detector.detect(BACK, keyframe, 4000));
+    }
+}
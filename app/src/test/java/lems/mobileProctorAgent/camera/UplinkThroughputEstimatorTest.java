@@ -0,0 +1,42 @@
+package lems.mobileProctorAgent.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UplinkThroughputEstimatorTest {
+
+    @Test
+    public void emptyWindow_noEstimate() {
+        assertEquals(-1.0, new UplinkThroughputEstimator().closeWindow(), 0.0);
+    }
+
+    @Test
+    public void overlappingFrames_countBusyTimeOnce() {
+        final UplinkThroughputEstimator estimator = new UplinkThroughputEstimator();
+        // Three frames of 10 kB in flight together, the uplink busy from 0 to 500 ms
+        estimator.onAcknowledged(10000, 0L, 300L);
+        estimator.onAcknowledged(10000, 100L, 400L);
+        estimator.onAcknowledged(10000, 200L, 500L);
+        assertEquals(60000.0, estimator.closeWindow(), 0.1);
+    }
+
+    @Test
+    public void idleTime_notCounted() {
+        final UplinkThroughputEstimator estimator = new UplinkThroughputEstimator();
+        estimator.onAcknowledged(10000, 0L, 100L);
+        estimator.onAcknowledged(10000, 1000L, 1100L);
+        assertEquals(100000.0, estimator.closeWindow(), 0.1);
+    }
+
+    @Test
+    public void closeWindow_startsNewWindow() {
+        final UplinkThroughputEstimator estimator = new UplinkThroughputEstimator();
+        estimator.onAcknowledged(10000, 0L, 100L);
+        estimator.closeWindow();
+        assertEquals(-1.0, estimator.closeWindow(), 0.0);
+        // A frame emitted in the previous window only counts its time in the new one
+        estimator.onAcknowledged(5000, 50L, 150L);
+        assertEquals(100000.0, estimator.closeWindow(), 0.1);
+    }
+}
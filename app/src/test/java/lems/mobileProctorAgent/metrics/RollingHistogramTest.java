@@ -0,0 +1,75 @@
+package lems.mobileProctorAgent.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RollingHistogramTest {
+
+    @Test
+    public void buckets_exactBelowSubBucketCount() {
+        for (long value = 0; value < RollingHistogram.SUB_BUCKET_COUNT; value++) {
+            assertEquals(value, RollingHistogram.bucketIndex(value));
+            assertEquals(value, RollingHistogram.highestEquivalentValue((int) value));
+        }
+    }
+
+    @Test
+    public void buckets_boundValuesWithRelativePrecision() {
+        int previousIndex = RollingHistogram.bucketIndex(RollingHistogram.SUB_BUCKET_COUNT - 1);
+        for (long value = RollingHistogram.SUB_BUCKET_COUNT; value < (1L << 20); value += 1 + value / 100) {
+            final int index = RollingHistogram.bucketIndex(value);
+            assertTrue(index >= previousIndex);
+            final long highest = RollingHistogram.highestEquivalentValue(index);
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / RollingHistogram.SUB_BUCKET_COUNT);
+            // The next value above the bucket is in the next bucket
+            assertEquals(index + 1, RollingHistogram.bucketIndex(highest + 1));
+            previousIndex = index;
+        }
+    }
+
+    @Test
+    public void buckets_hugeValuesInLastBucket() {
+        final int lastIndex = RollingHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(lastIndex, RollingHistogram.bucketIndex(1L << 40));
+        // The last bucket also counts the largest values in range
+        assertEquals(lastIndex, RollingHistogram.bucketIndex((1L << 33) - 1));
+        assertEquals(lastIndex - 1, RollingHistogram.bucketIndex((1L << 33) - (1L << 28) - 1));
+    }
+
+    @Test
+    public void snapshot_percentiles() {
+        final RollingHistogram histogram = new RollingHistogram(60_000L, 6);
+        final long nowMs = 1_000_000L;
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value, nowMs);
+        }
+        histogram.record(-5, nowMs);
+
+        final HistogramSnapshot snapshot = histogram.getSnapshot(nowMs);
+        assertEquals(101, snapshot.getCount());
+        assertEquals(5050 / 101.0, snapshot.getMean(), 0.001);
+        assertEquals(100, snapshot.getMax());
+        // Within the bucket precision of the exact percentile
+        assertTrue(snapshot.getP50() >= 50 && snapshot.getP50() <= 53);
+        assertTrue(snapshot.getP95() >= 95 && snapshot.getP95() <= 100);
+        // 100th of the 101 samples, the negative one counted as 0
+        assertEquals(99, snapshot.getP99());
+    }
+
+    @Test
+    public void snapshot_samplesExpireWithTheirSlot() {
+        final RollingHistogram histogram = new RollingHistogram(1000L, 4);
+        histogram.record(10, 0L);
+        histogram.record(20, 600L);
+
+        assertEquals(2, histogram.getSnapshot(900L).getCount());
+        assertEquals(1, histogram.getSnapshot(1000L).getCount());
+        assertEquals(20, histogram.getSnapshot(1000L).getMax());
+        assertEquals(0, histogram.getSnapshot(1500L).getCount());
+        // A recycled slot forgets its previous samples
+        histogram.record(30, 2000L);
+        assertEquals(1, histogram.getSnapshot(2000L).getCount());
+    }
+}
@@ -0,0 +1,64 @@
+package lems.mobileProctorAgent.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import lems.mobileProctorAgent.model.HighResSnapshot;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+import static org.junit.Assert.*;
+
+public class SnapshotLatencyTrackerTest {
+    private MetricsRegistry metricsRegistry;
+    private SnapshotLatencyTracker tracker;
+    // Recent enough for the samples to be in the histogram window
+    private long captureTimeMs;
+
+    @Before
+    public void setUp() {
+        this.metricsRegistry = new MetricsRegistry();
+        this.tracker = new SnapshotLatencyTracker(this.metricsRegistry);
+        this.captureTimeMs = System.currentTimeMillis() - 1000L;
+    }
+
+    @Test
+    public void acknowledgedSnapshot_tracksAllLatencies() {
+        final PictureSnapshot pictureSnapshot = new PictureSnapshot(PictureSnapshot.CameraType.FRONT,
+                this.captureTimeMs, new byte[]{1});
+        this.tracker.onSnapshotAcknowledged(pictureSnapshot, 10, this.captureTimeMs + 200L, this.captureTimeMs + 500L);
+
+        assertEquals(1, this.metricsRegistry.getCount(MetricNames.SNAPSHOT_ACKNOWLEDGED));
+        assertEquals(200, this.metricsRegistry.getHistogram(MetricNames.SNAPSHOT_CAPTURE_TO_EMIT_MS).getMax());
+        assertEquals(300, this.metricsRegistry.getHistogram(MetricNames.SNAPSHOT_EMIT_TO_ACK_MS).getMax());
+        assertEquals(500, this.metricsRegistry.getHistogram(MetricNames.SNAPSHOT_CAPTURE_TO_ACK_MS).getMax());
+    }
+
+    @Test
+    public void replayedSnapshot_onlyTracksEmitToAck() {
+        final PictureSnapshot pictureSnapshot = new PictureSnapshot(PictureSnapshot.CameraType.FRONT,
+                this.captureTimeMs - 60_000L, new byte[]{1});
+        pictureSnapshot.setReplayed(true);
+        this.tracker.onSnapshotAcknowledged(pictureSnapshot, 10, this.captureTimeMs, this.captureTimeMs + 300L);
+
+        assertEquals(1, this.metricsRegistry.getHistogram(MetricNames.SNAPSHOT_EMIT_TO_ACK_MS).getCount());
+        assertEquals(0, this.metricsRegistry.getHistogram(MetricNames.SNAPSHOT_CAPTURE_TO_EMIT_MS).getCount());
+        assertEquals(0, this.metricsRegistry.getHistogram(MetricNames.SNAPSHOT_CAPTURE_TO_ACK_MS).getCount());
+    }
+
+    @Test
+    public void highResSnapshot_trackedOnLastChunk() {
+        // Three one byte chunks
+        final HighResSnapshot highResSnapshot = new HighResSnapshot(null, this.captureTimeMs - 100L,
+                new PictureSnapshot(PictureSnapshot.CameraType.BACK, this.captureTimeMs, new byte[3]), 1);
+        this.tracker.onHighResChunkAcknowledged(highResSnapshot, 0, this.captureTimeMs, this.captureTimeMs + 200L);
+        this.tracker.onHighResChunkAcknowledged(highResSnapshot, 1, this.captureTimeMs, this.captureTimeMs + 300L);
+        assertEquals(0, this.metricsRegistry.getCount(MetricNames.HIGH_RES_ACKNOWLEDGED));
+
+        this.tracker.onHighResChunkAcknowledged(highResSnapshot, 2, this.captureTimeMs, this.captureTimeMs + 400L);
+        assertEquals(1, this.metricsRegistry.getCount(MetricNames.HIGH_RES_ACKNOWLEDGED));
+        assertEquals(400, this.metricsRegistry.getHistogram(MetricNames.HIGH_RES_CAPTURE_TO_ACK_MS).getMax());
+        assertEquals(500, this.metricsRegistry.getHistogram(MetricNames.HIGH_RES_REQUEST_TO_ACK_MS).getMax());
+        // Regular snapshots are tracked apart
+        assertEquals(0, this.metricsRegistry.getCount(MetricNames.SNAPSHOT_ACKNOWLEDGED));
+    }
+}
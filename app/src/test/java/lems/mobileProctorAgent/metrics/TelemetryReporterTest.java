@@ -0,0 +1,106 @@
+package lems.mobileProctorAgent.metrics;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lems.mobileProctorAgent.device.DeviceState;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.websocket.WebsocketManager;
+
+import static org.junit.Assert.*;
+
+public class TelemetryReporterTest {
+    // Websocket recording the telemetry sent, without any connection
+    private static class FakeWebsocketManager extends WebsocketManager {
+        private final List<JSONObject> sent = new ArrayList<>();
+        private volatile boolean authenticated = true;
+
+        FakeWebsocketManager(ScheduledThreadPoolExecutor executor) {
+            super(executor, new MetricsRegistry());
+        }
+
+        @Override
+        public synchronized boolean isAuthenticated() {
+            return this.authenticated;
+        }
+
+        @Override
+        public void sendTelemetry(JSONObject telemetry) {
+            this.sent.add(telemetry);
+        }
+    }
+
+    private ScheduledThreadPoolExecutor executor;
+    private MetricsRegistry metricsRegistry;
+    private AtomicLong droppedCount;
+    private FakeWebsocketManager wsMgr;
+    private TelemetryReporter reporter;
+
+    @Before
+    public void setUp() {
+        this.executor = new ScheduledThreadPoolExecutor(1);
+        this.metricsRegistry = new MetricsRegistry();
+        this.droppedCount = new AtomicLong();
+        this.metricsRegistry.gauge(MetricNames.QUEUE_DROPPED, this.droppedCount::get);
+        this.wsMgr = new FakeWebsocketManager(this.executor);
+        this.reporter = new TelemetryReporter(this.metricsRegistry,
+                () -> new DeviceState(50, false, Float.NaN, DeviceState.UNKNOWN, Float.NaN), this.wsMgr, 2000L);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    private void capture(PictureSnapshot.CameraType cameraType, int count) {
+        this.metricsRegistry.counter(MetricNames.CAPTURE_PICTURES_PREFIX + cameraType).add(count);
+    }
+
+    @Test
+    public void buildTelemetry_reportsDeltasOfThePeriod() throws Exception {
+        this.reporter.buildTelemetry(1000L);
+        this.capture(PictureSnapshot.CameraType.FRONT, 10);
+        this.capture(PictureSnapshot.CameraType.BACK, 3);
+        this.droppedCount.set(4);
+
+        final JSONObject telemetry = this.reporter.buildTelemetry(3000L);
+        final JSONObject fps = telemetry.getJSONObject("capture").getJSONObject("fps");
+        assertEquals(5.0, fps.getDouble(PictureSnapshot.CameraType.FRONT.toString()), 0.001);
+        assertEquals(1.5, fps.getDouble(PictureSnapshot.CameraType.BACK.toString()), 0.001);
+        assertEquals(4, telemetry.getJSONObject("queue").getLong("dropped"));
+
+        final JSONObject next = this.reporter.buildTelemetry(5000L);
+        assertEquals(0.0, next.getJSONObject("capture").getJSONObject("fps")
+                .getDouble(PictureSnapshot.CameraType.FRONT.toString()), 0.001);
+        assertEquals(0, next.getJSONObject("queue").getLong("dropped"));
+    }
+
+    @Test
+    public void report_notAuthenticated_keepsPeriodOpen() throws Exception {
+        this.reporter.buildTelemetry(System.currentTimeMillis());
+        this.droppedCount.set(2);
+        this.wsMgr.authenticated = false;
+        this.reporter.report();
+        assertTrue(this.wsMgr.sent.isEmpty());
+
+        this.droppedCount.set(5);
+        this.wsMgr.authenticated = true;
+        this.reporter.report();
+        assertEquals(1, this.wsMgr.sent.size());
+        assertEquals(5, this.wsMgr.sent.get(0).getJSONObject("queue").getLong("dropped"));
+    }
+
+    @Test
+    public void writeLatency_reportedOnceRecorded() throws Exception {
+        assertTrue(this.reporter.buildTelemetry(1000L).getJSONObject("ble").isNull("writeLatencyP50Ms"));
+        this.metricsRegistry.histogram(MetricNames.BLE_WRITE_LATENCY_MS).record(12L);
+        assertFalse(this.reporter.buildTelemetry(2000L).getJSONObject("ble").isNull("writeLatencyP50Ms"));
+    }
+}
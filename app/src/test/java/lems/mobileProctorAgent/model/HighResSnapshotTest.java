@@ -0,0 +1,62 @@
+package lems.mobileProctorAgent.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HighResSnapshotTest {
+
+    private static HighResSnapshot snapshotOf(int dataLength, int chunkSize) {
+        return new HighResSnapshot("req-1", 1000L,
+                new PictureSnapshot(PictureSnapshot.CameraType.BACK, 1200L, new byte[dataLength]), chunkSize);
+    }
+
+    @Test
+    public void chunks_coverAllData() {
+        final HighResSnapshot snapshot = snapshotOf(10, 4);
+        assertEquals(3, snapshot.getChunkCount());
+        assertEquals(4, snapshot.getChunkLength(0));
+        assertEquals(4, snapshot.getChunkLength(1));
+        assertEquals(2, snapshot.getChunkLength(2));
+        assertTrue(snapshot.isLastChunk(2));
+        assertFalse(snapshot.isLastChunk(1));
+    }
+
+    @Test
+    public void chunks_exactMultiple() {
+        final HighResSnapshot snapshot = snapshotOf(8, 4);
+        assertEquals(2, snapshot.getChunkCount());
+        assertEquals(4, snapshot.getChunkLength(1));
+    }
+
+    @Test
+    public void progress_tracksInFlightChunks() {
+        final HighResSnapshot snapshot = snapshotOf(10, 4);
+        assertEquals(0, snapshot.nextChunk());
+        assertEquals(1, snapshot.nextChunk());
+        assertEquals(2, snapshot.getInFlightChunkCount());
+        snapshot.onChunkAcknowledged();
+        assertEquals(1, snapshot.getInFlightChunkCount());
+        assertEquals(2, snapshot.nextChunk());
+        assertFalse(snapshot.hasNextChunk());
+        snapshot.onChunkAcknowledged();
+        assertFalse(snapshot.isAcknowledged());
+        snapshot.onChunkAcknowledged();
+        assertTrue(snapshot.isAcknowledged());
+    }
+
+    @Test
+    public void rewind_restartsFromFirstChunk() {
+        final HighResSnapshot snapshot = snapshotOf(10, 4);
+        snapshot.nextChunk();
+        snapshot.nextChunk();
+        snapshot.onChunkAcknowledged();
+        snapshot.rewind();
+        assertTrue(snapshot.hasNextChunk());
+        assertEquals(0, snapshot.getInFlightChunkCount());
+        assertEquals(0, snapshot.nextChunk());
+        // The acknowledgement of a chunk emitted before the rewind no longer counts
+        assertTrue(snapshot.isStaleAcknowledgement(System.currentTimeMillis() - 60000L));
+        assertFalse(snapshot.isStaleAcknowledgement(System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,19 @@
+package lems.mobileProctorAgent.model;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PictureSnapshotTest {
+
+    @Test
+    public void binaryForm_attachesCapturedArray() throws Exception {
+        final byte[] data = new byte[]{(byte) 0xFF, (byte) 0xD8, 1, 2, 3};
+        final PictureSnapshot pictureSnapshot = new PictureSnapshot(PictureSnapshot.CameraType.FRONT, 1234L, data);
+        final JSONObject obj = pictureSnapshot.toBinaryJSONObject();
+        // No copy between the capture and the socket.io attachment
+        assertSame(data, obj.get("data"));
+        assertEquals(data.length, obj.getInt("size"));
+    }
+}
@@ -0,0 +1,133 @@
+package lems.mobileProctorAgent.model;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class TimestampFormatTest {
+    private static final DateTimeFormatter REFERENCE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxx", Locale.US);
+    private static final ZoneId[] ZONES = new ZoneId[]{
+            ZoneId.of("UTC"), ZoneId.of("Europe/Paris"), ZoneId.of("America/St_Johns"),
+            ZoneId.of("Asia/Kathmandu"), ZoneId.of("Australia/Lord_Howe"), ZoneId.of("Pacific/Apia")};
+    // 1970-01-01 to 2100-01-01
+    private static final long MAX_TIMESTAMP = 4_102_444_800_000L;
+
+    private static String reference(long epochMs, ZoneId zone) {
+        return REFERENCE_FORMAT.format(Instant.ofEpochMilli(epochMs).atZone(zone));
+    }
+
+    @Test
+    public void format_matchesReference() {
+        assertEquals("1970-01-01T00:00:00.000+0000", TimestampFormat.formatIso8601(0L, ZoneId.of("UTC")));
+        assertEquals("2022-03-27T03:00:00.000+0200",
+                TimestampFormat.formatIso8601(1_648_342_800_000L, ZoneId.of("Europe/Paris")));
+        assertEquals("2022-03-27T01:59:59.999+0100",
+                TimestampFormat.formatIso8601(1_648_342_799_999L, ZoneId.of("Europe/Paris")));
+        final Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            final long timestamp = (long) (random.nextDouble() * MAX_TIMESTAMP);
+            final ZoneId zone = ZONES[i % ZONES.length];
+            assertEquals(reference(timestamp, zone), TimestampFormat.formatIso8601(timestamp, zone));
+        }
+    }
+
+    @Test
+    public void format_acrossOffsetTransitions() {
+        final ZoneId zone = ZoneId.of("Australia/Lord_Howe");
+        // Walk a year by 7 minutes steps, so that the cached offset is reused then invalidated on each transition
+        final long start = 1_640_995_200_000L;
+        for (long timestamp = start; timestamp < start + 366L * 86_400_000L; timestamp += 7 * 60_000L + 1) {
+            assertEquals(reference(timestamp, zone), TimestampFormat.formatIso8601(timestamp, zone));
+        }
+    }
+
+    @Test
+    public void format_isThreadSafe() throws Exception {
+        final int threads = 8;
+        final int iterations = 50_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                tasks.add(() -> {
+                    final Random random = new Random(seed);
+                    int mismatches = 0;
+                    for (int i = 0; i < iterations; i++) {
+                        final long timestamp = (long) (random.nextDouble() * MAX_TIMESTAMP);
+                        // Threads use different zones, so that they keep replacing each other's cached offset
+                        final ZoneId zone = ZONES[(seed + i) % ZONES.length];
+                        if (!reference(timestamp, zone).equals(TimestampFormat.formatIso8601(timestamp, zone))) {
+                            mismatches++;
+                        }
+                    }
+                    return mismatches;
+                });
+            }
+            for (Future<Integer> result : executor.invokeAll(tasks)) {
+                assertEquals(0, result.get().intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void formatTimestamp_isThreadSafe() throws Exception {
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final long base = t * 86_400_000L * 31;
+                tasks.add(() -> {
+                    int mismatches = 0;
+                    for (long timestamp = base; timestamp < base + 20_000L * 997; timestamp += 997) {
+                        if (!reference(timestamp, ZoneId.systemDefault()).equals(PictureSnapshot.formatTimestamp(timestamp))) {
+                            mismatches++;
+                        }
+                    }
+                    return mismatches;
+                });
+            }
+            for (Future<Integer> result : executor.invokeAll(tasks)) {
+                assertEquals(0, result.get().intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertNull(PictureSnapshot.formatTimestamp(null));
+    }
+
+    @Test
+    public void format_followsDefaultZoneChange() {
+        final TimeZone initialDefault = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            TimestampFormat.onDefaultZoneChanged();
+            assertEquals("1970-01-01T00:00:00.000+0000", TimestampFormat.formatIso8601(0L));
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kathmandu"));
+            // Cached until notified
+            assertEquals("1970-01-01T00:00:00.000+0000", TimestampFormat.formatIso8601(0L));
+            TimestampFormat.onDefaultZoneChanged();
+            assertEquals("1970-01-01T05:30:00.000+0530", TimestampFormat.formatIso8601(0L));
+        } finally {
+            TimeZone.setDefault(initialDefault);
+            TimestampFormat.onDefaultZoneChanged();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package lems.mobileProctorAgent.qrcodeReader;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class LumaFrameSamplerTest {
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 12;
+    private static final int ROW_STRIDE = 24;
+
+    // Luma plane whose pixel value encodes its position, rows padded to the row stride
+    private static ByteBuffer createPlane() {
+        final ByteBuffer plane = ByteBuffer.allocateDirect(ROW_STRIDE * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < ROW_STRIDE; x++) {
+                plane.put(y * ROW_STRIDE + x, x < WIDTH ? (byte) (y * 20 + x) : (byte) 0xFF);
+            }
+        }
+        return plane;
+    }
+
+    @Test
+    public void sample_regionOfInterest() {
+        final LumaFrameSampler sampler = new LumaFrameSampler(0.5f, 100);
+        final ByteBuffer plane = createPlane();
+        final byte[] frame = sampler.sample(plane, ROW_STRIDE, WIDTH, HEIGHT);
+        assertEquals(10, sampler.getFrameWidth());
+        assertEquals(6, sampler.getFrameHeight());
+        assertEquals(10 * 6 * 3 / 2, frame.length);
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 10; x++) {
+                assertEquals((3 + y) * 20 + 5 + x, frame[y * 10 + x] & 0xFF);
+            }
+        }
+        // Neutral chroma
+        assertEquals(128, frame[frame.length - 1] & 0xFF);
+        assertEquals(0, plane.position());
+    }
+
+    @Test
+    public void sample_downscaled() {
+        final LumaFrameSampler sampler = new LumaFrameSampler(1f, 10);
+        final byte[] frame = sampler.sample(createPlane(), ROW_STRIDE, WIDTH, HEIGHT);
+        assertEquals(10, sampler.getFrameWidth());
+        assertEquals(6, sampler.getFrameHeight());
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 10; x++) {
+                assertEquals(y * 2 * 20 + x * 2, frame[y * 10 + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void sample_reusesFrame() {
+        final LumaFrameSampler sampler = new LumaFrameSampler(0.5f, 100);
+        final byte[] first = sampler.sample(createPlane(), ROW_STRIDE, WIDTH, HEIGHT);
+        assertSame(first, sampler.sample(createPlane(), ROW_STRIDE, WIDTH, HEIGHT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRegionOfInterest() {
+        new LumaFrameSampler(1.5f, 100);
+    }
+}
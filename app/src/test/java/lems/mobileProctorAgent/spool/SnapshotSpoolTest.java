@@ -0,0 +1,128 @@
+package lems.mobileProctorAgent.spool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+
+import static org.junit.Assert.*;
+
+public class SnapshotSpoolTest {
+    private static final int SEGMENT_SIZE = 1024;
+    private static final long MAX_SIZE = 4 * SEGMENT_SIZE;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("spool-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    @Test
+    public void appendThenPoll_keepsSnapshot() throws IOException {
+        final SnapshotSpool spool = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE);
+        final byte[] data = new byte[]{1, 2, 3, 4};
+        assertTrue(spool.append(new PictureSnapshot(PictureSnapshot.CameraType.BACK, 1234L, data)));
+        assertEquals(1, spool.size());
+
+        final PictureSnapshot polled = spool.poll();
+        assertEquals(PictureSnapshot.CameraType.BACK, polled.getSource());
+        assertEquals(Long.valueOf(1234L), polled.getTimestamp());
+        assertEquals(4, polled.getDataLength());
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, polled.getData());
+        assertTrue(polled.isReplayed());
+        assertNull(polled.getCaptureId());
+        assertNull(spool.poll());
+    }
+
+    @Test
+    public void appendThenPoll_keepsCaptureId() throws IOException {
+        final SnapshotSpool spool = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE);
+        final PictureSnapshot pictureSnapshot = new PictureSnapshot(PictureSnapshot.CameraType.FRONT, 1234L, new byte[]{5});
+        pictureSnapshot.setCaptureId(77L);
+        spool.append(pictureSnapshot);
+        spool.close();
+
+        final PictureSnapshot polled = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE).poll();
+        assertEquals(Long.valueOf(77L), polled.getCaptureId());
+        assertArrayEquals(new byte[]{5}, polled.getData());
+    }
+
+    @Test
+    public void peek_keepsSnapshotUntilRemoved() throws IOException {
+        final SnapshotSpool spool = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE);
+        spool.append(new PictureSnapshot(PictureSnapshot.CameraType.FRONT, 1L, new byte[]{1}));
+        spool.append(new PictureSnapshot(PictureSnapshot.CameraType.FRONT, 2L, new byte[]{2}));
+        assertEquals(Long.valueOf(1L), spool.peek().getTimestamp());
+        assertEquals(Long.valueOf(1L), spool.peek().getTimestamp());
+        assertEquals(2, spool.size());
+        spool.remove();
+        assertEquals(1, spool.size());
+        assertEquals(Long.valueOf(2L), spool.peek().getTimestamp());
+        spool.close();
+
+        final SnapshotSpool reopened = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE);
+        assertEquals(1, reopened.size());
+        assertEquals(Long.valueOf(2L), reopened.poll().getTimestamp());
+    }
+
+    @Test
+    public void reopen_onlyRecoversSnapshotsNotReplayed() throws IOException {
+        final SnapshotSpool spool = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE);
+        spool.append(new PictureSnapshot(PictureSnapshot.CameraType.FRONT, 1L, new byte[]{1}));
+        spool.append(new PictureSnapshot(PictureSnapshot.CameraType.FRONT, 2L, new byte[]{2}));
+        spool.poll();
+        spool.close();
+
+        final SnapshotSpool reopened = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE);
+        assertEquals(1, reopened.size());
+        assertEquals(Long.valueOf(2L), reopened.poll().getTimestamp());
+    }
+
+    @Test
+    public void reopen_ignoresSegmentOfUnknownFormat() throws IOException {
+        // Segment without the format header
+        final ByteBuffer record = ByteBuffer.allocate(SEGMENT_SIZE);
+        record.putInt(1 + 8 + 3).put((byte) PictureSnapshot.CameraType.BACK.ordinal()).putLong(42L).put(new byte[]{7, 8, 9});
+        try (RandomAccessFile raf = new RandomAccessFile(new File(this.directory, "segment-0.spool"), "rw")) {
+            raf.write(record.array());
+        }
+
+        final SnapshotSpool spool = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE);
+        assertEquals(0, spool.size());
+        assertNull(spool.poll());
+        // New snapshots go to a new segment
+        spool.append(new PictureSnapshot(PictureSnapshot.CameraType.FRONT, 44L, new byte[]{6}));
+        assertEquals(2, this.directory.listFiles().length);
+        assertEquals(Long.valueOf(44L), spool.poll().getTimestamp());
+    }
+
+    @Test
+    public void full_evictsOldestSegment() throws IOException {
+        final SnapshotSpool spool = new SnapshotSpool(this.directory, SEGMENT_SIZE, MAX_SIZE);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(spool.append(new PictureSnapshot(PictureSnapshot.CameraType.FRONT, (long) i, new byte[600])));
+        }
+        assertEquals(4, spool.size());
+        assertEquals(6, spool.getEvictedCount());
+        assertEquals(4, this.directory.listFiles().length);
+    }
+}
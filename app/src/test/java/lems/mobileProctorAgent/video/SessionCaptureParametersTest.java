@@ -0,0 +1,42 @@
+package lems.mobileProctorAgent.video;
+
+import org.junit.Test;
+
+import lems.mobileProctorAgent.camera.CaptureManager;
+
+import static org.junit.Assert.*;
+
+public class SessionCaptureParametersTest {
+    private final VideoSettings defaultVideoSettings = new VideoSettings(640, 480, 500_000, 15, 2);
+
+    @Test
+    public void noCaptureParameter_takesPictures() {
+        final SessionCaptureParameters parameters = SessionCaptureParameters.parse(null, "5", this.defaultVideoSettings);
+        assertEquals(CaptureManager.CaptureMode.STILLS, parameters.getCaptureMode());
+        assertSame(this.defaultVideoSettings, parameters.getVideoSettings());
+    }
+
+    @Test
+    public void videoCapture_ignoresCase() {
+        final SessionCaptureParameters parameters = SessionCaptureParameters.parse("Video", null, this.defaultVideoSettings);
+        assertEquals(CaptureManager.CaptureMode.VIDEO, parameters.getCaptureMode());
+        assertSame(this.defaultVideoSettings, parameters.getVideoSettings());
+    }
+
+    @Test
+    public void keyframeInterval_applied() {
+        final SessionCaptureParameters parameters = SessionCaptureParameters.parse("video", " 4 ", this.defaultVideoSettings);
+        assertEquals(4, parameters.getVideoSettings().getKeyframeIntervalS());
+        assertEquals(this.defaultVideoSettings.getBitRate(), parameters.getVideoSettings().getBitRate());
+    }
+
+    @Test
+    public void invalidKeyframeInterval_ignored() {
+        assertSame(this.defaultVideoSettings,
+                SessionCaptureParameters.parse("video", "0", this.defaultVideoSettings).getVideoSettings());
+        assertSame(this.defaultVideoSettings,
+                SessionCaptureParameters.parse("video", "-3", this.defaultVideoSettings).getVideoSettings());
+        assertSame(this.defaultVideoSettings,
+                SessionCaptureParameters.parse("video", "often", this.defaultVideoSettings).getVideoSettings());
+    }
+}
@@ -0,0 +1,92 @@
+package lems.mobileProctorAgent.video;
+
+import org.junit.Test;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.model.VideoChunk;
+
+import static org.junit.Assert.*;
+
+public class VideoChunkFlowControlTest {
+    private static final VideoChunkFlowControl.Decision SEND = VideoChunkFlowControl.Decision.SEND;
+    private static final VideoChunkFlowControl.Decision DROP = VideoChunkFlowControl.Decision.DROP;
+    private static final VideoChunkFlowControl.Decision DROP_AND_REQUEST_KEYFRAME =
+            VideoChunkFlowControl.Decision.DROP_AND_REQUEST_KEYFRAME;
+
+    // Up to 3 chunks or 1000 bytes in flight, acknowledgements expected within 5 s
+    private final VideoChunkFlowControl flowControl = new VideoChunkFlowControl(3, 1000, 5000L);
+    private long sequence;
+
+    private VideoChunk chunk(boolean keyframe, int length) {
+        return new VideoChunk(PictureSnapshot.CameraType.FRONT, this.sequence++, 0L, 0L, keyframe, new byte[length]);
+    }
+
+    @Test
+    public void chunksInFlight_boundedInNumber() {
+        final VideoChunk first = chunk(true, 100);
+        assertEquals(SEND, flowControl.onChunk(first, true, 0L));
+        assertEquals(SEND, flowControl.onChunk(chunk(false, 100), true, 0L));
+        assertEquals(SEND, flowControl.onChunk(chunk(false, 100), true, 0L));
+        assertEquals(DROP_AND_REQUEST_KEYFRAME, flowControl.onChunk(chunk(false, 100), true, 0L));
+        // An acknowledgement makes room, but the stream is broken up to the next keyframe
+        flowControl.onAcknowledged(first);
+        assertEquals(2, flowControl.getInFlightChunkCount());
+        assertEquals(DROP, flowControl.onChunk(chunk(false, 100), true, 0L));
+        assertEquals(SEND, flowControl.onChunk(chunk(true, 100), true, 0L));
+        assertEquals(3, flowControl.getInFlightChunkCount());
+    }
+
+    @Test
+    public void chunksInFlight_boundedInBytes() {
+        assertEquals(SEND, flowControl.onChunk(chunk(true, 600), true, 0L));
+        assertEquals(DROP_AND_REQUEST_KEYFRAME, flowControl.onChunk(chunk(false, 500), true, 0L));
+        assertEquals(600, flowControl.getInFlightBytes());
+    }
+
+    @Test
+    public void largeKeyframe_sentWhenNothingInFlight() {
+        assertEquals(SEND, flowControl.onChunk(chunk(true, 5000), true, 0L));
+        assertEquals(5000, flowControl.getInFlightBytes());
+    }
+
+    @Test
+    public void streamNotAccepted_dropsUpToNextKeyframe() {
+        assertEquals(DROP_AND_REQUEST_KEYFRAME, flowControl.onChunk(chunk(true, 100), false, 0L));
+        // Keyframe requested once only
+        assertEquals(DROP, flowControl.onChunk(chunk(false, 100), false, 0L));
+        assertEquals(DROP, flowControl.onChunk(chunk(true, 100), false, 0L));
+        assertEquals(DROP, flowControl.onChunk(chunk(false, 100), true, 0L));
+        assertEquals(SEND, flowControl.onChunk(chunk(true, 100), true, 0L));
+        assertEquals(SEND, flowControl.onChunk(chunk(false, 100), true, 0L));
+    }
+
+    @Test
+    public void failedSend_requestsKeyframe() {
+        final VideoChunk keyframe = chunk(true, 100);
+        assertEquals(SEND, flowControl.onChunk(keyframe, true, 0L));
+        assertTrue(flowControl.onSendFailed(keyframe));
+        assertEquals(0, flowControl.getInFlightChunkCount());
+        assertEquals(DROP, flowControl.onChunk(chunk(false, 100), true, 0L));
+    }
+
+    @Test
+    public void missingAcknowledgement_expires() {
+        assertEquals(SEND, flowControl.onChunk(chunk(true, 100), true, 0L));
+        assertEquals(SEND, flowControl.onChunk(chunk(false, 100), true, 1000L));
+        assertEquals(SEND, flowControl.onChunk(chunk(false, 100), true, 2000L));
+        // The first chunk no longer counts as in flight
+        assertEquals(SEND, flowControl.onChunk(chunk(false, 100), true, 5000L));
+        assertEquals(3, flowControl.getInFlightChunkCount());
+        assertEquals(300, flowControl.getInFlightBytes());
+    }
+
+    @Test
+    public void reset_forgetsChunksInFlightAndWaitsForKeyframe() {
+        assertEquals(SEND, flowControl.onChunk(chunk(true, 100), true, 0L));
+        flowControl.reset();
+        assertEquals(0, flowControl.getInFlightChunkCount());
+        assertEquals(0, flowControl.getInFlightBytes());
+        assertEquals(DROP, flowControl.onChunk(chunk(false, 100), true, 0L));
+        assertEquals(SEND, flowControl.onChunk(chunk(true, 100), true, 0L));
+    }
+}
@@ -0,0 +1,53 @@
+package lems.mobileProctorAgent.websocket;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SnapshotJsonEncoderTest {
+
+    private static String encode(byte[] src, int offset, int length) {
+        final byte[] dst = new byte[SnapshotJsonEncoder.base64Length(length)];
+        final int written = SnapshotJsonEncoder.encodeBase64(src, offset, length, dst, 0);
+        assertEquals(dst.length, written);
+        return new String(dst, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void encodeBase64_shortLengths_matchJdkEncoder() {
+        for (int length = 0; length <= 5; length++) {
+            final byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (0xF0 + i * 7);
+            }
+            assertEquals("length " + length, Base64.getEncoder().encodeToString(data), encode(data, 0, length));
+        }
+    }
+
+    @Test
+    public void encodeBase64_randomBuffers_matchJdkEncoder() {
+        final Random random = new Random(42);
+        for (int length : new int[]{1023, 1024, 1025, 65536 + 2}) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertEquals("length " + length, Base64.getEncoder().encodeToString(data), encode(data, 0, length));
+        }
+    }
+
+    @Test
+    public void encodeBase64_dataShorterThanBuffer_onlyEncodesData() {
+        // Only the given range of the buffer is encoded
+        final byte[] buffer = new byte[4096];
+        new Random(7).nextBytes(buffer);
+        for (int length : new int[]{100, 101, 102}) {
+            assertEquals("length " + length, Base64.getEncoder().encodeToString(Arrays.copyOf(buffer, length)),
+                    encode(buffer, 0, length));
+        }
+        assertEquals(Base64.getEncoder().encodeToString(Arrays.copyOfRange(buffer, 10, 15)), encode(buffer, 10, 5));
+    }
+}
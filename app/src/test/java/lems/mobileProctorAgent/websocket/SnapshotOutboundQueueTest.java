@@ -0,0 +1,357 @@
+package lems.mobileProctorAgent.websocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+import lems.mobileProctorAgent.model.HighResSnapshot;
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.spool.SnapshotSpool;
+
+import static org.junit.Assert.*;
+
+public class SnapshotOutboundQueueTest {
+    private static final PictureSnapshot.CameraType FRONT = PictureSnapshot.CameraType.FRONT;
+    private static final PictureSnapshot.CameraType BACK = PictureSnapshot.CameraType.BACK;
+
+    // Websocket recording what is sent, without any connection
+    private static class FakeWebsocketManager extends WebsocketManager {
+        private final List<Object> sent = new ArrayList<>();
+        private volatile boolean opened = true;
+        private volatile boolean authenticated = true;
+        private volatile boolean sendResult = true;
+        private volatile TransportCapabilities capabilities = TransportCapabilities.legacy();
+
+        FakeWebsocketManager(ScheduledThreadPoolExecutor executor) {
+            super(executor, new MetricsRegistry());
+        }
+
+        @Override
+        public boolean isOpened() {
+            return this.opened;
+        }
+
+        @Override
+        public synchronized boolean isAuthenticated() {
+            return this.authenticated;
+        }
+
+        @Override
+        public TransportCapabilities getCapabilities() {
+            return this.capabilities;
+        }
+
+        @Override
+        public boolean sendPictureSnapshot(PictureSnapshot pictureSnapshot) {
+            if (this.sendResult) {
+                this.sent.add(pictureSnapshot);
+            }
+            return this.sendResult;
+        }
+
+        @Override
+        public boolean sendPictureSnapshotPair(PictureSnapshot first, PictureSnapshot second) {
+            if (this.sendResult) {
+                this.sent.add(new PictureSnapshot[]{first, second});
+            }
+            return this.sendResult;
+        }
+
+        @Override
+        public boolean sendHighResChunk(HighResSnapshot highResSnapshot, int chunkIndex) {
+            if (!this.opened || !this.capabilities.supports(TransportCapabilities.HIGH_RES_SNAPSHOT)) {
+                return false;
+            }
+            if (this.sendResult) {
+                this.sent.add(chunkIndex);
+            }
+            return this.sendResult;
+        }
+    }
+
+    private ScheduledThreadPoolExecutor executor;
+    private FakeWebsocketManager wsMgr;
+    private SnapshotOutboundQueue queue;
+    private List<PictureSnapshot> dropped;
+
+    @Before
+    public void setUp() {
+        this.executor = new ScheduledThreadPoolExecutor(1);
+        this.wsMgr = new FakeWebsocketManager(this.executor);
+        final EnumMap<PictureSnapshot.CameraType, SnapshotOutboundQueue.OverflowPolicy> policies =
+                new EnumMap<>(PictureSnapshot.CameraType.class);
+        policies.put(FRONT, SnapshotOutboundQueue.OverflowPolicy.DROP_OLDEST);
+        policies.put(BACK, SnapshotOutboundQueue.OverflowPolicy.LATEST_WINS);
+        this.queue = new SnapshotOutboundQueue(this.wsMgr, this.executor, policies, 2);
+        this.dropped = new ArrayList<>();
+        this.queue.addSnapshotDropListener(this.dropped::add);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    // Run the tasks submitted to the sender executor so far, and the ones they submit in turn
+    private void flush() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            this.executor.submit(() -> { }).get();
+        }
+    }
+
+    private static PictureSnapshot picture(PictureSnapshot.CameraType source, long timestamp) {
+        return new PictureSnapshot(source, timestamp, new byte[]{1, 2, 3});
+    }
+
+    private static PictureSnapshot paired(PictureSnapshot.CameraType source, long timestamp, long captureId) {
+        final PictureSnapshot pictureSnapshot = picture(source, timestamp);
+        pictureSnapshot.setCaptureId(captureId);
+        return pictureSnapshot;
+    }
+
+    // One byte chunks
+    private static HighResSnapshot highRes(int length) {
+        return new HighResSnapshot(null, 0L, new PictureSnapshot(FRONT, 1L, new byte[length]), 1);
+    }
+
+    private void disconnect() throws Exception {
+        this.wsMgr.opened = false;
+        this.wsMgr.authenticated = false;
+        this.wsMgr.capabilities = TransportCapabilities.legacy();
+        this.queue.onDisconnect(null);
+        this.flush();
+    }
+
+    // Connected again, the capabilities not negotiated yet
+    private void reconnect() throws Exception {
+        this.wsMgr.opened = true;
+        this.queue.onConnect(null);
+        this.flush();
+    }
+
+    private void authenticate(TransportCapabilities capabilities) throws Exception {
+        this.wsMgr.authenticated = true;
+        this.wsMgr.capabilities = capabilities;
+        this.queue.onAuthenticated(capabilities);
+        this.flush();
+    }
+
+    private void acknowledge(HighResSnapshot highResSnapshot, int chunkIndex) throws Exception {
+        final long nowMs = System.currentTimeMillis();
+        this.queue.onHighResChunkAcknowledged(highResSnapshot, chunkIndex, nowMs, nowMs);
+        this.flush();
+    }
+
+    // Offer snapshots from the sender executor, as the capture state machine delivers a pair
+    private void offerFromSender(PictureSnapshot... pictureSnapshots) throws Exception {
+        this.executor.submit(() -> {
+            for (PictureSnapshot pictureSnapshot : pictureSnapshots) {
+                this.queue.offer(pictureSnapshot);
+            }
+        }).get();
+        this.flush();
+    }
+
+    @Test
+    public void overflow_reportsDroppedSnapshot() throws Exception {
+        this.wsMgr.opened = false;
+        final PictureSnapshot first = picture(FRONT, 1L);
+        this.queue.offer(first);
+        this.queue.offer(picture(FRONT, 2L));
+        this.queue.offer(picture(FRONT, 3L));
+        this.flush();
+        assertEquals(1, this.dropped.size());
+        assertSame(first, this.dropped.get(0));
+        assertEquals(1, this.queue.getDroppedCount());
+    }
+
+    // Timestamps of the single snapshots sent
+    private List<Long> sentTimestamps() {
+        final List<Long> timestamps = new ArrayList<>();
+        for (Object sent : this.wsMgr.sent) {
+            timestamps.add(((PictureSnapshot) sent).getTimestamp());
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void dropOldest_keepsMostRecentFramesInOrder() throws Exception {
+        this.wsMgr.opened = false;
+        this.queue.offer(picture(FRONT, 1L));
+        this.queue.offer(picture(FRONT, 2L));
+        this.queue.offer(picture(FRONT, 3L));
+        this.flush();
+        assertEquals(2, this.queue.getDepth());
+
+        this.reconnect();
+        assertEquals(Arrays.asList(2L, 3L), this.sentTimestamps());
+        assertEquals(3, this.queue.getEnqueuedCount());
+        assertEquals(1, this.queue.getDroppedCount());
+        assertEquals(2, this.queue.getSentCount());
+    }
+
+    @Test
+    public void latestWins_keepsOnlyLastFrame() throws Exception {
+        this.wsMgr.opened = false;
+        this.queue.offer(picture(BACK, 1L));
+        this.queue.offer(picture(BACK, 2L));
+        this.queue.offer(picture(BACK, 3L));
+        this.flush();
+        assertEquals(1, this.queue.getDepth());
+        assertEquals(2, this.dropped.size());
+
+        this.reconnect();
+        assertEquals(Arrays.asList(3L), this.sentTimestamps());
+    }
+
+    @Test
+    public void lanes_sentAlternately() throws Exception {
+        this.wsMgr.opened = false;
+        this.queue.offer(picture(FRONT, 1L));
+        this.queue.offer(picture(FRONT, 2L));
+        this.queue.offer(picture(BACK, 10L));
+        this.flush();
+
+        this.reconnect();
+        assertEquals(Arrays.asList(1L, 10L, 2L), this.sentTimestamps());
+        assertEquals(0, this.queue.getDepth());
+        assertEquals(3, this.queue.getSentCount());
+        assertEquals(0, this.queue.getDroppedCount());
+    }
+
+    @Test
+    public void failedSend_reportsDroppedSnapshot() throws Exception {
+        this.wsMgr.sendResult = false;
+        final PictureSnapshot pictureSnapshot = picture(BACK, 1L);
+        this.queue.offer(pictureSnapshot);
+        this.flush();
+        assertEquals(1, this.dropped.size());
+        assertSame(pictureSnapshot, this.dropped.get(0));
+    }
+
+    @Test
+    public void pair_sentAsOneEvent() throws Exception {
+        this.wsMgr.capabilities = TransportCapabilities.of(TransportCapabilities.SNAPSHOT_PAIR);
+        final PictureSnapshot front = paired(FRONT, 1L, 1L);
+        final PictureSnapshot back = paired(BACK, 1L, 1L);
+        this.offerFromSender(front, back);
+        assertEquals(1, this.wsMgr.sent.size());
+        assertArrayEquals(new PictureSnapshot[]{front, back}, (PictureSnapshot[]) this.wsMgr.sent.get(0));
+        assertEquals(2, this.queue.getSentCount());
+    }
+
+    @Test
+    public void partnerBehindBacklog_sentAlone() throws Exception {
+        this.wsMgr.capabilities = TransportCapabilities.of(TransportCapabilities.SNAPSHOT_PAIR);
+        // The front lane is polled first: send one front picture so that the back lane comes next
+        final PictureSnapshot first = picture(FRONT, 0L);
+        this.offerFromSender(first);
+        final PictureSnapshot backlog = paired(FRONT, 1L, 1L);
+        final PictureSnapshot front = paired(FRONT, 2L, 2L);
+        final PictureSnapshot back = paired(BACK, 2L, 2L);
+        this.offerFromSender(backlog, front, back);
+        assertEquals(Arrays.asList(first, back, backlog, front), this.wsMgr.sent);
+    }
+
+    @Test
+    public void stillSameFace_notPairedWithoutStillSameCapability() throws Exception {
+        this.wsMgr.capabilities = TransportCapabilities.of(TransportCapabilities.SNAPSHOT_PAIR);
+        final PictureSnapshot front = paired(FRONT, 2L, 2L);
+        final PictureSnapshot back = PictureSnapshot.stillSame(BACK, 2L, 1L);
+        back.setCaptureId(2L);
+        this.offerFromSender(front, back);
+        assertEquals(Arrays.asList(front, back), this.wsMgr.sent);
+    }
+
+    @Test
+    public void reconnectDuringHighResSend_resendsFromFirstChunkOnceAuthenticated() throws Exception {
+        final TransportCapabilities highResCapabilities = TransportCapabilities.of(TransportCapabilities.HIGH_RES_SNAPSHOT);
+        this.wsMgr.capabilities = highResCapabilities;
+        final HighResSnapshot highResSnapshot = highRes(3);
+        this.queue.offerHighRes(highResSnapshot);
+        this.flush();
+        assertEquals(Arrays.<Object>asList(0, 1), this.wsMgr.sent);
+
+        this.disconnect();
+        this.reconnect();
+        // Opened but not authenticated yet: the snapshot waits
+        assertEquals(2, this.wsMgr.sent.size());
+        assertEquals(0, this.queue.getDroppedCount());
+
+        this.authenticate(highResCapabilities);
+        assertEquals(Arrays.<Object>asList(0, 1, 0, 1), this.wsMgr.sent);
+        this.acknowledge(highResSnapshot, 0);
+        this.acknowledge(highResSnapshot, 1);
+        this.acknowledge(highResSnapshot, 2);
+        assertEquals(Arrays.<Object>asList(0, 1, 0, 1, 2), this.wsMgr.sent);
+        assertEquals(1, this.queue.getSentCount());
+        assertEquals(0, this.queue.getDroppedCount());
+    }
+
+    @Test
+    public void reconnectWithoutHighResCapability_dropsHighResSnapshot() throws Exception {
+        this.wsMgr.capabilities = TransportCapabilities.of(TransportCapabilities.HIGH_RES_SNAPSHOT);
+        this.queue.offerHighRes(highRes(3));
+        this.flush();
+        this.disconnect();
+        this.reconnect();
+        assertEquals(0, this.queue.getDroppedCount());
+
+        this.authenticate(TransportCapabilities.legacy());
+        assertEquals(2, this.wsMgr.sent.size());
+        assertEquals(1, this.queue.getDroppedCount());
+    }
+
+    @Test
+    public void failedReplay_keepsSpoolOrderUntilNextAuthentication() throws Exception {
+        final File directory = Files.createTempDirectory("queue-spool-test").toFile();
+        final SnapshotSpool spool = new SnapshotSpool(directory, 1024, 4 * 1024);
+        try {
+            this.queue.setSpool(spool, 1000);
+            this.disconnect();
+            this.queue.offer(picture(FRONT, 1L));
+            this.queue.offer(picture(FRONT, 2L));
+            this.flush();
+            assertEquals(2, spool.size());
+
+            this.wsMgr.sendResult = false;
+            this.reconnect();
+            this.authenticate(TransportCapabilities.legacy());
+            TimeUnit.MILLISECONDS.sleep(20L);
+            this.flush();
+            assertEquals(2, spool.size());
+            assertEquals(Long.valueOf(1L), spool.peek().getTimestamp());
+
+            this.wsMgr.sendResult = true;
+            this.authenticate(TransportCapabilities.legacy());
+            final long deadlineMs = System.currentTimeMillis() + 5000L;
+            while (!spool.isEmpty() && System.currentTimeMillis() < deadlineMs) {
+                TimeUnit.MILLISECONDS.sleep(5L);
+            }
+            this.flush();
+            assertEquals(2, this.wsMgr.sent.size());
+            assertEquals(Long.valueOf(1L), ((PictureSnapshot) this.wsMgr.sent.get(0)).getTimestamp());
+            assertEquals(Long.valueOf(2L), ((PictureSnapshot) this.wsMgr.sent.get(1)).getTimestamp());
+            assertEquals(2, this.queue.getReplayedCount());
+        } finally {
+            spool.close();
+            final File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package lems.mobileProctorAgent.websocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.metrics.MetricNames;
+import lems.mobileProctorAgent.metrics.MetricsRegistry;
+
+import static org.junit.Assert.*;
+
+public class WebsocketSessionTest {
+    private static final long AUTHENTICATION_TIMEOUT_MS = 100L;
+
+    private ScheduledThreadPoolExecutor executor;
+    private MetricsRegistry metricsRegistry;
+    // Filled from the executor thread when the authentication times out
+    private List<TransportCapabilities> authentications;
+    private WebsocketSession session;
+
+    @Before
+    public void setUp() {
+        this.executor = new ScheduledThreadPoolExecutor(1);
+        this.metricsRegistry = new MetricsRegistry();
+        this.authentications = new CopyOnWriteArrayList<>();
+        this.session = new WebsocketSession(this.executor, this.metricsRegistry, AUTHENTICATION_TIMEOUT_MS,
+                this.authentications::add);
+        this.session.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    // Wait for the authentication timeout, and the tasks it runs, to be over
+    private void awaitAuthenticationTimeout() throws Exception {
+        TimeUnit.MILLISECONDS.sleep(2 * AUTHENTICATION_TIMEOUT_MS);
+        this.executor.submit(() -> { }).get();
+    }
+
+    @Test
+    public void legacyServer_authenticatedOnTimeout() throws Exception {
+        this.session.onConnected();
+        assertFalse(this.session.isAuthenticated());
+
+        this.awaitAuthenticationTimeout();
+        assertTrue(this.session.isAuthenticated());
+        assertTrue(this.session.isEstablished());
+        assertEquals(1, this.authentications.size());
+        assertFalse(this.session.getCapabilities().supports(TransportCapabilities.SNAPSHOT_ACK));
+    }
+
+    @Test
+    public void serverAnswer_cancelsTimeout() throws Exception {
+        final TransportCapabilities negotiated = TransportCapabilities.of(TransportCapabilities.SNAPSHOT_ACK);
+        this.session.onConnected();
+        this.session.onAuthenticated(negotiated);
+        this.session.onAuthenticated(TransportCapabilities.legacy());
+
+        this.awaitAuthenticationTimeout();
+        assertEquals(1, this.authentications.size());
+        assertSame(negotiated, this.session.getCapabilities());
+    }
+
+    @Test
+    public void disconnectedBeforeTimeout_notAuthenticated() throws Exception {
+        this.session.onConnected();
+        this.session.onDisconnected();
+
+        this.awaitAuthenticationTimeout();
+        assertFalse(this.session.isAuthenticated());
+        assertFalse(this.session.isEstablished());
+        assertTrue(this.authentications.isEmpty());
+    }
+
+    @Test
+    public void reconnection_resumesSession() throws Exception {
+        this.session.onConnected();
+        this.session.onAuthenticated(TransportCapabilities.of(TransportCapabilities.SNAPSHOT_ACK));
+        final String sessionId = this.session.getSessionId();
+
+        this.session.onDisconnected();
+        assertFalse(this.session.isAuthenticated());
+        assertTrue(this.session.isEstablished());
+        // Not authenticated again until the server answers, with the legacy capabilities meanwhile
+        this.session.onConnected();
+        assertFalse(this.session.getCapabilities().supports(TransportCapabilities.SNAPSHOT_ACK));
+        this.session.onAuthenticated(TransportCapabilities.of(TransportCapabilities.SNAPSHOT_ACK));
+
+        assertEquals(sessionId, this.session.getSessionId());
+        assertEquals(2, this.authentications.size());
+        assertEquals(1, this.metricsRegistry.getCount(MetricNames.WS_RECONNECTIONS));
+        assertEquals(1, this.metricsRegistry.getHistogram(MetricNames.WS_RECONNECT_DURATION_MS).getCount());
+    }
+
+    @Test
+    public void newSession_notResumed() {
+        this.session.onConnected();
+        this.session.onAuthenticated(TransportCapabilities.legacy());
+        final String sessionId = this.session.getSessionId();
+
+        this.session.start();
+        assertFalse(this.session.isEstablished());
+        assertFalse(this.session.isAuthenticated());
+        assertNotEquals(sessionId, this.session.getSessionId());
+    }
+}
@@ -0,0 +1,30 @@
+package android.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JVM stand-in for the Android framework Base64 encoder, so that the app code using it can be benchmarked off device.
+ * Only the encoding flags used by the app are supported.
+ */
+public class Base64 {
+    public static final int DEFAULT = 0;
+    public static final int NO_WRAP = 2;
+
+    private static final byte[] LINE_SEPARATOR = new byte[]{'\n'};
+    private static final int LINE_LENGTH = 76;
+
+    public static String encodeToString(byte[] input, int offset, int len, int flags) {
+        final byte[] range = new byte[len];
+        System.arraycopy(input, offset, range, 0, len);
+        if ((flags & NO_WRAP) != 0) {
+            return java.util.Base64.getEncoder().encodeToString(range);
+        }
+        // Android wraps lines and terminates the last one
+        final String encoded = java.util.Base64.getMimeEncoder(LINE_LENGTH, LINE_SEPARATOR).encodeToString(range);
+        return encoded.isEmpty() ? encoded : encoded + new String(LINE_SEPARATOR, StandardCharsets.US_ASCII);
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        return encodeToString(input, 0, input.length, flags);
+    }
+}
@@ -0,0 +1,49 @@
+package lems.mobileProctorAgent.benchmark;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.model.ControlOrder;
+
+/**
+ * Parsing of the control orders received from the proctor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ControlOrderParsingBenchmark {
+    private static final String MOVE_ORDER = "{\"code\":\"MOVE\",\"rotation\":1,\"pitch\":-1}";
+
+    private JSONObject moveOrder;
+
+    @Setup
+    public void setUp() throws JSONException {
+        this.moveOrder = new JSONObject(MOVE_ORDER);
+    }
+
+    /** The websocket client hands the order already parsed */
+    @Benchmark
+    public ControlOrder fromJSONObject() {
+        return ControlOrder.fromJSONObject(this.moveOrder);
+    }
+
+    @Benchmark
+    public ControlOrder fromString() throws JSONException {
+        return ControlOrder.fromJSONObject(new JSONObject(MOVE_ORDER));
+    }
+}
@@ -0,0 +1,58 @@
+package lems.mobileProctorAgent.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Synthetic jpeg pictures close to the ones taken by the app: camera-like content (smooth shading plus sensor noise)
+ * encoded at the capture resolution and jpeg quality.
+ */
+public final class JpegPayloads {
+    public static final int PICTURE_SIZE = 416;
+    public static final float JPEG_QUALITY = 0.85f;
+
+    private JpegPayloads() {
+    }
+
+    public static byte[] createJpeg(int width, int height, float quality, long seed) throws IOException {
+        final Random random = new Random(seed);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int noise = (int) (random.nextGaussian() * 8);
+                final int r = clamp(80 + x * 120 / width + noise);
+                final int g = clamp(60 + y * 100 / height + noise);
+                final int b = clamp(90 + (x + y) * 60 / (width + height) + noise);
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    public static byte[] createCapturedJpeg() throws IOException {
+        return createJpeg(PICTURE_SIZE, PICTURE_SIZE, JPEG_QUALITY, 416L);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
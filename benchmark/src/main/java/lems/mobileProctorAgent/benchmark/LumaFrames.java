@@ -0,0 +1,120 @@
+package lems.mobileProctorAgent.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Luma planes of camera frames, laid out as the camera delivers them: direct buffers whose rows are padded to the
+ * row stride. Frames are read from recorded grayscale images when a directory is given, synthesized otherwise.
+ */
+public final class LumaFrames {
+    public static final String RECORDED_FRAMES_PROPERTY = "lems.qrFrames";
+    public static final int ANALYSIS_WIDTH = 1280;
+    public static final int ANALYSIS_HEIGHT = 720;
+    private static final int ROW_ALIGNMENT = 64;
+
+    private LumaFrames() {
+    }
+
+    public static final class Frame {
+        public final ByteBuffer yPlane;
+        public final int rowStride;
+        public final int width;
+        public final int height;
+
+        Frame(ByteBuffer yPlane, int rowStride, int width, int height) {
+            this.yPlane = yPlane;
+            this.rowStride = rowStride;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * @return the recorded frames of the directory set by the {@link #RECORDED_FRAMES_PROPERTY} system property,
+     * or synthetic frames if not set
+     */
+    public static List<Frame> load() throws IOException {
+        final String directory = System.getProperty(RECORDED_FRAMES_PROPERTY);
+        if (directory == null) {
+            final List<Frame> frames = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                frames.add(createSyntheticFrame(ANALYSIS_WIDTH, ANALYSIS_HEIGHT, i));
+            }
+            return frames;
+        }
+        final File[] files = new File(directory).listFiles();
+        if (files == null || files.length == 0) {
+            throw new IOException("No recorded frame in " + directory);
+        }
+        Arrays.sort(files);
+        final List<Frame> frames = new ArrayList<>();
+        for (File file : files) {
+            final BufferedImage image = ImageIO.read(file);
+            if (image != null) {
+                frames.add(toFrame(image));
+            }
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No readable image in " + directory);
+        }
+        return frames;
+    }
+
+    private static Frame toFrame(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final Frame frame = allocate(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int rgb = image.getRGB(x, y);
+                // BT.601 luma
+                final int luma = (77 * (rgb >> 16 & 0xFF) + 150 * (rgb >> 8 & 0xFF) + 29 * (rgb & 0xFF)) >> 8;
+                frame.yPlane.put(y * frame.rowStride + x, (byte) luma);
+            }
+        }
+        return frame;
+    }
+
+    // A screen showing a QR-like pattern in the middle of a noisy background
+    private static Frame createSyntheticFrame(int width, int height, long seed) {
+        final Random random = new Random(seed);
+        final Frame frame = allocate(width, height);
+        final int modules = 33;
+        final int moduleSize = 8;
+        final boolean[] pattern = new boolean[modules * modules];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = random.nextBoolean();
+        }
+        final int codeLeft = (width - modules * moduleSize) / 2;
+        final int codeTop = (height - modules * moduleSize) / 2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int mx = (x - codeLeft) / moduleSize;
+                final int my = (y - codeTop) / moduleSize;
+                int luma;
+                if (x >= codeLeft && y >= codeTop && mx < modules && my < modules) {
+                    luma = pattern[my * modules + mx] ? 30 : 220;
+                } else {
+                    luma = 90 + x * 60 / width;
+                }
+                luma += (int) (random.nextGaussian() * 6);
+                frame.yPlane.put(y * frame.rowStride + x, (byte) Math.max(0, Math.min(255, luma)));
+            }
+        }
+        return frame;
+    }
+
+    private static Frame allocate(int width, int height) {
+        final int rowStride = (width + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+        return new Frame(ByteBuffer.allocateDirect(rowStride * height), rowStride, width, height);
+    }
+}
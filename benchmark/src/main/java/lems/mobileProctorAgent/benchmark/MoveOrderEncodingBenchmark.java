@@ -0,0 +1,85 @@
+package lems.mobileProctorAgent.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.bluetooth.BluetoothCommandUtils;
+
+/**
+ * BLE move order encoding: the former ByteBuffer based encoder against the precomputed table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveOrderEncodingBenchmark {
+    private final int[] rotations = new int[]{-1, 0, 1, 1, 0, -1, 0, 1, -1};
+    private final int[] pitches = new int[]{-1, -1, -1, 0, 0, 0, 1, 1, 1};
+    private final byte[] message = new byte[BluetoothCommandUtils.MESSAGE_LENGTH];
+    private int index;
+
+    private int nextIndex() {
+        this.index = (this.index + 1) % this.rotations.length;
+        return this.index;
+    }
+
+    @Benchmark
+    public byte[] byteBufferEncoder() {
+        final int i = this.nextIndex();
+        return legacyComputeMoveOrderMessage(this.rotations[i], this.pitches[i]);
+    }
+
+    @Benchmark
+    public byte[] tableEncoderNewArray() {
+        final int i = this.nextIndex();
+        return BluetoothCommandUtils.computeMoveOrderMessage(this.rotations[i], this.pitches[i]);
+    }
+
+    @Benchmark
+    public byte[] tableEncoderInPlace() {
+        final int i = this.nextIndex();
+        BluetoothCommandUtils.writeMoveOrderMessage(this.rotations[i], this.pitches[i], this.message, 0);
+        return this.message;
+    }
+
+    @Benchmark
+    public int tableEncoderUint16() {
+        final int i = this.nextIndex();
+        return BluetoothCommandUtils.encodeMoveOrder(this.rotations[i], this.pitches[i]);
+    }
+
+    // Encoder used before the precomputed table
+    private static byte[] legacyComputeMoveOrderMessage(int rotation, int pitch) {
+        final ByteBuffer buffer = ByteBuffer
+                .allocate(BluetoothCommandUtils.MESSAGE_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (pitch > 0) {
+            buffer.put((byte) 0xFF);
+        } else if (pitch < 0) {
+            buffer.put((byte) 0x00);
+        } else {
+            buffer.put((byte) 0x80);
+        }
+        if (rotation > 0) {
+            buffer.put((byte) 0xFF);
+        } else if (rotation < 0) {
+            buffer.put((byte) 0x00);
+        } else {
+            buffer.put((byte) 0x80);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,69 @@
+package lems.mobileProctorAgent.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.qrcodeReader.LumaFrameSampler;
+
+/**
+ * Front stage of the QR code analysis, on 1280x720 frames. The detector itself (ML Kit) only runs on device: its
+ * cost grows with the number of pixels of the sampled frame, and a 0.7 region downscaled to 640 has 8 times fewer
+ * pixels than a full frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QRFrameSamplingBenchmark {
+    private List<LumaFrames.Frame> frames;
+    private int frameIndex;
+    private LumaFrameSampler fullFrameSampler;
+    private LumaFrameSampler roiSampler;
+    private LumaFrameSampler downscaledRoiSampler;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.frames = LumaFrames.load();
+        this.fullFrameSampler = new LumaFrameSampler(1f, Integer.MAX_VALUE);
+        this.roiSampler = new LumaFrameSampler(0.7f, Integer.MAX_VALUE);
+        this.downscaledRoiSampler = new LumaFrameSampler(0.7f, 640);
+    }
+
+    private LumaFrames.Frame nextFrame() {
+        this.frameIndex = (this.frameIndex + 1) % this.frames.size();
+        return this.frames.get(this.frameIndex);
+    }
+
+    /** Full frame copied to a contiguous buffer */
+    @Benchmark
+    public byte[] fullFrame() {
+        final LumaFrames.Frame frame = this.nextFrame();
+        return this.fullFrameSampler.sample(frame.yPlane, frame.rowStride, frame.width, frame.height);
+    }
+
+    @Benchmark
+    public byte[] regionOfInterest() {
+        final LumaFrames.Frame frame = this.nextFrame();
+        return this.roiSampler.sample(frame.yPlane, frame.rowStride, frame.width, frame.height);
+    }
+
+    @Benchmark
+    public byte[] downscaledRegionOfInterest() {
+        final LumaFrames.Frame frame = this.nextFrame();
+        return this.downscaledRoiSampler.sample(frame.yPlane, frame.rowStride, frame.width, frame.height);
+    }
+}
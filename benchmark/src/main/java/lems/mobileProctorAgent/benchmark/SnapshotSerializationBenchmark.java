@@ -0,0 +1,84 @@
+package lems.mobileProctorAgent.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import lems.mobileProctorAgent.model.PictureSnapshot;
+import lems.mobileProctorAgent.websocket.SnapshotJsonEncoder;
+
+/**
+ * Picture snapshot serialization paths, from the snapshot to the json object handed to the websocket client,
+ * with a 416x416 jpeg payload.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotSerializationBenchmark {
+    private Gson jsonConverter;
+    private SnapshotJsonEncoder snapshotJsonEncoder;
+    private PictureSnapshot pictureSnapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] jpeg = JpegPayloads.createCapturedJpeg();
+        this.pictureSnapshot = new PictureSnapshot(PictureSnapshot.CameraType.FRONT, System.currentTimeMillis(), jpeg);
+        this.jsonConverter = new GsonBuilder()
+                .registerTypeAdapter(PictureSnapshot.class, new PictureSnapshot.Serializer())
+                .create();
+        this.snapshotJsonEncoder = new SnapshotJsonEncoder(jpeg.length);
+    }
+
+    /** Gson serialization alone */
+    @Benchmark
+    public String gsonSerializer() {
+        return this.jsonConverter.toJson(this.pictureSnapshot);
+    }
+
+    /** Former websocket path: Gson serialization to a string, re-parsed as a JSONObject */
+    @Benchmark
+    public JSONObject gsonSerializerReparsed() throws JSONException {
+        return new JSONObject(this.jsonConverter.toJson(this.pictureSnapshot));
+    }
+
+    /** Current json path, formatted timestamp */
+    @Benchmark
+    public JSONObject jsonEncoder() throws JSONException {
+        return this.snapshotJsonEncoder.encode(this.pictureSnapshot, false);
+    }
+
+    /** Current json path, epoch timestamp */
+    @Benchmark
+    public JSONObject jsonEncoderEpochTimestamp() throws JSONException {
+        return this.snapshotJsonEncoder.encode(this.pictureSnapshot, true);
+    }
+
+    /** Binary path: header plus raw jpeg attachment */
+    @Benchmark
+    public JSONObject binaryHeader() throws JSONException {
+        return this.pictureSnapshot.toBinaryJSONObject();
+    }
+
+    @Benchmark
+    public String formatTimestamp() {
+        return PictureSnapshot.formatTimestamp(this.pictureSnapshot.getTimestamp());
+    }
+}